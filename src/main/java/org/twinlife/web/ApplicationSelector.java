@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strategy to select the ProxyApplication which handles a new client session.
+ *
+ * <ul>
+ * <li>round-robin: the historical behavior which ignores the state of the applications,</li>
+ * <li>health-gated: round-robin on the applications whose Openfire connection is online,</li>
+ * <li>least-loaded: the online application with the lowest load,</li>
+ * <li>two-choices: the least loaded of two online applications picked randomly, which avoids
+ * sending all the new clients to the same application between two load updates.</li>
+ * </ul>
+ * <p>
+ * The load of an application is computed from its live counters (see ProxyApplication.getLoad()).
+ * When no application is online, all of them are candidates.
+ * </p>
+ */
+abstract class ApplicationSelector {
+
+    static final String ROUND_ROBIN = "round-robin";
+    static final String HEALTH_GATED = "health-gated";
+    static final String LEAST_LOADED = "least-loaded";
+    static final String TWO_CHOICES = "two-choices";
+
+    /**
+     * Create the selector for the given mode.
+     *
+     * @param mode the selection mode.
+     * @return the selector or null if the mode is not known.
+     */
+    static ApplicationSelector create(@NonNull String mode) {
+
+        switch (mode) {
+            case ROUND_ROBIN:
+                return new RoundRobin(false);
+
+            case HEALTH_GATED:
+                return new RoundRobin(true);
+
+            case LEAST_LOADED:
+                return new LeastLoaded();
+
+            case TWO_CHOICES:
+                return new TwoChoices();
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Select the application.
+     *
+     * @param applications the proxy applications.
+     * @return the selected application.
+     */
+    @NonNull
+    abstract ProxyApplication select(@NonNull ProxyApplication[] applications);
+
+    private static boolean hasOnline(@NonNull ProxyApplication[] applications) {
+
+        for (ProxyApplication application : applications) {
+            if (application.isOnline()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class RoundRobin extends ApplicationSelector {
+        private final AtomicInteger mIndex = new AtomicInteger();
+        private final boolean mHealthGated;
+
+        RoundRobin(boolean healthGated) {
+
+            mHealthGated = healthGated;
+        }
+
+        @Override
+        @NonNull
+        ProxyApplication select(@NonNull ProxyApplication[] applications) {
+
+            final int start = mIndex.getAndIncrement();
+            final ProxyApplication first = applications[Math.floorMod(start, applications.length)];
+            if (!mHealthGated) {
+                return first;
+            }
+
+            // Use the next online application, or the first one when none is online.
+            for (int i = 0; i < applications.length; i++) {
+                final ProxyApplication application = applications[Math.floorMod(start + i, applications.length)];
+                if (application.isOnline()) {
+                    return application;
+                }
+            }
+            return first;
+        }
+    }
+
+    private static final class LeastLoaded extends ApplicationSelector {
+
+        @Override
+        @NonNull
+        ProxyApplication select(@NonNull ProxyApplication[] applications) {
+
+            final boolean gated = hasOnline(applications);
+            ProxyApplication selected = null;
+            int selectedLoad = Integer.MAX_VALUE;
+            for (ProxyApplication application : applications) {
+                if (gated && !application.isOnline()) {
+                    continue;
+                }
+                final int load = application.getLoad();
+                if (selected == null || load < selectedLoad) {
+                    selected = application;
+                    selectedLoad = load;
+                }
+            }
+            return selected;
+        }
+    }
+
+    private static final class TwoChoices extends ApplicationSelector {
+
+        @Override
+        @NonNull
+        ProxyApplication select(@NonNull ProxyApplication[] applications) {
+
+            if (applications.length == 1) {
+                return applications[0];
+            }
+
+            // Pick the first one at random, moving to the next online one when it is not online.
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int start = random.nextInt(applications.length);
+            ProxyApplication first = applications[start];
+            boolean gated = false;
+            for (int i = 0; i < applications.length; i++) {
+                final ProxyApplication application = applications[(start + i) % applications.length];
+                if (application.isOnline()) {
+                    first = application;
+                    gated = true;
+                    break;
+                }
+            }
+
+            // Pick the second one among the others, it is ignored if it is not online.
+            final int index = random.nextInt(applications.length - 1);
+            ProxyApplication second = applications[index];
+            if (second == first) {
+                second = applications[applications.length - 1];
+            }
+            if (gated && !second.isOnline()) {
+                return first;
+            }
+            return second.getLoad() < first.getLoad() ? second : first;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client sessions which are members of a call room, indexed by call room id and by member id.
+ *
+ * <p>
+ * A client session is added when it is invited to the call room and it is indexed by its member id
+ * when the join is acknowledged by the server.  Updates of a call room are serialized by the
+ * ConcurrentHashMap compute operations on that room only, and the list of members is replaced
+ * (copy-on-write) so that it can be iterated without any lock when an event is sent to all members.
+ * </p>
+ */
+final class CallRoomRegistry {
+
+    private static final class CallRoom {
+        @NonNull
+        final List<ClientSession> members;
+        @NonNull
+        final Map<String, ClientSession> memberIds;
+
+        CallRoom(@NonNull List<ClientSession> members, @NonNull Map<String, ClientSession> memberIds) {
+            this.members = members;
+            this.memberIds = memberIds;
+        }
+    }
+
+    private final ConcurrentHashMap<UUID, CallRoom> mCallRooms = new ConcurrentHashMap<>();
+
+    /**
+     * Add the client session in the call room.
+     *
+     * @param callRoomId the call room id.
+     * @param client the client session.
+     */
+    void add(@NonNull UUID callRoomId, @NonNull ClientSession client) {
+
+        mCallRooms.compute(callRoomId, (UUID id, CallRoom room) -> {
+            if (room == null) {
+                return new CallRoom(List.of(client), Map.of());
+            }
+            final List<ClientSession> members = new ArrayList<>(room.members.size() + 1);
+            members.addAll(room.members);
+            members.add(client);
+            return new CallRoom(Collections.unmodifiableList(members), room.memberIds);
+        });
+    }
+
+    /**
+     * Index the client session with the member id given by the server when it joined the call room.
+     *
+     * @param callRoomId the call room id.
+     * @param memberId the member id.
+     * @param client the client session.
+     */
+    void setMemberId(@NonNull UUID callRoomId, @NonNull String memberId, @NonNull ClientSession client) {
+
+        mCallRooms.computeIfPresent(callRoomId, (UUID id, CallRoom room) -> {
+            if (!room.members.contains(client)) {
+                return room;
+            }
+            final Map<String, ClientSession> memberIds = new HashMap<>(room.memberIds);
+            memberIds.put(memberId, client);
+            return new CallRoom(room.members, memberIds);
+        });
+    }
+
+    /**
+     * Remove the member from the call room and drop the call room when it becomes empty.
+     *
+     * @param callRoomId the call room id.
+     * @param memberId the member id.
+     */
+    void remove(@NonNull UUID callRoomId, @NonNull String memberId) {
+
+        mCallRooms.computeIfPresent(callRoomId, (UUID id, CallRoom room) -> {
+            final ClientSession client = room.memberIds.get(memberId);
+            if (client == null) {
+                return room.members.isEmpty() ? null : room;
+            }
+            final List<ClientSession> members = new ArrayList<>(room.members);
+            members.remove(client);
+            if (members.isEmpty()) {
+                return null;
+            }
+            final Map<String, ClientSession> memberIds = new HashMap<>(room.memberIds);
+            memberIds.remove(memberId);
+            return new CallRoom(Collections.unmodifiableList(members), memberIds);
+        });
+    }
+
+    /**
+     * Drop the call room if it has no member.
+     *
+     * @param callRoomId the call room id.
+     */
+    void removeIfEmpty(@NonNull UUID callRoomId) {
+
+        mCallRooms.computeIfPresent(callRoomId, (UUID id, CallRoom room) -> room.members.isEmpty() ? null : room);
+    }
+
+    /**
+     * Get the client session with the given member id.
+     *
+     * @param callRoomId the call room id.
+     * @param memberId the member id.
+     * @return the client session or null.
+     */
+    @Nullable
+    ClientSession getMember(@NonNull UUID callRoomId, @NonNull String memberId) {
+
+        final CallRoom room = mCallRooms.get(callRoomId);
+        return room == null ? null : room.memberIds.get(memberId);
+    }
+
+    /**
+     * Get a snapshot of the client sessions which are members of the call room.
+     *
+     * @param callRoomId the call room id.
+     * @return the immutable list of members, empty if the call room is not known.
+     */
+    @NonNull
+    List<ClientSession> getMembers(@NonNull UUID callRoomId) {
+
+        final CallRoom room = mCallRooms.get(callRoomId);
+        return room == null ? List.of() : room.members;
+    }
+
+    int size() {
+
+        return mCallRooms.size();
+    }
+}
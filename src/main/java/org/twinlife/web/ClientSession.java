@@ -11,7 +11,6 @@ package org.twinlife.web;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import com.fasterxml.jackson.databind.JsonNode;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -30,6 +29,7 @@ import org.twinlife.twinlife.TransportCandidate;
 import org.twinlife.twinlife.TransportCandidateList;
 import org.twinlife.twinlife.TwincodeInbound;
 import org.twinlife.twinlife.TwincodeOutbound;
+import org.twinlife.twinlife.util.TimingWheel;
 import org.twinlife.twinlife.util.Utils;
 import org.twinlife.twinlife.util.Version;
 import org.twinlife.twinme.models.Capabilities;
@@ -42,7 +42,6 @@ import org.twinlife.web.kafka.records.ClickToCallJoinRoomRecord;
 import org.twinlife.web.messages.CandidateInfo;
 import org.twinlife.web.messages.DeviceRingingMessage;
 import org.twinlife.web.messages.ErrorMessage;
-import org.twinlife.web.messages.InviteCallRoomMessage;
 import org.twinlife.web.messages.JoinCallRoomMessage;
 import org.twinlife.web.messages.MemberInfo;
 import org.twinlife.web.messages.MemberJoinCallMessage;
@@ -56,11 +55,21 @@ import org.twinlife.web.messages.SessionOfferToReceive;
 import org.twinlife.web.messages.SessionTerminateMessage;
 import org.twinlife.web.messages.SessionUpdateMessage;
 import org.twinlife.web.messages.TransportInfoMessage;
+import org.twinlife.web.requests.ClientRequest;
+import org.twinlife.web.requests.InviteCallRoomRequest;
+import org.twinlife.web.requests.OfferInfo;
+import org.twinlife.web.requests.OfferToReceiveInfo;
+import org.twinlife.web.requests.PingRequest;
+import org.twinlife.web.requests.SessionAcceptRequest;
+import org.twinlife.web.requests.SessionInitiateRequest;
+import org.twinlife.web.requests.SessionRequest;
+import org.twinlife.web.requests.SessionTerminateRequest;
+import org.twinlife.web.requests.SessionUpdateRequest;
+import org.twinlife.web.requests.TransportInfoRequest;
 
 import java.lang.ref.WeakReference;
 import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -70,7 +79,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.twinlife.twinlife.TwincodeFactory;
-import org.twinlife.web.util.Json;
 
 /**
  * A web client session that is connected through a WebSocket connection.
@@ -80,22 +88,25 @@ import org.twinlife.web.util.Json;
  * the session-initiate/accept/update/transport/terminate through the Openfire
  * connection.
  */
-public class ClientSession {
+public class ClientSession implements SessionRegistry.Client {
     static final Logger Log = LogManager.getLogger(ClientSession.class);
 
-    private static final long MAX_IDLE_DELAY = ProxyController.MAX_CLIENT_IDLE_DELAY;
-
     @Nonnull
-    private final ProxyApplication mApplication;
+    private volatile ProxyApplication mApplication;
+    private boolean mApplicationBound;
+    @Nullable
+    private volatile ProxyApplication mCallRoomApplication;
     private final Map<UUID, String> mPeerSessions;
-    public final String mClientId;
+    private volatile String mClientId;
     private final String mSessionId;
     @Nullable
     private TwincodeFactory mCallTwincode;
     @Nullable
+    private TwincodeFactory mCallRoomTwincode;
+    @Nullable
     private UUID mCallRoomId;
     @Nullable
-    private String mCallRoomMemberId;
+    private volatile String mCallRoomMemberId;
     @Nullable
     private final RecordSender<String, ClickToCallRecord > mKafkaRecordSender;
     @Nullable
@@ -103,16 +114,21 @@ public class ClientSession {
     private long mLastAccessTime;
     @Nonnull
     private final Set<String> mMemberIds;
+    @Nonnull
+    private final OfflineBuffer mOfflineBuffer;
+    @Nullable
+    private TimingWheel.Timeout mPurgeTimeout;
     @Nullable
-    private List<Object> mMessageQueue;
-    private long mQueueCreationDate;
+    private TimingWheel.Timeout mExpireTimeout;
     private InetAddress mClientAddress;
 
     public ClientSession(@Nonnull String sessionId,
-                         @Nullable RecordSender<String, ClickToCallRecord> kafkaRecordSender) {
+                         @Nullable RecordSender<String, ClickToCallRecord> kafkaRecordSender,
+                         int offlineBufferMaxBytes, long offlineMessageTtl) {
 
         mSessionId = sessionId;
         mKafkaRecordSender = kafkaRecordSender;
+        mOfflineBuffer = new OfflineBuffer(offlineBufferMaxBytes, offlineMessageTtl);
         mPeerSessions = new ConcurrentHashMap<>();
         mApplication = ProxyController.getProxyApplication();
         mClientId = mApplication.allocateIdentifier();
@@ -124,18 +140,27 @@ public class ClientSession {
         return mSessionId;
     }
 
+    @Override
+    @Nonnull
+    public String getClientId() {
+
+        return mClientId;
+    }
+
     void setSession(@Nonnull WebSocketClientSession session, InetAddress clientAddress) {
 
         while (true) {
             final List<Object> pending;
             synchronized (this) {
-                pending = mMessageQueue;
-                mMessageQueue = null;
-                if (pending == null) {
+                if (mOfflineBuffer.isEmpty()) {
                     mSession = new WeakReference<>(session);
                     mClientAddress = clientAddress;
                     return;
                 }
+
+                // Drop the messages of P2P sessions terminated while the browser was disconnected.
+                pending = mOfflineBuffer.drain(this::isActiveSession);
+                cancelPurge();
             }
             for (Object msg : pending) {
                 session.sendMessage(msg);
@@ -144,27 +169,41 @@ public class ClientSession {
     }
 
     /**
-     * Check whether this client session has expired:
-     * - it is not connected anymore to a WebSocket,
-     * - we have not received any message during the last 5 minutes
+     * Get the time since the last message was sent to the browser when it is not connected anymore
+     * to a WebSocket.  The client session expires when this idle delay reaches 5 minutes.
      *
-     * @return
+     * @return the idle delay in milliseconds or -1 if the client is connected.
      */
-    boolean isExpired() {
+    synchronized long getIdleDelay() {
 
         if (mSession != null && mSession.get() != null) {
-            return false;
+            return -1;
         }
 
-        return mLastAccessTime + MAX_IDLE_DELAY < System.currentTimeMillis();
+        return System.currentTimeMillis() - mLastAccessTime;
     }
 
+    /**
+     * Set the timer which expires this client session, the previous timer is cancelled.
+     *
+     * @param timeout the new expiration timer or null.
+     */
+    synchronized void setExpireTimeout(@Nullable TimingWheel.Timeout timeout) {
+
+        if (mExpireTimeout != null) {
+            mExpireTimeout.cancel();
+        }
+        mExpireTimeout = timeout;
+    }
+
+    @Override
     public synchronized String getSessionTo(@Nonnull UUID sessionId) {
 
         return mPeerSessions.get(sessionId);
     }
 
-    public synchronized String getCallRoomMemberId(){
+    @Override
+    public String getCallRoomMemberId(){
         return mCallRoomMemberId;
     }
 
@@ -397,7 +436,7 @@ public class ClientSession {
     public boolean onInviteCallRoom(@Nonnull UUID callRoomId, @Nullable UUID p2pSession, int maxCount) {
         Log.debug("{} onInviteCallRoom {} and session {}", mClientId, callRoomId, p2pSession);
 
-        if (p2pSession == null || mCallRoomId != null) {
+        if (p2pSession == null || mCallRoomId != null || mCallRoomApplication != null) {
             Log.warn("{} cannot be invited to {}: already member of call room {}",
                     mClientId, callRoomId, mCallRoomId);
             return false;
@@ -410,19 +449,45 @@ public class ClientSession {
             return false;
         }
 
-        TwincodeInbound twincodeInbound;
+        final TwincodeInbound twincodeInbound;
+        final ProxyApplication application;
         synchronized (this) {
             if (mCallTwincode == null) {
                 Log.warn("{} has no twincode to join callroom {}", mClientId, callRoomId);
                 return false;
             }
             twincodeInbound = mCallTwincode.getTwincodeInbound();
+
+            // Join through the proxy application which has the affinity with the call room so that the
+            // P2P sessions with the other web clients of the call room are forwarded locally.
+            application = ProxyController.getProxyApplication(callRoomId);
+            mCallRoomApplication = application;
         }
 
         ProxyEvent.logEvent("forward-invite-callroom", "clientId", mClientId,
                 "to", to, "sessionId", p2pSession.toString(), "callRoomId", callRoomId.toString());
 
-        mApplication.joinCallRoom(callRoomId, twincodeInbound.getId(), p2pSession);
+        if (application == mApplication) {
+            application.joinCallRoom(this, callRoomId, twincodeInbound.getId(), p2pSession);
+            return true;
+        }
+
+        // The member twincode must be owned by the account of the proxy application which joins.
+        application.allocateCallTwincodeFactory(this, (ErrorCode errorCode, TwincodeFactory factory) -> {
+            if (errorCode != ErrorCode.SUCCESS || factory == null) {
+                Log.warn("{} joins call room {} through its own proxy application: {}", mClientId, callRoomId, errorCode);
+
+                mCallRoomApplication = mApplication;
+                mApplication.joinCallRoom(this, callRoomId, twincodeInbound.getId(), p2pSession);
+                return;
+            }
+
+            Log.debug("{} joins call room {} through another proxy application", mClientId, callRoomId);
+            synchronized (this) {
+                mCallRoomTwincode = factory;
+            }
+            application.joinCallRoom(this, callRoomId, factory.getTwincodeInbound().getId(), p2pSession);
+        });
         return true;
     }
 
@@ -495,46 +560,36 @@ public class ClientSession {
         sendMessage(msg);
     }
 
-    public void onMessage(@Nonnull String msg, @Nonnull JsonNode jsonNode) {
-        Log.debug("{} onMessage {}", mClientId, jsonNode);
+    public void onMessage(@Nonnull ClientRequest request) {
+        Log.debug("{} onMessage {}", mClientId, request.msg);
 
-        switch (msg) {
-            case "session-request":
-                sessionRequest(jsonNode);
-                break;
+        if (request instanceof SessionRequest) {
+            sessionRequest();
 
-            case "ping":
-                sendMessage(new PingPongMessage());
-                break;
+        } else if (request instanceof PingRequest) {
+            sendMessage(new PingPongMessage());
 
-            case SessionInitiateMessage.NAME:
-                sessionInitiate(jsonNode);
-                break;
+        } else if (request instanceof SessionInitiateRequest) {
+            sessionInitiate((SessionInitiateRequest) request);
 
-            case SessionAcceptMessage.NAME:
-                sessionAccept(jsonNode);
-                break;
+        } else if (request instanceof SessionAcceptRequest) {
+            sessionAccept((SessionAcceptRequest) request);
 
-            case SessionUpdateMessage.NAME:
-                sessionUpdate(jsonNode);
-                break;
+        } else if (request instanceof SessionUpdateRequest) {
+            sessionUpdate((SessionUpdateRequest) request);
 
-            case TransportInfoMessage.NAME:
-                transportInfo(jsonNode);
-                break;
+        } else if (request instanceof TransportInfoRequest) {
+            transportInfo((TransportInfoRequest) request);
 
-            case SessionTerminateMessage.NAME:
-                sessionTerminate(jsonNode);
-                break;
+        } else if (request instanceof SessionTerminateRequest) {
+            sessionTerminate((SessionTerminateRequest) request);
 
-            case InviteCallRoomMessage.NAME:
-                inviteCallRoom(jsonNode);
-                break;
+        } else if (request instanceof InviteCallRoomRequest) {
+            inviteCallRoom((InviteCallRoomRequest) request);
 
-            default:
-                Log.warn("Unknown message: {}", msg);
-                sendMessage(new ErrorMessage("Invalid message"));
-                break;
+        } else {
+            Log.warn("Unknown message: {}", request.msg);
+            sendMessage(new ErrorMessage("Invalid message"));
         }
     }
 
@@ -561,6 +616,11 @@ public class ClientSession {
     void dispose() {
         Log.info("dispose client {}", mClientId);
 
+        synchronized (this) {
+            mOfflineBuffer.clear();
+            cancelPurge();
+        }
+
         // When the web client disconnects we must terminate any active session.
         if (!mPeerSessions.isEmpty()) {
             ProxyEvent.logEvent("terminate-all", "clientId", mClientId,
@@ -570,7 +630,8 @@ public class ClientSession {
                 ProxyEvent.logEvent("session-terminate", "clientId", mClientId,
                         "sessionId", session.getKey().toString(), "reason", "disconnected");
 
-                mApplication.sessionTerminate(session.getKey(), session.getValue(), TerminateReason.DISCONNECTED);
+                getApplication(session.getValue()).sessionTerminate(session.getKey(), session.getValue(),
+                        TerminateReason.DISCONNECTED);
             }
         }
 
@@ -580,53 +641,40 @@ public class ClientSession {
         }
 
         if (mCallRoomId != null) {
-            mApplication.leaveCallRoom(mCallRoomId, mCallRoomMemberId);
+            getCallRoomApplication().leaveCallRoom(mCallRoomId, mCallRoomMemberId);
             mMemberIds.clear();
         }
+        releaseCallRoomTwincode();
     }
 
     @Nullable
-    private static Offer getOffer(final @Nonnull JsonNode jsonNode, final String name) {
+    private static Offer getOffer(final @Nullable OfferInfo item) {
 
-        JsonNode item = jsonNode.get(name);
         if (item == null) {
             return null;
         }
 
-        boolean audio = Json.getBoolean(item, "audio", false);
-        boolean video = Json.getBoolean(item, "video", false);
-        boolean videoBell = Json.getBoolean(item, "videoBell", false);
-        boolean data = Json.getBoolean(item, "data", false);
-        boolean transfer = Json.getBoolean(item, "transfer", false);
-
-        final Offer offer = new Offer(audio, video, videoBell, data, transfer);
+        final Offer offer = new Offer(item.audio, item.video, item.videoBell, item.data, item.transfer);
         offer.version = new Version("2.0");
         return offer;
     }
 
     @Nullable
-    private static OfferToReceive getOfferToReceive(final @Nonnull JsonNode jsonNode, final String name) {
+    private static OfferToReceive getOfferToReceive(final @Nullable OfferToReceiveInfo item) {
 
-        JsonNode item = jsonNode.get(name);
         if (item == null) {
             return null;
         }
 
-        boolean audio = Json.getBoolean(item, "audio", false);
-        boolean video = Json.getBoolean(item, "video", false);
-        boolean data = Json.getBoolean(item, "data", false);
-
-        final OfferToReceive offer = new OfferToReceive(audio, video, data);
+        final OfferToReceive offer = new OfferToReceive(item.audio, item.video, item.data);
         return offer;
     }
 
     /**
      * Web proxy is requesting to initiate a new session and needs some configuration.
-     *
-     * @param jsonNode
      */
-    private void sessionRequest(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received session-request message {}", mClientId, jsonNode);
+    private void sessionRequest() {
+        Log.debug("{} received session-request message", mClientId);
 
         final SessionConfigMessage sessionConfigMessage = new SessionConfigMessage();
         final Configuration configuration = mApplication.getConfiguration();
@@ -650,13 +698,16 @@ public class ClientSession {
     /**
      * Web proxy is starting a new P2P session.
      *
-     * @param jsonNode the JSON session-initiate.
+     * @param request the session-initiate request.
      */
-    private void sessionInitiate(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received session-initiate message {}", mClientId, jsonNode);
+    private void sessionInitiate(@Nonnull final SessionInitiateRequest request) {
+        Log.debug("{} received session-initiate message to {}", mClientId, request.to);
 
         final TwincodeOutbound proxyTwincode;
         synchronized (this) {
+            if (!mApplicationBound) {
+                bindApplication(request.to);
+            }
             if (mCallTwincode != null) {
                 proxyTwincode = mCallTwincode.getTwincodeOutbound();
             } else {
@@ -665,7 +716,7 @@ public class ClientSession {
         }
 
         if (proxyTwincode != null) {
-            sessionInitiate(jsonNode, proxyTwincode.getId());
+            sessionInitiate(request, proxyTwincode.getId());
             return;
         }
 
@@ -680,22 +731,22 @@ public class ClientSession {
                         factory = mCallTwincode;
                     }
                 }
-                sessionInitiate(jsonNode, factory.getTwincodeOutbound().getId());
+                sessionInitiate(request, factory.getTwincodeOutbound().getId());
             } else {
                 Log.error("{}: cannot issue session initiate due to error {}", mClientId, errorCode);
             }
         });
     }
 
-    private void sessionInitiate(@Nonnull final JsonNode jsonNode, @Nonnull UUID twincodeId) {
-        Log.debug("{} received session-initiate message {} proxy twincode {}", mClientId, jsonNode, twincodeId);
+    private void sessionInitiate(@Nonnull final SessionInitiateRequest request, @Nonnull UUID twincodeId) {
+        Log.debug("{} received session-initiate message to {} proxy twincode {}", mClientId, request.to, twincodeId);
 
-        final String requestTo = Json.getString(jsonNode, "to");
-        final String sdpContent = Json.getString(jsonNode, "sdp");
-        final Offer offer = getOffer(jsonNode, "offer");
-        final OfferToReceive offerToReceive = getOfferToReceive(jsonNode, "offerToReceive");
-        final int maxFrameSize = Json.getInteger(jsonNode, "maxFrameSize", 0);
-        final int maxFrameRate = Json.getInteger(jsonNode, "maxFrameRate", 0);
+        final String requestTo = request.to;
+        final String sdpContent = request.sdp;
+        final Offer offer = getOffer(request.offer);
+        final OfferToReceive offerToReceive = getOfferToReceive(request.offerToReceive);
+        final int maxFrameSize = request.maxFrameSize;
+        final int maxFrameRate = request.maxFrameRate;
 
         if (requestTo == null || sdpContent == null || offer == null || offerToReceive == null) {
 
@@ -806,7 +857,7 @@ public class ClientSession {
         }
 
         notificationContent.priority = PushNotificationPriority.HIGH;
-        mApplication.sessionInitiate(this, sessionId, to, sdp, offer, offerToReceive,
+        getApplication(to).sessionInitiate(this, sessionId, to, sdp, offer, offerToReceive,
                 maxFrameSize, maxFrameRate, notificationContent, (ErrorCode errorCode, Long requestId) -> {
 
                     if (errorCode == ErrorCode.ITEM_NOT_FOUND) {
@@ -827,16 +878,16 @@ public class ClientSession {
                 });
     }
 
-    private void sessionAccept(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received session-accept message {}", mClientId, jsonNode);
+    private void sessionAccept(@Nonnull final SessionAcceptRequest request) {
+        Log.debug("{} received session-accept message for {}", mClientId, request.sessionId);
 
-        final String requestTo = Json.getString(jsonNode, "to");
-        final UUID sessionId = Utils.UUIDFromString(Json.getString(jsonNode, "sessionId"));
-        final String sdpContent = Json.getString(jsonNode, "sdp");
-        final Offer offer = getOffer(jsonNode, "offer");
-        final OfferToReceive offerToReceive = getOfferToReceive(jsonNode, "offerToReceive");
-        final int maxFrameSize = Json.getInteger(jsonNode, "maxFrameSize", 0);
-        final int maxFrameRate = Json.getInteger(jsonNode, "maxFrameRate", 0);
+        final String requestTo = request.to;
+        final UUID sessionId = Utils.UUIDFromString(request.sessionId);
+        final String sdpContent = request.sdp;
+        final Offer offer = getOffer(request.offer);
+        final OfferToReceive offerToReceive = getOfferToReceive(request.offerToReceive);
+        final int maxFrameSize = request.maxFrameSize;
+        final int maxFrameRate = request.maxFrameRate;
 
         if (requestTo == null || sessionId == null || sdpContent == null || offer == null || offerToReceive == null) {
 
@@ -852,7 +903,7 @@ public class ClientSession {
         ProxyEvent.logEvent("session-accept", "clientId", mClientId,
                 "to", requestTo, "sessionId", sessionId.toString());
 
-        mApplication.sessionAccept(sessionId, mCallRoomMemberId, to, sdp, offer, offerToReceive, maxFrameSize, maxFrameRate,
+        getApplication(to).sessionAccept(sessionId, mCallRoomMemberId, to, sdp, offer, offerToReceive, maxFrameSize, maxFrameRate,
                 (ErrorCode errorCode, Long requestId) -> {
 
                     if (errorCode == ErrorCode.ITEM_NOT_FOUND) {
@@ -873,12 +924,12 @@ public class ClientSession {
                 });
     }
 
-    private void sessionUpdate(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received session-update message {}", mClientId, jsonNode);
+    private void sessionUpdate(@Nonnull final SessionUpdateRequest request) {
+        Log.debug("{} received session-update message for {}", mClientId, request.sessionId);
 
-        final UUID sessionId = Utils.UUIDFromString(Json.getString(jsonNode, "sessionId"));
-        final String sdpContent = Json.getString(jsonNode, "sdp");
-        final String updateType = Json.getString(jsonNode, "updateType");
+        final UUID sessionId = Utils.UUIDFromString(request.sessionId);
+        final String sdpContent = request.sdp;
+        final String updateType = request.updateType;
 
         if (sessionId == null || sdpContent == null || updateType == null) {
 
@@ -895,7 +946,7 @@ public class ClientSession {
             final SdpType type = "offer".equals(updateType) ? SdpType.OFFER : SdpType.ANSWER;
 
             Log.debug("{} sending {} session-update to {}", mClientId, sdp, sessionId);
-            mApplication.sessionUpdate(sessionId, to, sdp, type, (ErrorCode errorCode, Long requestId) -> {
+            getApplication(to).sessionUpdate(sessionId, to, sdp, type, (ErrorCode errorCode, Long requestId) -> {
                 Log.debug("{} session-update result {}", mClientId, errorCode);
                 if (errorCode == ErrorCode.ITEM_NOT_FOUND) {
                     terminate(sessionId);
@@ -904,11 +955,11 @@ public class ClientSession {
         }
     }
 
-    private void transportInfo(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received transport-info message {}", mClientId, jsonNode);
+    private void transportInfo(@Nonnull final TransportInfoRequest request) {
+        Log.debug("{} received transport-info message for {}", mClientId, request.sessionId);
 
-        final UUID sessionId = Utils.UUIDFromString(Json.getString(jsonNode, "sessionId"));
-        final JsonNode candidates = jsonNode.get("candidates");
+        final UUID sessionId = Utils.UUIDFromString(request.sessionId);
+        final List<CandidateInfo> candidates = request.candidates;
 
         if (sessionId == null || candidates == null) {
 
@@ -919,14 +970,15 @@ public class ClientSession {
         if (to != null) {
 
             final TransportCandidateList list = new TransportCandidateList();
-            final Iterator<JsonNode> iter = candidates.elements();
             int count = 0;
-            while (iter.hasNext()) {
-                final JsonNode candidate = iter.next();
-                final String sdp = Json.getString(candidate, "candidate");
-                final String label = Json.getString(candidate, "sdpMid");
-                final int index = Json.getInteger(candidate, "sdpMLineIndex", 0);
-                final boolean removed = Json.getBoolean(candidate, "removed", false);
+            for (CandidateInfo candidate : candidates) {
+                if (candidate == null) {
+                    continue;
+                }
+                final String sdp = candidate.candidate;
+                final String label = candidate.sdpMid;
+                final int index = candidate.sdpMLineIndex;
+                final boolean removed = candidate.removed;
                 if (sdp != null && label != null) {
                     if (removed) {
                         list.removeCandidate(index, label, sdp);
@@ -941,7 +993,7 @@ public class ClientSession {
                     "to", to, "sessionId", sessionId.toString(), "candidates", Integer.toString(count));
 
             Log.debug("{} sending {} transport info to {} through session {}", mClientId, list, to, sessionId);
-            mApplication.transportInfo(sessionId, to, list, (ErrorCode errorCode, Long requestId) -> {
+            getApplication(to).transportInfo(sessionId, to, list, (ErrorCode errorCode, Long requestId) -> {
                 Log.debug("{} transport info result {}", mClientId, errorCode);
                 if (errorCode == ErrorCode.ITEM_NOT_FOUND) {
                     terminate(sessionId);
@@ -950,11 +1002,11 @@ public class ClientSession {
         }
     }
 
-    private void sessionTerminate(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received session-terminate message {}", mClientId, jsonNode);
+    private void sessionTerminate(@Nonnull final SessionTerminateRequest request) {
+        Log.debug("{} received session-terminate message for {}", mClientId, request.sessionId);
 
-        final UUID sessionId = Utils.UUIDFromString(Json.getString(jsonNode, "sessionId"));
-        final String reason = Json.getString(jsonNode, "reason");
+        final UUID sessionId = Utils.UUIDFromString(request.sessionId);
+        final String reason = request.reason;
 
         if (sessionId == null || reason == null) {
 
@@ -964,10 +1016,13 @@ public class ClientSession {
         ProxyEvent.logEvent("session-terminate", "clientId", mClientId,
                 "sessionId", sessionId.toString(), "reason", reason);
 
+        // Get the proxy application before terminate() leaves the call room.
+        final ProxyApplication callRoomApplication = getCallRoomApplication();
         final String to = terminate(sessionId);
         if (to != null) {
             final TerminateReason terminateReason = TerminateReason.fromString(reason);
-            mApplication.sessionTerminate(sessionId, to, terminateReason);
+            final ProxyApplication application = isCallRoomMember(to) ? callRoomApplication : mApplication;
+            application.sessionTerminate(sessionId, to, terminateReason);
         }
     }
 
@@ -981,28 +1036,31 @@ public class ClientSession {
     private String terminate(@Nonnull UUID sessionId) {
 
         final String to = mPeerSessions.remove(sessionId);
-        if (mPeerSessions.isEmpty() && mCallRoomId != null) {
-            mApplication.leaveCallRoom(mCallRoomId, mCallRoomMemberId);
-            mCallRoomId = null;
-            mCallRoomMemberId = null;
+        if (mPeerSessions.isEmpty()) {
+            if (mCallRoomId != null) {
+                getCallRoomApplication().leaveCallRoom(mCallRoomId, mCallRoomMemberId);
+                mCallRoomId = null;
+                mCallRoomMemberId = null;
+            }
+            releaseCallRoomTwincode();
         }
         return to;
     }
 
-    private void inviteCallRoom(@Nonnull final JsonNode jsonNode) {
-        Log.debug("{} received invite-call-room message {}", mClientId, jsonNode);
+    private void inviteCallRoom(@Nonnull final InviteCallRoomRequest request) {
+        Log.debug("{} received invite-call-room message for {}", mClientId, request.sessionId);
 
-        final UUID sessionId = Utils.UUIDFromString(Json.getString(jsonNode, "sessionId"));
-        final UUID twincodeOutboundId = Utils.toUUID(Json.getString(jsonNode, "twincodeOutboundId"));
-        final UUID callRoomId = Utils.UUIDFromString(Json.getString(jsonNode, "callRoomId"));
+        final UUID sessionId = Utils.UUIDFromString(request.sessionId);
+        final UUID twincodeOutboundId = Utils.toUUID(request.twincodeOutboundId);
+        final UUID callRoomId = Utils.UUIDFromString(request.callRoomId);
         // Ignore mode and maxMemberCount for now
 
         if (sessionId == null || twincodeOutboundId == null || callRoomId == null) {
-            Log.debug("{} invalid invite-call-room message: {}", mClientId, jsonNode);
+            Log.debug("{} invalid invite-call-room message for {}", mClientId, request.sessionId);
             return;
         }
 
-        mApplication.inviteCallRoom(callRoomId, twincodeOutboundId, sessionId);
+        getCallRoomApplication().inviteCallRoom(callRoomId, twincodeOutboundId, sessionId);
     }
 
     /**
@@ -1021,14 +1079,13 @@ public class ClientSession {
                 session = mSession.get();
             }
 
-            // No message, put the message in the queue to be able to send it
-            // as soon as thew client re-connects.
+            // No session, put the message in the offline buffer to be able to send it
+            // as soon as the client re-connects.
             if (session == null) {
-                if (mMessageQueue == null) {
-                    mMessageQueue = new ArrayList<>();
-                    mQueueCreationDate = System.currentTimeMillis();
+                mOfflineBuffer.add(object);
+                if (mPurgeTimeout == null) {
+                    schedulePurge();
                 }
-                mMessageQueue.add(object);
                 return;
             }
         }
@@ -1037,6 +1094,113 @@ public class ClientSession {
         }
     }
 
+    /**
+     * Move the client session to the proxy application which has the affinity with the peer twincode
+     * before its first session-initiate.  Web clients calling the same peer are handled by the same proxy
+     * application so that their P2P sessions are forwarded locally instead of going through Openfire twice.
+     * The client identifier is allocated again by the new proxy application.  Called with the lock held.
+     *
+     * @param to the session-initiate destination.
+     */
+    private void bindApplication(@Nullable String to) {
+
+        mApplicationBound = true;
+        if (to == null || to.indexOf('@') >= 0 || mCallTwincode != null || !mPeerSessions.isEmpty()) {
+            return;
+        }
+
+        final UUID peerTwincodeId = Utils.toUUID(to);
+        if (peerTwincodeId != null) {
+            final ProxyApplication application = ProxyController.getProxyApplication(peerTwincodeId);
+            if (application != mApplication) {
+                final String clientId = application.allocateIdentifier();
+                Log.debug("{} moved to the proxy application of {} as {}", mClientId, peerTwincodeId, clientId);
+
+                mApplication = application;
+                mClientId = clientId;
+            }
+        }
+    }
+
+    /**
+     * Get the proxy application which forwards the IQs of the P2P session: the sessions with the call room
+     * members go through the proxy application which has joined the call room.
+     *
+     * @param to the peer identification string.
+     * @return the proxy application.
+     */
+    @Nonnull
+    private ProxyApplication getApplication(@Nonnull String to) {
+
+        final ProxyApplication application = mCallRoomApplication;
+        if (application != null && isCallRoomMember(to)) {
+            return application;
+        }
+        return mApplication;
+    }
+
+    private static boolean isCallRoomMember(@Nonnull String to) {
+
+        return to.contains(".callroom.");
+    }
+
+    @Nonnull
+    private ProxyApplication getCallRoomApplication() {
+
+        final ProxyApplication application = mCallRoomApplication;
+        return application != null ? application : mApplication;
+    }
+
+    /**
+     * Release the member twincode allocated by the proxy application of the call room after leaving it.
+     */
+    private void releaseCallRoomTwincode() {
+
+        final ProxyApplication application;
+        final TwincodeFactory factory;
+        synchronized (this) {
+            application = mCallRoomApplication;
+            factory = mCallRoomTwincode;
+            mCallRoomApplication = null;
+            mCallRoomTwincode = null;
+        }
+        if (application != null && factory != null) {
+            application.releaseCallTwincode(factory);
+        }
+    }
+
+    /**
+     * Schedule the removal of the offline messages when the oldest one expires.  Called with the lock held.
+     */
+    private void schedulePurge() {
+
+        final long expireTime = mOfflineBuffer.getExpireTime();
+        if (expireTime > 0) {
+            mPurgeTimeout = ProxyController.schedule(this::purgeOfflineBuffer, expireTime - System.currentTimeMillis());
+        }
+    }
+
+    private void cancelPurge() {
+
+        if (mPurgeTimeout != null) {
+            mPurgeTimeout.cancel();
+            mPurgeTimeout = null;
+        }
+    }
+
+    private synchronized void purgeOfflineBuffer() {
+
+        mPurgeTimeout = null;
+        mOfflineBuffer.removeExpired();
+        schedulePurge();
+    }
+
+    private boolean isActiveSession(@Nonnull String sessionId) {
+
+        final UUID id = Utils.UUIDFromString(sessionId);
+        return id != null && mPeerSessions.containsKey(id);
+    }
+
     @Override
     public String toString() {
         return "ClientSession{" +
@@ -1050,11 +1214,11 @@ public class ClientSession {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ClientSession that = (ClientSession) o;
-        return Objects.equals(mClientId, that.mClientId);
+        return Objects.equals(mSessionId, that.mSessionId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(mClientId);
+        return Objects.hash(mSessionId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.eclipse.jetty.client.Request;
+import org.eclipse.jetty.client.Response;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.websocket.client.JettyUpgradeListener;
+import org.libwebsockets.api.ConnectStats;
+import org.libwebsockets.api.ErrorStats;
+
+import java.net.SocketAddress;
+import java.security.cert.CertificateException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Measure the establishment of the WebSocket connections to the Openfire server.
+ *
+ * <p>
+ * The probe is registered as a bean of the Jetty HttpClient to be notified when the TCP connection is
+ * opened and when the TLS handshake completes, and it is the upgrade listener of the WebSocket request.
+ * The DNS resolution is made by the OpenfireConnection before connecting.  A failed attempt is classified
+ * by the last step it has reached: DNS, TCP, TLS (certificate or host name verification) or the WebSocket
+ * upgrade transaction.  Only the attempts started by begin() are measured: the standby WebSocket is not.
+ * Because the probe sees every connection of the HttpClient, the TCP and TLS events are kept per SSLEngine
+ * and the measured connection is the one that carried the upgrade request.
+ * </p>
+ */
+final class ConnectionProbe implements Connection.Listener, SslHandshakeListener, JettyUpgradeListener {
+
+    /**
+     * A TLS connection opened by the HttpClient during the attempt.
+     */
+    private static final class Handshake {
+        @Nullable
+        final SocketAddress localAddress;
+        final long tcpTime = System.nanoTime();
+        volatile long tlsTime;
+
+        Handshake(@Nullable SocketAddress localAddress) {
+            this.localAddress = localAddress;
+        }
+    }
+
+    private static final class Attempt {
+        final long startTime = System.nanoTime();
+        final Map<SSLEngine, Handshake> handshakes = new ConcurrentHashMap<>();
+        volatile long dnsTime;
+        volatile long txnTime;
+        @Nullable
+        volatile Handshake handshake;
+    }
+
+    @Nullable
+    private volatile Attempt mAttempt;
+    @Nullable
+    private volatile ConnectStats mConnectStats;
+    private final AtomicLong mConnectCount = new AtomicLong();
+    private final AtomicLong mCreateCount = new AtomicLong();
+    private final AtomicLong mFailedAttempts = new AtomicLong();
+    private final AtomicLong mDnsErrorCount = new AtomicLong();
+    private final AtomicLong mTcpErrorCount = new AtomicLong();
+    private final AtomicLong mTlsErrorCount = new AtomicLong();
+    private final AtomicLong mTxnErrorCount = new AtomicLong();
+    private final AtomicLong mTlsVerifyErrorCount = new AtomicLong();
+    private final AtomicLong mTlsHostErrorCount = new AtomicLong();
+
+    /**
+     * A connection attempt is started.
+     */
+    void begin() {
+
+        mCreateCount.incrementAndGet();
+        mAttempt = new Attempt();
+    }
+
+    /**
+     * The server name is resolved.
+     */
+    void dnsResolved() {
+
+        final Attempt attempt = mAttempt;
+        if (attempt != null) {
+            attempt.dnsTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * The WebSocket is opened: record the time of each step.
+     */
+    synchronized void success() {
+
+        final Attempt attempt = mAttempt;
+        mAttempt = null;
+        mFailedAttempts.set(0);
+        mConnectCount.incrementAndGet();
+        if (attempt != null) {
+            final Handshake handshake = attempt.handshake;
+            final long tcpTime = handshake == null ? 0 : handshake.tcpTime;
+            final long tlsTime = handshake == null ? 0 : handshake.tlsTime;
+            mConnectStats = new ConnectStats(elapsed(attempt.startTime, attempt.dnsTime),
+                    elapsed(attempt.dnsTime, tcpTime), elapsed(tcpTime, tlsTime),
+                    elapsed(tlsTime, attempt.txnTime), mConnectCount.get());
+        }
+    }
+
+    /**
+     * The connection attempt failed: count the error according to the last step reached.  Without
+     * an upgrade response, the step is the furthest one reached by a connection opened during the attempt.
+     *
+     * @param cause the connection error.
+     */
+    synchronized void failure(@Nullable Throwable cause) {
+
+        final Attempt attempt = mAttempt;
+        mAttempt = null;
+        mFailedAttempts.incrementAndGet();
+        if (attempt == null || attempt.dnsTime == 0) {
+            mDnsErrorCount.incrementAndGet();
+        } else if (attempt.handshakes.isEmpty()) {
+            mTcpErrorCount.incrementAndGet();
+        } else {
+            final CertificateException certificateException = getCertificateException(cause);
+            if (certificateException != null) {
+                if (isHostNameError(certificateException)) {
+                    mTlsHostErrorCount.incrementAndGet();
+                } else {
+                    mTlsVerifyErrorCount.incrementAndGet();
+                }
+            } else if (attempt.handshake == null
+                    && attempt.handshakes.values().stream().allMatch(handshake -> handshake.tlsTime == 0)) {
+                mTlsErrorCount.incrementAndGet();
+            } else {
+                mTxnErrorCount.incrementAndGet();
+            }
+        }
+    }
+
+    @Nullable
+    ConnectStats getConnectStats() {
+
+        return mConnectStats;
+    }
+
+    @NonNull
+    synchronized ErrorStats getErrorStats(boolean reset) {
+
+        if (reset) {
+            return new ErrorStats(mDnsErrorCount.getAndSet(0), mTcpErrorCount.getAndSet(0), mTlsErrorCount.getAndSet(0),
+                    mTxnErrorCount.getAndSet(0), 0, mTlsVerifyErrorCount.getAndSet(0), mTlsHostErrorCount.getAndSet(0),
+                    mCreateCount.get(), mFailedAttempts.get());
+        }
+        return new ErrorStats(mDnsErrorCount.get(), mTcpErrorCount.get(), mTlsErrorCount.get(), mTxnErrorCount.get(),
+                0, mTlsVerifyErrorCount.get(), mTlsHostErrorCount.get(), mCreateCount.get(), mFailedAttempts.get());
+    }
+
+    @Override
+    public void onOpened(Connection connection) {
+
+        final Attempt attempt = mAttempt;
+        if (attempt != null && connection instanceof SslConnection) {
+            final SslConnection sslConnection = (SslConnection) connection;
+            attempt.handshakes.putIfAbsent(sslConnection.getSSLEngine(),
+                    new Handshake(sslConnection.getEndPoint().getLocalSocketAddress()));
+        }
+    }
+
+    @Override
+    public void handshakeSucceeded(Event event) {
+
+        final Attempt attempt = mAttempt;
+        final Handshake handshake = attempt == null ? null : attempt.handshakes.get(event.getSSLEngine());
+        if (handshake != null && handshake.tlsTime == 0) {
+            handshake.tlsTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void onHandshakeResponse(Request request, Response response) {
+
+        final Attempt attempt = mAttempt;
+        if (attempt == null) {
+            return;
+        }
+        attempt.txnTime = System.nanoTime();
+
+        // Find the connection which carried the upgrade request, a standby may have been opened meanwhile.
+        final org.eclipse.jetty.client.Connection connection = request.getConnection();
+        final SocketAddress localAddress = connection == null ? null : connection.getLocalSocketAddress();
+        if (localAddress != null) {
+            for (Handshake handshake : attempt.handshakes.values()) {
+                if (localAddress.equals(handshake.localAddress)) {
+                    attempt.handshake = handshake;
+                    return;
+                }
+            }
+        } else if (attempt.handshakes.size() == 1) {
+            attempt.handshake = attempt.handshakes.values().iterator().next();
+        }
+    }
+
+    private static long elapsed(long start, long end) {
+
+        return start == 0 || end == 0 ? 0 : (end - start) / 1000000L;
+    }
+
+    @Nullable
+    private static CertificateException getCertificateException(@Nullable Throwable cause) {
+
+        while (cause != null) {
+            if (cause instanceof CertificateException) {
+                return (CertificateException) cause;
+            }
+            cause = cause.getCause();
+        }
+        return null;
+    }
+
+    private static boolean isHostNameError(@NonNull CertificateException exception) {
+
+        final String message = exception.getMessage();
+        return message != null && (message.contains("subject alternative") || message.contains("No name matching"));
+    }
+}
@@ -266,7 +266,7 @@ public class Main {
             wsContainer.addMapping("/p2p/*", (req, resp) -> {
                 Log.debug("upgrade request {}", req);
 
-                return new WebSocketClientSession(addressFinder);
+                return new WebSocketClientSession(addressFinder, proxyConfiguration);
             });
         });
         Scheduler scheduler = new ScheduledExecutorScheduler();
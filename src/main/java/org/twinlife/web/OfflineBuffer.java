@@ -0,0 +1,266 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.twinlife.web.messages.CandidateInfo;
+import org.twinlife.web.messages.MessageCompactor;
+import org.twinlife.web.messages.SessionAcceptMessage;
+import org.twinlife.web.messages.SessionInitiateMessage;
+import org.twinlife.web.messages.SessionTerminateMessage;
+import org.twinlife.web.messages.SessionUpdateMessage;
+import org.twinlife.web.messages.TransportInfoMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Messages kept for a ClientSession while the browser is not connected to a WebSocket.
+ *
+ * <p>
+ * The buffer is bounded by an estimation of the number of bytes used by the messages and each message
+ * has a TTL after which it is useless (the peer has given up the call setup).  When the budget is exceeded,
+ * the superseded messages are removed (see MessageCompactor) and then the oldest messages are dropped.
+ * The methods are not synchronized: the ClientSession calls them with its lock held.
+ * </p>
+ */
+final class OfflineBuffer {
+    static final Logger Log = LogManager.getLogger(OfflineBuffer.class);
+
+    // Fixed size taken into account for each message (object headers, JSON names).
+    private static final int MESSAGE_OVERHEAD = 128;
+
+    private static final class Entry {
+        @NonNull
+        final Object message;
+        final int size;
+        final long expireTime;
+
+        Entry(@NonNull Object message, long expireTime) {
+            this.message = message;
+            this.size = estimateSize(message);
+            this.expireTime = expireTime;
+        }
+    }
+
+    private static final AtomicLong sBufferedMessages = new AtomicLong();
+    private static final AtomicLong sBufferedBytes = new AtomicLong();
+    private static final AtomicLong sDropCount = new AtomicLong();
+    private static final AtomicLong sExpiredCount = new AtomicLong();
+
+    private final int mMaxBytes;
+    private final long mTtl;
+    private final ArrayDeque<Entry> mQueue = new ArrayDeque<>();
+    private int mBytes;
+
+    OfflineBuffer(int maxBytes, long ttl) {
+
+        mMaxBytes = maxBytes;
+        mTtl = ttl;
+    }
+
+    boolean isEmpty() {
+
+        return mQueue.isEmpty();
+    }
+
+    /**
+     * Add the message in the buffer.
+     *
+     * @param message the message to send when the browser reconnects.
+     */
+    void add(@NonNull Object message) {
+
+        final long now = System.currentTimeMillis();
+        final Entry entry = new Entry(message, now + mTtl);
+        mQueue.add(entry);
+        added(entry);
+        if (mBytes <= mMaxBytes) {
+            return;
+        }
+
+        removeExpired(now);
+        if (mBytes > mMaxBytes) {
+            compact();
+        }
+        while (mBytes > mMaxBytes && mQueue.size() > 1) {
+            final Entry oldest = mQueue.poll();
+            removed(oldest);
+            sDropCount.incrementAndGet();
+            Log.debug("Drop message {}", oldest.message);
+        }
+    }
+
+    /**
+     * Remove the messages from the buffer and get those that must be sent to the browser.
+     *
+     * @param isActive predicate to check that a P2P session is still active.
+     * @return the list of messages to send.
+     */
+    @NonNull
+    List<Object> drain(@NonNull Predicate<String> isActive) {
+
+        if (mQueue.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        removeExpired(System.currentTimeMillis());
+        final List<Object> messages = new ArrayList<>(mQueue.size());
+        for (Entry entry : mQueue) {
+            final String sessionId = MessageCompactor.getSessionId(entry.message);
+
+            // Keep the session-terminate of a session that is removed but drop the other messages.
+            if (sessionId == null || entry.message instanceof SessionTerminateMessage || isActive.test(sessionId)) {
+                messages.add(entry.message);
+            } else {
+                sDropCount.incrementAndGet();
+            }
+        }
+        clear();
+        return MessageCompactor.compact(messages);
+    }
+
+    void clear() {
+
+        for (Entry entry : mQueue) {
+            removed(entry);
+        }
+        mQueue.clear();
+    }
+
+    /**
+     * Get the time when the oldest message expires.
+     *
+     * @return the expiration time or 0 if the buffer is empty.
+     */
+    long getExpireTime() {
+
+        final Entry oldest = mQueue.peek();
+        return oldest == null ? 0 : oldest.expireTime;
+    }
+
+    /**
+     * Remove the messages whose TTL has expired.
+     */
+    void removeExpired() {
+
+        removeExpired(System.currentTimeMillis());
+    }
+
+    static long getBufferedMessages() {
+
+        return sBufferedMessages.get();
+    }
+
+    static long getBufferedBytes() {
+
+        return sBufferedBytes.get();
+    }
+
+    static long getDropCount() {
+
+        return sDropCount.get();
+    }
+
+    static long getExpiredCount() {
+
+        return sExpiredCount.get();
+    }
+
+    private void added(@NonNull Entry entry) {
+
+        mBytes += entry.size;
+        sBufferedMessages.incrementAndGet();
+        sBufferedBytes.addAndGet(entry.size);
+    }
+
+    private void removed(@NonNull Entry entry) {
+
+        mBytes -= entry.size;
+        sBufferedMessages.decrementAndGet();
+        sBufferedBytes.addAndGet(-entry.size);
+    }
+
+    private void removeExpired(long now) {
+
+        // Messages are added in order and have the same TTL.
+        while (!mQueue.isEmpty() && mQueue.peek().expireTime < now) {
+            removed(mQueue.poll());
+            sExpiredCount.incrementAndGet();
+        }
+    }
+
+    private void compact() {
+
+        final List<Object> messages = new ArrayList<>(mQueue.size());
+        for (Entry entry : mQueue) {
+            messages.add(entry.message);
+        }
+        final List<Object> compacted = MessageCompactor.compact(messages);
+        if (compacted.size() == messages.size()) {
+            return;
+        }
+
+        // Keep the TTL of each message, a merged transport-info gets the TTL of the last transport-info
+        // it replaces which is the most recent one and it takes its place in the queue.
+        final Map<Object, Long> expireTimes = new IdentityHashMap<>(mQueue.size());
+        final Map<String, Long> transportInfoExpireTimes = new HashMap<>();
+        for (Entry entry : mQueue) {
+            expireTimes.put(entry.message, entry.expireTime);
+            if (entry.message instanceof TransportInfoMessage) {
+                transportInfoExpireTimes.put(((TransportInfoMessage) entry.message).sessionId, entry.expireTime);
+            }
+        }
+        sDropCount.addAndGet(messages.size() - compacted.size());
+        clear();
+        for (Object message : compacted) {
+            Long expireTime = expireTimes.get(message);
+            if (expireTime == null) {
+                expireTime = transportInfoExpireTimes.get(((TransportInfoMessage) message).sessionId);
+            }
+            final Entry entry = new Entry(message, expireTime);
+            mQueue.add(entry);
+            added(entry);
+        }
+    }
+
+    private static int estimateSize(@NonNull Object message) {
+
+        int size = MESSAGE_OVERHEAD;
+        if (message instanceof SessionInitiateMessage) {
+            size += length(((SessionInitiateMessage) message).sdp);
+        } else if (message instanceof SessionAcceptMessage) {
+            size += length(((SessionAcceptMessage) message).sdp);
+        } else if (message instanceof SessionUpdateMessage) {
+            size += length(((SessionUpdateMessage) message).sdp);
+        } else if (message instanceof TransportInfoMessage) {
+            final List<CandidateInfo> candidates = ((TransportInfoMessage) message).candidates;
+            if (candidates != null) {
+                for (CandidateInfo candidate : candidates) {
+                    size += MESSAGE_OVERHEAD / 2 + length(candidate.candidate);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+
+        return value == null ? 0 : value.length();
+    }
+}
@@ -14,39 +14,210 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Callback;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.eclipse.jetty.websocket.api.Session.Listener;
 import org.libwebsockets.api.ConnectStats;
 import org.libwebsockets.api.ErrorStats;
+import org.twinlife.twinlife.BinaryPacketListener;
 import org.twinlife.twinlife.Connection;
 import org.twinlife.twinlife.ConnectionStatus;
+import org.twinlife.twinlife.SerializerException;
 import org.twinlife.twinlife.SerializerFactory;
+import org.twinlife.twinlife.util.BinaryPacketIQ;
+import org.twinlife.twinlife.util.ByteBufferPool;
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.ReconnectBackoff;
+import org.twinlife.twinlife.util.TimingWheel;
+import org.twinlife.web.util.StripedExecutor;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Signaling server connection.
  * <p>
  * This is the WebSocket connection to the signaling server.
  * </p>
+ * <p>
+ * Packets are decoded by the WebSocket client thread and their processing is dispatched to a striped
+ * executor keyed by the P2P session id: the packets of a P2P session are processed in order and a
+ * slow client session does not prevent the WebSocket from reading the next packets.
+ * </p>
+ * <p>
+ * With the warm standby, a second WebSocket is opened in the background (TCP, TLS and WebSocket upgrade).
+ * When the active WebSocket is lost, connect() promotes the standby immediately and opens a new standby
+ * behind it: only the SCRAM sign-in remains to be made by the account service.  The packet listeners are
+ * registered on this connection object and the pending requests are kept by the Twinlife services, so
+ * they are not affected by the switch.  A failed standby is retried with a jittered exponential backoff
+ * and it is not retried while the active WebSocket is down: connect() opens it again.
+ * </p>
+ * <p>
+ * A WebSocket PING is sent every HEARTBEAT_INTERVAL on the active and on the standby WebSockets: the PONG gives
+ * the RTT with the server and a WebSocket which does not answer HEARTBEAT_MAX_MISSED pings is considered half-open
+ * and closed instead of waiting for the idle timeout.  A standby whose last ping was not answered is not promoted.
+ * The establishment of the connection is measured by a ConnectionProbe.
+ * </p>
  */
-public class OpenfireConnection extends Connection implements Listener {
+public class OpenfireConnection extends Connection {
     static final Logger Log = LogManager.getLogger(OpenfireConnection.class);
 
+    private static final long STANDBY_MIN_RETRY_DELAY = 500; // ms
+    private static final long STANDBY_MAX_RETRY_DELAY = 30000; // ms
+    private static final long HEARTBEAT_INTERVAL = 15000; // ms
+    private static final int HEARTBEAT_MAX_MISSED = 2;
+
+    // Buffers used to serialize the packets sent to Openfire, they are shared by all the connections.
+    // The free buffers are limited to 4MB: 256 buffers of each size class would pin up to 32MB.
+    private static final ByteBufferPool sBufferPool = new ByteBufferPool(256, 4 * 1024 * 1024);
+    private static final AtomicInteger sStandbyReadyCount = new AtomicInteger();
+    private static final AtomicLong sStandbyConnectCount = new AtomicLong();
+    private static final AtomicLong sFailoverCount = new AtomicLong();
+
     private final String mIdent;
     private final WebSocketClient mClient;
     private final URI mUrl;
     private final String mDomain;
+    private final String mHost;
+    @NonNull
+    private final StripedExecutor mDispatcher;
+    @Nullable
+    private final TimingWheel mTimers;
+    private final boolean mWarmStandby;
+    private final ConnectionProbe mProbe = new ConnectionProbe();
+    private final LatencyHistogram mHeartbeatRtt = new LatencyHistogram();
+    private final AtomicLong mHalfOpenCount = new AtomicLong();
+    private final ReconnectBackoff mStandbyBackoff = new ReconnectBackoff(STANDBY_MIN_RETRY_DELAY,
+            STANDBY_MAX_RETRY_DELAY, new Random());
+    private volatile long mLastRtt;
     private Future<Session> mConnecting;
     @Nullable
     private volatile Session mSession;
+    @Nullable
+    private volatile SessionListener mActive;
+    @Nullable
+    private SessionListener mStandby;
+    private boolean mStandbyReady;
+    private boolean mDestroyed;
+
+    /**
+     * Receives the events of one WebSocket: the active one or the standby.
+     */
+    private final class SessionListener implements Listener {
+        @Nullable
+        private volatile Session mListenerSession;
+        private final AtomicInteger mMissedPings = new AtomicInteger();
+        // Set by dispatchPacket() on the reading thread when the dispatcher stripe is over its limit.
+        private boolean mPaused;
+
+        @Override
+        public void onWebSocketOpen(@NonNull Session session) {
+            final String local = session.getLocalSocketAddress().toString();
+            final String remote = session.getRemoteSocketAddress().toString();
+
+            Log.debug("{} socket Connected local={} remote={}", mIdent, local, remote);
+
+            ProxyEvent.logEvent("openfire-connect", "proxy", mIdent,
+                    "localAddress", local, "removeAddress", remote);
+            mListenerSession = session;
+            session.demand();
+            session.setIdleTimeout(Duration.ofMinutes(10));
+            onOpen(this);
+        }
+
+        /**
+         * <p>A WebSocket BINARY message has been received.</p>
+         *
+         * @param payload the raw payload array received
+         */
+        @Override
+        public void onWebSocketBinary(ByteBuffer payload, Callback callback) {
+            Log.debug("signaling-packet size {}", payload.remaining());
+
+            // Decode the packet before releasing the payload, its processing is made by the dispatcher.
+            // The standby is not signed in and it must not receive packets.
+            mPaused = false;
+            if (mActive == this) {
+                onBinaryMessageInternal(payload);
+            }
+            callback.succeed();
+
+            // When the dispatcher is late, the next packet is read when the stripe has caught up.
+            if (!mPaused) {
+                demand();
+            }
+        }
+
+        void demand() {
+
+            final Session session = mListenerSession;
+            if (session != null) {
+                session.demand();
+            }
+        }
+
+        @Override
+        public void onWebSocketPong(ByteBuffer payload) {
+
+            mMissedPings.set(0);
+            if (mActive == this && payload.remaining() == Long.BYTES) {
+                final long rtt = (System.nanoTime() - payload.getLong()) / 1000000L;
+                mLastRtt = rtt;
+                mHeartbeatRtt.record(rtt);
+            }
+        }
+
+        @Override
+        public void onWebSocketClose(int statusCode, String reason) {
+
+            mListenerSession = null;
+            onClose(this);
+        }
+
+        @Override
+        public void onWebSocketError(Throwable cause) {
+
+            if (cause != null) {
+                Log.error("{} web socket error", mIdent, cause);
+                ProxyEvent.logEvent("openfire-error", "proxy", mIdent, "cause", cause.getMessage());
+            }
+        }
+
+        void close() {
+
+            final Session session = mListenerSession;
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
 
     public OpenfireConnection(@NonNull String ident, @NonNull String domain,
-                              @NonNull SerializerFactory serializerFactory) {
+                              @NonNull SerializerFactory serializerFactory, @NonNull StripedExecutor dispatcher) {
+        this(ident, domain, serializerFactory, dispatcher, null, false);
+    }
+
+    /**
+     * Create the connection to the signaling server.
+     *
+     * @param ident the proxy application identification for the logs.
+     * @param domain the signaling server domain and port.
+     * @param serializerFactory the serializer factory.
+     * @param dispatcher the executor to process the received packets.
+     * @param timers the timing wheel for the heartbeat and the standby retries or null to disable them.
+     * @param warmStandby true to keep a standby WebSocket opened (requires the timing wheel).
+     */
+    public OpenfireConnection(@NonNull String ident, @NonNull String domain,
+                              @NonNull SerializerFactory serializerFactory, @NonNull StripedExecutor dispatcher,
+                              @Nullable TimingWheel timers, boolean warmStandby) {
         super(serializerFactory);
 
         String name = domain;
@@ -54,14 +225,19 @@ public class OpenfireConnection extends Connection implements Listener {
         if (pos > 0) {
             name = name.substring(0, pos);
         }
+        mHost = name;
         pos = name.indexOf('.');
         if (pos > 0) {
             name = name.substring(pos + 1);
         }
         mIdent = ident;
         mDomain = name;
+        mDispatcher = dispatcher;
+        mTimers = timers;
+        mWarmStandby = warmStandby && timers != null;
         mUrl = URI.create("wss://" + domain + "/twinlife/server");
         mClient = new WebSocketClient();
+        mClient.getHttpClient().addBean(mProbe);
         try {
             mClient.start();
         } catch (Exception exception) {
@@ -93,7 +269,8 @@ public class OpenfireConnection extends Connection implements Listener {
     }
 
     /**
-     * Create the connection to the Openfire server.
+     * Create the connection to the Openfire server.  When the warm standby WebSocket is opened,
+     * it becomes the active one without waiting.
      *
      * @exception IOException raised if there is a connection error.
      */
@@ -104,16 +281,63 @@ public class OpenfireConnection extends Connection implements Listener {
             mConnecting.cancel(true);
         }
         mSession = null;
-        try {
-            mConnecting = mClient.connect(this, mUrl);
-            mSession = mConnecting.get();
-            mConnecting = null;
+        mActive = null;
+
+        SessionListener stale = null;
+        synchronized (this) {
+            final SessionListener standby = mStandby;
+            if (standby != null && mStandbyReady) {
+                mStandby = null;
+                mStandbyReady = false;
+                sStandbyReadyCount.decrementAndGet();
+
+                // The standby could have been lost without a close: it must be open and answer the heartbeat.
+                final Session session = standby.mListenerSession;
+                if (session != null && session.isOpen() && standby.mMissedPings.get() <= 1) {
+                    sFailoverCount.incrementAndGet();
+                    mActive = standby;
+                    mSession = session;
+                    Log.info("{} switched to the standby Openfire connection", mIdent);
+                } else {
+                    stale = standby;
+                }
+            }
+        }
+        if (stale != null) {
+            Log.info("{} standby Openfire connection is not usable, closing it", mIdent);
+            stale.close();
+        }
 
-        } catch (Exception exception) {
-            Log.error("Connection to signaling server failed: {}", exception.getMessage());
-            mConnecting = null;
-            throw new IOException(exception);
+        final boolean promoted = mSession != null;
+        if (!promoted) {
+            final SessionListener listener = new SessionListener();
+            mProbe.begin();
+            try {
+                // Resolve the name to measure the DNS time, the WebSocket client will then use the JVM cache.
+                InetAddress.getAllByName(mHost);
+                mProbe.dnsResolved();
+
+                mActive = listener;
+                mConnecting = mClient.connect(listener, mUrl, new ClientUpgradeRequest(), mProbe);
+                mSession = mConnecting.get();
+                mConnecting = null;
+                mProbe.success();
+
+            } catch (Exception exception) {
+                Log.error("Connection to signaling server failed: {}", exception.getMessage());
+                mProbe.failure(exception);
+                mConnecting = null;
+                mActive = null;
+                throw new IOException(exception);
+            }
+        }
+
+        // The heartbeat of a promoted standby is already running.
+        final SessionListener active = mActive;
+        if (!promoted && active != null && mTimers != null) {
+            mTimers.schedule(() -> heartbeat(active), HEARTBEAT_INTERVAL);
         }
+        connectStandby();
     }
 
     /**
@@ -135,7 +359,28 @@ public class OpenfireConnection extends Connection implements Listener {
     }
 
     /**
-     * Closes the connection.
+     * Serialize the packet in a pooled buffer and send it to the server.  The buffer is owned by
+     * the WebSocket until the write completes, and it is then released to the pool.
+     *
+     * @param iq the packet to send.
+     * @exception SerializerException raised if the packet cannot be serialized.
+     * @exception IOException raised if there is a connection error.
+     */
+    @Override
+    public void sendPacket(@NonNull BinaryPacketIQ iq) throws SerializerException, IOException {
+
+        final Session session = mSession;
+        if (session == null) {
+            throw new IOException(mClient + " Openfire websocket is closed");
+        }
+
+        final ByteBuffer buffer = iq.serializeCompact(mSerializerFactory, sBufferPool);
+        Log.debug("{} sendPacket {}", mClient, buffer.remaining());
+        session.sendBinary(buffer, Callback.from(() -> sBufferPool.release(buffer), (Throwable cause) -> sBufferPool.release(buffer)));
+    }
+
+    /**
+     * Closes the connection.  The standby WebSocket is kept for the next connect().
      */
     @Override
     public void disconnect() {
@@ -157,7 +402,7 @@ public class OpenfireConnection extends Connection implements Listener {
     @Override
     public ConnectStats getConnectStats() {
 
-        return null;
+        return mProbe.getConnectStats();
     }
 
     /**
@@ -170,7 +415,7 @@ public class OpenfireConnection extends Connection implements Listener {
     @Override
     public ErrorStats getErrorStats(boolean reset) {
 
-        return null;
+        return mProbe.getErrorStats(reset);
     }
 
     /**
@@ -191,6 +436,80 @@ public class OpenfireConnection extends Connection implements Listener {
     @Override
     public void destroy() {
 
+        final SessionListener standby;
+        synchronized (this) {
+            mDestroyed = true;
+            standby = mStandby;
+            mStandby = null;
+            if (mStandbyReady) {
+                mStandbyReady = false;
+                sStandbyReadyCount.decrementAndGet();
+            }
+        }
+        if (standby != null) {
+            standby.close();
+        }
+    }
+
+    static long getBufferAcquireCount() {
+
+        return sBufferPool.getAcquireCount();
+    }
+
+    static long getBufferAllocateCount() {
+
+        return sBufferPool.getAllocateCount();
+    }
+
+    static long getBufferPooledBytes() {
+
+        return sBufferPool.getPooledBytes();
+    }
+
+    /**
+     * Get the RTT measured by the last heartbeat.
+     *
+     * @return the RTT in milliseconds.
+     */
+    long getLastRtt() {
+
+        return mLastRtt;
+    }
+
+    /**
+     * Get the RTT measured by the heartbeats.
+     *
+     * @return the RTT histogram in milliseconds.
+     */
+    @NonNull
+    LatencyHistogram getHeartbeatRtt() {
+
+        return mHeartbeatRtt;
+    }
+
+    /**
+     * Get the number of WebSockets closed because they did not answer the heartbeat.
+     *
+     * @return the number of half-open WebSockets.
+     */
+    long getHalfOpenCount() {
+
+        return mHalfOpenCount.get();
+    }
+
+    static int getStandbyReadyCount() {
+
+        return sStandbyReadyCount.get();
+    }
+
+    static long getStandbyConnectCount() {
+
+        return sStandbyConnectCount.get();
+    }
+
+    static long getFailoverCount() {
+
+        return sFailoverCount.get();
     }
 
     @Override
@@ -204,57 +523,136 @@ public class OpenfireConnection extends Connection implements Listener {
     }
 
     /**
-     * Called when the web socket connection is closed to notify the connection
-     * listener we lost the server connection.
+     * Process the packet from the dispatcher stripe associated with its P2P session.  The packets which
+     * do not belong to a P2P session are ordered per connection, they are spread on the stripes with the
+     * connection ident.  When the stripe is late, the WebSocket stops reading until it has caught up.
+     *
+     * @param listener the packet listener.
+     * @param iq the packet to process.
      */
     @Override
-    public void onWebSocketClose(int statusCode, String reason) {
-        Log.debug("Openfire websocket is closed");
+    protected void dispatchPacket(@NonNull BinaryPacketListener listener, @NonNull BinaryPacketIQ iq) {
+
+        final UUID sessionId = iq.getSessionId();
+        final SessionListener active = mActive;
+        final Runnable resume = active == null ? null : active::demand;
+        if (!mDispatcher.execute(sessionId != null ? sessionId : mIdent, () -> listener.processPacket(iq), resume)
+                && active != null) {
+            active.mPaused = true;
+        }
+    }
 
-        ProxyEvent.logEvent("openfire-disconnect", "proxy", mIdent);
+    /**
+     * Open the standby WebSocket in the background if the warm standby is enabled and the active
+     * WebSocket is connected.
+     */
+    private void connectStandby() {
 
-        mSession = null;
-        super.onClose();
-    }
+        if (!mWarmStandby) {
+            return;
+        }
 
-    @Override
-    public void onWebSocketOpen(@NonNull Session session) {
-        final String local = session.getLocalSocketAddress().toString();
-        final String remote = session.getRemoteSocketAddress().toString();
+        final SessionListener standby = new SessionListener();
+        synchronized (this) {
+            if (mDestroyed || mStandby != null || mActive == null) {
+                return;
+            }
+            mStandby = standby;
+        }
 
-        Log.debug("{} socket Connected local={} remote={}", mIdent, local, remote);
+        sStandbyConnectCount.incrementAndGet();
+        try {
+            mClient.connect(standby, mUrl).whenComplete((Session session, Throwable cause) -> {
+                if (cause != null) {
+                    Log.info("{} standby connection failed: {}", mIdent, cause.getMessage());
+                    onClose(standby);
+                }
+            });
 
-        ProxyEvent.logEvent("openfire-connect", "proxy", mIdent,
-                "localAddress", local, "removeAddress", remote);
-        mSession = session;
-        session.demand();
-        session.setIdleTimeout(Duration.ofMinutes(10));
+        } catch (Exception exception) {
+            Log.info("{} standby connection failed: {}", mIdent, exception.getMessage());
+            onClose(standby);
+        }
     }
 
     /**
-     * <p>A WebSocket BINARY message has been received.</p>
-     *
-     * @param payload the raw payload array received
+     * Send a PING on the active or standby WebSocket and close it if the previous ones were not answered.
+     * Called from the timing wheel thread: the WebSocket send is asynchronous.
      */
-    @Override
-    public void onWebSocketBinary(ByteBuffer payload, Callback callback) {
-        Log.debug("signaling-packet size {}", payload.remaining());
+    private void heartbeat(@NonNull SessionListener listener) {
 
-        onBinaryMessageInternal(payload.array(), payload.arrayOffset(), payload.remaining());
+        final Session session = listener.mListenerSession;
+        final TimingWheel timers = mTimers;
+        if (session == null || timers == null) {
+            return;
+        }
+        synchronized (this) {
+            if (mActive != listener && mStandby != listener) {
+                return;
+            }
+        }
 
-        final Session session = mSession;
-        if (session != null) {
-            session.demand();
+        if (listener.mMissedPings.getAndIncrement() >= HEARTBEAT_MAX_MISSED) {
+            Log.error("{} Openfire websocket does not answer the heartbeat, closing it", mIdent);
+            mHalfOpenCount.incrementAndGet();
+            onClose(listener);
+            session.disconnect();
+            return;
         }
+
+        final ByteBuffer payload = ByteBuffer.allocate(Long.BYTES);
+        payload.putLong(System.nanoTime()).flip();
+        session.sendPing(payload, Callback.NOOP);
+        timers.schedule(() -> heartbeat(listener), HEARTBEAT_INTERVAL);
     }
 
-    @Override
-    public void onWebSocketError(Throwable cause) {
+    private void onOpen(@NonNull SessionListener listener) {
 
-        if (cause != null) {
-            Log.error("{} web socket error", mIdent, cause);
-            ProxyEvent.logEvent("openfire-error", "proxy", mIdent, "cause", cause.getMessage());
+        synchronized (this) {
+            if (mStandby != listener || mStandbyReady) {
+                return;
+            }
+            mStandbyReady = true;
         }
+        sStandbyReadyCount.incrementAndGet();
+        mStandbyBackoff.reset();
+        if (mTimers != null) {
+            mTimers.schedule(() -> heartbeat(listener), HEARTBEAT_INTERVAL);
+        }
+        Log.debug("{} standby Openfire connection is ready", mIdent);
     }
 
+    /**
+     * Called when a WebSocket is closed.  When this is the active one, notify the connection
+     * listener we lost the server connection.  When this is the standby, open another one after
+     * the backoff delay unless the active one is down.
+     */
+    private void onClose(@NonNull SessionListener listener) {
+
+        synchronized (this) {
+            if (mStandby == listener) {
+                mStandby = null;
+                if (mStandbyReady) {
+                    mStandbyReady = false;
+                    sStandbyReadyCount.decrementAndGet();
+                }
+                if (!mDestroyed && mTimers != null && mActive != null) {
+                    mTimers.schedule(this::connectStandby, mStandbyBackoff.nextDelay());
+                }
+                return;
+            }
+        }
+
+        if (mActive != listener) {
+            return;
+        }
+
+        Log.debug("Openfire websocket is closed");
+
+        ProxyEvent.logEvent("openfire-disconnect", "proxy", mIdent);
+
+        mSession = null;
+        mActive = null;
+        super.onClose();
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.Callback;
+import org.twinlife.web.messages.MessageCompactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of the encoded messages waiting to be written on a WebSocket connection.
+ *
+ * <p>
+ * Only one frame is given to Jetty at a time and the next one is written when the write completion
+ * callback is called.  The queue is bounded by a number of messages and a number of bytes: when a limit
+ * is reached, superseded messages are dropped or merged (see MessageCompactor) and if this is not enough,
+ * or if a frame has not been written after the slow consumer timeout, the connection is dropped so that
+ * the browser reconnects.  The statistics are global to all the connections and exported through JMX.
+ * </p>
+ */
+final class OutboundQueue {
+    static final Logger Log = LogManager.getLogger(OutboundQueue.class);
+
+    /**
+     * Operations provided by the WebSocket connection.
+     */
+    interface Writer {
+
+        @NonNull
+        RetainableByteBuffer encode(@NonNull Object message) throws IOException;
+
+        void write(@NonNull ByteBuffer frame, @NonNull Callback callback);
+
+        void disconnect(@NonNull String reason);
+    }
+
+    private static final class Entry {
+        @NonNull
+        final Object message;
+        @NonNull
+        final RetainableByteBuffer buffer;
+        final int length;
+        final long queueTime;
+
+        Entry(@NonNull Object message, @NonNull RetainableByteBuffer buffer, long queueTime) {
+            this.message = message;
+            this.buffer = buffer;
+            this.length = buffer.remaining();
+            this.queueTime = queueTime;
+        }
+    }
+
+    private static final AtomicLong sQueuedMessages = new AtomicLong();
+    private static final AtomicLong sQueuedBytes = new AtomicLong();
+    private static final AtomicLong sWriteCount = new AtomicLong();
+    private static final AtomicLong sWriteLatency = new AtomicLong();
+    private static final AtomicLong sMaxWriteLatency = new AtomicLong();
+    private static final AtomicLong sDropCount = new AtomicLong();
+    private static final AtomicLong sSlowConsumerCount = new AtomicLong();
+
+    @NonNull
+    private final Writer mWriter;
+    private final int mMaxMessages;
+    private final int mMaxBytes;
+    private final long mSlowConsumerTimeout;
+    private final ArrayDeque<Entry> mQueue = new ArrayDeque<>();
+    private int mQueuedBytes;
+    @Nullable
+    private Entry mInFlight;
+    private boolean mWriting;
+    private boolean mCompletedInline;
+    private boolean mClosed;
+
+    OutboundQueue(@NonNull Writer writer, int maxMessages, int maxBytes, long slowConsumerTimeout) {
+
+        mWriter = writer;
+        mMaxMessages = maxMessages;
+        mMaxBytes = maxBytes;
+        mSlowConsumerTimeout = slowConsumerTimeout;
+    }
+
+    /**
+     * Queue the encoded message and write it if there is no pending write.
+     *
+     * @param message the message.
+     * @param buffer the encoded message, it is now owned by the queue.
+     * @return false if the queue is closed or the client was disconnected because it is too slow.
+     */
+    boolean send(@NonNull Object message, @NonNull RetainableByteBuffer buffer) {
+
+        final long now = System.currentTimeMillis();
+        final Entry entry = new Entry(message, buffer, now);
+        final String slowReason;
+        synchronized (this) {
+            if (mClosed) {
+                buffer.release();
+                return false;
+            }
+            if (mInFlight == null) {
+                mInFlight = entry;
+                slowReason = null;
+
+            } else if (mInFlight.queueTime + mSlowConsumerTimeout < now) {
+                buffer.release();
+                slowReason = "write timeout";
+
+            } else {
+                mQueue.add(entry);
+                mQueuedBytes += entry.length;
+                sQueuedMessages.incrementAndGet();
+                sQueuedBytes.addAndGet(entry.length);
+                if (isFull()) {
+                    compact();
+                }
+                if (isFull()) {
+                    slowReason = "queue full";
+                } else {
+                    return true;
+                }
+            }
+        }
+
+        if (slowReason != null) {
+            Log.info("Disconnect slow consumer: {}", slowReason);
+
+            sSlowConsumerCount.incrementAndGet();
+            close();
+            mWriter.disconnect(slowReason);
+            return false;
+        }
+
+        writeLoop(entry);
+        return true;
+    }
+
+    /**
+     * Release the messages which are not written when the connection is closed.
+     */
+    void close() {
+
+        final List<Entry> pending;
+        synchronized (this) {
+            mClosed = true;
+            pending = new ArrayList<>(mQueue);
+            mQueue.clear();
+            mQueuedBytes = 0;
+        }
+        if (!pending.isEmpty()) {
+            sDropCount.addAndGet(pending.size());
+            for (Entry entry : pending) {
+                dequeued(entry);
+                entry.buffer.release();
+            }
+        }
+    }
+
+    static long getQueuedMessages() {
+
+        return sQueuedMessages.get();
+    }
+
+    static long getQueuedBytes() {
+
+        return sQueuedBytes.get();
+    }
+
+    static long getWriteCount() {
+
+        return sWriteCount.get();
+    }
+
+    static long getAverageWriteLatency() {
+
+        final long count = sWriteCount.get();
+        return count == 0 ? 0 : sWriteLatency.get() / count;
+    }
+
+    static long getMaxWriteLatency() {
+
+        return sMaxWriteLatency.get();
+    }
+
+    static long getDropCount() {
+
+        return sDropCount.get();
+    }
+
+    static long getSlowConsumerCount() {
+
+        return sSlowConsumerCount.get();
+    }
+
+    private boolean isFull() {
+
+        return mQueue.size() > mMaxMessages || mQueuedBytes > mMaxBytes;
+    }
+
+    private static void dequeued(@NonNull Entry entry) {
+
+        sQueuedMessages.decrementAndGet();
+        sQueuedBytes.addAndGet(-entry.length);
+    }
+
+    /**
+     * Write the entry and the next ones until a write does not complete immediately.  When Jetty calls the
+     * completion callback from the write() itself, the next entry is written by this loop instead of
+     * recursing from the callback.
+     */
+    private void writeLoop(@Nullable Entry entry) {
+
+        while (entry != null) {
+            final Entry current = entry;
+            synchronized (this) {
+                mWriting = true;
+                mCompletedInline = false;
+            }
+            mWriter.write(current.buffer.getByteBuffer(), Callback.from(() -> onWriteComplete(current, null),
+                    (Throwable error) -> onWriteComplete(current, error)));
+            synchronized (this) {
+                mWriting = false;
+                if (!mCompletedInline) {
+                    return;
+                }
+                entry = mInFlight;
+            }
+        }
+    }
+
+    private void onWriteComplete(@NonNull Entry entry, @Nullable Throwable error) {
+
+        final long latency = System.currentTimeMillis() - entry.queueTime;
+        entry.buffer.release();
+        sWriteCount.incrementAndGet();
+        sWriteLatency.addAndGet(latency);
+        sMaxWriteLatency.accumulateAndGet(latency, Math::max);
+        if (error != null) {
+            Log.info("Write failed: {}", error.getMessage());
+            close();
+        }
+
+        final Entry next;
+        synchronized (this) {
+            next = mClosed ? null : mQueue.poll();
+            mInFlight = next;
+            if (next != null) {
+                mQueuedBytes -= next.length;
+                dequeued(next);
+            }
+            if (mWriting) {
+                mCompletedInline = true;
+                return;
+            }
+        }
+        writeLoop(next);
+    }
+
+    /**
+     * Drop or merge the superseded messages.  Called with the lock held.
+     */
+    private void compact() {
+
+        final Map<Object, Entry> entries = new IdentityHashMap<>();
+        final List<Object> messages = new ArrayList<>(mQueue.size());
+        for (Entry entry : mQueue) {
+            entries.put(entry.message, entry);
+            messages.add(entry.message);
+        }
+
+        final List<Object> compacted = MessageCompactor.compact(messages);
+        if (compacted.size() == messages.size()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        mQueue.clear();
+        mQueuedBytes = 0;
+        for (Object message : compacted) {
+            Entry entry = entries.remove(message);
+            if (entry == null) {
+                try {
+                    entry = new Entry(message, mWriter.encode(message), now);
+                    sQueuedMessages.incrementAndGet();
+                    sQueuedBytes.addAndGet(entry.length);
+
+                } catch (IOException exception) {
+                    Log.error("Cannot encode merged message", exception);
+                    continue;
+                }
+            }
+            mQueue.add(entry);
+            mQueuedBytes += entry.length;
+        }
+
+        sDropCount.addAndGet(entries.size());
+        for (Entry entry : entries.values()) {
+            dequeued(entry);
+            entry.buffer.release();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.twinlife.twinlife.BaseService.AttributeNameValue;
 import org.twinlife.twinlife.BaseService.ErrorCode;
 import org.twinlife.twinlife.Configuration;
 import org.twinlife.twinlife.Connection;
@@ -39,20 +40,28 @@ import org.twinlife.twinlife.TwincodeOutbound;
 import org.twinlife.twinlife.TwinlifeContext;
 import org.twinlife.twinlife.TwinlifeContextImpl;
 import org.twinlife.twinlife.job.EngineJobServiceImpl;
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.OutboundBuffer;
+import org.twinlife.twinlife.util.RequestCorrelator;
+import org.twinlife.twinlife.util.TimingWheel;
 import org.twinlife.twinlife.util.Utils;
+import org.twinlife.web.cache.ImageCache;
+import org.twinlife.web.cache.TwincodeCache;
 import org.twinlife.web.executors.CreateTwincodeExecutor;
 import org.twinlife.web.executors.GetTwincodeFactoryPools;
 import org.twinlife.web.models.TwincodeFactoryPool;
+import org.twinlife.web.util.StripedExecutor;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Web application proxy.
@@ -63,19 +72,31 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class ProxyApplication implements PeerSignalingListener, PeerCallService.ServiceObserver {
     static final Logger Log = LogManager.getLogger(ProxyApplication.class);
+    private static final int EMPTY_POOL_LOAD = 100;
 
     private final EngineJobServiceImpl mJobServiceImpl;
     private final PropertiesConfigurationServiceImpl mConfigurationService;
     private final TwinlifeContextImpl mTwinlifeContext;
     private final EngineTwinlifeImpl mTwinlifeImpl;
-    private final Map<UUID, List<ClientSession>> mActiveSessions;
+    private final SessionRegistry<ClientSession> mActiveSessions;
     private final Map<UUID, ClientSession> mTwincodeInboundSessions;
-    private final Map<UUID, List<ClientSession>> mActiveCallRooms;
+    private final CallRoomRegistry mActiveCallRooms;
     private final Map<Long, ClientSession> mActiveRequests;
     private final List<TwincodeFactory> mTwincodePool;
     private final List<TwincodeFactoryPool> mTwincodeFactoryPools;
     private final AtomicLong mClientId;
+    private final AtomicLong mLocalForwardCount = new AtomicLong();
+    private final AtomicLong mRemoteForwardCount = new AtomicLong();
+    // Replaced on sign-out: the completion of the requests cleared by the services is never called.
+    private final AtomicReference<AtomicInteger> mPendingRequestCount = new AtomicReference<>(new AtomicInteger());
+    private final AtomicLong mAllocationWaitCount = new AtomicLong();
+    private final TwincodePoolRefiller mRefiller;
+    private volatile boolean mOnline;
+    @Nullable
+    private volatile OpenfireConnection mOpenfireConnection;
     private final String mProxyIdent;
+    private final TwincodeCache mTwincodeCache;
+    private final ImageCache mImageCache;
 
     private class TwinlifeContextObserver extends TwinlifeContext.DefaultObserver {
         @Override
@@ -83,13 +104,39 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
             ProxyApplication.this.onTwinlifeReady();
         }
 
+        @Override
+        public void onTwinlifeOnline() {
+            mOnline = true;
+            mRefiller.check();
+        }
+
+        @Override
+        public void onTwinlifeOffline() {
+            mOnline = false;
+        }
+
         @Override
         public void onFatalError(ErrorCode errorCode) {
             Log.error("{} fatal error {}", mProxyIdent, errorCode);
         }
     }
 
-    public ProxyApplication(@NonNull ProxyConfiguration configuration, @NonNull File root) {
+    private class TwincodeOutboundObserver implements TwincodeOutboundService.ServiceObserver {
+        @Override
+        public void onRefreshTwincode(@NonNull TwincodeOutbound twincodeOutbound,
+                                      @NonNull List<AttributeNameValue> previousAttributes) {
+            mTwincodeCache.invalidate(twincodeOutbound.getId());
+        }
+
+        @Override
+        public void onUpdateTwincode(@NonNull TwincodeOutbound twincodeOutbound) {
+            mTwincodeCache.invalidate(twincodeOutbound.getId());
+        }
+    }
+
+    public ProxyApplication(@NonNull ProxyConfiguration configuration, @NonNull File root,
+                            @NonNull TwincodeCache twincodeCache, @NonNull ImageCache imageCache,
+                            @NonNull TimingWheel timers, @NonNull StripedExecutor dispatcher) {
 
         if (!root.exists() && !root.mkdirs()) {
             Log.error("Cannot create directory {}", root);
@@ -99,13 +146,44 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         Log.info("{} proxy started in {}", mProxyIdent, root);
 
         mClientId = new AtomicLong();
-        mActiveSessions = new ConcurrentHashMap<>();
+        mTwincodeCache = twincodeCache;
+        mImageCache = imageCache;
+        mActiveSessions = new SessionRegistry<>();
         mActiveRequests = new ConcurrentHashMap<>();
         mTwincodeInboundSessions = new ConcurrentHashMap<>();
-        mActiveCallRooms = new HashMap<>();
+        mActiveCallRooms = new CallRoomRegistry();
         mJobServiceImpl = new EngineJobServiceImpl();
         mTwincodePool = new ArrayList<>();
         mTwincodeFactoryPools = new ArrayList<>();
+        mRefiller = new TwincodePoolRefiller(new TwincodePoolRefiller.Pool() {
+            @Override
+            public boolean isOnline() {
+                return ProxyApplication.this.isOnline();
+            }
+
+            @Override
+            public int getTwincodePoolCount() {
+                return ProxyApplication.this.getTwincodePoolCount();
+            }
+
+            @Override
+            @Nullable
+            public TwincodeFactoryPool selectFactoryPool() {
+                return ProxyApplication.this.selectFactoryPool();
+            }
+
+            @Override
+            public void createTwincodeFactories(@NonNull TwincodeFactoryPool pool, int count,
+                                                @NonNull Consumer<List<TwincodeFactory>> complete) {
+                ProxyApplication.this.createTwincodeFactories(pool, count, complete);
+            }
+
+            @Override
+            public void addFreeTwincodeFactory(@NonNull TwincodeFactory twincodeFactory) {
+                ProxyApplication.this.addFreeTwincodeFactory(twincodeFactory);
+            }
+        }, timers, configuration.twincodePoolLowWatermark,
+                configuration.twincodePoolHighWatermark, configuration.twincodePoolRefillInterval);
         mConfigurationService = new PropertiesConfigurationServiceImpl("webapp", new File(root, "config"), configuration.getSecretKey());
         Context context = new Context() {
             public File getDatabasePath(String name) {
@@ -118,9 +196,20 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         File cacheDir = new File(root, "cache");
         File filesDir = new File(root, "files");
         mTwinlifeImpl = new EngineTwinlifeImpl(context, mConfigurationService, mTwinlifeContext, filesDir, cacheDir,
-                new DefaultImageTools()) {
+                new DefaultImageTools(), timers) {
+            @Override
+            public void onSignOut() {
+                super.onSignOut();
+
+                // The services have dropped their pending requests without calling the completion handlers.
+                mPendingRequestCount.set(new AtomicInteger());
+            }
+
             protected Connection getConnection() {
-                return new OpenfireConnection(mProxyIdent, configuration.server, getSerializerFactory());
+                final OpenfireConnection connection = new OpenfireConnection(mProxyIdent, configuration.server,
+                        getSerializerFactory(), dispatcher, timers, configuration.openfireWarmStandby);
+                mOpenfireConnection = connection;
+                return connection;
             }
         };
         mTwinlifeContext.onServiceConnected(mTwinlifeImpl);
@@ -140,19 +229,42 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         return mProxyIdent + "_" + id;
     }
 
+    /**
+     * Get the twincode from the shared twincode cache or from the Openfire server.
+     *
+     * @param twincodeOutboundId the twincode to get.
+     * @param complete the completion handler.
+     */
     public void getTwincode(@NonNull UUID twincodeOutboundId,
                             @NonNull Consumer<TwincodeOutbound> complete) {
         Log.debug("getTwincode {}", twincodeOutboundId);
 
-        final TwincodeOutboundService twincodeOutboundService = mTwinlifeImpl.getTwincodeOutboundService();
-        twincodeOutboundService.getTwincode(twincodeOutboundId, 0, complete);
+        mTwincodeCache.getTwincode(twincodeOutboundId, this::loadTwincode, complete);
     }
 
+    /**
+     * Get the twincode only if it is present in the shared twincode cache.
+     *
+     * @param twincodeOutboundId the twincode to get.
+     * @return the twincode or null.
+     */
+    @Nullable
+    public TwincodeOutbound peekTwincode(@NonNull UUID twincodeOutboundId) {
+
+        return mTwincodeCache.peekTwincode(twincodeOutboundId);
+    }
+
+    /**
+     * Get the thumbnail image from the shared image cache or from the Openfire server.
+     *
+     * @param imageId the image to get.
+     * @param complete the completion handler.
+     */
     public void getImage(@NonNull UUID imageId,
-                         @NonNull Consumer<Bitmap> complete) {
+                         @NonNull Consumer<ImageCache.Image> complete) {
+        Log.debug("getImage {}", imageId);
 
-        final ImageService imageService = mTwinlifeImpl.getImageService();
-        imageService.getImage(imageId, ImageService.Kind.THUMBNAIL, complete);
+        mImageCache.getImage(imageId, this::loadImage, complete);
     }
 
     /**
@@ -173,6 +285,9 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
             }
         }
 
+        // Create the next free twincodes before they are needed.
+        mRefiller.check();
+
         if (twincodeFactory != null) {
             final UUID twincodeInboundId = twincodeFactory.getTwincodeInbound().getId();
             mTwincodeInboundSessions.put(twincodeInboundId, client);
@@ -180,22 +295,16 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
             return;
         }
 
-        // Pick a twincode factory pool object.
-        TwincodeFactoryPool pool = null;
-        synchronized (mTwincodeFactoryPools) {
-            for (TwincodeFactoryPool factoryPool : mTwincodeFactoryPools) {
-                if (pool == null || factoryPool.isSmaller(pool)) {
-                    pool = factoryPool;
-                }
-            }
-        }
+        final TwincodeFactoryPool pool = selectFactoryPool();
         if (pool == null) {
             Log.error("{} No twincode factory pool configured yet", mProxyIdent);
             complete.onGet(ErrorCode.SERVICE_UNAVAILABLE, null);
             return;
         }
 
-        new CreateTwincodeExecutor(mTwinlifeContext, pool, (ErrorCode errorCode, TwincodeFactory factory) -> {
+        // The pool is empty: the call setup must wait for the twincode creation.
+        mAllocationWaitCount.incrementAndGet();
+        createTwincodeFactory(pool, (ErrorCode errorCode, TwincodeFactory factory) -> {
             if (errorCode == ErrorCode.SUCCESS && factory != null) {
                 final UUID twincodeInboundId = factory.getTwincodeInbound().getId();
                 mTwincodeInboundSessions.put(twincodeInboundId, client);
@@ -220,6 +329,61 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         }
     }
 
+    /**
+     * Pick the twincode factory pool object which has the fewer twincodes.
+     *
+     * @return the twincode factory pool or null if they are not loaded yet.
+     */
+    @Nullable
+    TwincodeFactoryPool selectFactoryPool() {
+
+        TwincodeFactoryPool pool = null;
+        synchronized (mTwincodeFactoryPools) {
+            for (TwincodeFactoryPool factoryPool : mTwincodeFactoryPools) {
+                if (pool == null || factoryPool.isSmaller(pool)) {
+                    pool = factoryPool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Create a new twincode and save it in the twincode factory pool object.
+     *
+     * @param pool the twincode factory pool object.
+     * @param complete the completion handler.
+     */
+    void createTwincodeFactory(@NonNull TwincodeFactoryPool pool, @NonNull Consumer<TwincodeFactory> complete) {
+
+        new CreateTwincodeExecutor(mTwinlifeContext, pool, complete);
+    }
+
+    /**
+     * Create several twincodes and save them in the twincode factory pool object with a single update.
+     *
+     * @param pool the twincode factory pool object.
+     * @param count the number of twincodes to create.
+     * @param complete the completion handler called with the twincodes that were created.
+     */
+    void createTwincodeFactories(@NonNull TwincodeFactoryPool pool, int count,
+                                 @NonNull Consumer<List<TwincodeFactory>> complete) {
+
+        new CreateTwincodeExecutor(mTwinlifeContext, pool, count, complete);
+    }
+
+    /**
+     * Add a twincode created in advance in the pool of free twincodes.
+     *
+     * @param twincodeFactory the twincode factory.
+     */
+    void addFreeTwincodeFactory(@NonNull TwincodeFactory twincodeFactory) {
+
+        synchronized (mTwincodePool) {
+            mTwincodePool.add(twincodeFactory);
+        }
+    }
+
     /**
      * Get the configuration to establish a P2P WebRTC connection.
      *
@@ -276,33 +440,34 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         }
 
         if (callRoomId != null) {
-            List<ClientSession> callRoomSessions = mActiveCallRooms.get(callRoomId);
-            if (callRoomSessions != null) {
-                for (ClientSession callRoomSession : callRoomSessions) {
-                    if (to.equals(callRoomSession.getCallRoomMemberId())) {
-                        addActiveSession(sessionId, callRoomSession);
-                        ErrorCode res = callRoomSession.onSessionInitiate(sessionId, client.getCallRoomMemberId(), sdp, offer,
-                                offerToReceive, maxReceivedFrameSize, maxReceivedFrameRate);
-                        onComplete.onGet(res, null);
-
-                        final Consumer<Long> originalOnComplete = onComplete;
-
-                        // We don't want to send session-initiate-response twice, except if an error occurred on Openfire.
-                        onComplete = (status, object) -> {
-                            if (status == ErrorCode.SUCCESS) {
-                                Log.debug("{} received SUCCESS ack for local session-initiate", mProxyIdent);
-                                return;
-                            }
-                            originalOnComplete.onGet(status, object);
-                        };
+            final ClientSession callRoomSession = mActiveCallRooms.getMember(callRoomId, to);
+            if (callRoomSession != null) {
+                mLocalForwardCount.incrementAndGet();
+                addActiveSession(sessionId, callRoomSession);
+                ErrorCode res = callRoomSession.onSessionInitiate(sessionId, client.getCallRoomMemberId(), sdp, offer,
+                        offerToReceive, maxReceivedFrameSize, maxReceivedFrameRate);
+                onComplete.onGet(res, null);
+
+                final Consumer<Long> originalOnComplete = onComplete;
+
+                // We don't want to send session-initiate-response twice, except if an error occurred on Openfire.
+                onComplete = (status, object) -> {
+                    if (status == ErrorCode.SUCCESS) {
+                        Log.debug("{} received SUCCESS ack for local session-initiate", mProxyIdent);
+                        return;
                     }
-                }
+                    originalOnComplete.onGet(status, object);
+                };
+            } else {
+                mRemoteForwardCount.incrementAndGet();
             }
+        } else {
+            mRemoteForwardCount.incrementAndGet();
         }
 
         final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
         callService.sessionInitiate(sessionId, client.getCallRoomMemberId(), to, sdp, offer,
-                offerToReceive, maxReceivedFrameSize, maxReceivedFrameRate, notificationContent, onComplete);
+                offerToReceive, maxReceivedFrameSize, maxReceivedFrameRate, notificationContent, track(onComplete));
     }
 
     /**
@@ -324,12 +489,14 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         ClientSession localPeer = getLocalPeer(sessionId, to);
 
         if (localPeer != null) {
+            mLocalForwardCount.incrementAndGet();
             ErrorCode res = localPeer.onSessionAccept(sessionId, sdpAnswer, offer, offerToReceive, maxReceivedFrameSize, maxReceivedFrameRate);
             onComplete.onGet(res, null);
         } else {
+            mRemoteForwardCount.incrementAndGet();
             final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
             callService.sessionAccept(sessionId, from, to, sdpAnswer, offer, offerToReceive,
-                    maxReceivedFrameSize, maxReceivedFrameRate, onComplete);
+                    maxReceivedFrameSize, maxReceivedFrameRate, track(onComplete));
         }
     }
 
@@ -349,11 +516,13 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         Sdp sdp = candidates.buildSdp(requestId);
 
         if (localPeer != null) {
+            mLocalForwardCount.incrementAndGet();
             ErrorCode res = localPeer.onTransportInfo(sessionId, sdp);
             onComplete.onGet(res, null);
         } else {
+            mRemoteForwardCount.incrementAndGet();
             final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
-            callService.transportInfo(requestId, sessionId, to, sdp, onComplete);
+            callService.transportInfo(requestId, sessionId, to, sdp, track(onComplete));
         }
     }
 
@@ -371,11 +540,13 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         ClientSession localPeer = getLocalPeer(sessionId, to);
 
         if (localPeer != null) {
+            mLocalForwardCount.incrementAndGet();
             ErrorCode res = localPeer.onSessionUpdate(sessionId, type, sdp);
             onComplete.onGet(res, null);
         } else {
+            mRemoteForwardCount.incrementAndGet();
             final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
-            callService.sessionUpdate(sessionId, to, sdp, type, onComplete);
+            callService.sessionUpdate(sessionId, to, sdp, type, track(onComplete));
         }
     }
 
@@ -392,35 +563,36 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         ClientSession localPeer = getLocalPeer(sessionId, to);
 
         if (localPeer != null) {
+            mLocalForwardCount.incrementAndGet();
             localPeer.onSessionTerminate(sessionId, reason);
+        } else {
+            mRemoteForwardCount.incrementAndGet();
         }
 
         //Send the SessionTerminateIQ even when the peer is local, because Openfire has some cleanup to do.
         final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
-        callService.sessionTerminate(sessionId, to, reason, (ErrorCode errorCode, Long requestId) -> {
+        callService.sessionTerminate(sessionId, to, reason, track((ErrorCode errorCode, Long requestId) -> {
             if (errorCode != ErrorCode.TWINLIFE_OFFLINE) {
                 mActiveSessions.remove(sessionId);
             }
-        });
+        }));
     }
 
     /**
      * Join the call room after having received an invitation through `onInviteCallRoom`.
      * The `twincodeOut` must be owned by the current user and represents the current user in the call room.
      *
+     * @param client the client session which joins the call room.
      * @param callRoomId the call room to join.
      * @param twincodeOut the member twincode.
      * @param p2pSession the optional P2P session that we have with the given twincode.
      */
-    public void joinCallRoom(@NonNull UUID callRoomId, @NonNull UUID twincodeOut, @Nullable UUID p2pSession) {
+    public void joinCallRoom(@NonNull ClientSession client, @NonNull UUID callRoomId, @NonNull UUID twincodeOut,
+                             @Nullable UUID p2pSession) {
         final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
         long requestId = mTwinlifeImpl.newRequestId();
-        if (p2pSession != null) {
-            ClientSession session = getActiveSession(p2pSession);
-            if (session != null) {
-                mActiveRequests.put(requestId, session);
-            }
-        }
+        mActiveRequests.put(requestId, client);
+        mActiveCallRooms.add(callRoomId, client);
         callService.joinCallRoom(requestId, callRoomId, twincodeOut,
                 Collections.singletonList(new Pair<>(p2pSession, null)));
     }
@@ -436,19 +608,10 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
             final PeerCallService callService = mTwinlifeImpl.getPeerCallService();
             callService.leaveCallRoom(mTwinlifeImpl.newRequestId(), callRoomId, memberId);
         }
-        synchronized (mActiveCallRooms) {
-            List<ClientSession> sessions = mActiveCallRooms.get(callRoomId);
-            if (sessions != null) {
-                for (ClientSession session : sessions) {
-                    if (session.getCallRoomMemberId() != null && session.getCallRoomMemberId().equals(memberId)) {
-                        sessions.remove(session);
-                        break;
-                    }
-                }
-                if (sessions.isEmpty()) {
-                    mActiveCallRooms.remove(callRoomId);
-                }
-            }
+        if (memberId != null) {
+            mActiveCallRooms.remove(callRoomId, memberId);
+        } else {
+            mActiveCallRooms.removeIfEmpty(callRoomId);
         }
     }
 
@@ -514,32 +677,22 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
                 return ErrorCode.ITEM_NOT_FOUND;
             }
 
-            ClientSession session = null;
+            final ClientSession session;
+            final List<ClientSession> clientSessions = mActiveCallRooms.getMembers(callroomId);
+            if (clientSessions.isEmpty()) {
+                Log.debug("sessionInitiate: CallRoom {} not found", callroomId);
+                return ErrorCode.ITEM_NOT_FOUND;
+            }
 
-            synchronized (mActiveCallRooms) {
-                final List<ClientSession> clientSessions = mActiveCallRooms.get(callroomId);
-                if (clientSessions == null || clientSessions.isEmpty()) {
-                    Log.debug("sessionInitiate: CallRoom {} not found", callroomId);
-                    return ErrorCode.ITEM_NOT_FOUND;
-                }
+            if (clientSessions.size() == 1) {
+                Log.debug("sessionInitiate: CallRoom {} has only 1 client", callroomId);
 
-                if (clientSessions.size() == 1) {
-                    Log.debug("sessionInitiate: CallRoom {} has only 1 client", callroomId);
-
-                    session = clientSessions.get(0);
-                } else {
-                    Log.debug("sessionInitiate: CallRoom {} has {} clients", callroomId, clientSessions.size());
-                    for (ClientSession s : clientSessions) {
-                        Log.debug("sessionInitiate: checking client {} with memberId: {}", s.mClientId, s.getCallRoomMemberId());
-                        if (to.equals(s.getCallRoomMemberId())) {
-                            Log.debug("sessionInitiate: client {} found", s.mClientId);
-                            session = s;
-                            break;
-                        }
-                    }
-                }
-            }
+                session = clientSessions.get(0);
+            } else {
+                Log.debug("sessionInitiate: CallRoom {} has {} clients", callroomId, clientSessions.size());
 
+                session = mActiveCallRooms.getMember(callroomId, to);
+            }
 
             if (session != null) {
                 Log.debug("Got session initiate with from: {}, sending it to memberId: {}", from, session.getCallRoomMemberId());
@@ -716,22 +869,19 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         Log.debug("{} onJoinCallRoom {} with callRoom {} and memberId {}",
                 mProxyIdent, requestId, callRoomId, memberId);
 
-        ClientSession clientSession = mActiveRequests.get(requestId);
+        ClientSession clientSession = mActiveRequests.remove(requestId);
         if (clientSession == null) {
             Log.error("No active request found with requestId: {}", requestId);
             return;
         }
+        mActiveCallRooms.setMemberId(callRoomId, memberId, clientSession);
         clientSession.onJoinCallRoom(callRoomId, memberId, members, 0);
     }
 
     @Override
     public void onLeaveCallRoom(long requestId, @NonNull UUID callRoomId) {
         Log.debug("{} onLeaveCallRoom {} with callRoom {}", mProxyIdent, requestId, callRoomId);
-        synchronized (mActiveCallRooms) {
-            if(mActiveCallRooms.get(callRoomId) != null && mActiveCallRooms.get(callRoomId).isEmpty()) {
-                mActiveCallRooms.remove(callRoomId);
-            }
-        }
+        mActiveCallRooms.removeIfEmpty(callRoomId);
     }
 
     @Override
@@ -753,10 +903,7 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         }
 
         if (clientSession.onInviteCallRoom(callRoomId, p2pSession, maxCount)) {
-            Log.debug("{} onInviteCallRoom: adding ClientSession {} to CallRoom {}", mProxyIdent, clientSession, callRoomId);
-            synchronized (mActiveCallRooms) {
-                mActiveCallRooms.computeIfAbsent(callRoomId, id -> new ArrayList<>()).add(clientSession);
-            }
+            Log.debug("{} onInviteCallRoom: ClientSession {} joins CallRoom {}", mProxyIdent, clientSession, callRoomId);
         }
     }
 
@@ -766,15 +913,7 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         Log.debug("{} onMemberJoinCallRoom {} for member {} and session {} status {}",
                 mProxyIdent, callRoomId, memberId, p2pSession, status);
 
-        final List<ClientSession> clientSessions;
-        synchronized (mActiveCallRooms) {
-            if (mActiveCallRooms.get(callRoomId) == null) {
-                return;
-            }
-            clientSessions = List.copyOf(mActiveCallRooms.get(callRoomId));
-        }
-
-        for (ClientSession clientSession : clientSessions) {
+        for (ClientSession clientSession : mActiveCallRooms.getMembers(callRoomId)) {
             clientSession.onMemberJoinCallRoom(memberId, p2pSession, status);
         }
     }
@@ -804,11 +943,114 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
      * @return Current number of active rooms
      */
     public final int getActiveCallRoomCount() {
-        final int count;
-        synchronized (mActiveCallRooms) {
-            count = mActiveCallRooms.size();
-        }
-        return count;
+        return mActiveCallRooms.size();
+    }
+
+    /**
+     * Check whether the connection to the Openfire server is established.
+     *
+     * @return true if the application is online.
+     */
+    public final boolean isOnline() {
+        return mOnline;
+    }
+
+    /**
+     * Get the load of this instance used to select the application of a new client session: the active
+     * P2P sessions, the requests waiting for an Openfire response which grow when the server is slow, and
+     * a penalty when the twincode pool is empty because a new call must then wait for a twincode creation.
+     *
+     * @return the load estimation.
+     */
+    public final int getLoad() {
+        final int load = mActiveSessions.size() + 2 * mPendingRequestCount.get().get();
+        return getTwincodePoolCount() == 0 ? load + EMPTY_POOL_LOAD : load;
+    }
+
+    /**
+     * Get the number of requests sent to the Openfire server and waiting for a response.
+     *
+     * @return Current number of pending requests
+     */
+    public final int getPendingRequestCount() {
+        return mPendingRequestCount.get().get();
+    }
+
+    /**
+     * Get the requests sent by the Twinlife services and waiting for a response.
+     *
+     * @return the request correlator shared by the Twinlife services
+     */
+    @NonNull
+    public final RequestCorrelator getRequestCorrelator() {
+        return mTwinlifeImpl.getRequestCorrelator();
+    }
+
+    /**
+     * Get the requests kept while the connection to the Openfire server is re-established.
+     *
+     * @return the outbound buffer of the Twinlife services
+     */
+    @NonNull
+    public final OutboundBuffer getOutboundBuffer() {
+        return mTwinlifeImpl.getOutboundBuffer();
+    }
+
+    /**
+     * Get the time to sign in again after losing the Openfire connection.
+     *
+     * @return the reconnection time histogram in milliseconds
+     */
+    @NonNull
+    public final LatencyHistogram getReconnectTimes() {
+        return mTwinlifeImpl.getReconnectTimes();
+    }
+
+    /**
+     * Get the number of times this instance signed in again after losing the Openfire connection.
+     *
+     * @return Total count of reconnections since the creation of this instance
+     */
+    public final long getReconnectCount() {
+        return mTwinlifeImpl.getReconnectCount();
+    }
+
+    /**
+     * Get the identification of this instance used in the logs.
+     *
+     * @return the proxy identification.
+     */
+    @NonNull
+    final String getIdent() {
+        return mProxyIdent;
+    }
+
+    /**
+     * Get the Openfire connection to report its connection and heartbeat statistics.
+     *
+     * @return the Openfire connection or null if it is not created yet.
+     */
+    @Nullable
+    final OpenfireConnection getOpenfireConnection() {
+        return mOpenfireConnection;
+    }
+
+    /**
+     * Get the number of P2P messages forwarded directly to a client session of this instance.
+     *
+     * @return Total count of local forwards since the creation of this instance
+     */
+    public final long getLocalForwardCount() {
+        return mLocalForwardCount.get();
+    }
+
+    /**
+     * Get the number of P2P messages forwarded through the Openfire server.
+     *
+     * @return Total count of remote forwards since the creation of this instance
+     */
+    public final long getRemoteForwardCount() {
+        return mRemoteForwardCount.get();
     }
 
     /**
@@ -820,6 +1062,27 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         return mActiveSessions.size();
     }
 
+    /**
+     * Get the number of P2P sessions removed because their session-terminate was never received.
+     *
+     * @return Total count of leaked peer-to-peer sessions since the creation of this instance
+     */
+    public final long getLeakedSessionCount() {
+        return mActiveSessions.getLeakCount();
+    }
+
+    /**
+     * Remove the P2P sessions that the client sessions have forgotten.
+     *
+     * @param graceDelay the minimum age in milliseconds of the P2P sessions to check.
+     */
+    void removeLeakedSessions(long graceDelay) {
+        final int count = mActiveSessions.removeLeaks(graceDelay);
+        if (count > 0) {
+            Log.warn("{} removed {} leaked P2P sessions", mProxyIdent, count);
+        }
+    }
+
     /**
      * Get the current number of available twincodes from all pools
      *
@@ -833,6 +1096,51 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         return count;
     }
 
+    /**
+     * Get the number of call twincode allocations which had to wait for a twincode creation.
+     *
+     * @return Total count of allocations made while the pool was empty
+     */
+    public final long getAllocationWaitCount() {
+        return mAllocationWaitCount.get();
+    }
+
+    /**
+     * Get the number of twincodes created in advance for the pool.
+     *
+     * @return Total count of twincodes created by the refiller
+     */
+    public final long getTwincodeRefillCount() {
+        return mRefiller.getRefillCount();
+    }
+
+    /**
+     * Get the number of errors while creating twincodes in advance.
+     *
+     * @return Total count of refill errors
+     */
+    public final long getTwincodeRefillErrorCount() {
+        return mRefiller.getErrorCount();
+    }
+
+    /**
+     * Get the average time to create a twincode in advance.
+     *
+     * @return Average refill latency in milliseconds
+     */
+    public final long getAverageTwincodeRefillLatency() {
+        return mRefiller.getAverageRefillLatency();
+    }
+
+    /**
+     * Get the maximum time to create a twincode in advance.
+     *
+     * @return Maximum refill latency in milliseconds
+     */
+    public final long getMaxTwincodeRefillLatency() {
+        return mRefiller.getMaxRefillLatency();
+    }
+
     /**
      * Finish proxy application setup after the TwinlifeImpl is configured.
      */
@@ -842,6 +1150,7 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
         final PeerCallService peerCallService = mTwinlifeImpl.getPeerCallService();
         peerCallService.addServiceObserver(this);
         peerCallService.setSignalingListener(this);
+        mTwinlifeImpl.getTwincodeOutboundService().addServiceObserver(new TwincodeOutboundObserver());
 
         // Load the TwincodeFactoryPool objects and setup the twincode pool.
         new GetTwincodeFactoryPools(mTwinlifeContext, (ErrorCode status, List<TwincodeFactoryPool> twincodePools) -> {
@@ -860,72 +1169,94 @@ public class ProxyApplication implements PeerSignalingListener, PeerCallService.
 
                 Log.info("{} Proxy application has loaded {} twincodes in {} pool objects",
                         mProxyIdent, count, twincodePools.size());
+
+                mRefiller.check();
             }
         });
     }
 
-    private void addActiveSession(@NonNull UUID sessionId, @NonNull ClientSession client) {
-        Log.debug("Adding active session {} for client {}", sessionId, client.mClientId);
+    private void loadTwincode(@NonNull UUID twincodeOutboundId, @NonNull Consumer<TwincodeOutbound> complete) {
+        Log.debug("{} loadTwincode {}", mProxyIdent, twincodeOutboundId);
 
-        List<ClientSession> sessions = mActiveSessions.computeIfAbsent(sessionId, s -> new ArrayList<>());
+        // The GetTwincodeIQ is sent again on another connection if this one is too slow.
+        final ProxyApplication hedge = ProxyController.getHedgeApplication(this);
+        ProxyController.getTwincodeHedger().execute(
+                (Consumer<TwincodeOutbound> onGet) -> getTwincodeFromServer(twincodeOutboundId, onGet),
+                hedge == null ? null : (Consumer<TwincodeOutbound> onGet) -> hedge.getTwincodeFromServer(twincodeOutboundId, onGet),
+                complete);
+    }
 
-        for (ClientSession session : sessions) {
-            if (session == client) {
-                Log.error("Active session {} already added for client {}!", session, client.mClientId, new Exception());
-                return;
-            }
-        }
+    private void loadImage(@NonNull UUID imageId, @NonNull Consumer<byte[]> complete) {
+        Log.debug("{} loadImage {}", mProxyIdent, imageId);
 
-        if (sessions.size() == 2) {
-            Log.error("sessionId {} already has 2 peers! Not adding client {}", sessionId, client.mClientId, new Exception());
-            return;
-        }
+        final ProxyApplication hedge = ProxyController.getHedgeApplication(this);
+        ProxyController.getImageHedger().execute(
+                (Consumer<byte[]> onGet) -> getImageFromServer(imageId, onGet),
+                hedge == null ? null : (Consumer<byte[]> onGet) -> hedge.getImageFromServer(imageId, onGet),
+                complete);
+    }
+
+    /**
+     * Get the twincode from the Openfire server without looking at the twincode cache.
+     *
+     * @param twincodeOutboundId the twincode to get.
+     * @param complete the completion handler.
+     */
+    void getTwincodeFromServer(@NonNull UUID twincodeOutboundId, @NonNull Consumer<TwincodeOutbound> complete) {
 
-        sessions.add(client);
+        final TwincodeOutboundService twincodeOutboundService = mTwinlifeImpl.getTwincodeOutboundService();
+        twincodeOutboundService.getTwincode(twincodeOutboundId, 0, complete);
     }
 
-    @Nullable
-    private ClientSession getActiveSession(@NonNull UUID sessionId) {
-        return getActiveSession(sessionId, null);
+    /**
+     * Get the thumbnail image from the Openfire server without looking at the image cache.
+     *
+     * @param imageId the image to get.
+     * @param complete the completion handler.
+     */
+    void getImageFromServer(@NonNull UUID imageId, @NonNull Consumer<byte[]> complete) {
+
+        final ImageService imageService = mTwinlifeImpl.getImageService();
+        imageService.getImage(imageId, ImageService.Kind.THUMBNAIL, (ErrorCode status, Bitmap image) -> {
+            complete.onGet(status, image == null ? null : image.getBytes());
+        });
     }
 
-    @Nullable
-    private ClientSession getActiveSession(@NonNull UUID sessionId, @Nullable String memberId) {
-        List<ClientSession> sessions = mActiveSessions.get(sessionId);
+    /**
+     * Count the request until its completion handler is executed.
+     */
+    @NonNull
+    private Consumer<Long> track(@NonNull Consumer<Long> onComplete) {
 
-        if (sessions == null || sessions.isEmpty()) {
-            return null;
-        }
+        final AtomicInteger pendingRequestCount = mPendingRequestCount.get();
+        pendingRequestCount.incrementAndGet();
+        return (ErrorCode errorCode, Long requestId) -> {
+            pendingRequestCount.decrementAndGet();
+            onComplete.onGet(errorCode, requestId);
+        };
+    }
 
-        if (memberId == null || sessions.size() == 1) {
-            if (sessions.size() != 1) {
-                Log.warn("getActiveSession: memberId is null but session is local, you should probably specify a memberId", new Exception());
-            }
+    private void addActiveSession(@NonNull UUID sessionId, @NonNull ClientSession client) {
 
-            return sessions.get(0);
-        }
+        mActiveSessions.add(sessionId, client);
+    }
 
-        for (ClientSession session : sessions) {
-            if (memberId.equals(session.getCallRoomMemberId())) {
-                return session;
-            }
-        }
+    @Nullable
+    private ClientSession getActiveSession(@NonNull UUID sessionId) {
+        return mActiveSessions.get(sessionId, null);
+    }
 
-        Log.debug("Unknown member {} for session {}", memberId, sessionId);
-        return null;
+    @Nullable
+    private ClientSession getActiveSession(@NonNull UUID sessionId, @Nullable String memberId) {
+        return mActiveSessions.get(sessionId, memberId);
     }
 
     @Nullable
     private ClientSession getLocalPeer(@NonNull UUID sessionId, @NonNull String to) {
-        if (!isLocalSession(sessionId)) {
-            return null;
-        }
-
-        return getActiveSession(sessionId, to);
+        return mActiveSessions.getLocalPeer(sessionId, to);
     }
 
     private boolean isLocalSession(@NonNull UUID sessionId) {
-        List<ClientSession> sessions = mActiveSessions.get(sessionId);
-        return sessions != null && sessions.size() == 2;
+        return mActiveSessions.isLocal(sessionId);
     }
 }
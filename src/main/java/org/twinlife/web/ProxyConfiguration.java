@@ -42,6 +42,25 @@ public class ProxyConfiguration extends Twinlife.TwinlifeConfiguration {
     static final String PARAM_ENCRYPTION_SALT = "applicationSalt";
     static final String PARAM_ENCRYPTION_ITER = "applicationIterCount";
 
+    static final String PARAM_TWINCODE_CACHE_SIZE = "twincodeCache.size";
+    static final String PARAM_TWINCODE_CACHE_TTL = "twincodeCache.ttl";
+    static final String PARAM_TWINCODE_CACHE_NOT_FOUND_TTL = "twincodeCache.notFoundTtl";
+    static final String PARAM_IMAGE_CACHE_MEMORY_SIZE = "imageCache.memorySize";
+    static final String PARAM_IMAGE_CACHE_DISK_SIZE = "imageCache.diskSize";
+    static final String PARAM_WEBSOCKET_QUEUE_MAX_MESSAGES = "websocket.queueMaxMessages";
+    static final String PARAM_WEBSOCKET_QUEUE_MAX_BYTES = "websocket.queueMaxBytes";
+    static final String PARAM_WEBSOCKET_SLOW_CONSUMER_TIMEOUT = "websocket.slowConsumerTimeout";
+    static final String PARAM_CLIENT_OFFLINE_BUFFER_MAX_BYTES = "client.offlineBufferMaxBytes";
+    static final String PARAM_CLIENT_OFFLINE_MESSAGE_TTL = "client.offlineMessageTtl";
+    static final String PARAM_APPLICATION_SELECTION = "applicationSelection";
+    static final String PARAM_TWINCODE_POOL_LOW_WATERMARK = "twincodePool.lowWatermark";
+    static final String PARAM_TWINCODE_POOL_HIGH_WATERMARK = "twincodePool.highWatermark";
+    static final String PARAM_TWINCODE_POOL_REFILL_INTERVAL = "twincodePool.refillInterval";
+    static final String PARAM_OPENFIRE_DISPATCH_THREADS = "openfire.dispatchThreads";
+    static final String PARAM_OPENFIRE_DISPATCH_QUEUE_SIZE = "openfire.dispatchQueueSize";
+    static final String PARAM_OPENFIRE_HEDGE_PERCENTILE = "openfire.hedgePercentile";
+    static final String PARAM_OPENFIRE_WARM_STANDBY = "openfire.warmStandby";
+
     static final String PARAM_IP_LOCAL_ADDR = "ip.localAddresses";
     static final String PARAM_KAFKA_BOOTSTRAP_SERVERS = "kafka.bootstrapServers";
     static final String PARAM_KAFKA_CLIENT_ID = "kafka.clientId";
@@ -60,6 +79,24 @@ public class ProxyConfiguration extends Twinlife.TwinlifeConfiguration {
     public final int appCount;
     public final String server;
     public final String dataDir;
+    public final int twincodeCacheSize;
+    public final long twincodeCacheTtl;
+    public final long twincodeCacheNotFoundTtl;
+    public final int imageCacheMemorySize;
+    public final long imageCacheDiskSize;
+    public final int websocketQueueMaxMessages;
+    public final int websocketQueueMaxBytes;
+    public final long websocketSlowConsumerTimeout;
+    public final int clientOfflineBufferMaxBytes;
+    public final long clientOfflineMessageTtl;
+    public final String applicationSelection;
+    public final int twincodePoolLowWatermark;
+    public final int twincodePoolHighWatermark;
+    public final long twincodePoolRefillInterval;
+    public final int openfireDispatchThreads;
+    public final int openfireDispatchQueueSize;
+    public final int openfireHedgePercentile;
+    public final boolean openfireWarmStandby;
     private final String kafkaBootstrapServers;
     private final int kafkaSenderQueueLength;
     private final int kafkaSenderCloseDelay;
@@ -80,9 +117,45 @@ public class ProxyConfiguration extends Twinlife.TwinlifeConfiguration {
         this.port = Integer.parseInt(config.getProperty(PARAM_PORT, "8080"));
         this.threads = Integer.parseInt(config.getProperty(PARAM_THREADS, "1024"));
         this.appCount = Integer.parseInt(config.getProperty(PARAM_APPLICATION_COUNT, "1"));
+        this.applicationSelection = config.getProperty(PARAM_APPLICATION_SELECTION, "two-choices");
         this.server = config.getProperty(PARAM_SERVER);
         this.dataDir = config.getProperty(PARAM_DATA_DIR);
 
+        // Get the twincode cache parameters (TTLs are in milliseconds).
+        this.twincodeCacheSize = Integer.parseInt(config.getProperty(PARAM_TWINCODE_CACHE_SIZE, "10000"));
+        this.twincodeCacheTtl = Long.parseLong(config.getProperty(PARAM_TWINCODE_CACHE_TTL, "60000"));
+        this.twincodeCacheNotFoundTtl = Long.parseLong(config.getProperty(PARAM_TWINCODE_CACHE_NOT_FOUND_TTL, "10000"));
+
+        // Get the number of free call twincodes to keep in each pool (the interval between two creations is in milliseconds).
+        this.twincodePoolLowWatermark = Integer.parseInt(config.getProperty(PARAM_TWINCODE_POOL_LOW_WATERMARK, "10"));
+        this.twincodePoolHighWatermark = Integer.parseInt(config.getProperty(PARAM_TWINCODE_POOL_HIGH_WATERMARK, "20"));
+        this.twincodePoolRefillInterval = Long.parseLong(config.getProperty(PARAM_TWINCODE_POOL_REFILL_INTERVAL, "500"));
+
+        // Get the number of threads which process the packets received from Openfire.
+        this.openfireDispatchThreads = Integer.parseInt(config.getProperty(PARAM_OPENFIRE_DISPATCH_THREADS, "8"));
+
+        // Get the number of packets waiting in a dispatcher thread after which the WebSocket stops reading.
+        this.openfireDispatchQueueSize = Integer.parseInt(config.getProperty(PARAM_OPENFIRE_DISPATCH_QUEUE_SIZE, "1024"));
+
+        // Get the latency percentile after which a twincode or image request is sent on another connection (0 disables it).
+        this.openfireHedgePercentile = Integer.parseInt(config.getProperty(PARAM_OPENFIRE_HEDGE_PERCENTILE, "95"));
+
+        // Keep a second WebSocket opened to each Openfire server to switch to it when the connection is lost.
+        this.openfireWarmStandby = Boolean.parseBoolean(config.getProperty(PARAM_OPENFIRE_WARM_STANDBY, "false"));
+
+        // Get the image cache parameters (sizes are in bytes, a 0 disk size disables the disk cache).
+        this.imageCacheMemorySize = Integer.parseInt(config.getProperty(PARAM_IMAGE_CACHE_MEMORY_SIZE, "67108864"));
+        this.imageCacheDiskSize = Long.parseLong(config.getProperty(PARAM_IMAGE_CACHE_DISK_SIZE, "1073741824"));
+
+        // Get the limits of the WebSocket outbound queue (the timeout is in milliseconds).
+        this.websocketQueueMaxMessages = Integer.parseInt(config.getProperty(PARAM_WEBSOCKET_QUEUE_MAX_MESSAGES, "256"));
+        this.websocketQueueMaxBytes = Integer.parseInt(config.getProperty(PARAM_WEBSOCKET_QUEUE_MAX_BYTES, "1048576"));
+        this.websocketSlowConsumerTimeout = Long.parseLong(config.getProperty(PARAM_WEBSOCKET_SLOW_CONSUMER_TIMEOUT, "30000"));
+
+        // Get the limits of the messages kept while the browser is disconnected (the TTL is in milliseconds).
+        this.clientOfflineBufferMaxBytes = Integer.parseInt(config.getProperty(PARAM_CLIENT_OFFLINE_BUFFER_MAX_BYTES, "262144"));
+        this.clientOfflineMessageTtl = Long.parseLong(config.getProperty(PARAM_CLIENT_OFFLINE_MESSAGE_TTL, "60000"));
+
         // Get Kafka producer parameters
         this.kafkaBootstrapServers = config.getProperty(PARAM_KAFKA_BOOTSTRAP_SERVERS, "");
         this.kafkaClientId = config.getProperty(PARAM_KAFKA_CLIENT_ID, KAFKA_DEFAULT_CLIENT_ID);
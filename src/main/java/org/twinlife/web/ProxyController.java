@@ -11,24 +11,32 @@ package org.twinlife.web;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.libwebsockets.api.ConnectStats;
+import org.libwebsockets.api.ErrorStats;
 import org.twinlife.twinlife.PropertiesConfigurationServiceImpl;
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.RequestCorrelator;
+import org.twinlife.twinlife.util.TimingWheel;
 
 import com.j256.simplejmx.common.JmxAttributeMethod;
 import com.j256.simplejmx.common.JmxResource;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import org.twinlife.web.cache.ImageCache;
+import org.twinlife.web.cache.TwincodeCache;
 import org.twinlife.web.kafka.RecordSender;
 import org.twinlife.web.kafka.records.ClickToCallRecord;
+import org.twinlife.web.util.RequestHedger;
+import org.twinlife.web.util.StripedExecutor;
 
 /**
  * Proxy controller to manage connections to the Openfire server.
@@ -41,24 +49,28 @@ import org.twinlife.web.kafka.records.ClickToCallRecord;
 @JmxResource(domainName = "org.twinlife", description = "Main proxy controller managing connections to Openfire server")
 public final class ProxyController {
     private static final int MAX_APP_COUNT = 1000;
-    static final long CLEANER_PERIOD = 150000; // 150s
-    static final long MAX_CLIENT_IDLE_DELAY = 2 * CLEANER_PERIOD;
+    static final long MAX_CLIENT_IDLE_DELAY = 300000; // 5mn
+    private static final long TIMER_TICK_DURATION = 250; // 250ms
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private static final long SESSION_LEAK_CHECK_PERIOD = 60000; // 1mn
 
     private static final Logger Log = LogManager.getLogger(ProxyController.class);
 
-    private static ProxyController instance;
+    private static volatile ProxyController instance;
 
     private final ProxyApplication[] mProxyApplication;
-    private final AtomicInteger mProxyIndex = new AtomicInteger();
+    private final TwincodeCache mTwincodeCache;
+    private final ImageCache mImageCache;
+    private final int mOfflineBufferMaxBytes;
+    private final long mOfflineMessageTtl;
+    private final ApplicationSelector mSelector;
     @Nullable
     private final RecordSender<String, ClickToCallRecord > mKafkaRecordSender;
     private final ConcurrentHashMap<String, ClientSession> mClients = new ConcurrentHashMap<>();
-    @SuppressWarnings("unchecked")
-    private final ConcurrentHashMap<String, ClientSession>[] mCheckExpired = new ConcurrentHashMap[3];
-    private final ScheduledExecutorService mCleanerExecutor = Executors.newSingleThreadScheduledExecutor();
-    @Nullable
-    private ScheduledFuture<?> mExpiredCleaner;
-    private volatile int mCheckExpiredListIndex;
+    private final TimingWheel mTimingWheel = new TimingWheel("client-timers", TIMER_TICK_DURATION, TIMER_WHEEL_SIZE);
+    private final StripedExecutor mDispatcher;
+    private final RequestHedger mTwincodeHedger;
+    private final RequestHedger mImageHedger;
 
     /**
      * Initialize the unique instance proxy controller.
@@ -80,20 +92,77 @@ public final class ProxyController {
     /**
      * Get the proxy application to make operations on the Openfire server.
      *
-     * @return the proxy application or null if we have resource issues.
+     * @return the proxy application, which may be offline when no application is connected to Openfire.
      */
     @NonNull
     public static ProxyApplication getProxyApplication() {
-        ProxyController ctrl = ProxyController.getInstance();
+        final ProxyController ctrl = ProxyController.getInstance();
+
+        return ctrl.mSelector.select(ctrl.mProxyApplication);
+    }
+
+    /**
+     * Get the proxy application which has the affinity with the key (a peer twincode or a call room).
+     * Rendezvous hashing is used so that the same key is always dispatched to the same instance.
+     *
+     * @param affinity the affinity key.
+     * @return the proxy application.
+     */
+    @NonNull
+    public static ProxyApplication getProxyApplication(@NonNull UUID affinity) {
+        final ProxyApplication[] applications = ProxyController.getInstance().mProxyApplication;
+
+        final long key = affinity.getMostSignificantBits() ^ affinity.getLeastSignificantBits();
+        int selected = 0;
+        long best = Long.MIN_VALUE;
+        for (int i = 0; i < applications.length; i++) {
+            final long weight = mix(key + (i + 1) * 0x9E3779B97F4A7C15L);
+            if (weight > best) {
+                best = weight;
+                selected = i;
+            }
+        }
+
+        // Don't send the client to an application which is not connected to Openfire.
+        if (!applications[selected].isOnline()) {
+            return getProxyApplication();
+        }
+        return applications[selected];
+    }
+
+    /**
+     * Get another online proxy application to send a hedge request for the given application.
+     *
+     * @param primary the proxy application which sent the first request.
+     * @return the proxy application or null if there is no other online application.
+     */
+    @Nullable
+    static ProxyApplication getHedgeApplication(@NonNull ProxyApplication primary) {
+        final ProxyApplication[] applications = ProxyController.getInstance().mProxyApplication;
 
-        // Round robin dispatch to one of the available ProxyApplication instance.
-        while (true) {
-            final int counter = ctrl.mProxyIndex.incrementAndGet();
-            if (counter <= ctrl.mProxyApplication.length) {
-                return ctrl.mProxyApplication[counter - 1];
+        int index = 0;
+        while (index < applications.length && applications[index] != primary) {
+            index++;
+        }
+        for (int i = 1; i < applications.length; i++) {
+            final ProxyApplication application = applications[(index + i) % applications.length];
+            if (application.isOnline()) {
+                return application;
             }
-            ctrl.mProxyIndex.compareAndSet(counter, 0);
         }
+        return null;
+    }
+
+    @NonNull
+    static RequestHedger getTwincodeHedger() {
+
+        return getInstance().mTwincodeHedger;
+    }
+
+    @NonNull
+    static RequestHedger getImageHedger() {
+
+        return getInstance().mImageHedger;
     }
 
     /**
@@ -101,11 +170,12 @@ public final class ProxyController {
      *
      * @return ProxyController instance
      */
-    public static synchronized ProxyController getInstance() {
-        if (instance == null) {
+    public static ProxyController getInstance() {
+        final ProxyController controller = instance;
+        if (controller == null) {
             throw new IllegalStateException("Proxy controller has not been initialized yet");
         }
-        return instance;
+        return controller;
     }
 
     /**
@@ -125,22 +195,34 @@ public final class ProxyController {
         final ProxyController controller = getInstance();
         ClientSession session = controller.mClients.get(sessionId);
         if (session == null) {
-            session = new ClientSession(sessionId, controller.mKafkaRecordSender);
+            session = new ClientSession(sessionId, controller.mKafkaRecordSender,
+                    controller.mOfflineBufferMaxBytes, controller.mOfflineMessageTtl);
             controller.mClients.put(sessionId, session);
         } else {
-            // This session is known, remove it from the check expiration lists.
-            for (int i = 0; i < 3; i++) {
-                controller.mCheckExpired[i].remove(sessionId);
-            }
+            // This session is known, cancel its expiration timer.
+            session.setExpireTimeout(null);
         }
         return session;
     }
 
+    /**
+     * Schedule a task associated with a client session.  The task is executed by the timer thread
+     * and must not block.
+     *
+     * @param task the task to execute.
+     * @param delay the delay in milliseconds.
+     * @return the timeout to cancel the task.
+     */
+    @NonNull
+    static TimingWheel.Timeout schedule(@NonNull Runnable task, long delay) {
+
+        return getInstance().mTimingWheel.schedule(task, delay);
+    }
+
     /**
      * Release the client session after WebSocket close.  When release is set, we can
      * forget this client session.  Otherwise, we must keep in case the browser reconnects.
-     * Meanwhile, it is put in the check expiration list that will handle its removal
-     * in 2xMAX_CLIENT_IDLE_DELAY (=10mn).
+     * Meanwhile, an expiration timer will handle its removal after MAX_CLIENT_IDLE_DELAY (=5mn).
      *
      * @param session the client session.
      * @param release true if we can forget that client immediately.
@@ -150,11 +232,11 @@ public final class ProxyController {
 
         final ProxyController controller = getInstance();
         if (release) {
-            controller.mClients.remove(session.getSessionId());
+            session.setExpireTimeout(null);
+            controller.mClients.remove(session.getSessionId(), session);
         } else {
             // This web client is probably just disconnected and may try to reconnect.
-            // Put it in the current expiration list.
-            controller.mCheckExpired[controller.mCheckExpiredListIndex].put(session.getSessionId(), session);
+            controller.scheduleExpiration(session, MAX_CLIENT_IDLE_DELAY);
         }
     }
 
@@ -177,11 +259,417 @@ public final class ProxyController {
         return Arrays.stream(mProxyApplication).map(ProxyApplication::getActiveSessionCount).reduce(0, (total, v) -> total + v);
     }
 
+    @JmxAttributeMethod(description = "Number of P2P sessions removed because their session-terminate was never received")
+    public long getLeakedSessionsNumber() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getLeakedSessionCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Number of P2P messages forwarded directly to a client session of the same proxy")
+    public long getLocalForwardCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getLocalForwardCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Number of P2P messages forwarded through the Openfire server")
+    public long getRemoteForwardCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getRemoteForwardCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Percentage of P2P messages forwarded directly to a client session of the same proxy")
+    public long getLocalForwardRatio() {
+        final long local = getLocalForwardCount();
+        final long total = local + getRemoteForwardCount();
+        return total == 0 ? 0 : (100 * local) / total;
+    }
+
+    @JmxAttributeMethod(description = "Number of requests waiting for an Openfire response")
+    public long getPendingRequestNumber() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getPendingRequestCount).reduce(0, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Number of Twinlife service requests waiting for a response")
+    public long getServiceInFlightRequestNumber() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getRequestCorrelator().size()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Age in ms of the oldest Twinlife service request waiting for a response")
+    public long getServiceOldestPendingRequestAge() {
+        long oldest = 0;
+        for (ProxyApplication application : mProxyApplication) {
+            for (RequestCorrelator.Registry<?> registry : application.getRequestCorrelator().getRegistries()) {
+                oldest = Math.max(oldest, registry.getOldestPendingAge());
+            }
+        }
+        return oldest;
+    }
+
+    @JmxAttributeMethod(description = "Twinlife service requests waiting for a response: count and oldest age in ms per service")
+    public String getServicePendingRequests() {
+        final Map<String, long[]> services = new TreeMap<>();
+        for (ProxyApplication application : mProxyApplication) {
+            for (RequestCorrelator.Registry<?> registry : application.getRequestCorrelator().getRegistries()) {
+                final long[] stats = services.computeIfAbsent(registry.getName(), name -> new long[2]);
+                stats[0] += registry.getInFlightCount();
+                stats[1] = Math.max(stats[1], registry.getOldestPendingAge());
+            }
+        }
+        final StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, long[]> service : services.entrySet()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(service.getKey()).append('=').append(service.getValue()[0])
+                    .append('/').append(service.getValue()[1]).append("ms");
+        }
+        return result.toString();
+    }
+
+    @JmxAttributeMethod(description = "Number of Twinlife service requests currently waiting for the Openfire connection to be restored")
+    public long getServiceBufferedRequestPending() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getOutboundBuffer().size()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Total number of Twinlife service requests kept during the Openfire reconnections")
+    public long getServiceBufferedRequestCount() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getOutboundBuffer().getBufferedCount()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Number of kept Twinlife service requests sent after the Openfire reconnection")
+    public long getServiceFlushedRequestCount() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getOutboundBuffer().getFlushedCount()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Number of kept Twinlife service requests dropped because their deadline or the grace window passed")
+    public long getServiceExpiredBufferedRequestCount() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getOutboundBuffer().getExpiredCount()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Number of Twinlife service requests failed because the outbound buffer was full")
+    public long getServiceBufferOverflowCount() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getOutboundBuffer().getOverflowCount()).sum();
+    }
+
+    @JmxAttributeMethod(description = "Number of sign-ins after the loss of an Openfire connection")
+    public long getOpenfireReconnectCount() {
+        return Arrays.stream(mProxyApplication).mapToLong(ProxyApplication::getReconnectCount).sum();
+    }
+
+    @JmxAttributeMethod(description = "Median time in ms to sign in again after losing the Openfire connection (worst application)")
+    public long getOpenfireReconnectMedianTime() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getReconnectTimes().getPercentile(50)).max().orElse(0);
+    }
+
+    @JmxAttributeMethod(description = "99th percentile time in ms to sign in again after losing the Openfire connection (worst application)")
+    public long getOpenfireReconnectP99Time() {
+        return Arrays.stream(mProxyApplication).mapToLong(application -> application.getReconnectTimes().getPercentile(99)).max().orElse(0);
+    }
+
+    @JmxAttributeMethod(description = "Number of proxy applications connected to the Openfire server")
+    public long getOnlineApplicationNumber() {
+        return Arrays.stream(mProxyApplication).filter(ProxyApplication::isOnline).count();
+    }
+
     @JmxAttributeMethod(description = "Number of twincodes available in all pools")
     public long getTwincodePoolCountNumber() {
         return Arrays.stream(mProxyApplication).map(ProxyApplication::getTwincodePoolCount).reduce(0, (total, v) -> total + v);
     }
 
+    @JmxAttributeMethod(description = "Number of call twincode allocations which had to wait for a twincode creation")
+    public long getTwincodeAllocationWaitCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getAllocationWaitCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Number of twincodes created in advance for the pools")
+    public long getTwincodeRefillCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getTwincodeRefillCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Number of errors while creating twincodes in advance")
+    public long getTwincodeRefillErrorCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getTwincodeRefillErrorCount).reduce(0L, (total, v) -> total + v);
+    }
+
+    @JmxAttributeMethod(description = "Maximum time in ms to create a twincode in advance")
+    public long getTwincodeMaxRefillLatency() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getMaxTwincodeRefillLatency).reduce(0L, Math::max);
+    }
+
+    @JmxAttributeMethod(description = "Number of twincodes currently in the twincode cache")
+    public int getTwincodeCacheSize() {
+        return mTwincodeCache.size();
+    }
+
+    @JmxAttributeMethod(description = "Number of twincode requests served from the twincode cache")
+    public long getTwincodeCacheHitCount() {
+        return mTwincodeCache.getHitCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of twincode requests that required a GetTwincodeIQ")
+    public long getTwincodeCacheMissCount() {
+        return mTwincodeCache.getMissCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of twincode requests merged with a pending GetTwincodeIQ")
+    public long getTwincodeCacheCoalescedCount() {
+        return mTwincodeCache.getCoalescedCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of GetTwincodeIQ sent again on another Openfire connection")
+    public long getTwincodeHedgeCount() {
+        return mTwincodeHedger.getHedgeCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of hedged GetTwincodeIQ which answered before the first one")
+    public long getTwincodeHedgeWinCount() {
+        return mTwincodeHedger.getHedgeWinCount();
+    }
+
+    @JmxAttributeMethod(description = "Delay in ms after which a GetTwincodeIQ is sent again (0 when not hedged)")
+    public long getTwincodeHedgeDelay() {
+        return mTwincodeHedger.getHedgeDelay();
+    }
+
+    @JmxAttributeMethod(description = "Number of twincodes removed from the cache after a refresh or update")
+    public long getTwincodeCacheInvalidateCount() {
+        return mTwincodeCache.getInvalidateCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of twincodes evicted from the cache because it was full")
+    public int getTwincodeCacheEvictionCount() {
+        return mTwincodeCache.getEvictionCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of bytes used by the images in the memory cache")
+    public int getImageCacheMemorySize() {
+        return mImageCache.getMemorySize();
+    }
+
+    @JmxAttributeMethod(description = "Number of bytes used by the images in the disk cache")
+    public long getImageCacheDiskSize() {
+        return mImageCache.getDiskSize();
+    }
+
+    @JmxAttributeMethod(description = "Number of image requests served from the memory cache")
+    public long getImageCacheHitCount() {
+        return mImageCache.getHitCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of image requests served from the disk cache")
+    public long getImageCacheDiskHitCount() {
+        return mImageCache.getDiskHitCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of image requests that required a GetImageIQ")
+    public long getImageCacheMissCount() {
+        return mImageCache.getMissCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of image requests merged with a pending GetImageIQ")
+    public long getImageCacheCoalescedCount() {
+        return mImageCache.getCoalescedCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of images evicted from the memory cache because it was full")
+    public int getImageCacheEvictionCount() {
+        return mImageCache.getEvictionCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of GetImageIQ sent again on another Openfire connection")
+    public long getImageHedgeCount() {
+        return mImageHedger.getHedgeCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of hedged GetImageIQ which answered before the first one")
+    public long getImageHedgeWinCount() {
+        return mImageHedger.getHedgeWinCount();
+    }
+
+    @JmxAttributeMethod(description = "Delay in ms after which a GetImageIQ is sent again (0 when not hedged)")
+    public long getImageHedgeDelay() {
+        return mImageHedger.getHedgeDelay();
+    }
+
+    @JmxAttributeMethod(description = "Number of messages waiting in the WebSocket outbound queues")
+    public long getOutboundQueueMessages() {
+        return OutboundQueue.getQueuedMessages();
+    }
+
+    @JmxAttributeMethod(description = "Number of bytes waiting in the WebSocket outbound queues")
+    public long getOutboundQueueBytes() {
+        return OutboundQueue.getQueuedBytes();
+    }
+
+    @JmxAttributeMethod(description = "Number of WebSocket frames written")
+    public long getOutboundWriteCount() {
+        return OutboundQueue.getWriteCount();
+    }
+
+    @JmxAttributeMethod(description = "Average time in ms between queueing and writing a WebSocket frame")
+    public long getOutboundAverageWriteLatency() {
+        return OutboundQueue.getAverageWriteLatency();
+    }
+
+    @JmxAttributeMethod(description = "Maximum time in ms between queueing and writing a WebSocket frame")
+    public long getOutboundMaxWriteLatency() {
+        return OutboundQueue.getMaxWriteLatency();
+    }
+
+    @JmxAttributeMethod(description = "Number of outbound messages dropped or merged")
+    public long getOutboundDropCount() {
+        return OutboundQueue.getDropCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of WebSocket clients disconnected because they are too slow")
+    public long getOutboundSlowConsumerCount() {
+        return OutboundQueue.getSlowConsumerCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of messages kept for disconnected browsers")
+    public long getOfflineBufferedMessages() {
+        return OfflineBuffer.getBufferedMessages();
+    }
+
+    @JmxAttributeMethod(description = "Estimated number of bytes kept for disconnected browsers")
+    public long getOfflineBufferedBytes() {
+        return OfflineBuffer.getBufferedBytes();
+    }
+
+    @JmxAttributeMethod(description = "Number of offline messages dropped, merged or obsoleted by a session-terminate")
+    public long getOfflineDropCount() {
+        return OfflineBuffer.getDropCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of offline messages dropped because their TTL expired")
+    public long getOfflineExpiredCount() {
+        return OfflineBuffer.getExpiredCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of client session timers and request deadlines waiting to be executed")
+    public int getClientTimerCount() {
+        return mTimingWheel.size();
+    }
+
+    @JmxAttributeMethod(description = "Number of Openfire packets waiting to be processed by the dispatcher")
+    public int getInboundQueueDepth() {
+        return mDispatcher.getQueueDepth();
+    }
+
+    @JmxAttributeMethod(description = "Number of Openfire packets processed by the dispatcher")
+    public long getInboundDispatchCount() {
+        return mDispatcher.getExecuteCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of times an Openfire WebSocket stopped reading because the dispatcher was late")
+    public long getInboundPauseCount() {
+        return mDispatcher.getPauseCount();
+    }
+
+    @JmxAttributeMethod(description = "Average time in us between receiving and processing an Openfire packet")
+    public long getInboundAverageDispatchLatency() {
+        return mDispatcher.getAverageLatency();
+    }
+
+    @JmxAttributeMethod(description = "Maximum time in us between receiving and processing an Openfire packet")
+    public long getInboundMaxDispatchLatency() {
+        return mDispatcher.getMaxLatency();
+    }
+
+    @JmxAttributeMethod(description = "Number of buffers used to serialize the packets sent to Openfire")
+    public long getOpenfireBufferAcquireCount() {
+        return OpenfireConnection.getBufferAcquireCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of buffers allocated because the Openfire buffer pool was empty")
+    public long getOpenfireBufferAllocateCount() {
+        return OpenfireConnection.getBufferAllocateCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of bytes held by the free buffers of the Openfire buffer pool")
+    public long getOpenfireBufferPooledBytes() {
+        return OpenfireConnection.getBufferPooledBytes();
+    }
+
+    @JmxAttributeMethod(description = "Number of standby Openfire WebSockets ready to replace a lost connection")
+    public int getOpenfireStandbyReadyNumber() {
+        return OpenfireConnection.getStandbyReadyCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of standby Openfire WebSockets opened")
+    public long getOpenfireStandbyConnectCount() {
+        return OpenfireConnection.getStandbyConnectCount();
+    }
+
+    @JmxAttributeMethod(description = "Number of lost Openfire connections replaced by the standby WebSocket")
+    public long getOpenfireFailoverCount() {
+        return OpenfireConnection.getFailoverCount();
+    }
+
+    @JmxAttributeMethod(description = "Last Openfire connection time in ms per application: dns/tcp/tls/upgrade")
+    public String getOpenfireConnectTimes() {
+        final StringBuilder result = new StringBuilder();
+        for (ProxyApplication application : mProxyApplication) {
+            final OpenfireConnection connection = application.getOpenfireConnection();
+            final ConnectStats stats = connection == null ? null : connection.getConnectStats();
+            if (stats != null) {
+                if (result.length() > 0) {
+                    result.append(", ");
+                }
+                result.append(application.getIdent()).append('=').append(stats.dnsTime)
+                        .append('/').append(stats.tcpConnectTime).append('/').append(stats.tlsConnectTime)
+                        .append('/').append(stats.txnResponseTime).append("ms");
+            }
+        }
+        return result.toString();
+    }
+
+    @JmxAttributeMethod(description = "Openfire connection errors per application: dns/tcp/tls/tlsVerify/tlsHost/upgrade errors, attempts and consecutive failures")
+    public String getOpenfireConnectErrors() {
+        final StringBuilder result = new StringBuilder();
+        for (ProxyApplication application : mProxyApplication) {
+            final OpenfireConnection connection = application.getOpenfireConnection();
+            final ErrorStats stats = connection == null ? null : connection.getErrorStats(false);
+            if (stats != null) {
+                if (result.length() > 0) {
+                    result.append(", ");
+                }
+                result.append(application.getIdent()).append('=').append(stats.dnsErrorCount)
+                        .append('/').append(stats.tcpErrorCount).append('/').append(stats.tlsErrorCount)
+                        .append('/').append(stats.tlsVerifyErrorCount).append('/').append(stats.tlsHostErrorCount)
+                        .append('/').append(stats.txnErrorCount).append(' ').append(stats.createCounter)
+                        .append('/').append(stats.connectCounter);
+            }
+        }
+        return result.toString();
+    }
+
+    @JmxAttributeMethod(description = "Openfire heartbeat RTT in ms per application: last/median/99th percentile")
+    public String getOpenfireHeartbeatRtt() {
+        final StringBuilder result = new StringBuilder();
+        for (ProxyApplication application : mProxyApplication) {
+            final OpenfireConnection connection = application.getOpenfireConnection();
+            if (connection != null) {
+                if (result.length() > 0) {
+                    result.append(", ");
+                }
+                final LatencyHistogram rtt = connection.getHeartbeatRtt();
+                result.append(application.getIdent()).append('=').append(connection.getLastRtt())
+                        .append('/').append(rtt.getPercentile(50)).append('/').append(rtt.getPercentile(99)).append("ms");
+            }
+        }
+        return result.toString();
+    }
+
+    @JmxAttributeMethod(description = "Highest 99th percentile of the Openfire heartbeat RTT in ms (worst application)")
+    public long getOpenfireHeartbeatP99Rtt() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getOpenfireConnection).filter(Objects::nonNull)
+                .mapToLong(connection -> connection.getHeartbeatRtt().getPercentile(99)).max().orElse(0);
+    }
+
+    @JmxAttributeMethod(description = "Number of Openfire WebSockets closed because they did not answer the heartbeat")
+    public long getOpenfireHalfOpenCount() {
+        return Arrays.stream(mProxyApplication).map(ProxyApplication::getOpenfireConnection).filter(Objects::nonNull)
+                .mapToLong(OpenfireConnection::getHalfOpenCount).sum();
+    }
+
     @JmxAttributeMethod(description = "Number of proxy application instances managed by this controller")
     public int getProxyApplicationNumber() {
         return mProxyApplication.length;
@@ -202,12 +690,38 @@ public final class ProxyController {
         Log.info("Starting proxy webapp client");
 
         mKafkaRecordSender = kafkaRecordSender;
-        mCheckExpired[0] = new ConcurrentHashMap<>();
-        mCheckExpired[1] = new ConcurrentHashMap<>();
-        mCheckExpired[2] = new ConcurrentHashMap<>();
-        mCheckExpiredListIndex = 0;
-        mExpiredCleaner = mCleanerExecutor.scheduleAtFixedRate(this::cleanExpiredSession,
-                CLEANER_PERIOD, CLEANER_PERIOD, TimeUnit.MILLISECONDS);
+        mOfflineBufferMaxBytes = proxyConfiguration.clientOfflineBufferMaxBytes;
+        mOfflineMessageTtl = proxyConfiguration.clientOfflineMessageTtl;
+        mTimingWheel.start();
+
+        if (proxyConfiguration.openfireDispatchThreads <= 0) {
+            final String msg = String.format("Invalid configuration %s: value %d must be positive",
+                    ProxyConfiguration.PARAM_OPENFIRE_DISPATCH_THREADS, proxyConfiguration.openfireDispatchThreads);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (proxyConfiguration.openfireDispatchQueueSize <= 0) {
+            final String msg = String.format("Invalid configuration %s: value %d must be positive",
+                    ProxyConfiguration.PARAM_OPENFIRE_DISPATCH_QUEUE_SIZE, proxyConfiguration.openfireDispatchQueueSize);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The packets received by every proxy application are processed by the same dispatcher threads.
+        mDispatcher = new StripedExecutor("openfire-dispatch", proxyConfiguration.openfireDispatchThreads,
+                proxyConfiguration.openfireDispatchQueueSize);
+
+        if (proxyConfiguration.openfireHedgePercentile < 0 || proxyConfiguration.openfireHedgePercentile > 99) {
+            final String msg = String.format("Invalid configuration %s: value %d is out of range 0..99",
+                    ProxyConfiguration.PARAM_OPENFIRE_HEDGE_PERCENTILE, proxyConfiguration.openfireHedgePercentile);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The twincode and image requests are idempotent: they can be sent again on another proxy application.
+        mTwincodeHedger = new RequestHedger("twincode", mTimingWheel, proxyConfiguration.openfireHedgePercentile);
+        mImageHedger = new RequestHedger("image", mTimingWheel, proxyConfiguration.openfireHedgePercentile);
 
         final File rootDir = new File(proxyConfiguration.dataDir);
         if (!rootDir.exists() && !rootDir.mkdirs()) {
@@ -227,40 +741,94 @@ public final class ProxyController {
             throw new IllegalArgumentException(msg);
         }
 
+        if (proxyConfiguration.twincodePoolLowWatermark < 0
+                || proxyConfiguration.twincodePoolHighWatermark < proxyConfiguration.twincodePoolLowWatermark) {
+            final String msg = String.format("Invalid configuration %s: value %d must be positive and not above %s",
+                    ProxyConfiguration.PARAM_TWINCODE_POOL_LOW_WATERMARK, proxyConfiguration.twincodePoolLowWatermark,
+                    ProxyConfiguration.PARAM_TWINCODE_POOL_HIGH_WATERMARK);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        final ApplicationSelector selector = ApplicationSelector.create(proxyConfiguration.applicationSelection);
+        if (selector == null) {
+            final String msg = String.format("Invalid configuration %s: value %s is not one of %s, %s, %s, %s",
+                    ProxyConfiguration.PARAM_APPLICATION_SELECTION, proxyConfiguration.applicationSelection,
+                    ApplicationSelector.ROUND_ROBIN, ApplicationSelector.HEALTH_GATED,
+                    ApplicationSelector.LEAST_LOADED, ApplicationSelector.TWO_CHOICES);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        mSelector = selector;
+
+        if (proxyConfiguration.twincodeCacheSize <= 0) {
+            final String msg = String.format("Invalid configuration %s: value %d must be positive",
+                    ProxyConfiguration.PARAM_TWINCODE_CACHE_SIZE, proxyConfiguration.twincodeCacheSize);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The twincode cache is shared by every proxy application.
+        mTwincodeCache = new TwincodeCache(proxyConfiguration.twincodeCacheSize,
+                proxyConfiguration.twincodeCacheTtl, proxyConfiguration.twincodeCacheNotFoundTtl);
+
+        if (proxyConfiguration.imageCacheMemorySize <= 0) {
+            final String msg = String.format("Invalid configuration %s: value %d must be positive",
+                    ProxyConfiguration.PARAM_IMAGE_CACHE_MEMORY_SIZE, proxyConfiguration.imageCacheMemorySize);
+            Log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The image cache is also shared and its files are stored in the data directory cache.
+        mImageCache = new ImageCache(proxyConfiguration.imageCacheMemorySize,
+                new File(rootDir, "cache"), proxyConfiguration.imageCacheDiskSize);
+
         Log.info("Creating {} proxy applications", proxyConfiguration.appCount);
         mProxyApplication = new ProxyApplication[proxyConfiguration.appCount];
         for (int i = 0; i < proxyConfiguration.appCount; i++) {
             final File dir = new File(rootDir, "client-" + (i+1));
-            mProxyApplication[i] = new ProxyApplication(proxyConfiguration, dir);
+            mProxyApplication[i] = new ProxyApplication(proxyConfiguration, dir, mTwincodeCache, mImageCache, mTimingWheel, mDispatcher);
         }
+        mTimingWheel.schedule(this::removeLeakedSessions, SESSION_LEAK_CHECK_PERIOD);
     }
 
-    private void cleanExpiredSession() {
-        Log.debug("Clean expired sessions");
-
-        final int toClean = (mCheckExpiredListIndex + 1) % 3;
-        final ConcurrentHashMap<String, ClientSession> cleanMap = mCheckExpired[toClean];
-        final long count = cleanMap.size();
-        if (count > 0) {
-            long cleanCount = 0;
-            for (ConcurrentHashMap.Entry<String, ClientSession> item : cleanMap.entrySet()) {
-                final String sessionId = item.getKey();
-                final ClientSession session = item.getValue();
-                if (session.isExpired()) {
-                    mClients.remove(sessionId);
-                    session.dispose();
-                    cleanCount++;
-                } else {
-                    Log.warn("Session {} has not expired and is in the expiration list!", sessionId);
-                }
-            }
-            cleanMap.clear();
-            if (cleanCount > 0) {
-                Log.info("Cleaned {} client sessions", cleanCount);
-            }
+    private void removeLeakedSessions() {
+
+        for (ProxyApplication application : mProxyApplication) {
+            application.removeLeakedSessions(MAX_CLIENT_IDLE_DELAY);
+        }
+        mTimingWheel.schedule(this::removeLeakedSessions, SESSION_LEAK_CHECK_PERIOD);
+    }
+
+    private static long mix(long value) {
+
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private void scheduleExpiration(@NonNull ClientSession session, long delay) {
+
+        session.setExpireTimeout(mTimingWheel.schedule(() -> expireClient(session), delay));
+    }
+
+    private void expireClient(@NonNull ClientSession session) {
+
+        final long idleDelay = session.getIdleDelay();
+        if (idleDelay < 0) {
+            // The browser has reconnected.
+            return;
         }
+        if (idleDelay < MAX_CLIENT_IDLE_DELAY) {
+            scheduleExpiration(session, MAX_CLIENT_IDLE_DELAY - idleDelay);
+            return;
+        }
+
+        final String sessionId = session.getSessionId();
+        if (mClients.remove(sessionId, session)) {
+            Log.info("Client session {} has expired", sessionId);
 
-        // The current terminated list is now the list we have just cleaned.
-        mCheckExpiredListIndex = toClean;
+            session.dispose();
+        }
     }
 }
@@ -0,0 +1,215 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client sessions which are the endpoints of the active P2P sessions.
+ *
+ * <p>
+ * A P2P session has one endpoint when the peer is connected through Openfire and two endpoints when
+ * both peers are client sessions of the same proxy application (local session).  The endpoints are
+ * stored in an immutable record which is replaced atomically by the ConcurrentHashMap compute operations
+ * so that the lookups made for each forwarded IQ are lock-free and do not allocate.
+ * </p>
+ *
+ * @param <C> the client session type.
+ */
+final class SessionRegistry<C extends SessionRegistry.Client> {
+    private static final Logger Log = LogManager.getLogger(SessionRegistry.class);
+
+    /**
+     * What the registry needs from a client session.
+     */
+    interface Client {
+
+        @NonNull
+        String getClientId();
+
+        /**
+         * Get the peer of the P2P session as known by the client session.
+         *
+         * @param sessionId the P2P session id.
+         * @return the peer or null if the client session does not know the P2P session anymore.
+         */
+        @Nullable
+        String getSessionTo(@NonNull UUID sessionId);
+
+        @Nullable
+        String getCallRoomMemberId();
+    }
+
+    private static final class Endpoints<C> {
+        @NonNull
+        final C first;
+        @Nullable
+        final C second;
+        final long creationTime;
+
+        Endpoints(@NonNull C first, @Nullable C second, long creationTime) {
+            this.first = first;
+            this.second = second;
+            this.creationTime = creationTime;
+        }
+    }
+
+    private final ConcurrentHashMap<UUID, Endpoints<C>> mSessions = new ConcurrentHashMap<>();
+    private final AtomicLong mLeakCount = new AtomicLong();
+
+    /**
+     * Add the client session as an endpoint of the P2P session.
+     *
+     * @param sessionId the P2P session id.
+     * @param client the client session.
+     */
+    void add(@NonNull UUID sessionId, @NonNull C client) {
+        Log.debug("Adding active session {} for client {}", sessionId, client.getClientId());
+
+        mSessions.compute(sessionId, (UUID id, Endpoints<C> endpoints) -> {
+            if (endpoints == null) {
+                return new Endpoints<>(client, null, System.currentTimeMillis());
+            }
+            if (endpoints.first == client || endpoints.second == client) {
+                Log.error("Active session {} already added for client {}!", sessionId, client.getClientId(), new Exception());
+                return endpoints;
+            }
+            if (endpoints.second != null) {
+                Log.error("sessionId {} already has 2 peers! Not adding client {}", sessionId, client.getClientId(), new Exception());
+                return endpoints;
+            }
+            return new Endpoints<>(endpoints.first, client, endpoints.creationTime);
+        });
+    }
+
+    void remove(@NonNull UUID sessionId) {
+
+        mSessions.remove(sessionId);
+    }
+
+    /**
+     * Check whether both endpoints of the P2P session are client sessions of this registry.
+     *
+     * @param sessionId the P2P session id.
+     * @return true if this is a local session.
+     */
+    boolean isLocal(@NonNull UUID sessionId) {
+
+        final Endpoints<C> endpoints = mSessions.get(sessionId);
+        return endpoints != null && endpoints.second != null;
+    }
+
+    /**
+     * Get the endpoint of the P2P session.  When the session is local, the member id identifies
+     * the endpoint.
+     *
+     * @param sessionId the P2P session id.
+     * @param memberId the call room member id of the endpoint or null.
+     * @return the client session or null.
+     */
+    @Nullable
+    C get(@NonNull UUID sessionId, @Nullable String memberId) {
+
+        final Endpoints<C> endpoints = mSessions.get(sessionId);
+        if (endpoints == null) {
+            return null;
+        }
+
+        if (endpoints.second == null) {
+            return endpoints.first;
+        }
+        if (memberId == null) {
+            Log.warn("getActiveSession: memberId is null but session is local, you should probably specify a memberId", new Exception());
+
+            return endpoints.first;
+        }
+
+        if (memberId.equals(endpoints.first.getCallRoomMemberId())) {
+            return endpoints.first;
+        }
+        if (memberId.equals(endpoints.second.getCallRoomMemberId())) {
+            return endpoints.second;
+        }
+
+        Log.debug("Unknown member {} for session {}", memberId, sessionId);
+        return null;
+    }
+
+    /**
+     * Get the endpoint of a local P2P session.
+     *
+     * @param sessionId the P2P session id.
+     * @param memberId the call room member id of the endpoint.
+     * @return the client session or null if the session is not local or the member is not found.
+     */
+    @Nullable
+    C getLocalPeer(@NonNull UUID sessionId, @NonNull String memberId) {
+
+        final Endpoints<C> endpoints = mSessions.get(sessionId);
+        if (endpoints == null || endpoints.second == null) {
+            return null;
+        }
+        if (memberId.equals(endpoints.first.getCallRoomMemberId())) {
+            return endpoints.first;
+        }
+        if (memberId.equals(endpoints.second.getCallRoomMemberId())) {
+            return endpoints.second;
+        }
+        return null;
+    }
+
+    int size() {
+
+        return mSessions.size();
+    }
+
+    long getLeakCount() {
+
+        return mLeakCount.get();
+    }
+
+    /**
+     * Remove the P2P sessions older than the grace delay that none of their endpoints know anymore:
+     * the client sessions have terminated them but the session-terminate was never received.
+     *
+     * @param graceDelay the minimum age in milliseconds of the P2P sessions to check.
+     * @return the number of leaked sessions that were removed.
+     */
+    int removeLeaks(long graceDelay) {
+
+        final long deadline = System.currentTimeMillis() - graceDelay;
+        int count = 0;
+        for (Map.Entry<UUID, Endpoints<C>> entry : mSessions.entrySet()) {
+            final Endpoints<C> endpoints = entry.getValue();
+            if (endpoints.creationTime > deadline) {
+                continue;
+            }
+
+            final UUID sessionId = entry.getKey();
+            if (endpoints.first.getSessionTo(sessionId) != null
+                    || (endpoints.second != null && endpoints.second.getSessionTo(sessionId) != null)) {
+                continue;
+            }
+            if (mSessions.remove(sessionId, endpoints)) {
+                Log.warn("Removing leaked session {} of client {}", sessionId, endpoints.first.getClientId());
+                count++;
+            }
+        }
+        mLeakCount.addAndGet(count);
+        return count;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.TwincodeFactory;
+import org.twinlife.twinlife.util.TimingWheel;
+import org.twinlife.web.models.TwincodeFactoryPool;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Create the call twincodes of a proxy application before they are needed.
+ *
+ * <p>
+ * When the number of free twincodes falls below the low watermark, twincodes are created by batches
+ * of at most MAX_BATCH_SIZE, with a delay between two batches, until the high watermark is reached.
+ * The twincodes of a batch are saved in the pool object with a single repository update.  After an error, the refill
+ * is retried with an exponential backoff.  The refiller is triggered when a twincode is allocated and
+ * when the application becomes online.
+ * </p>
+ */
+final class TwincodePoolRefiller {
+    private static final Logger Log = LogManager.getLogger(TwincodePoolRefiller.class);
+
+    private static final long MIN_BACKOFF_DELAY = 1000; // 1s
+    private static final long MAX_BACKOFF_DELAY = 60000; // 1mn
+    private static final int MAX_BATCH_SIZE = 5;
+
+    /**
+     * Operations provided by the proxy application.
+     */
+    interface Pool {
+
+        boolean isOnline();
+
+        int getTwincodePoolCount();
+
+        @Nullable
+        TwincodeFactoryPool selectFactoryPool();
+
+        void createTwincodeFactories(@NonNull TwincodeFactoryPool pool, int count,
+                                     @NonNull Consumer<List<TwincodeFactory>> complete);
+
+        void addFreeTwincodeFactory(@NonNull TwincodeFactory twincodeFactory);
+    }
+
+    @NonNull
+    private final Pool mApplication;
+    @NonNull
+    private final TimingWheel mTimers;
+    private final int mLowWatermark;
+    private final int mHighWatermark;
+    private final long mInterval;
+    private final AtomicLong mRefillCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mRefillLatency = new AtomicLong();
+    private final AtomicLong mMaxRefillLatency = new AtomicLong();
+    private boolean mRunning;
+    private long mBackoffDelay;
+
+    TwincodePoolRefiller(@NonNull Pool application, @NonNull TimingWheel timers,
+                         int lowWatermark, int highWatermark, long interval) {
+
+        mApplication = application;
+        mTimers = timers;
+        mLowWatermark = lowWatermark;
+        mHighWatermark = highWatermark;
+        mInterval = interval;
+    }
+
+    /**
+     * Start the refill if the number of free twincodes is below the low watermark.
+     */
+    void check() {
+
+        synchronized (this) {
+            if (mRunning || !mApplication.isOnline() || mApplication.getTwincodePoolCount() >= mLowWatermark) {
+                return;
+            }
+            mRunning = true;
+        }
+        createNext();
+    }
+
+    long getRefillCount() {
+
+        return mRefillCount.get();
+    }
+
+    long getErrorCount() {
+
+        return mErrorCount.get();
+    }
+
+    long getAverageRefillLatency() {
+
+        final long count = mRefillCount.get();
+        return count == 0 ? 0 : mRefillLatency.get() / count;
+    }
+
+    long getMaxRefillLatency() {
+
+        return mMaxRefillLatency.get();
+    }
+
+    private void createNext() {
+
+        final TwincodeFactoryPool pool = mApplication.selectFactoryPool();
+        if (pool == null || !mApplication.isOnline()) {
+            synchronized (this) {
+                mRunning = false;
+            }
+            return;
+        }
+
+        final int count = Math.max(1, Math.min(MAX_BATCH_SIZE, mHighWatermark - mApplication.getTwincodePoolCount()));
+        final long startTime = System.currentTimeMillis();
+        mApplication.createTwincodeFactories(pool, count, (ErrorCode errorCode, List<TwincodeFactory> factories) -> {
+            onCreateTwincodeFactories(startTime, errorCode, factories);
+        });
+    }
+
+    private void onCreateTwincodeFactories(long startTime, @NonNull ErrorCode errorCode, @Nullable List<TwincodeFactory> factories) {
+
+        if (errorCode != ErrorCode.SUCCESS || factories == null || factories.isEmpty()) {
+            final long delay;
+            synchronized (this) {
+                mBackoffDelay = Math.min(MAX_BACKOFF_DELAY, Math.max(MIN_BACKOFF_DELAY, 2 * mBackoffDelay));
+                delay = mBackoffDelay;
+            }
+            Log.warn("Cannot create twincode for the pool: {}, retry in {} ms", errorCode, delay);
+
+            mErrorCount.incrementAndGet();
+            mTimers.schedule(this::retry, delay);
+            return;
+        }
+
+        // The latency is accounted per twincode.
+        final long latency = (System.currentTimeMillis() - startTime) / factories.size();
+        mRefillCount.addAndGet(factories.size());
+        mRefillLatency.addAndGet(latency * factories.size());
+        mMaxRefillLatency.accumulateAndGet(latency, Math::max);
+        for (TwincodeFactory factory : factories) {
+            mApplication.addFreeTwincodeFactory(factory);
+        }
+
+        synchronized (this) {
+            mBackoffDelay = 0;
+            if (mApplication.getTwincodePoolCount() >= mHighWatermark) {
+                mRunning = false;
+                return;
+            }
+        }
+        mTimers.schedule(this::createNext, mInterval);
+    }
+
+    private void retry() {
+
+        synchronized (this) {
+            mRunning = false;
+        }
+        check();
+    }
+}
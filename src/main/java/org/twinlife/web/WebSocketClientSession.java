@@ -9,13 +9,18 @@
 
 package org.twinlife.web;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.UUID;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -24,9 +29,17 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketOpen;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.api.exceptions.CloseException;
 import org.eclipse.jetty.websocket.api.exceptions.WebSocketTimeoutException;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
 import org.twinlife.web.messages.ErrorMessage;
+import org.twinlife.web.requests.ClientRequest;
+import org.twinlife.web.requests.SessionRequest;
+import org.twinlife.web.requests.UnknownRequest;
 import org.twinlife.web.util.ClientAddressFinder;
 import org.twinlife.web.util.Json;
+import org.twinlife.web.util.MessageEncoder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -55,15 +68,54 @@ public class WebSocketClientSession {
     private final ClientAddressFinder mClientAddressFinder;
     @Nullable
     private Session mSession;
+    @Nullable
+    private OutboundQueue mOutboundQueue;
+    @NonNull
+    private final ProxyConfiguration mConfiguration;
+
+    private final class FrameWriter implements OutboundQueue.Writer {
+        @NonNull
+        private final WebSocketSession mWebSocketSession;
+        @NonNull
+        private final CoreSession mCoreSession;
+
+        FrameWriter(@NonNull WebSocketSession session) {
+            mWebSocketSession = session;
+            mCoreSession = session.getCoreSession();
+        }
+
+        @Override
+        @NonNull
+        public RetainableByteBuffer encode(@NonNull Object message) throws IOException {
+
+            return MessageEncoder.encode(mCoreSession.getByteBufferPool(), message);
+        }
+
+        @Override
+        public void write(@NonNull ByteBuffer frame, @NonNull Callback callback) {
+
+            mCoreSession.sendFrame(new Frame(OpCode.TEXT, frame), callback, false);
+        }
+
+        @Override
+        public void disconnect(@NonNull String reason) {
+
+            ProxyEvent.logEvent("slow-consumer", "clientId", mClientId, "reason", reason);
+            mWebSocketSession.disconnect();
+        }
+    }
 
     /**
      * Create a new client session
      *
      * @param clientAddressFinder Instance of {@link ClientAddressFinder} used to retrieve the IP address of client device
+     * @param configuration The proxy configuration with the outbound queue limits
      */
-    public WebSocketClientSession(@NonNull ClientAddressFinder clientAddressFinder) {
+    public WebSocketClientSession(@NonNull ClientAddressFinder clientAddressFinder,
+                                  @NonNull ProxyConfiguration configuration) {
         mClientId = "new client";
         mClientAddressFinder = clientAddressFinder;
+        mConfiguration = configuration;
     }
 
     /**
@@ -77,6 +129,11 @@ public class WebSocketClientSession {
         session.setIdleTimeout(Duration.ofMinutes(5));
 
         mClientAddress = mClientAddressFinder.getClientAddressFromSession(session);
+        if (session instanceof WebSocketSession) {
+            mOutboundQueue = new OutboundQueue(new FrameWriter((WebSocketSession) session),
+                    mConfiguration.websocketQueueMaxMessages, mConfiguration.websocketQueueMaxBytes,
+                    mConfiguration.websocketSlowConsumerTimeout);
+        }
         mSession = session;
     }
 
@@ -85,34 +142,40 @@ public class WebSocketClientSession {
         Log.debug("{} onWebSocketText {}", mClientId, message);
 
         try {
-            final JsonNode jsonNode = Json.getObjectReader().readTree(message);
-            final JsonNode msg = jsonNode.get("msg");
-            if (msg == null || !msg.isTextual()) {
-                Log.debug("Missing 'msg' in message {}", message);
+            final ClientRequest request = Json.getRequestReader().readValue(message);
+            if (request instanceof UnknownRequest) {
+                Log.warn("Unknown message: {}", request.msg);
                 sendMessage(new ErrorMessage("Invalid message"));
                 return;
             }
 
             // First message must be a session-request so that we configure the mClient instance.
             if (mClient == null) {
-                if (!"session-request".equals(msg.asText())) {
+                if (!(request instanceof SessionRequest)) {
                     sendMessage(new ErrorMessage("No client session"));
                     return;
                 }
 
-                String sessionId = Json.getString(jsonNode, "session-id");
+                String sessionId = ((SessionRequest) request).sessionId;
                 if (sessionId == null || !sessionId.startsWith(MAGIC_PREFIX)) {
                     sessionId = UUID.randomUUID().toString();
                 }
                 mClient = ProxyController.createClient(sessionId);
-                mClientId = mClient.mClientId;
+                mClientId = mClient.getClientId();
 
                 mClient.setSession(this, mClientAddress);
                 ProxyEvent.logEvent("connect", "clientId", mClientId,
                         "address", mClientAddress == null ? "?" : mClientAddress.getHostAddress(),
                         "session-id", sessionId);
             }
-            mClient.onMessage(msg.asText(), jsonNode);
+            mClient.onMessage(request);
+
+            // The client identifier changes when the client session moves to another proxy application.
+            mClientId = mClient.getClientId();
+
+        } catch (JsonProcessingException exception) {
+            Log.info("Invalid JSON message {}: {}", message, exception.getMessage());
+            sendMessage(new ErrorMessage("Invalid message"));
 
         } catch (Exception exception) {
             Log.error("Invalid message {}", message, exception);
@@ -145,6 +208,9 @@ public class WebSocketClientSession {
             session.close();
         }
         mSession = null;
+        if (mOutboundQueue != null) {
+            mOutboundQueue.close();
+        }
     }
 
     @OnWebSocketError
@@ -174,18 +240,32 @@ public class WebSocketClientSession {
     }
 
     /**
-     * Send the message to the web socket connection as a JSON content.
+     * Send the message to the web socket connection as a JSON content.  The message is encoded in
+     * a pooled buffer and queued in the outbound queue which releases it when Jetty has written the frame.
      *
      * @param object the object to send.
+     * @return false if the message could not be sent.
      */
     boolean sendMessage(@NonNull Object object) {
         Log.debug("Send message {}", object);
 
+        final Session session = mSession;
+        final OutboundQueue outboundQueue = mOutboundQueue;
         try {
-            final String json = Json.getObjectWriter().writeValueAsString(object);
-            Log.debug("{} send message {}", mClientId, json);
-            if (mSession != null) {
-                mSession.sendText(json, null);
+            if (session instanceof WebSocketSession && outboundQueue != null) {
+                final CoreSession coreSession = ((WebSocketSession) session).getCoreSession();
+                final RetainableByteBuffer buffer = MessageEncoder.encode(coreSession.getByteBufferPool(), object);
+                if (Log.isDebugEnabled()) {
+                    Log.debug("{} send message {}", mClientId, BufferUtil.toUTF8String(buffer.getByteBuffer()));
+                }
+                return outboundQueue.send(object, buffer);
+
+            } else {
+                final String json = Json.getObjectWriter().writeValueAsString(object);
+                Log.debug("{} send message {}", mClientId, json);
+                if (session != null) {
+                    session.sendText(json, null);
+                }
             }
             return true;
 
@@ -0,0 +1,389 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web.cache;
+
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two level cache of the thumbnail images served by the /rest/images API.
+ *
+ * <p>
+ * The first level is an in-heap LRU cache bounded by a number of bytes.  The second level is
+ * an optional directory where each image is saved in a file named after the image id.  The disk
+ * level is also bounded and the least recently used files are removed when it is full.  Images
+ * are immutable so there is no TTL and no invalidation.  Concurrent requests for the same image
+ * are coalesced so that only one GetImageIQ is sent to the server.
+ * </p>
+ * <p>
+ * A disk hit returns the file opened while the disk index is locked: the file can be evicted and removed
+ * while it is sent, the opened channel remains valid.  When the image is small enough for the memory level,
+ * it is read and promoted to the memory level instead.  The files are written by a dedicated thread so that
+ * the disk I/O does not block the thread which receives the image from the server.
+ * </p>
+ */
+public final class ImageCache {
+    static final Logger Log = LogManager.getLogger(ImageCache.class);
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Operation called on a cache miss to retrieve the image from the server.
+     */
+    public interface Loader {
+
+        void load(@NonNull UUID imageId, @NonNull Consumer<byte[]> complete);
+    }
+
+    /**
+     * Image returned by the cache: either the image content or the opened file holding it.
+     * The receiver of the image must close the channel.
+     */
+    public static final class Image {
+        @NonNull
+        public final UUID imageId;
+        @Nullable
+        public final byte[] data;
+        @Nullable
+        public final FileChannel channel;
+        public final long length;
+
+        Image(@NonNull UUID imageId, @NonNull byte[] data) {
+            this.imageId = imageId;
+            this.data = data;
+            this.channel = null;
+            this.length = data.length;
+        }
+
+        Image(@NonNull UUID imageId, @NonNull FileChannel channel, long length) {
+            this.imageId = imageId;
+            this.data = null;
+            this.channel = channel;
+            this.length = length;
+        }
+    }
+
+    private static final class MemoryCache extends LruCache<UUID, byte[]> {
+
+        MemoryCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(UUID imageId, byte[] data) {
+
+            return data.length;
+        }
+    }
+
+    /**
+     * Index of the files in the disk cache, the size is counted in Kb so that the cache can be larger than 2Gb.
+     */
+    private static final class DiskCache extends LruCache<UUID, Long> {
+        final File mDir;
+
+        DiskCache(@NonNull File dir, int maxSizeKb) {
+            super(maxSizeKb);
+
+            mDir = dir;
+        }
+
+        @Override
+        protected int sizeOf(UUID imageId, Long length) {
+
+            return (int) ((length + 1023) / 1024);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, UUID imageId, Long oldValue, Long newValue) {
+
+            if (evicted) {
+                final File file = new File(mDir, imageId.toString());
+                if (!file.delete()) {
+                    Log.warn("Cannot remove cached image {}", file);
+                }
+            }
+        }
+    }
+
+    private final MemoryCache mMemoryCache;
+    @Nullable
+    private final DiskCache mDiskCache;
+    @Nullable
+    private final ExecutorService mDiskWriter;
+    private final int mMaxMemoryEntrySize;
+    private final Map<UUID, List<Consumer<Image>>> mPendingLoads = new HashMap<>();
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mDiskHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+
+    /**
+     * Create the image cache.
+     *
+     * @param maxMemorySize the maximum number of bytes used by the images kept in the heap.
+     * @param diskDir the directory where images are saved or null to disable the disk cache.
+     * @param maxDiskSize the maximum number of bytes used by the images on the disk.
+     */
+    public ImageCache(int maxMemorySize, @Nullable File diskDir, long maxDiskSize) {
+
+        mMemoryCache = new MemoryCache(maxMemorySize);
+
+        // Very large images would evict a lot of small ones, keep them only on the disk.
+        mMaxMemoryEntrySize = maxMemorySize / 8;
+        if (diskDir != null && maxDiskSize > 0) {
+            mDiskCache = new DiskCache(diskDir, (int) Math.min(maxDiskSize / 1024, Integer.MAX_VALUE));
+            mDiskWriter = Executors.newSingleThreadExecutor((Runnable runnable) -> {
+                final Thread thread = new Thread(runnable, "image-cache-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scanDiskCache();
+        } else {
+            mDiskCache = null;
+            mDiskWriter = null;
+        }
+    }
+
+    /**
+     * Get the image from the cache or load it by using the loader.  The completion handler is
+     * called immediately when the image is found in the cache, otherwise it is called when
+     * the loader has finished.
+     *
+     * @param imageId the image to retrieve.
+     * @param loader the operation to load the image from the server.
+     * @param complete the completion handler.
+     */
+    public void getImage(@NonNull UUID imageId, @NonNull Loader loader, @NonNull Consumer<Image> complete) {
+
+        final Image image = peekImage(imageId);
+        if (image != null) {
+            complete.onGet(ErrorCode.SUCCESS, image);
+            return;
+        }
+
+        synchronized (mPendingLoads) {
+            List<Consumer<Image>> waiters = mPendingLoads.get(imageId);
+            if (waiters != null) {
+                mCoalescedCount.incrementAndGet();
+                waiters.add(complete);
+                return;
+            }
+
+            waiters = new ArrayList<>();
+            waiters.add(complete);
+            mPendingLoads.put(imageId, waiters);
+        }
+
+        mMissCount.incrementAndGet();
+        loader.load(imageId, (ErrorCode status, byte[] data) -> onLoad(imageId, status, data));
+    }
+
+    /**
+     * Get the image if it is present in the memory cache or in the disk cache.  When a large image is
+     * found on the disk, the returned image holds the opened file which must be closed by the caller.
+     *
+     * @param imageId the image id.
+     * @return the image or null.
+     */
+    @Nullable
+    public Image peekImage(@NonNull UUID imageId) {
+
+        final byte[] data = mMemoryCache.get(imageId);
+        if (data != null) {
+            mHitCount.incrementAndGet();
+            return new Image(imageId, data);
+        }
+
+        if (mDiskCache == null) {
+            return null;
+        }
+
+        // Open the file while holding the index lock: an eviction removes the file under the same lock.
+        final FileChannel channel;
+        final long length;
+        synchronized (mDiskCache) {
+            final Long size = mDiskCache.get(imageId);
+            if (size == null) {
+                return null;
+            }
+            final File file = new File(mDiskCache.mDir, imageId.toString());
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                length = size;
+
+            } catch (IOException exception) {
+                Log.warn("Cannot open cached image {}: {}", file, exception.getMessage());
+                mDiskCache.remove(imageId);
+                return null;
+            }
+        }
+
+        mDiskHitCount.incrementAndGet();
+        if (length > mMaxMemoryEntrySize) {
+            return new Image(imageId, channel, length);
+        }
+
+        // Promote the small image to the memory level, the next requests will not touch the disk.
+        try (FileChannel input = channel) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && input.read(buffer) >= 0) {
+                // Read the whole file.
+            }
+            if (buffer.hasRemaining()) {
+                Log.warn("Cached image {} is truncated", imageId);
+                return null;
+            }
+            mMemoryCache.put(imageId, buffer.array());
+            return new Image(imageId, buffer.array());
+
+        } catch (IOException exception) {
+            Log.warn("Cannot read cached image {}: {}", imageId, exception.getMessage());
+            return null;
+        }
+    }
+
+    public long getHitCount() {
+
+        return mHitCount.get();
+    }
+
+    public long getDiskHitCount() {
+
+        return mDiskHitCount.get();
+    }
+
+    public long getMissCount() {
+
+        return mMissCount.get();
+    }
+
+    public long getCoalescedCount() {
+
+        return mCoalescedCount.get();
+    }
+
+    public int getEvictionCount() {
+
+        return mMemoryCache.evictionCount();
+    }
+
+    public int getMemorySize() {
+
+        return mMemoryCache.size();
+    }
+
+    public long getDiskSize() {
+
+        return mDiskCache == null ? 0 : mDiskCache.size() * 1024L;
+    }
+
+    private void onLoad(@NonNull UUID imageId, @NonNull ErrorCode status, @Nullable byte[] data) {
+        Log.debug("Loaded image {} status {}", imageId, status);
+
+        final List<Consumer<Image>> waiters;
+        synchronized (mPendingLoads) {
+            waiters = mPendingLoads.remove(imageId);
+        }
+
+        final Image image;
+        if (status == ErrorCode.SUCCESS && data != null) {
+            image = new Image(imageId, data);
+            if (data.length <= mMaxMemoryEntrySize) {
+                mMemoryCache.put(imageId, data);
+            }
+        } else {
+            image = null;
+        }
+
+        if (waiters != null) {
+            for (Consumer<Image> complete : waiters) {
+                complete.onGet(status, image);
+            }
+        }
+
+        // Save on disk after the response so that the waiters are not delayed by the write.
+        if (image != null && mDiskWriter != null) {
+            try {
+                mDiskWriter.execute(() -> saveImage(imageId, data));
+
+            } catch (RejectedExecutionException exception) {
+                Log.warn("Image {} not saved: cache writer is stopped", imageId);
+            }
+        }
+    }
+
+    private void saveImage(@NonNull UUID imageId, @NonNull byte[] data) {
+
+        final File file = new File(mDiskCache.mDir, imageId.toString());
+        final File tmpFile = new File(mDiskCache.mDir, imageId + TMP_SUFFIX);
+        try {
+            Files.write(tmpFile.toPath(), data);
+            synchronized (mDiskCache) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                mDiskCache.put(imageId, (long) data.length);
+            }
+
+        } catch (IOException exception) {
+            Log.warn("Cannot save image {} in {}: {}", imageId, mDiskCache.mDir, exception.getMessage());
+            Utils.deleteFile("image", tmpFile);
+        }
+    }
+
+    /**
+     * Populate the disk cache index from the files saved by a previous run.
+     */
+    private void scanDiskCache() {
+
+        final File dir = mDiskCache.mDir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.error("Cannot create image cache directory {}", dir);
+            return;
+        }
+
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            final UUID imageId = Utils.UUIDFromString(file.getName());
+            if (imageId == null || !file.isFile()) {
+                // Partial write from a previous run.
+                Utils.deleteFile("image", file);
+            } else {
+                mDiskCache.put(imageId, file.length());
+            }
+        }
+        Log.info("Image cache {} contains {} images", dir, mDiskCache.snapshot().size());
+    }
+}
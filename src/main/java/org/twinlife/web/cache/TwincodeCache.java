@@ -0,0 +1,230 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web.cache;
+
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.TwincodeOutbound;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of twincode outbound shared by all the ProxyApplication instances.
+ *
+ * <p>
+ * Entries are kept for a fixed TTL and the least recently used entries are dropped when the
+ * cache is full.  When several requests are made for the same twincode while it is being
+ * fetched from the server, only one GetTwincodeIQ is sent and the other requests are queued
+ * until the first one completes.  ITEM_NOT_FOUND errors are also cached for a shorter period
+ * so that scanning an invalid QR code in a loop does not hit the Openfire server.
+ * </p>
+ */
+public final class TwincodeCache {
+    static final Logger Log = LogManager.getLogger(TwincodeCache.class);
+
+    /**
+     * Operation called on a cache miss to retrieve the twincode from the server.
+     */
+    public interface Loader {
+
+        void load(@NonNull UUID twincodeId, @NonNull Consumer<TwincodeOutbound> complete);
+    }
+
+    private static final class Entry {
+        @Nullable
+        final TwincodeOutbound twincode;
+        final long expireTime;
+
+        Entry(@Nullable TwincodeOutbound twincode, long expireTime) {
+            this.twincode = twincode;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private static final class PendingLoad {
+        final List<Consumer<TwincodeOutbound>> waiters = new ArrayList<>();
+        boolean invalidated;
+    }
+
+    private final LruCache<UUID, Entry> mCache;
+    private final Map<UUID, PendingLoad> mPendingLoads = new HashMap<>();
+    private final long mTtl;
+    private final long mNotFoundTtl;
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mInvalidateCount = new AtomicLong();
+
+    /**
+     * Create the twincode cache.
+     *
+     * @param maxSize the maximum number of twincodes kept in the cache.
+     * @param ttl the time in milliseconds a twincode is kept in the cache.
+     * @param notFoundTtl the time in milliseconds a ITEM_NOT_FOUND result is kept (0 to disable).
+     */
+    public TwincodeCache(int maxSize, long ttl, long notFoundTtl) {
+
+        mCache = new LruCache<>(maxSize);
+        mTtl = ttl;
+        mNotFoundTtl = notFoundTtl;
+    }
+
+    /**
+     * Get the twincode from the cache or load it by using the loader.  The completion handler is
+     * called immediately when the twincode is found in the cache, otherwise it is called when
+     * the loader has finished.
+     *
+     * @param twincodeId the twincode to retrieve.
+     * @param loader the operation to load the twincode from the server.
+     * @param complete the completion handler.
+     */
+    public void getTwincode(@NonNull UUID twincodeId, @NonNull Loader loader,
+                            @NonNull Consumer<TwincodeOutbound> complete) {
+
+        final Entry entry = getEntry(twincodeId);
+        if (entry != null) {
+            mHitCount.incrementAndGet();
+            if (entry.twincode == null) {
+                complete.onGet(ErrorCode.ITEM_NOT_FOUND, null);
+            } else {
+                complete.onGet(ErrorCode.SUCCESS, entry.twincode);
+            }
+            return;
+        }
+
+        synchronized (mPendingLoads) {
+            PendingLoad pending = mPendingLoads.get(twincodeId);
+            if (pending != null) {
+                mCoalescedCount.incrementAndGet();
+                pending.waiters.add(complete);
+                return;
+            }
+
+            pending = new PendingLoad();
+            pending.waiters.add(complete);
+            mPendingLoads.put(twincodeId, pending);
+        }
+
+        mMissCount.incrementAndGet();
+        loader.load(twincodeId, (ErrorCode status, TwincodeOutbound twincode) -> onLoad(twincodeId, status, twincode));
+    }
+
+    /**
+     * Get the twincode if it is present in the cache and has not expired.
+     *
+     * @param twincodeId the twincode id.
+     * @return the twincode or null.
+     */
+    @Nullable
+    public TwincodeOutbound peekTwincode(@NonNull UUID twincodeId) {
+
+        final Entry entry = getEntry(twincodeId);
+        return entry == null ? null : entry.twincode;
+    }
+
+    /**
+     * Remove the twincode from the cache because it was updated or refreshed.  If the twincode
+     * is being loaded, the result will be given to the pending requests but it is not cached.
+     *
+     * @param twincodeId the twincode to remove.
+     */
+    public void invalidate(@NonNull UUID twincodeId) {
+        Log.debug("Invalidate twincode {}", twincodeId);
+
+        mInvalidateCount.incrementAndGet();
+        synchronized (mPendingLoads) {
+            mCache.remove(twincodeId);
+            final PendingLoad pending = mPendingLoads.get(twincodeId);
+            if (pending != null) {
+                pending.invalidated = true;
+            }
+        }
+    }
+
+    public long getHitCount() {
+
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+
+        return mMissCount.get();
+    }
+
+    public long getCoalescedCount() {
+
+        return mCoalescedCount.get();
+    }
+
+    public long getInvalidateCount() {
+
+        return mInvalidateCount.get();
+    }
+
+    public int getEvictionCount() {
+
+        return mCache.evictionCount();
+    }
+
+    public int size() {
+
+        return mCache.size();
+    }
+
+    @Nullable
+    private Entry getEntry(@NonNull UUID twincodeId) {
+
+        synchronized (mCache) {
+            final Entry entry = mCache.get(twincodeId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireTime < System.currentTimeMillis()) {
+                mCache.remove(twincodeId);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void onLoad(@NonNull UUID twincodeId, @NonNull ErrorCode status, @Nullable TwincodeOutbound twincode) {
+        Log.debug("Loaded twincode {} status {}", twincodeId, status);
+
+        // Insert the result while holding the pending loads lock so that an invalidate() cannot
+        // happen between the removal of the pending load and the insertion in the cache.
+        final PendingLoad pending;
+        synchronized (mPendingLoads) {
+            pending = mPendingLoads.remove(twincodeId);
+            if (pending == null || !pending.invalidated) {
+                final long now = System.currentTimeMillis();
+                if (status == ErrorCode.SUCCESS && twincode != null) {
+                    mCache.put(twincodeId, new Entry(twincode, now + mTtl));
+                } else if (status == ErrorCode.ITEM_NOT_FOUND && mNotFoundTtl > 0) {
+                    mCache.put(twincodeId, new Entry(null, now + mNotFoundTtl));
+                }
+            }
+        }
+
+        if (pending != null) {
+            for (Consumer<TwincodeOutbound> complete : pending.waiters) {
+                complete.onGet(status, twincode);
+            }
+        }
+    }
+}
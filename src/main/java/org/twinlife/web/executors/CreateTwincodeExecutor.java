@@ -26,10 +26,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Create a twincode for the twincode factory pool.
+ * Create one or several twincodes for the twincode factory pool.
  *
- * - create the twincode with the TwincodeFactoryService,
- * - save the set of 4 twincodes in the TwincodeFactoryPool instance on the server.
+ * - create the twincodes with the TwincodeFactoryService, one at a time,
+ * - save the set of 4 twincodes of each factory in the TwincodeFactoryPool instance on the server,
+ *   only once for the whole batch.
  */
 public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
     static final Logger Log = LogManager.getLogger(CreateTwincodeExecutor.class);
@@ -40,25 +41,48 @@ public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
     private static final int UPDATE_FACTORY_DONE = 1 << 4;
 
     private final TwinlifeContext mTwinlifeContext;
-    private final Consumer<TwincodeFactory> mComplete;
+    private final Consumer<List<TwincodeFactory>> mComplete;
     private final TwincodeFactoryPool mFactoryPool;
     private final RepositoryService mRepositoryService;
+    private final int mCount;
+    private final List<TwincodeFactory> mTwincodeFactories;
     private boolean mRestarted;
     private boolean mStopped;
     private int mState;
-    private TwincodeFactory mTwincodeFactory;
+    private ErrorCode mErrorCode;
 
     public CreateTwincodeExecutor(@NonNull TwinlifeContext twinlifeContext,
                                   @NonNull TwincodeFactoryPool pool,
                                   @NonNull Consumer<TwincodeFactory> complete) {
-        Log.info("Create twincode factory for pool {}", pool.getId());
+
+        this(twinlifeContext, pool, 1, (ErrorCode errorCode, List<TwincodeFactory> factories) -> {
+            complete.onGet(errorCode, factories == null || factories.isEmpty() ? null : factories.get(0));
+        });
+    }
+
+    /**
+     * Create a batch of twincodes.  When an error occurs after some twincodes are created, they are
+     * saved in the pool object and returned with a SUCCESS status.
+     *
+     * @param twinlifeContext the twinlife context.
+     * @param pool the twincode factory pool object.
+     * @param count the number of twincodes to create.
+     * @param complete the completion handler called with the created twincodes.
+     */
+    public CreateTwincodeExecutor(@NonNull TwinlifeContext twinlifeContext,
+                                  @NonNull TwincodeFactoryPool pool, int count,
+                                  @NonNull Consumer<List<TwincodeFactory>> complete) {
+        Log.info("Create {} twincode factories for pool {}", count, pool.getId());
 
         mRestarted = false;
         mStopped = false;
         mState = 0;
         mTwinlifeContext = twinlifeContext;
         mFactoryPool = pool;
+        mCount = count;
+        mTwincodeFactories = new ArrayList<>(count);
         mComplete = complete;
+        mErrorCode = ErrorCode.SUCCESS;
         mRepositoryService = twinlifeContext.getRepositoryService();
         twinlifeContext.setObserver(this);
     }
@@ -93,7 +117,7 @@ public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
         }
 
         //
-        // Step 1: create the public profile twincode.
+        // Step 1: create the twincodes, one at a time.
         //
         if ((mState & CREATE_TWINCODE) == 0) {
             mState |= CREATE_TWINCODE;
@@ -115,6 +139,11 @@ public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
         //
         // Step 2: save the twincode factory pool object on the server.
         //
+        if (mTwincodeFactories.isEmpty()) {
+            mComplete.onGet(mErrorCode, null);
+            stop();
+            return;
+        }
         if ((mState & UPDATE_FACTORY) == 0) {
             mState |= UPDATE_FACTORY;
 
@@ -128,7 +157,7 @@ public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
         //
         // Last Step
         //
-        mComplete.onGet(ErrorCode.SUCCESS, mTwincodeFactory);
+        mComplete.onGet(ErrorCode.SUCCESS, mTwincodeFactories);
 
         stop();
     }
@@ -143,14 +172,20 @@ public class CreateTwincodeExecutor extends TwinlifeContext.DefaultObserver {
                 return;
             }
 
-            mComplete.onGet(errorCode, null);
-            stop();
+            // Save the twincodes already created.
+            mErrorCode = errorCode;
+            mState |= CREATE_TWINCODE_DONE;
+            onOperation();
             return;
         }
 
-        mState |= CREATE_TWINCODE_DONE;
-        mTwincodeFactory = twincodeFactory;
+        mTwincodeFactories.add(twincodeFactory);
         mFactoryPool.add(twincodeFactory);
+        if (mTwincodeFactories.size() < mCount) {
+            mState &= ~CREATE_TWINCODE;
+        } else {
+            mState |= CREATE_TWINCODE_DONE;
+        }
         onOperation();
     }
 
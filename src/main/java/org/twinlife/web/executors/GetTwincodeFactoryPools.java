@@ -136,14 +136,10 @@ public class GetTwincodeFactoryPools extends TwinlifeContext.DefaultObserver {
             if ((mState & CREATE_TWINCODE) == 0) {
                 mState |= CREATE_TWINCODE;
 
-                new CreateTwincodeExecutor(mTwinlifeContext, mFactoryPool,
-                        (ErrorCode errorCode, TwincodeFactory twincodeFactory) -> {
-                    if (mCreateTwincode > 0) {
-                        mCreateTwincode--;
-                        mState &= ~CREATE_TWINCODE;
-                    } else {
-                        mState |= CREATE_TWINCODE_DONE;
-                    }
+                // Create the twincodes and save the pool object only once.
+                new CreateTwincodeExecutor(mTwinlifeContext, mFactoryPool, mCreateTwincode,
+                        (ErrorCode errorCode, List<TwincodeFactory> twincodeFactories) -> {
+                    mState |= CREATE_TWINCODE_DONE;
                     onOperation();
                 });
                 return;
@@ -179,7 +175,7 @@ public class GetTwincodeFactoryPools extends TwinlifeContext.DefaultObserver {
                 TwincodeFactoryPool factoryPool = (TwincodeFactoryPool) factory;
                 mTwincodePools.add(factoryPool);
                 Log.debug("Twincode factory {}", factoryPool);
-                if (factoryPool.getTwincodeFactories().size() < 10) {
+                if (factoryPool.size() < 10) {
                     mFactoryPool = factoryPool;
                     mCreateTwincode = 10;
                 }
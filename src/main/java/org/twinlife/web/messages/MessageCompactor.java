@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.messages;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remove the messages waiting to be sent to the browser that are superseded by a later message.
+ *
+ * <ul>
+ * <li>a pong is useless when other messages are sent,</li>
+ * <li>messages of a P2P session are dropped when the session-terminate for the same session follows,</li>
+ * <li>transport-info messages of the same P2P session are merged in the last one so that the
+ * candidates are never sent before a session-accept or session-update that precedes them.</li>
+ * </ul>
+ */
+public final class MessageCompactor {
+
+    // Prevent any instantiation of this class
+    private MessageCompactor() {
+    }
+
+    /**
+     * Get the P2P session id of the message.
+     *
+     * @param message the message.
+     * @return the P2P session id or null.
+     */
+    @Nullable
+    public static String getSessionId(@NonNull Object message) {
+
+        if (message instanceof TransportInfoMessage) {
+            return ((TransportInfoMessage) message).sessionId;
+        } else if (message instanceof SessionUpdateMessage) {
+            return ((SessionUpdateMessage) message).sessionId;
+        } else if (message instanceof SessionAcceptMessage) {
+            return ((SessionAcceptMessage) message).sessionId;
+        } else if (message instanceof SessionInitiateMessage) {
+            return ((SessionInitiateMessage) message).sessionId;
+        } else if (message instanceof DeviceRingingMessage) {
+            return ((DeviceRingingMessage) message).sessionId;
+        } else if (message instanceof SessionTerminateMessage) {
+            return ((SessionTerminateMessage) message).sessionId;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Compact the list of messages.  The messages which are not modified are returned as is so that
+     * the caller can identify them, merged transport-info are new instances.
+     *
+     * @param messages the messages in the order they must be sent.
+     * @return the compacted list of messages.
+     */
+    @NonNull
+    public static List<Object> compact(@NonNull List<Object> messages) {
+
+        // Find the P2P sessions which are terminated and the last transport-info of each session.
+        final Set<String> terminated = new HashSet<>();
+        final Map<String, Integer> lastTransportInfo = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final Object message = messages.get(i);
+            if (message instanceof SessionTerminateMessage) {
+                terminated.add(((SessionTerminateMessage) message).sessionId);
+            } else if (message instanceof TransportInfoMessage) {
+                lastTransportInfo.put(((TransportInfoMessage) message).sessionId, i);
+            }
+        }
+
+        final Map<String, List<CandidateInfo>> candidates = new HashMap<>();
+        final List<Object> result = new ArrayList<>(messages.size());
+        final int last = messages.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            final Object message = messages.get(i);
+            if (message instanceof PingPongMessage && i != last) {
+                continue;
+            }
+
+            final String sessionId = getSessionId(message);
+            if (sessionId != null && terminated.contains(sessionId) && !(message instanceof SessionTerminateMessage)) {
+                continue;
+            }
+
+            if (message instanceof TransportInfoMessage) {
+                final TransportInfoMessage transportInfo = (TransportInfoMessage) message;
+                final List<CandidateInfo> previous = candidates.get(sessionId);
+                if (lastTransportInfo.get(sessionId) != i) {
+                    final List<CandidateInfo> list = previous == null ? new ArrayList<>() : previous;
+                    if (transportInfo.candidates != null) {
+                        list.addAll(transportInfo.candidates);
+                    }
+                    candidates.put(sessionId, list);
+                    continue;
+                }
+
+                if (previous != null) {
+                    final TransportInfoMessage merged = new TransportInfoMessage();
+                    merged.sessionId = sessionId;
+                    merged.candidates = previous;
+                    if (transportInfo.candidates != null) {
+                        previous.addAll(transportInfo.candidates);
+                    }
+                    result.add(merged);
+                    continue;
+                }
+            }
+            result.add(message);
+        }
+        return result;
+    }
+}
@@ -36,6 +36,9 @@ public class TwincodeFactoryPool implements RepositoryObject {
     private final UUID mId;
     @NonNull
     private final List<TwincodeFactory> mTwincodes;
+    // The encoded attribute of each twincode factory, in the same order as mTwincodes.
+    @NonNull
+    private final List<AttributeNameValue> mEncodedTwincodes;
 
     TwincodeFactoryPool(@NonNull DatabaseIdentifier identifier, @NonNull UUID uuid,
                         long creationDate, @Nullable String name, @Nullable String description,
@@ -46,6 +49,7 @@ public class TwincodeFactoryPool implements RepositoryObject {
         mId = uuid;
         mCreationDate = creationDate;
         mTwincodes = new ArrayList<>();
+        mEncodedTwincodes = new ArrayList<>();
         update(name, description, attributes, modificationDate);
     }
 
@@ -62,6 +66,7 @@ public class TwincodeFactoryPool implements RepositoryObject {
                             TwincodeFactory factory = createFactory((String) value.value);
                             if (factory != null) {
                                 mTwincodes.add(factory);
+                                mEncodedTwincodes.add(value);
                             }
                         }
                     }
@@ -112,17 +117,9 @@ public class TwincodeFactoryPool implements RepositoryObject {
     @NonNull
     public List<BaseService.AttributeNameValue> getAttributes(boolean exportAll) {
         final List<AttributeNameValue> attributes = new ArrayList<>();
-        final List<AttributeNameValue> twincodes = new ArrayList<>();
-        for (TwincodeFactory factory : getTwincodeFactories()) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(factory.getId());
-            sb.append(".");
-            sb.append(factory.getTwincodeInbound().getId());
-            sb.append(".");
-            sb.append(factory.getTwincodeOutbound().getId());
-            sb.append(".");
-            sb.append(factory.getTwincodeSwitchId());
-            twincodes.add(new AttributeNameStringValue("twincode", sb.toString()));
+        final List<AttributeNameValue> twincodes;
+        synchronized (this) {
+            twincodes = new ArrayList<>(mEncodedTwincodes);
         }
         attributes.add(new AttributeNameListValue("twincodes", twincodes));
 
@@ -139,9 +136,24 @@ public class TwincodeFactoryPool implements RepositoryObject {
         return new ArrayList<>(mTwincodes);
     }
 
+    public synchronized int size() {
+
+        return mTwincodes.size();
+    }
+
     public synchronized void add(@NonNull TwincodeFactory factory) {
 
+        // Encode the twincode factory once when it is added.
+        final StringBuilder sb = new StringBuilder(4 * 36 + 3);
+        sb.append(factory.getId());
+        sb.append('.');
+        sb.append(factory.getTwincodeInbound().getId());
+        sb.append('.');
+        sb.append(factory.getTwincodeOutbound().getId());
+        sb.append('.');
+        sb.append(factory.getTwincodeSwitchId());
         mTwincodes.add(factory);
+        mEncodedTwincodes.add(new AttributeNameStringValue("twincode", sb.toString()));
     }
 
     @Override
@@ -154,15 +166,18 @@ public class TwincodeFactoryPool implements RepositoryObject {
     @Nullable
     private static TwincodeFactory createFactory(@NonNull String content) {
 
-        final String[] uuids = content.split("\\.");
-        if (uuids.length != 4) {
+        // Content is <id>.<inbound>.<outbound>.<switch>, the UUIDs don't contain any '.'.
+        final int sep1 = content.indexOf('.');
+        final int sep2 = sep1 < 0 ? -1 : content.indexOf('.', sep1 + 1);
+        final int sep3 = sep2 < 0 ? -1 : content.indexOf('.', sep2 + 1);
+        if (sep3 < 0 || content.indexOf('.', sep3 + 1) >= 0) {
             return null;
         }
 
-        UUID id = Utils.UUIDFromString(uuids[0]);
-        UUID twincodeInboundId = Utils.UUIDFromString(uuids[1]);
-        UUID twincodeOutboundId = Utils.UUIDFromString(uuids[2]);
-        UUID twincodeSwitchId = Utils.UUIDFromString(uuids[3]);
+        UUID id = Utils.UUIDFromString(content.substring(0, sep1));
+        UUID twincodeInboundId = Utils.UUIDFromString(content.substring(sep1 + 1, sep2));
+        UUID twincodeOutboundId = Utils.UUIDFromString(content.substring(sep2 + 1, sep3));
+        UUID twincodeSwitchId = Utils.UUIDFromString(content.substring(sep3 + 1));
         if (id == null || twincodeOutboundId == null || twincodeInboundId == null || twincodeSwitchId == null) {
             return null;
         }
@@ -0,0 +1,41 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import org.twinlife.web.messages.InviteCallRoomMessage;
+import org.twinlife.web.messages.SessionAcceptMessage;
+import org.twinlife.web.messages.SessionInitiateMessage;
+import org.twinlife.web.messages.SessionTerminateMessage;
+import org.twinlife.web.messages.SessionUpdateMessage;
+import org.twinlife.web.messages.TransportInfoMessage;
+
+/**
+ * Message received from the browser on the WebSocket connection.
+ *
+ * The 'msg' property selects the request class and the JSON content is bound directly
+ * in the request object while it is parsed.  When 'msg' is missing or not known,
+ * an UnknownRequest is returned.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "msg",
+        visible = true, defaultImpl = UnknownRequest.class)
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = SessionRequest.class, name = SessionRequest.NAME),
+        @JsonSubTypes.Type(value = PingRequest.class, name = PingRequest.NAME),
+        @JsonSubTypes.Type(value = SessionInitiateRequest.class, name = SessionInitiateMessage.NAME),
+        @JsonSubTypes.Type(value = SessionAcceptRequest.class, name = SessionAcceptMessage.NAME),
+        @JsonSubTypes.Type(value = SessionUpdateRequest.class, name = SessionUpdateMessage.NAME),
+        @JsonSubTypes.Type(value = TransportInfoRequest.class, name = TransportInfoMessage.NAME),
+        @JsonSubTypes.Type(value = SessionTerminateRequest.class, name = SessionTerminateMessage.NAME),
+        @JsonSubTypes.Type(value = InviteCallRoomRequest.class, name = InviteCallRoomMessage.NAME)
+})
+public abstract class ClientRequest {
+
+    public String msg;
+}
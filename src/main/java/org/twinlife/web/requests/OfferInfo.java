@@ -0,0 +1,17 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+public class OfferInfo {
+
+    public boolean audio;
+    public boolean video;
+    public boolean videoBell;
+    public boolean data;
+    public boolean transfer;
+}
@@ -0,0 +1,15 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+public class OfferToReceiveInfo {
+
+    public boolean audio;
+    public boolean video;
+    public boolean data;
+}
@@ -0,0 +1,13 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+public class PingRequest extends ClientRequest {
+
+    public static final String NAME = "ping";
+}
@@ -0,0 +1,19 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+public class SessionAcceptRequest extends ClientRequest {
+
+    public String to;
+    public String sessionId;
+    public String sdp;
+    public OfferInfo offer;
+    public OfferToReceiveInfo offerToReceive;
+    public int maxFrameSize;
+    public int maxFrameRate;
+}
@@ -0,0 +1,18 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SessionRequest extends ClientRequest {
+
+    public static final String NAME = "session-request";
+
+    @JsonProperty("session-id")
+    public String sessionId;
+}
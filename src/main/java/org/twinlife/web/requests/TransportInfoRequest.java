@@ -0,0 +1,18 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.requests;
+
+import org.twinlife.web.messages.CandidateInfo;
+
+import java.util.List;
+
+public class TransportInfoRequest extends ClientRequest {
+
+    public String sessionId;
+    public List<CandidateInfo> candidates;
+}
@@ -10,6 +10,7 @@ package org.twinlife.web.rest;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import jakarta.ws.rs.OPTIONS;
+import jakarta.ws.rs.Path;
 import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
@@ -28,52 +29,160 @@ public class Api {
                          @NonNull final ErrorCode errorCode,
                          @Nullable final String parameter) {
         Log.error("Return error {}", errorCode);
+
+        final ErrorBean error = toErrorBean(errorCode, parameter);
+        final Response.ResponseBuilder responseBuilder = Response.status(toStatus(errorCode));
+        asyncResponse.resume(responseBuilder.entity(error).type(MediaType.APPLICATION_JSON).build());
+    }
+
+    /**
+     * Build the error description returned to the client for the error code.
+     *
+     * @param errorCode the error code.
+     * @param parameter the parameter that caused the error.
+     * @return the error bean.
+     */
+    @NonNull
+    protected static ErrorBean toErrorBean(@NonNull final ErrorCode errorCode,
+                                           @Nullable final String parameter) {
         ErrorBean error = new ErrorBean();
         error.setParameter(parameter);
 
-        final Response.ResponseBuilder responseBuilder;
         if (errorCode == ErrorCode.ITEM_NOT_FOUND) {
             error.setMessage("item was not found");
             error.setCode(1);
-            responseBuilder = Response.status(Response.Status.NOT_FOUND);
 
         } else if (errorCode == ErrorCode.SERVICE_UNAVAILABLE) {
             error.setMessage("service is not available, try again later");
             error.setCode(100);
-            responseBuilder = Response.status(Response.Status.SERVICE_UNAVAILABLE);
 
         } else if (errorCode == ErrorCode.BAD_REQUEST) {
             error.setMessage("invalid request or parameter");
             error.setCode(2);
-            responseBuilder = Response.status(Response.Status.BAD_REQUEST);
 
         } else if (errorCode == ErrorCode.NO_STORAGE_SPACE) {
             error.setMessage("not enough space on server");
             error.setCode(200);
-            responseBuilder = Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE);
 
         } else if (errorCode == ErrorCode.TWINLIFE_OFFLINE) {
             error.setMessage("server is offline, try again later");
             error.setCode(101);
-            responseBuilder = Response.status(Response.Status.SERVICE_UNAVAILABLE);
 
         } else {
             error.setMessage("server internal error, something wrong happened");
             error.setCode(300);
-            responseBuilder = Response.status(Response.Status.INTERNAL_SERVER_ERROR);
         }
-        asyncResponse.resume(responseBuilder.entity(error).type(MediaType.APPLICATION_JSON).build());
+        return error;
+    }
+
+    @NonNull
+    private static Response.Status toStatus(@NonNull final ErrorCode errorCode) {
+
+        switch (errorCode) {
+            case ITEM_NOT_FOUND:
+                return Response.Status.NOT_FOUND;
+
+            case SERVICE_UNAVAILABLE:
+            case TWINLIFE_OFFLINE:
+                return Response.Status.SERVICE_UNAVAILABLE;
+
+            case BAD_REQUEST:
+                return Response.Status.BAD_REQUEST;
+
+            case NO_STORAGE_SPACE:
+                return Response.Status.REQUEST_ENTITY_TOO_LARGE;
+
+            default:
+                return Response.Status.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    /**
+     * Check if the If-None-Match header value contains the entity tag.  The weak comparison is used
+     * as defined by RFC 9110 section 13.1.2.
+     *
+     * @param ifNoneMatch the If-None-Match header value or null.
+     * @param etag the current entity tag of the resource.
+     * @return true if the client already has the current version.
+     */
+    protected static boolean matchETag(@Nullable final String ifNoneMatch, @NonNull final String etag) {
+
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+
+        final String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        int pos = 0;
+        final int len = ifNoneMatch.length();
+        while (pos < len) {
+            char c = ifNoneMatch.charAt(pos);
+            if (c == ' ' || c == ',' || c == '\t') {
+                pos++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+            if (c == 'W' && ifNoneMatch.startsWith("W/", pos)) {
+                pos += 2;
+            }
+            int end = ifNoneMatch.indexOf(',', pos);
+            if (end < 0) {
+                end = len;
+            }
+            if (ifNoneMatch.substring(pos, end).trim().equals(opaqueTag)) {
+                return true;
+            }
+            pos = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Build the 304 Not Modified response for the entity tag.
+     *
+     * @param etag the current entity tag of the resource.
+     * @param cacheControl the Cache-Control policy of the resource.
+     * @return the response.
+     */
+    @NonNull
+    protected static Response notModified(@NonNull final String etag, @NonNull final String cacheControl) {
+
+        return Response.notModified().header("ETag", etag).header("Cache-Control", cacheControl)
+                .header("Access-Control-Allow-Origin", "*").build();
     }
 
     @OPTIONS
     public Response options() {
         Log.error("CORS request");
 
+        return preflight();
+    }
+
+    /**
+     * Answer the CORS preflight for the sub-resources such as GET /twincodes/{id}.
+     *
+     * @return the CORS response.
+     */
+    @OPTIONS
+    @Path("{path: .+}")
+    public Response subResourceOptions() {
+
+        return options();
+    }
+
+    /**
+     * Build the CORS preflight response.
+     *
+     * @return the CORS response.
+     */
+    @NonNull
+    static Response preflight() {
+
         Response.ResponseBuilder result = Response.noContent().header("Access-Control-Allow-Origin", "*");
         result.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, HEAD");
         result.header("Access-Control-Allow-Credentials", "true");
-        result.header("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept");
+        result.header("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, If-None-Match");
         return result.build();
     }
-
 }
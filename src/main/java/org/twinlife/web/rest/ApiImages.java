@@ -7,20 +7,29 @@
  */
 package org.twinlife.web.rest;
 
-import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.CompletionCallback;
 import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.twinlife.twinlife.BaseService.ErrorCode;
 import org.twinlife.twinlife.util.Utils;
 import org.twinlife.web.ProxyApplication;
 import org.twinlife.web.ProxyController;
+import org.twinlife.web.cache.ImageCache;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.UUID;
 
 /**
@@ -30,6 +39,9 @@ import java.util.UUID;
 public class ApiImages extends Api {
     static final Logger Log = LogManager.getLogger(ApiImages.class);
 
+    // Images are immutable: a new image id is allocated when an avatar is changed.
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     /**
      * Method handling HTTP GET requests. The returned object will be sent
      * to the client as "text/plain" media type.
@@ -39,6 +51,7 @@ public class ApiImages extends Api {
     @GET
     @Path("{imageId}")
     public void getImage(@PathParam("imageId") String image,
+                         @HeaderParam("If-None-Match") String ifNoneMatch,
                          @Suspended final AsyncResponse asyncResponse) {
 
         Log.info("getImage with id {}", image);
@@ -51,14 +64,15 @@ public class ApiImages extends Api {
             return;
         }
 
-        final ProxyApplication application = ProxyController.getProxyApplication();
-        if (application == null) {
-
-            error(asyncResponse, ErrorCode.SERVICE_UNAVAILABLE, image);
+        // The image content never changes for a given id, the client copy is always valid.
+        final String etag = "\"" + imageId + "\"";
+        if (matchETag(ifNoneMatch, etag)) {
+            asyncResponse.resume(notModified(etag, CACHE_CONTROL));
             return;
         }
 
-        application.getImage(imageId, (ErrorCode status, Bitmap result) -> {
+        final ProxyApplication application = ProxyController.getProxyApplication();
+        application.getImage(imageId, (ErrorCode status, ImageCache.Image result) -> {
             if (status != ErrorCode.SUCCESS || result == null) {
                 if (status == ErrorCode.TWINLIFE_OFFLINE) {
                     error(asyncResponse, ErrorCode.SERVICE_UNAVAILABLE, image);
@@ -66,11 +80,53 @@ public class ApiImages extends Api {
                 }
                 error(asyncResponse, ErrorCode.ITEM_NOT_FOUND, image);
 
-            } else {
-                byte[] data = result.getBytes();
+            } else if (result.data != null) {
+                asyncResponse.resume(Response.ok(result.data, "image/jpg")
+                        .header("ETag", etag)
+                        .header("Cache-Control", CACHE_CONTROL)
+                        .header("Access-Control-Allow-Origin", "*").build());
+
+            } else if (result.channel != null) {
+                final FileChannel channel = result.channel;
 
-                asyncResponse.resume(Response.ok(data, "image/jpg").header("Access-Control-Allow-Origin", "*").build());
+                // The streaming output closes the file once it is sent, but Jersey does not write the entity
+                // when the request was cancelled, timed out or failed: close the file when the request completes.
+                asyncResponse.register((CompletionCallback) (Throwable failure) -> close(channel));
+                if (!asyncResponse.resume(Response.ok(fileOutput(channel), "image/jpg")
+                        .header("Content-Length", result.length)
+                        .header("ETag", etag)
+                        .header("Cache-Control", CACHE_CONTROL)
+                        .header("Access-Control-Allow-Origin", "*").build())) {
+                    close(channel);
+                }
             }
         });
     }
+
+    /**
+     * Send the image file opened by the disk cache.  The file is copied to the servlet output
+     * stream through a small buffer: the image is not loaded in the heap.
+     *
+     * @param channel the opened image file.
+     * @return the streaming output writing the file.
+     */
+    @NonNull
+    private static StreamingOutput fileOutput(@NonNull FileChannel channel) {
+
+        return (OutputStream output) -> {
+            try (InputStream input = Channels.newInputStream(channel)) {
+                input.transferTo(output);
+            }
+        };
+    }
+
+    private static void close(@NonNull FileChannel channel) {
+
+        try {
+            channel.close();
+
+        } catch (IOException exception) {
+            Log.warn("Cannot close image file: {}", exception.getMessage());
+        }
+    }
 }
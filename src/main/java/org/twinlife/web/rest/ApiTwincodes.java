@@ -7,8 +7,13 @@
  */
 package org.twinlife.web.rest;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.container.AsyncResponse;
@@ -19,14 +24,23 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.twinlife.twinlife.BaseService.ErrorCode;
 import org.twinlife.twinlife.TwincodeOutbound;
+import org.twinlife.twinlife.twincode.outbound.TwincodeOutboundImpl;
 import org.twinlife.twinlife.util.Utils;
 import org.twinlife.twinme.models.Capabilities;
 import org.twinlife.twinme.models.TwincodeKind;
 import org.twinlife.web.ProxyApplication;
 import org.twinlife.web.ProxyController;
+import org.twinlife.web.rest.models.TwincodeBatchEntryBean;
+import org.twinlife.web.rest.models.TwincodeBatchRequestBean;
 import org.twinlife.web.rest.models.TwincodeInfoBean;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Root resource (exposed at "myresource" path)
@@ -50,6 +64,12 @@ public class ApiTwincodes extends Api {
 
     private static final String TWINCODE_ATTRIBUTE_TWINCODE_OUTBOUND_ID = "twincodeOutboundId";
 
+    // Twincodes can be updated: let caches keep them for a short time and revalidate with the ETag.
+    private static final String CACHE_CONTROL = "public, max-age=60, must-revalidate";
+
+    // Maximum number of twincodes that can be retrieved by a batch request.
+    private static final int MAX_BATCH_SIZE = 100;
+
     /**
      * Method handling HTTP GET requests. The returned object will be sent
      * to the client as "text/plain" media type.
@@ -60,6 +80,7 @@ public class ApiTwincodes extends Api {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{twincodeId}")
     public void getTwincode(@PathParam("twincodeId") String twincode,
+                            @HeaderParam("If-None-Match") String ifNoneMatch,
                             @Suspended final AsyncResponse asyncResponse) {
 
         Log.info("getTwincode with twincode {}", twincode);
@@ -73,33 +94,187 @@ public class ApiTwincodes extends Api {
         }
 
         final ProxyApplication application = ProxyController.getProxyApplication();
-        if (application == null) {
 
-            error(asyncResponse, ErrorCode.SERVICE_UNAVAILABLE, twincode);
-            return;
+        // Answer immediately when the twincode cache knows the version the client has.
+        if (ifNoneMatch != null) {
+            final TwincodeOutbound cachedTwincode = application.peekTwincode(twincodeId);
+            if (cachedTwincode != null) {
+                final String etag = getETag(cachedTwincode);
+                if (matchETag(ifNoneMatch, etag)) {
+                    asyncResponse.resume(notModified(etag, CACHE_CONTROL));
+                    return;
+                }
+            }
         }
 
         application.getTwincode(twincodeId, (ErrorCode status, TwincodeOutbound result) -> {
             if (status != ErrorCode.SUCCESS || result == null) {
                 error(asyncResponse, status, twincode);
+                return;
+            }
+
+            final String etag = getETag(result);
+            if (matchETag(ifNoneMatch, etag)) {
+                asyncResponse.resume(notModified(etag, CACHE_CONTROL));
             } else {
-                final TwincodeInfoBean bean = new TwincodeInfoBean();
-                bean.name = result.getName();
-                bean.description = result.getDescription();
-                UUID avatarId = result.getAvatarId();
-                String capabilities = result.getCapabilities();
-                Capabilities cap = capabilities == null ? new Capabilities() : new Capabilities(capabilities);
-                bean.audio = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasAudio();
-                bean.video = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasVideo();
-                bean.transfer = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasTransfer();
-                if (avatarId != null) {
-                    bean.avatarId = avatarId.toString();
+                final TwincodeInfoBean bean = toBean(result);
+                asyncResponse.resume(Response.ok(bean)
+                        .header("ETag", etag)
+                        .header("Cache-Control", CACHE_CONTROL)
+                        .header("Access-Control-Allow-Origin", "*").build());
+            }
+        });
+    }
+
+    /**
+     * Get several twincodes with one request.  The lookups are dispatched on the proxy applications
+     * and the GetTwincodeIQ are sent in parallel.  The response contains one entry for each id in the
+     * same order as the request with either the twincode information or the error.
+     *
+     * @param request the list of twincode ids.
+     * @param asyncResponse the response.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("batch")
+    public void getTwincodes(TwincodeBatchRequestBean request,
+                             @Suspended final AsyncResponse asyncResponse) {
+
+        if (request == null || request.ids == null || request.ids.isEmpty() || request.ids.size() > MAX_BATCH_SIZE) {
+
+            Log.error("Invalid twincode batch request");
+            error(asyncResponse, ErrorCode.BAD_REQUEST, "ids");
+            return;
+        }
+
+        final int count = request.ids.size();
+        Log.info("getTwincodes with {} twincodes", count);
+
+        final TwincodeBatchEntryBean[] entries = new TwincodeBatchEntryBean[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count; i++) {
+            final String twincode = request.ids.get(i);
+            final TwincodeBatchEntryBean entry = new TwincodeBatchEntryBean();
+            entry.id = twincode;
+            entries[i] = entry;
+
+            final UUID twincodeId = Utils.toUUID(twincode);
+            if (twincodeId == null) {
+                entry.error = toErrorBean(ErrorCode.ITEM_NOT_FOUND, twincode);
+                completeBatch(asyncResponse, entries, remaining);
+                continue;
+            }
+
+            // Each lookup uses the next proxy application to spread the GetTwincodeIQ on the connections.
+            final ProxyApplication application = ProxyController.getProxyApplication();
+            application.getTwincode(twincodeId, (ErrorCode status, TwincodeOutbound result) -> {
+                if (status != ErrorCode.SUCCESS || result == null) {
+                    entry.error = toErrorBean(status, twincode);
+                } else {
+                    entry.twincode = toBean(result);
                 }
+                completeBatch(asyncResponse, entries, remaining);
+            });
+        }
+    }
+
+    private static void completeBatch(@NonNull AsyncResponse asyncResponse,
+                                      @NonNull TwincodeBatchEntryBean[] entries,
+                                      @NonNull AtomicInteger remaining) {
 
-                bean.schedule = cap.getSchedule();
+        if (remaining.decrementAndGet() == 0) {
+            asyncResponse.resume(Response.ok(Arrays.asList(entries))
+                    .header("Cache-Control", "no-store")
+                    .header("Access-Control-Allow-Origin", "*").build());
+        }
+    }
+
+    @NonNull
+    static TwincodeInfoBean toBean(@NonNull TwincodeOutbound twincode) {
+
+        final TwincodeInfoBean bean = new TwincodeInfoBean();
+        bean.name = twincode.getName();
+        bean.description = twincode.getDescription();
+        UUID avatarId = twincode.getAvatarId();
+        String capabilities = twincode.getCapabilities();
+        Capabilities cap = capabilities == null ? new Capabilities() : new Capabilities(capabilities);
+        bean.audio = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasAudio();
+        bean.video = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasVideo();
+        bean.transfer = cap.getKind() == TwincodeKind.CALL_RECEIVER && cap.hasTransfer();
+        if (avatarId != null) {
+            bean.avatarId = avatarId.toString();
+        }
+
+        bean.schedule = cap.getSchedule();
+        return bean;
+    }
+
+    /**
+     * Build the entity tag of the twincode from its id, its modification date and a digest of the fields
+     * returned by the API.  The digest must not depend on the JVM instance because several proxies are
+     * behind the same CDN: each field is encoded as its length followed by its UTF-8 bytes.
+     *
+     * @param twincode the twincode.
+     * @return the entity tag.
+     */
+    @NonNull
+    static String getETag(@NonNull TwincodeOutbound twincode) {
 
-                asyncResponse.resume(Response.ok(bean).header("Access-Control-Allow-Origin", "*").build());
+        final long modificationDate;
+        final String name;
+        final String description;
+        final UUID avatarId;
+        final String capabilities;
+        if (twincode instanceof TwincodeOutboundImpl) {
+            final TwincodeOutboundImpl twincodeImpl = (TwincodeOutboundImpl) twincode;
+
+            // Read the fields while the twincode cannot be updated.
+            synchronized (twincodeImpl) {
+                modificationDate = twincodeImpl.getModificationDate();
+                name = twincodeImpl.getName();
+                description = twincodeImpl.getDescription();
+                avatarId = twincodeImpl.getAvatarId();
+                capabilities = twincodeImpl.getCapabilities();
             }
-        });
+        } else {
+            modificationDate = 0;
+            name = twincode.getName();
+            description = twincode.getDescription();
+            avatarId = twincode.getAvatarId();
+            capabilities = twincode.getCapabilities();
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+        updateDigest(digest, twincode.getId().toString());
+        updateDigest(digest, name);
+        updateDigest(digest, description);
+        updateDigest(digest, avatarId == null ? null : avatarId.toString());
+        updateDigest(digest, capabilities);
+
+        final byte[] hash = digest.digest();
+        final StringBuilder etag = new StringBuilder("\"");
+        etag.append(Long.toHexString(modificationDate)).append('-');
+        for (int i = 0; i < 8; i++) {
+            etag.append(Character.forDigit((hash[i] >> 4) & 0x0F, 16)).append(Character.forDigit(hash[i] & 0x0F, 16));
+        }
+        return etag.append('"').toString();
+    }
+
+    private static void updateDigest(@NonNull MessageDigest digest, @Nullable String value) {
+
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(-1).array());
+        } else {
+            final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array());
+            digest.update(data);
+        }
     }
 }
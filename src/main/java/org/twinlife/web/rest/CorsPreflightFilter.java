@@ -0,0 +1,39 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.rest;
+
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Turn the OPTIONS response that Jersey generates for a literal sub-resource path such as
+ * /twincodes/batch into the CORS preflight returned by the generic handler of {@link Api}:
+ * the literal path is matched before the generic {path: .+} template is considered.
+ */
+@Provider
+public class CorsPreflightFilter implements ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+
+        if (!HttpMethod.OPTIONS.equals(requestContext.getMethod())
+                || responseContext.getHeaders().containsKey("Access-Control-Allow-Origin")) {
+            return;
+        }
+
+        final Response preflight = Api.preflight();
+        responseContext.setEntity(null);
+        responseContext.setStatus(preflight.getStatus());
+        responseContext.getHeaders().remove("Content-Type");
+        responseContext.getHeaders().putAll(preflight.getHeaders());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.rest.models;
+
+/**
+ * Result of a twincode lookup in a batch request: either the twincode or the error.
+ */
+public class TwincodeBatchEntryBean {
+
+    public String id;
+    public TwincodeInfoBean twincode;
+    public ErrorBean error;
+
+    public String getId() {
+
+        return id;
+    }
+
+    public void setId(String id) {
+
+        this.id = id;
+    }
+
+    public TwincodeInfoBean getTwincode() {
+
+        return twincode;
+    }
+
+    public void setTwincode(TwincodeInfoBean twincode) {
+
+        this.twincode = twincode;
+    }
+
+    public ErrorBean getError() {
+
+        return error;
+    }
+
+    public void setError(ErrorBean error) {
+
+        this.error = error;
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.rest.models;
+
+import java.util.List;
+
+public class TwincodeBatchRequestBean {
+
+    public List<String> ids;
+
+    public List<String> getIds() {
+
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+
+        this.ids = ids;
+    }
+}
@@ -5,12 +5,11 @@
 
 package org.twinlife.web.util;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import org.twinlife.web.requests.ClientRequest;
 
 /**
  * Helper class used to manage global instances of JSON reader / writer.
@@ -19,6 +18,7 @@ public final class Json {
     private static final ObjectMapper JSON_OBJECT_MAPPER;
     private static final ObjectReader JSON_OBJECT_READER;
     private static final ObjectWriter JSON_OBJECT_WRITER;
+    private static final ObjectReader JSON_REQUEST_READER;
 
     static {
         // Create a JSON mapper with default config. There is no getter for this mapper instance
@@ -28,6 +28,11 @@ public final class Json {
 
         JSON_OBJECT_READER = JSON_OBJECT_MAPPER.reader();
         JSON_OBJECT_WRITER = JSON_OBJECT_MAPPER.writer();
+
+        // Browser messages are bound in the request classes while they are parsed (no JsonNode tree).
+        // Unknown properties are ignored as they were when reading the tree.
+        JSON_REQUEST_READER = JSON_OBJECT_MAPPER.readerFor(ClientRequest.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     }
 
     public static ObjectReader getObjectReader() {
@@ -38,26 +43,11 @@ public final class Json {
         return JSON_OBJECT_WRITER;
     }
 
-    // Prevent any instantiation of this class
-    private Json() {
-    }
-
-    @Nullable
-    public static String getString(final @NonNull JsonNode jsonNode, final String name) {
-
-        JsonNode item = jsonNode.get(name);
-        return item == null || !item.isTextual() ? null : item.asText();
-    }
-
-    public static int getInteger(final @NonNull JsonNode jsonNode, final String name, int defaultValue) {
-
-        JsonNode item = jsonNode.get(name);
-        return item == null || !item.isInt() ? defaultValue : item.asInt();
+    public static ObjectReader getRequestReader() {
+        return JSON_REQUEST_READER;
     }
 
-    public static boolean getBoolean(final @NonNull JsonNode jsonNode, final String name, boolean defaultValue) {
-
-        JsonNode item = jsonNode.get(name);
-        return item == null || !item.isBoolean() ? defaultValue : item.asBoolean();
+    // Prevent any instantiation of this class
+    private Json() {
     }
 }
@@ -0,0 +1,142 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web.util;
+
+import androidx.annotation.NonNull;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encode the messages sent to the browser in UTF-8 directly in a buffer taken from a Jetty ByteBufferPool.
+ *
+ * <p>
+ * Each message class has its own prepared ObjectWriter and remembers the size of the last message so that
+ * the buffer is allocated with the right size most of the time.  The Jackson UTF-8 generator encodes the
+ * strings (SDP, candidates) directly into bytes: there is no intermediate String for the whole message.
+ * The buffer must be released by the caller once the WebSocket frame has been written.
+ * </p>
+ */
+public final class MessageEncoder {
+
+    private static final int MIN_BUFFER_SIZE = 512;
+
+    private static final class TypeEncoder {
+        final ObjectWriter writer;
+        volatile int sizeHint = MIN_BUFFER_SIZE;
+
+        TypeEncoder(@NonNull Class<?> type) {
+            writer = Json.getObjectWriter().forType(type);
+        }
+    }
+
+    private static final ClassValue<TypeEncoder> ENCODERS = new ClassValue<>() {
+        @Override
+        protected TypeEncoder computeValue(Class<?> type) {
+            return new TypeEncoder(type);
+        }
+    };
+
+    /**
+     * Output stream writing in a pooled buffer that grows when it is full.
+     */
+    private static final class BufferOutputStream extends OutputStream {
+        private final ByteBufferPool mPool;
+        private RetainableByteBuffer mBuffer;
+
+        BufferOutputStream(@NonNull ByteBufferPool pool, int size) {
+            mPool = pool;
+            mBuffer = acquire(size);
+        }
+
+        @Override
+        public void write(int b) {
+
+            ensureCapacity(1);
+            mBuffer.getByteBuffer().put((byte) b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] data, int offset, int length) {
+
+            ensureCapacity(length);
+            mBuffer.getByteBuffer().put(data, offset, length);
+        }
+
+        @NonNull
+        RetainableByteBuffer finish() {
+
+            mBuffer.getByteBuffer().flip();
+            return mBuffer;
+        }
+
+        void release() {
+
+            mBuffer.release();
+        }
+
+        @NonNull
+        private RetainableByteBuffer acquire(int size) {
+
+            // Jackson writes in a byte[] so a heap buffer avoids an additional native copy.
+            final RetainableByteBuffer buffer = mPool.acquire(size, false);
+            buffer.getByteBuffer().clear();
+            return buffer;
+        }
+
+        private void ensureCapacity(int length) {
+
+            final ByteBuffer current = mBuffer.getByteBuffer();
+            if (current.remaining() >= length) {
+                return;
+            }
+
+            final RetainableByteBuffer buffer = acquire(Math.max(2 * current.capacity(), current.position() + length));
+            current.flip();
+            buffer.getByteBuffer().put(current);
+            mBuffer.release();
+            mBuffer = buffer;
+        }
+    }
+
+    // Prevent any instantiation of this class
+    private MessageEncoder() {
+    }
+
+    /**
+     * Encode the message in a buffer allocated from the pool.  The returned buffer is ready to be
+     * written (flush mode) and must be released when it is no longer used.
+     *
+     * @param pool the buffer pool.
+     * @param message the message to encode.
+     * @return the buffer holding the JSON message.
+     * @throws IOException when the message cannot be serialized.
+     */
+    @NonNull
+    public static RetainableByteBuffer encode(@NonNull ByteBufferPool pool, @NonNull Object message) throws IOException {
+
+        final TypeEncoder encoder = ENCODERS.get(message.getClass());
+        final BufferOutputStream output = new BufferOutputStream(pool, encoder.sizeHint);
+        try {
+            encoder.writer.writeValue(output, message);
+
+        } catch (IOException | RuntimeException exception) {
+            output.release();
+            throw exception;
+        }
+
+        final RetainableByteBuffer result = output.finish();
+        encoder.sizeHint = Math.max(MIN_BUFFER_SIZE, result.remaining());
+        return result;
+    }
+}
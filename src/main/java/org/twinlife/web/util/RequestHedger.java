@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.TimingWheel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Send an idempotent request a second time when the first one does not answer quickly.
+ *
+ * <p>
+ * The latencies of the answers are recorded in a histogram.  When a request has not answered after
+ * the configured percentile of the latencies, the hedge request is sent (usually on another Openfire
+ * connection) and the first definitive answer (SUCCESS or ITEM_NOT_FOUND) is given to the caller.
+ * An error is reported only when every request sent has failed.  Hedging starts once the histogram
+ * has enough values.
+ * </p>
+ */
+public final class RequestHedger {
+    private static final Logger Log = LogManager.getLogger(RequestHedger.class);
+
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY = 10; // ms
+
+    /**
+     * The request to execute.
+     */
+    public interface Request<T> {
+
+        void execute(@NonNull Consumer<T> complete);
+    }
+
+    private final class Hedged<T> {
+        @NonNull
+        final Consumer<T> complete;
+        final long startTime = System.currentTimeMillis();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        @Nullable
+        volatile TimingWheel.Timeout timeout;
+
+        Hedged(@NonNull Consumer<T> complete) {
+            this.complete = complete;
+        }
+
+        void hedge(@NonNull Request<T> request) {
+
+            if (done.get()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            mHedgeCount.incrementAndGet();
+            request.execute((ErrorCode status, T value) -> onResult(true, status, value));
+        }
+
+        void onResult(boolean isHedge, @NonNull ErrorCode status, @Nullable T value) {
+
+            final boolean definitive = status == ErrorCode.SUCCESS || status == ErrorCode.ITEM_NOT_FOUND;
+            if (!isHedge && definitive) {
+                mLatency.record(System.currentTimeMillis() - startTime);
+            }
+            if (!definitive && outstanding.decrementAndGet() > 0) {
+                return;
+            }
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+
+            final TimingWheel.Timeout hedgeTimeout = timeout;
+            if (hedgeTimeout != null) {
+                hedgeTimeout.cancel();
+            }
+            if (isHedge && definitive) {
+                mHedgeWinCount.incrementAndGet();
+            }
+            complete.onGet(status, value);
+        }
+    }
+
+    @NonNull
+    private final String mName;
+    @NonNull
+    private final TimingWheel mTimers;
+    private final int mPercentile;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mHedgeCount = new AtomicLong();
+    private final AtomicLong mHedgeWinCount = new AtomicLong();
+
+    /**
+     * Create the request hedger.
+     *
+     * @param name the name of the requests for the logs.
+     * @param timers the timing wheel to send the hedge requests.
+     * @param percentile the latency percentile after which the hedge request is sent (0 disables hedging).
+     */
+    public RequestHedger(@NonNull String name, @NonNull TimingWheel timers, int percentile) {
+
+        mName = name;
+        mTimers = timers;
+        mPercentile = percentile;
+    }
+
+    /**
+     * Execute the request and send the hedge request if the first one is too slow.
+     *
+     * @param request the request.
+     * @param hedge the hedge request or null if it cannot be hedged.
+     * @param complete the completion handler called once.
+     */
+    public <T> void execute(@NonNull Request<T> request, @Nullable Request<T> hedge, @NonNull Consumer<T> complete) {
+
+        mRequestCount.incrementAndGet();
+        final Hedged<T> hedged = new Hedged<>(complete);
+        final long delay = getHedgeDelay();
+        if (hedge != null && delay > 0) {
+            hedged.timeout = mTimers.schedule(() -> {
+                Log.debug("Hedge {} request after {} ms", mName, delay);
+                hedged.hedge(hedge);
+            }, delay);
+        }
+        request.execute((ErrorCode status, T value) -> hedged.onResult(false, status, value));
+    }
+
+    /**
+     * Get the delay after which the hedge request is sent.
+     *
+     * @return the delay in milliseconds or 0 when requests are not hedged.
+     */
+    public long getHedgeDelay() {
+
+        if (mPercentile <= 0 || mLatency.getCount() < MIN_SAMPLES) {
+            return 0;
+        }
+        return Math.max(MIN_HEDGE_DELAY, mLatency.getPercentile(mPercentile));
+    }
+
+    public long getRequestCount() {
+
+        return mRequestCount.get();
+    }
+
+    public long getHedgeCount() {
+
+        return mHedgeCount.get();
+    }
+
+    public long getHedgeWinCount() {
+
+        return mHedgeWinCount.get();
+    }
+}
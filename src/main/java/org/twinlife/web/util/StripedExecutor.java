@@ -0,0 +1,248 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.web.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor made of several single thread stripes.
+ *
+ * <p>
+ * A task is executed by the stripe selected from its key: the tasks submitted with the same key are
+ * executed in order while tasks with different keys run in parallel.  Tasks without key are executed
+ * by the first stripe.  The executor records the number of tasks waiting in the stripes and the time
+ * between the submission and the execution of a task.
+ * </p>
+ * <p>
+ * Each stripe has a queue limit.  The task is always accepted but when its stripe is over the limit, the
+ * producer is told to stop and its resume operation is called once the stripe has executed half of its
+ * queue.  The WebSocket reader uses this to stop reading packets while their processing is late.
+ * </p>
+ */
+public final class StripedExecutor {
+    private static final Logger Log = LogManager.getLogger(StripedExecutor.class);
+
+    private static final int DEFAULT_MAX_QUEUED = Integer.MAX_VALUE;
+
+    private static final class Stripe {
+        @NonNull
+        final ExecutorService executor;
+        int queued;
+        @NonNull
+        List<Runnable> waiters = new ArrayList<>();
+
+        Stripe(@NonNull ExecutorService executor) {
+            this.executor = executor;
+        }
+    }
+
+    @NonNull
+    private final Stripe[] mStripes;
+    private final int mMaxQueued;
+    private final AtomicInteger mQueued = new AtomicInteger();
+    private final AtomicLong mPauseCount = new AtomicLong();
+    private final AtomicLong mExecuteCount = new AtomicLong();
+    private final AtomicLong mLatency = new AtomicLong();
+    private final AtomicLong mMaxLatency = new AtomicLong();
+
+    /**
+     * Create the striped executor without queue limit.
+     *
+     * @param name the prefix of the stripe thread names.
+     * @param stripes the number of stripes.
+     */
+    public StripedExecutor(@NonNull String name, int stripes) {
+
+        this(name, stripes, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Create the striped executor.
+     *
+     * @param name the prefix of the stripe thread names.
+     * @param stripes the number of stripes.
+     * @param maxQueued the number of tasks waiting in a stripe after which the producers must stop.
+     */
+    public StripedExecutor(@NonNull String name, int stripes, int maxQueued) {
+
+        mMaxQueued = maxQueued;
+        mStripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            final String threadName = name + "-" + i;
+            mStripes[i] = new Stripe(Executors.newSingleThreadExecutor((Runnable runnable) -> {
+                final Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Execute the task on the stripe associated with the key.
+     *
+     * @param key the key which orders the tasks or null.
+     * @param task the task to execute.
+     */
+    public void execute(@Nullable Object key, @NonNull Runnable task) {
+
+        execute(key, task, null);
+    }
+
+    /**
+     * Execute the task on the stripe associated with the key.  When the stripe is over its queue limit,
+     * the producer must stop submitting tasks until the resume operation is called.
+     *
+     * @param key the key which orders the tasks or null.
+     * @param task the task to execute.
+     * @param resume the operation called from the stripe thread when the producer can continue or null.
+     * @return true if the producer can continue and false if it must wait for the resume operation.
+     */
+    public boolean execute(@Nullable Object key, @NonNull Runnable task, @Nullable Runnable resume) {
+
+        final Stripe stripe = mStripes[key == null ? 0 : Math.floorMod(spread(key.hashCode()), mStripes.length)];
+        final long submitTime = System.nanoTime();
+        final boolean full;
+        synchronized (stripe) {
+            stripe.queued++;
+            full = resume != null && stripe.queued > mMaxQueued;
+            if (full) {
+                stripe.waiters.add(resume);
+            }
+        }
+        if (full) {
+            mPauseCount.incrementAndGet();
+        }
+        mQueued.incrementAndGet();
+        try {
+            stripe.executor.execute(() -> {
+                mQueued.decrementAndGet();
+                final long latency = (System.nanoTime() - submitTime) / 1000L;
+                mExecuteCount.incrementAndGet();
+                mLatency.addAndGet(latency);
+                mMaxLatency.accumulateAndGet(latency, Math::max);
+                try {
+                    task.run();
+
+                } catch (Exception exception) {
+                    Log.error("Task failed", exception);
+                }
+                executed(stripe);
+            });
+
+        } catch (RejectedExecutionException exception) {
+            mQueued.decrementAndGet();
+            Log.error("Task rejected: executor is stopped");
+            synchronized (stripe) {
+                stripe.queued--;
+                stripe.waiters.remove(resume);
+            }
+            return true;
+        }
+        return !full;
+    }
+
+    /**
+     * Stop the stripes, the pending tasks are not executed.
+     */
+    public void stop() {
+
+        for (Stripe stripe : mStripes) {
+            stripe.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting to be executed.
+     *
+     * @return the number of tasks in the stripe queues.
+     */
+    public int getQueueDepth() {
+
+        return mQueued.get();
+    }
+
+    /**
+     * Get the number of times a producer was stopped because its stripe was over the queue limit.
+     *
+     * @return the number of pauses.
+     */
+    public long getPauseCount() {
+
+        return mPauseCount.get();
+    }
+
+    /**
+     * Get the number of tasks executed.
+     *
+     * @return the number of tasks.
+     */
+    public long getExecuteCount() {
+
+        return mExecuteCount.get();
+    }
+
+    /**
+     * Get the average time between the submission and the execution of a task.
+     *
+     * @return the average latency in microseconds.
+     */
+    public long getAverageLatency() {
+
+        final long count = mExecuteCount.get();
+        return count == 0 ? 0 : mLatency.get() / count;
+    }
+
+    /**
+     * Get the maximum time between the submission and the execution of a task.
+     *
+     * @return the maximum latency in microseconds.
+     */
+    public long getMaxLatency() {
+
+        return mMaxLatency.get();
+    }
+
+    private void executed(@NonNull Stripe stripe) {
+
+        final List<Runnable> waiters;
+        synchronized (stripe) {
+            stripe.queued--;
+            if (stripe.waiters.isEmpty() || stripe.queued > mMaxQueued / 2) {
+                return;
+            }
+            waiters = stripe.waiters;
+            stripe.waiters = new ArrayList<>();
+        }
+        for (Runnable resume : waiters) {
+            try {
+                resume.run();
+
+            } catch (Exception exception) {
+                Log.error("Resume failed", exception);
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+
+        // UUID.hashCode() xors the two halves, spread the bits before taking the modulo.
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.twinlife.twinlife.BaseService;
+import org.twinlife.twinlife.Decoder;
+import org.twinlife.twinlife.SerializerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufferDecoderTest {
+
+    private static final UUID SCHEMA_ID = UUID.fromString("0ac5f97d-0fa1-4e18-bd99-c13297086752");
+    private static final UUID SESSION_ID = UUID.fromString("c8a2d7a2-9b0b-4e44-9d1c-1f0e3a5b6c7d");
+
+    @NonNull
+    private static byte[] createPacket() throws SerializerException {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final BinaryCompactEncoder encoder = new BinaryCompactEncoder(outputStream);
+        final List<BaseService.AttributeNameValue> attributes = new ArrayList<>();
+        attributes.add(new BaseService.AttributeNameStringValue("name", "Caf\u00e9 \u2615"));
+        attributes.add(new BaseService.AttributeNameLongValue("count", -123456789L));
+        attributes.add(new BaseService.AttributeNameUUIDValue("id", SESSION_ID));
+
+        encoder.writeUUID(SCHEMA_ID);
+        encoder.writeInt(3);
+        encoder.writeLong(1234567890123L);
+        encoder.writeString("to@twin.life/proxy");
+        encoder.writeUUID(SESSION_ID);
+        encoder.writeInt(-42);
+        encoder.writeOptionalString(null);
+        encoder.writeOptionalString("candidate:1 1 udp 2122260223 192.168.1.2 54321 typ host");
+        encoder.writeBoolean(true);
+        encoder.writeDouble(3.25);
+        encoder.writeData(new byte[] { 1, 2, 3, 4, 5 });
+        encoder.writeAttributes(attributes);
+        return outputStream.toByteArray();
+    }
+
+    private static void checkPacket(@NonNull Decoder decoder) throws SerializerException {
+
+        assertEquals(SCHEMA_ID, decoder.readUUID());
+        assertEquals(3, decoder.readInt());
+        assertEquals(1234567890123L, decoder.readLong());
+        assertEquals("to@twin.life/proxy", decoder.readString());
+        assertEquals(SESSION_ID, decoder.readUUID());
+        assertEquals(-42, decoder.readInt());
+        assertNull(decoder.readOptionalString());
+        assertEquals("candidate:1 1 udp 2122260223 192.168.1.2 54321 typ host", decoder.readOptionalString());
+        assertTrue(decoder.readBoolean());
+        assertEquals(3.25, decoder.readDouble(), 0.0);
+        final ByteBuffer data = decoder.readBytes(null);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, data.array());
+
+        final List<BaseService.AttributeNameValue> attributes = decoder.readAttributes();
+        assertNotNull(attributes);
+        assertEquals(3, attributes.size());
+        assertEquals("Caf\u00e9 \u2615", attributes.get(0).value);
+        assertEquals(-123456789L, attributes.get(1).value);
+        assertEquals(SESSION_ID, attributes.get(2).value);
+        assertTrue(decoder.isEof());
+    }
+
+    @Test
+    public void testSameAsStreamDecoder() throws SerializerException {
+
+        final byte[] packet = createPacket();
+        checkPacket(new BinaryCompactDecoder(new ByteArrayInputStream(packet)));
+
+        // Heap buffer with an offset.
+        final byte[] content = new byte[packet.length + 10];
+        System.arraycopy(packet, 0, content, 7, packet.length);
+        final ByteBuffer heapBuffer = ByteBuffer.wrap(content, 7, packet.length).slice();
+        checkPacket(new ByteBufferDecoder(heapBuffer));
+        assertEquals(0, heapBuffer.position());
+
+        // Direct buffer.
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(packet.length);
+        directBuffer.put(packet);
+        directBuffer.flip();
+        checkPacket(new ByteBufferDecoder(directBuffer));
+    }
+
+    @Test
+    public void testTruncated() throws SerializerException {
+
+        final byte[] packet = createPacket();
+        final Decoder decoder = new ByteBufferDecoder(ByteBuffer.wrap(packet, 0, 20));
+
+        decoder.readUUID();
+        decoder.readInt();
+        assertThrows(SerializerException.class, decoder::readLong);
+        assertThrows(SerializerException.class, decoder::readUUID);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import org.junit.Test;
+import org.twinlife.twinlife.SerializerException;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testAcquireRelease() {
+
+        final ByteBufferPool pool = new ByteBufferPool(2, 1024 * 1024);
+        final ByteBuffer small = pool.acquire(100);
+        assertEquals(ByteBufferPool.MIN_BUFFER_SIZE, small.capacity());
+        assertEquals(4096, pool.acquire(3000).capacity());
+        assertEquals(100000, pool.acquire(100000).capacity());
+
+        pool.release(small);
+        assertSame(small, pool.acquire(1024));
+        assertEquals(4, pool.getAcquireCount());
+        assertEquals(3, pool.getAllocateCount());
+    }
+
+    @Test
+    public void testPooledBytesLimit() {
+
+        final ByteBufferPool pool = new ByteBufferPool(4, 6 * 1024);
+        final ByteBuffer first = pool.acquire(4096);
+        final ByteBuffer second = pool.acquire(4096);
+        final ByteBuffer small = pool.acquire(2048);
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(4096, pool.getPooledBytes());
+        pool.release(small);
+        assertEquals(6144, pool.getPooledBytes());
+
+        assertSame(first, pool.acquire(4096));
+        assertEquals(2048, pool.getPooledBytes());
+        assertNotSame(second, pool.acquire(4096));
+        assertSame(small, pool.acquire(2048));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testOutputStreamGrow() {
+
+        final ByteBufferPool pool = new ByteBufferPool(2, 1024 * 1024);
+        final ByteBufferOutputStream outputStream = new ByteBufferOutputStream(pool);
+        final byte[] data = new byte[1500];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        outputStream.start(16);
+        outputStream.write(data, 0, 1000);
+        outputStream.write(data, 1000, 500);
+        final ByteBuffer buffer = outputStream.finish();
+        assertEquals(2048, buffer.capacity());
+        assertEquals(1500, buffer.remaining());
+        final byte[] content = new byte[1500];
+        buffer.get(content);
+        assertArrayEquals(data, content);
+    }
+
+    @Test
+    public void testSerializeCompact() throws SerializerException {
+
+        final ByteBufferPool pool = new ByteBufferPool(2, 1024 * 1024);
+        final BinaryPacketIQ.BinaryPacketIQSerializer serializer
+                = BinaryPacketIQ.createDefaultSerializer(UUID.randomUUID(), 2);
+        final BinaryPacketIQ iq = new BinaryPacketIQ(serializer, 12345L);
+
+        final byte[] expect = iq.serializeCompact(new SerializerFactoryImpl());
+        final ByteBuffer buffer = iq.serializeCompact(new SerializerFactoryImpl(), pool);
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        assertArrayEquals(expect, content);
+
+        pool.release(buffer);
+        pool.release(iq.serializeCompact(new SerializerFactoryImpl(), pool));
+        assertEquals(1, pool.getAllocateCount());
+    }
+}
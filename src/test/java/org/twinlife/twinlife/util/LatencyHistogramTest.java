@@ -0,0 +1,88 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.twinlife.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long latency = 0; latency < 100000; latency++) {
+            final int index = LatencyHistogram.index(latency);
+            assertTrue("latency " + latency, latency <= LatencyHistogram.upperBound(index));
+            assertTrue("latency " + latency, index == 0 || latency > LatencyHistogram.upperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1, histogram.getPercentile(0));
+
+        // The percentiles are known with a 25% precision.
+        for (int percentile : new int[] { 10, 50, 90, 99, 100 }) {
+            final long value = histogram.getPercentile(percentile);
+            final long expect = percentile * 10L;
+            assertTrue("p" + percentile + " is " + value, value >= expect && value <= expect * 5 / 4);
+        }
+    }
+
+    @Test
+    public void testDecay() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 2047; i++) {
+            histogram.record(10);
+        }
+        assertEquals(2047, histogram.getCount());
+
+        // The 2048th value halves the buckets, the recent latencies then dominate.
+        histogram.record(10);
+        assertEquals(1024, histogram.getCount());
+        assertEquals(histogram.getCount(), histogram.sum());
+        for (int i = 0; i < 2000; i++) {
+            histogram.record(1000);
+        }
+        assertTrue(histogram.getPercentile(50) >= 1000);
+        assertEquals(histogram.getCount(), histogram.sum());
+    }
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i % 500);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Values recorded while the buckets decay must be kept in both the buckets and the count.
+        assertEquals(histogram.sum(), histogram.getCount());
+        assertTrue(histogram.getCount() < 2048);
+    }
+}
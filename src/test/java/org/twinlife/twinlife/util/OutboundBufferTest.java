@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+import org.junit.Test;
+import org.libwebsockets.api.ConnectStats;
+import org.libwebsockets.api.ErrorStats;
+import org.twinlife.twinlife.Connection;
+import org.twinlife.twinlife.ConnectionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundBufferTest {
+
+    private static final class TestConnection extends Connection {
+        final List<Byte> packets = new ArrayList<>();
+
+        TestConnection() {
+            super(new SerializerFactoryImpl());
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void sendDataPacket(byte[] packet) {
+            packets.add(packet[0]);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public ConnectStats getConnectStats() {
+            return null;
+        }
+
+        @Override
+        public ErrorStats getErrorStats(boolean reset) {
+            return null;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        @NonNull
+        public String getDomain() {
+            return "test";
+        }
+
+        @Override
+        @NonNull
+        public ConnectionStatus getConnectionStatus() {
+            return ConnectionStatus.CONNECTED;
+        }
+    }
+
+    @Test
+    public void testFlushInOrder() {
+
+        final TimingWheel wheel = new TimingWheel("test", 100, 8);
+        final OutboundBuffer buffer = new OutboundBuffer(wheel, 3, 1024, 1000);
+        final List<Long> expired = new ArrayList<>();
+        final RequestCorrelator.Registry<String> registry = new RequestCorrelator(wheel).newRegistry("test",
+                (long requestId, String request, boolean isBinary) -> expired.add(requestId));
+        final TestConnection connection = new TestConnection();
+
+        // Never signed in: the packets are not kept.
+        assertEquals(OutboundBuffer.Result.REFUSED, buffer.add(registry, 1, new byte[] { 1 }, 1000, null));
+
+        buffer.onSignIn(connection, 0);
+        assertEquals(OutboundBuffer.Result.SEND, buffer.add(registry, 1, new byte[] { 1 }, 1000, null));
+        buffer.onDisconnect();
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 2, new byte[] { 2 }, 1000, null));
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 3, new byte[] { 3 }, 200, null));
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 4, new byte[] { 4 }, 1000, null));
+        assertEquals(OutboundBuffer.Result.REFUSED, buffer.add(registry, 5, new byte[] { 5 }, 1000, null));
+        assertEquals(1, buffer.getOverflowCount());
+
+        // The deadline of a request passes while it is kept.
+        for (int i = 0; i < 2; i++) {
+            wheel.tick();
+        }
+        assertEquals(List.of(3L), expired);
+        assertEquals(2, buffer.size());
+
+        buffer.onSignIn(connection, 0);
+        assertEquals(List.of((byte) 2, (byte) 4), connection.packets);
+        assertEquals(2, registry.getInFlightCount());
+        assertEquals(0, buffer.size());
+        assertEquals(3, buffer.getBufferedCount());
+        assertEquals(2, buffer.getFlushedCount());
+        assertEquals(1, buffer.getExpiredCount());
+    }
+
+    @Test
+    public void testSignInOrder() {
+
+        final TimingWheel wheel = new TimingWheel("test", 100, 8);
+        final OutboundBuffer buffer = new OutboundBuffer(wheel, 10, 1024, 1000);
+        final RequestCorrelator.Registry<String> registry = new RequestCorrelator(wheel).newRegistry("test",
+                (long requestId, String request, boolean isBinary) -> { });
+        final TestConnection connection = new TestConnection();
+
+        buffer.onSignIn(connection, 0);
+        buffer.onDisconnect();
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 1, new byte[] { 1 }, 1000, null));
+
+        // A request made while the services sign in is queued after the kept one.
+        buffer.beginSignIn();
+        assertTrue(buffer.isFlushing());
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 2, new byte[] { 2 }, 1000, null));
+        buffer.onSignIn(connection, 0);
+        assertEquals(List.of((byte) 1, (byte) 2), connection.packets);
+        assertFalse(buffer.isFlushing());
+
+        // Once flushed, the caller must send directly.
+        assertEquals(OutboundBuffer.Result.SEND, buffer.add(registry, 3, new byte[] { 3 }, 1000, null));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testGraceWindow() {
+
+        final TimingWheel wheel = new TimingWheel("test", 100, 8);
+        final OutboundBuffer buffer = new OutboundBuffer(wheel, 10, 1024, 300);
+        final List<Long> expired = new ArrayList<>();
+        final RequestCorrelator.Registry<String> registry = new RequestCorrelator(wheel).newRegistry("test",
+                (long requestId, String request, boolean isBinary) -> expired.add(requestId));
+
+        buffer.onSignIn(new TestConnection(), 0);
+        buffer.onDisconnect();
+        assertEquals(OutboundBuffer.Result.BUFFERED, buffer.add(registry, 1, new byte[] { 1 }, 5000, null));
+        for (int i = 0; i < 3; i++) {
+            wheel.tick();
+        }
+        assertEquals(List.of(1L), expired);
+        assertEquals(0, buffer.size());
+    }
+}
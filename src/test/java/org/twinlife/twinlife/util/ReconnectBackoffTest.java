@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectBackoffTest {
+
+    @Test
+    public void testDelays() {
+
+        final ReconnectBackoff backoff = new ReconnectBackoff(500, 30000, new Random(1));
+
+        // The first attempt is immediate, the next ones are within the bounds.
+        assertEquals(0, backoff.nextDelay());
+        long previous = 500;
+        for (int i = 0; i < 100; i++) {
+            final long delay = backoff.nextDelay();
+            assertTrue("delay " + delay + " is too short", delay >= 500);
+            assertTrue("delay " + delay + " is too long", delay <= Math.min(30000, previous * 3));
+            previous = delay;
+        }
+        assertEquals(101, backoff.getAttempts());
+
+        backoff.reset();
+        assertEquals(0, backoff.nextDelay());
+        assertTrue(backoff.nextDelay() <= 1500);
+    }
+}
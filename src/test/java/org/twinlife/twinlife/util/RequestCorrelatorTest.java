@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCorrelatorTest {
+
+    @Test
+    public void testCompleteAndTimeout() {
+
+        final TimingWheel wheel = new TimingWheel("test", 100, 8);
+        final RequestCorrelator correlator = new RequestCorrelator(wheel);
+        final List<String> expired = new ArrayList<>();
+        final RequestCorrelator.Registry<String> calls = correlator.newRegistry("calls",
+                (long requestId, String request, boolean isBinary) -> expired.add(requestId + ":" + request));
+        final RequestCorrelator.Registry<Integer> images = correlator.newRegistry("images",
+                (long requestId, Integer request, boolean isBinary) -> expired.add(requestId + ":" + request));
+
+        calls.put(1, "join");
+        calls.setDeadline(1, 500, true);
+        calls.put(2, "leave");
+        calls.setDeadline(2, 300, true);
+        images.setDeadline(3, 200, false);
+        assertEquals(3, correlator.size());
+        assertEquals(2, calls.getInFlightCount());
+        assertEquals(1, images.getInFlightCount());
+        assertEquals(3, wheel.size());
+
+        // A request belongs to the registry which created it.
+        assertNull(images.remove(1));
+        assertNull(calls.get(3));
+
+        // The response keeps the value for the service but cancels the deadline.
+        assertTrue(calls.complete(1));
+        assertEquals("join", calls.remove(1));
+        assertEquals(2, wheel.size());
+
+        for (int i = 0; i < 2; i++) {
+            wheel.tick();
+        }
+        assertEquals(List.of("3:null"), expired);
+        assertEquals(0, images.getInFlightCount());
+        assertEquals(1, images.getTimeoutCount());
+
+        // The request with a value is kept after the timeout until the service removes it.
+        wheel.tick();
+        assertEquals(List.of("3:null", "2:leave"), expired);
+        assertEquals(1, calls.getInFlightCount());
+        assertFalse(calls.complete(2));
+        assertEquals("leave", calls.remove(2));
+        assertEquals(0, correlator.size());
+        assertEquals(0, calls.getOldestPendingAge());
+    }
+
+    @Test
+    public void testExpireAll() {
+
+        final TimingWheel wheel = new TimingWheel("test", 100, 8);
+        final RequestCorrelator correlator = new RequestCorrelator(wheel);
+        final List<Long> expired = new ArrayList<>();
+        final RequestCorrelator.Registry<String> registry = correlator.newRegistry("calls",
+                (long requestId, String request, boolean isBinary) -> expired.add(requestId));
+
+        registry.put(1, "pending");
+        registry.setDeadline(2, 1000, true);
+        registry.setDeadline(3, 1000, true);
+        registry.expireAll();
+        assertEquals(2, expired.size());
+        assertEquals(0, wheel.size());
+        assertEquals(1, registry.getInFlightCount());
+
+        registry.clear();
+        assertEquals(0, correlator.size());
+    }
+}
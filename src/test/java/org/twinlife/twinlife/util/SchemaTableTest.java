@@ -0,0 +1,51 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaTableTest {
+
+    @Test
+    public void testLookup() {
+
+        final List<UUID> schemas = new ArrayList<>();
+        SchemaTable<String> table = SchemaTable.empty();
+        for (int i = 0; i < 100; i++) {
+            final UUID schemaId = UUID.randomUUID();
+            schemas.add(schemaId);
+            table = table.with(schemaId, 1, "v1-" + i);
+            table = table.with(schemaId, 2, "v2-" + i);
+        }
+        assertEquals(200, table.size());
+
+        for (int i = 0; i < schemas.size(); i++) {
+            final UUID schemaId = schemas.get(i);
+            assertEquals("v1-" + i, table.get(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), 1));
+            assertEquals("v2-" + i, table.get(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), 2));
+            assertNull(table.get(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), 3));
+        }
+
+        // Replacing a value keeps the hit counter.
+        final UUID schemaId = schemas.get(0);
+        table = table.with(schemaId, 1, "new");
+        assertEquals(200, table.size());
+        assertTrue(table.contains(schemaId, 1));
+        assertEquals("new", table.get(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), 1));
+        assertEquals(Long.valueOf(2), table.getHitCounters().get(new SchemaKey(schemaId, 1)));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.twinlife.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testSchedule() {
+        final TimingWheel wheel = new TimingWheel("test", 100, 4);
+        final List<String> fired = new ArrayList<>();
+
+        // The 1s timer needs more than two revolutions of the wheel.
+        wheel.schedule(() -> fired.add("a"), 1000);
+        wheel.schedule(() -> fired.add("b"), 250);
+        final TimingWheel.Timeout cancelled = wheel.schedule(() -> fired.add("c"), 300);
+        assertEquals(3, wheel.size());
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        for (int i = 0; i < 9; i++) {
+            wheel.tick();
+        }
+        assertEquals(List.of("b"), fired);
+
+        wheel.tick();
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(0, wheel.size());
+    }
+}
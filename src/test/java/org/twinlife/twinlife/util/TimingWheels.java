@@ -0,0 +1,29 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.twinlife.util;
+
+/**
+ * Drive a timing wheel from the tests of the other packages.
+ */
+public final class TimingWheels {
+
+    /**
+     * Advance the wheel and execute the timers which have expired.
+     *
+     * @param wheel the timing wheel which is not started.
+     * @param count the number of ticks.
+     */
+    public static void tick(TimingWheel wheel, int count) {
+        for (int i = 0; i < count; i++) {
+            wheel.tick();
+        }
+    }
+
+    private TimingWheels() {
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.security.cert.CertificateException;
+
+import javax.net.ssl.SSLContext;
+
+import org.eclipse.jetty.client.Request;
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.junit.Test;
+import org.libwebsockets.api.ConnectStats;
+import org.libwebsockets.api.ErrorStats;
+
+public class ConnectionProbeTest {
+
+    private static SslConnection newConnection(int port) throws Exception {
+        final SocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        final ByteArrayEndPoint endPoint = new ByteArrayEndPoint() {
+            @Override
+            public SocketAddress getLocalSocketAddress() {
+                return address;
+            }
+        };
+        return new SslConnection(new ArrayByteBufferPool(), Runnable::run, endPoint,
+                SSLContext.getDefault().createSSLEngine());
+    }
+
+    private static Request newUpgradeRequest(int port) {
+        final SocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        final Object connection = Proxy.newProxyInstance(ConnectionProbeTest.class.getClassLoader(),
+                new Class<?>[] { org.eclipse.jetty.client.Connection.class },
+                (proxy, method, args) -> "getLocalSocketAddress".equals(method.getName()) ? address : null);
+        return (Request) Proxy.newProxyInstance(ConnectionProbeTest.class.getClassLoader(),
+                new Class<?>[] { Request.class },
+                (proxy, method, args) -> "getConnection".equals(method.getName()) ? connection : null);
+    }
+
+    private static void handshake(ConnectionProbe probe, SslConnection connection) {
+        probe.handshakeSucceeded(new SslHandshakeListener.Event(connection.getSSLEngine()));
+    }
+
+    @Test
+    public void testStandbyIgnored() throws Exception {
+        final ConnectionProbe probe = new ConnectionProbe();
+        final SslConnection standby = newConnection(2000);
+        final SslConnection active = newConnection(1000);
+
+        // Events outside an attempt are not measured.
+        probe.onOpened(standby);
+
+        probe.begin();
+        probe.dnsResolved();
+
+        // The standby completes its TCP and TLS handshake while the attempt is running.
+        probe.onOpened(standby);
+        handshake(probe, standby);
+        Thread.sleep(50);
+        probe.onOpened(active);
+        Thread.sleep(50);
+        handshake(probe, active);
+        probe.onHandshakeResponse(newUpgradeRequest(1000), null);
+        probe.success();
+
+        final ConnectStats stats = probe.getConnectStats();
+        assertNotNull(stats);
+        assertEquals(1, stats.connectCount);
+        assertTrue("tcp " + stats.tcpConnectTime, stats.tcpConnectTime >= 50);
+        assertTrue("tls " + stats.tlsConnectTime, stats.tlsConnectTime >= 50);
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        final ConnectionProbe probe = new ConnectionProbe();
+
+        probe.begin();
+        probe.failure(new IOException("unknown host"));
+
+        probe.begin();
+        probe.dnsResolved();
+        probe.failure(new IOException("connection refused"));
+
+        probe.begin();
+        probe.dnsResolved();
+        probe.onOpened(newConnection(1000));
+        probe.failure(new IOException("handshake"));
+
+        probe.begin();
+        probe.dnsResolved();
+        probe.onOpened(newConnection(1001));
+        probe.failure(new IOException(new CertificateException("No subject alternative names present")));
+
+        probe.begin();
+        probe.dnsResolved();
+        probe.onOpened(newConnection(1002));
+        probe.failure(new IOException(new CertificateException("PKIX path building failed")));
+
+        probe.begin();
+        probe.dnsResolved();
+        final SslConnection connection = newConnection(1003);
+        probe.onOpened(connection);
+        handshake(probe, connection);
+        probe.failure(new IOException("upgrade failed"));
+
+        final ErrorStats stats = probe.getErrorStats(true);
+        assertEquals(1, stats.dnsErrorCount);
+        assertEquals(1, stats.tcpErrorCount);
+        assertEquals(1, stats.tlsErrorCount);
+        assertEquals(1, stats.tlsHostErrorCount);
+        assertEquals(1, stats.tlsVerifyErrorCount);
+        assertEquals(1, stats.txnErrorCount);
+        assertEquals(6, stats.createCounter);
+        assertEquals(6, stats.connectCounter);
+
+        final ErrorStats cleared = probe.getErrorStats(false);
+        assertEquals(0, cleared.dnsErrorCount + cleared.tcpErrorCount + cleared.tlsErrorCount
+                + cleared.tlsHostErrorCount + cleared.tlsVerifyErrorCount + cleared.txnErrorCount);
+
+        // A successful connection clears the consecutive failures.
+        probe.begin();
+        probe.dnsResolved();
+        probe.success();
+        assertEquals(0, probe.getErrorStats(false).connectCounter);
+    }
+}
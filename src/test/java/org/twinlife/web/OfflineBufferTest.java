@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.twinlife.web.messages.CandidateInfo;
+import org.twinlife.web.messages.DeviceRingingMessage;
+import org.twinlife.web.messages.SessionTerminateMessage;
+import org.twinlife.web.messages.TransportInfoMessage;
+
+public class OfflineBufferTest {
+    private static final String SESSION_ID = "8c7a6f4e-0f0b-4a59-9a3e-0d1b1b3e4a55";
+    private static final String OTHER_SESSION_ID = "0b5f4d1a-7c1e-4f60-8a7d-2f3c4b5a6d7e";
+
+    private static TransportInfoMessage transportInfo(String sessionId, int candidate) {
+        final TransportInfoMessage message = new TransportInfoMessage();
+        message.sessionId = sessionId;
+        message.candidates = new ArrayList<>();
+        final CandidateInfo info = new CandidateInfo();
+        info.candidate = "candidate:" + candidate;
+        info.sdpMid = "0";
+        message.candidates.add(info);
+        return message;
+    }
+
+    @Test
+    public void testDrain() {
+        final OfflineBuffer buffer = new OfflineBuffer(65536, 60000);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(transportInfo(SESSION_ID, i));
+            buffer.add(transportInfo(OTHER_SESSION_ID, i));
+        }
+        final SessionTerminateMessage terminate = new SessionTerminateMessage();
+        terminate.sessionId = OTHER_SESSION_ID;
+        buffer.add(terminate);
+
+        // The candidates are merged and only the session-terminate is kept for the other session.
+        final List<Object> messages = buffer.drain(SESSION_ID::equals);
+        assertEquals(2, messages.size());
+        assertEquals(10, ((TransportInfoMessage) messages.get(0)).candidates.size());
+        assertEquals(terminate, messages.get(1));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testLimits() {
+        final OfflineBuffer buffer = new OfflineBuffer(1024, 60000);
+        final long dropCount = OfflineBuffer.getDropCount();
+        for (int i = 0; i < 100; i++) {
+            buffer.add(transportInfo(SESSION_ID + i, i));
+        }
+        assertTrue(OfflineBuffer.getDropCount() > dropCount);
+        assertTrue(buffer.drain((String sessionId) -> true).size() < 100);
+
+        // Messages are dropped when their TTL has expired.
+        final OfflineBuffer expired = new OfflineBuffer(1024, -1);
+        expired.add(transportInfo(SESSION_ID, 1));
+        assertEquals(0, expired.drain((String sessionId) -> true).size());
+    }
+
+    @Test
+    public void testCompactKeepsExpireTime() throws InterruptedException {
+        final OfflineBuffer buffer = new OfflineBuffer(1024, 60000);
+        buffer.add(new DeviceRingingMessage(OTHER_SESSION_ID));
+        final long expireTime = buffer.getExpireTime();
+
+        // The transport-info are merged when the budget is exceeded but the first message keeps its TTL.
+        Thread.sleep(5);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(transportInfo(SESSION_ID, i));
+        }
+        assertEquals(expireTime, buffer.getExpireTime());
+
+        final List<Object> messages = buffer.drain((String sessionId) -> true);
+        assertEquals(2, messages.size());
+        assertEquals(5, ((TransportInfoMessage) messages.get(1)).candidates.size());
+    }
+}
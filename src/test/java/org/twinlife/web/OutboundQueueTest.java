@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.junit.Before;
+import org.junit.Test;
+import org.twinlife.web.messages.CandidateInfo;
+import org.twinlife.web.messages.TransportInfoMessage;
+import org.twinlife.web.util.MessageEncoder;
+
+public class OutboundQueueTest {
+    private static final String SESSION_ID = "8c7a6f4e-0f0b-4a59-9a3e-0d1b1b3e4a55";
+
+    private final ArrayByteBufferPool mPool = new ArrayByteBufferPool();
+    private final List<String> mFrames = new ArrayList<>();
+    private final List<Callback> mCallbacks = new ArrayList<>();
+    private boolean mCompleteInline;
+    private String mDisconnectReason;
+    private OutboundQueue mQueue;
+
+    private final OutboundQueue.Writer mWriter = new OutboundQueue.Writer() {
+        @Override
+        @NonNull
+        public RetainableByteBuffer encode(@NonNull Object message) throws IOException {
+            return MessageEncoder.encode(mPool, message);
+        }
+
+        @Override
+        public void write(@NonNull ByteBuffer frame, @NonNull Callback callback) {
+            mFrames.add(BufferUtil.toUTF8String(frame));
+            if (mCompleteInline) {
+                callback.succeeded();
+            } else {
+                mCallbacks.add(callback);
+            }
+        }
+
+        @Override
+        public void disconnect(@NonNull String reason) {
+            mDisconnectReason = reason;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mQueue = new OutboundQueue(mWriter, 4, 65536, 60000);
+    }
+
+    private boolean send(int candidate) throws IOException {
+        final TransportInfoMessage message = new TransportInfoMessage();
+        message.sessionId = SESSION_ID;
+        message.candidates = new ArrayList<>();
+        final CandidateInfo info = new CandidateInfo();
+        info.candidate = "candidate:" + candidate;
+        info.sdpMid = "0";
+        message.candidates.add(info);
+        return mQueue.send(message, MessageEncoder.encode(mPool, message));
+    }
+
+    @Test
+    public void testWriteCompletion() throws IOException {
+        assertTrue(send(1));
+        assertTrue(send(2));
+        assertEquals(1, mFrames.size());
+
+        // The next frame is written only when the previous write completes.
+        mCallbacks.get(0).succeeded();
+        assertEquals(2, mFrames.size());
+
+        mCompleteInline = true;
+        mCallbacks.get(1).succeeded();
+        assertTrue(send(3));
+        assertEquals(3, mFrames.size());
+    }
+
+    @Test
+    public void testMergeWhenFull() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            assertTrue(send(i));
+        }
+        assertEquals(1, mFrames.size());
+
+        // The queued transport-info were merged into one message.
+        mCallbacks.get(0).succeeded();
+        assertEquals(2, mFrames.size());
+        for (int i = 1; i < 6; i++) {
+            assertTrue(mFrames.get(1).contains("candidate:" + i));
+        }
+        mCallbacks.get(1).succeeded();
+        assertEquals(2, mFrames.size());
+    }
+
+    @Test
+    public void testSlowConsumer() throws IOException {
+        mQueue = new OutboundQueue(mWriter, 4, 65536, -1);
+        assertTrue(send(1));
+        assertFalse(send(2));
+        assertEquals("write timeout", mDisconnectReason);
+        assertFalse(send(3));
+    }
+}
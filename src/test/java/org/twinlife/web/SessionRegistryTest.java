@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class SessionRegistryTest {
+
+    private static final class TestClient implements SessionRegistry.Client {
+        final Map<UUID, String> peers = new ConcurrentHashMap<>();
+        final String clientId;
+        final String memberId;
+
+        TestClient(String clientId, String memberId) {
+            this.clientId = clientId;
+            this.memberId = memberId;
+        }
+
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+
+        @Override
+        public String getSessionTo(UUID sessionId) {
+            return peers.get(sessionId);
+        }
+
+        @Override
+        public String getCallRoomMemberId() {
+            return memberId;
+        }
+    }
+
+    @Test
+    public void testEndpoints() {
+        final SessionRegistry registry = new SessionRegistry<TestClient>();
+        final TestClient first = new TestClient("client-1", "member-1");
+        final TestClient second = new TestClient("client-2", "member-2");
+        final TestClient third = new TestClient("client-3", "member-3");
+        final UUID sessionId = UUID.randomUUID();
+
+        registry.add(sessionId, first);
+        assertFalse(registry.isLocal(sessionId));
+        assertSame(first, registry.get(sessionId, null));
+        assertSame(first, registry.get(sessionId, "member-2"));
+        assertNull(registry.getLocalPeer(sessionId, "member-1"));
+
+        // Adding the same client again or a third client does not change the endpoints.
+        registry.add(sessionId, first);
+        registry.add(sessionId, second);
+        registry.add(sessionId, third);
+        assertTrue(registry.isLocal(sessionId));
+        assertSame(first, registry.get(sessionId, "member-1"));
+        assertSame(second, registry.get(sessionId, "member-2"));
+        assertNull(registry.get(sessionId, "member-3"));
+        assertSame(second, registry.getLocalPeer(sessionId, "member-2"));
+        assertEquals(1, registry.size());
+
+        registry.remove(sessionId);
+        assertNull(registry.get(sessionId, "member-1"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testRemoveLeaks() {
+        final SessionRegistry registry = new SessionRegistry<TestClient>();
+        final TestClient first = new TestClient("client-1", "member-1");
+        final TestClient second = new TestClient("client-2", "member-2");
+        final UUID activeSessionId = UUID.randomUUID();
+        final UUID localSessionId = UUID.randomUUID();
+        final UUID leakedSessionId = UUID.randomUUID();
+
+        first.peers.put(activeSessionId, "peer");
+        second.peers.put(localSessionId, "peer");
+        registry.add(activeSessionId, first);
+        registry.add(localSessionId, first);
+        registry.add(localSessionId, second);
+        registry.add(leakedSessionId, first);
+
+        // The sessions are too recent to be checked.
+        assertEquals(0, registry.removeLeaks(60000));
+        assertEquals(3, registry.size());
+
+        // Only the session that no endpoint knows is removed.
+        assertEquals(1, registry.removeLeaks(-1));
+        assertEquals(2, registry.size());
+        assertNull(registry.get(leakedSessionId, null));
+        assertSame(first, registry.get(activeSessionId, null));
+        assertEquals(1, registry.getLeakCount());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.twinlife.twinlife.util.TimingWheels.tick;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.DatabaseIdentifier;
+import org.twinlife.twinlife.DatabaseObjectIdentification;
+import org.twinlife.twinlife.DatabaseTable;
+import org.twinlife.twinlife.TwincodeFactory;
+import org.twinlife.twinlife.util.TimingWheel;
+import org.twinlife.web.models.TwincodeFactoryPool;
+import org.twinlife.web.models.TwincodeFactoryPoolFactory;
+
+public class TwincodePoolRefillerTest {
+
+    private static final DatabaseObjectIdentification IDENTIFICATION = new DatabaseObjectIdentification() {
+        @Override
+        public DatabaseTable getKind() {
+            return null;
+        }
+
+        @Override
+        public UUID getSchemaId() {
+            return TwincodeFactoryPool.SCHEMA_ID;
+        }
+
+        @Override
+        public int getSchemaVersion() {
+            return TwincodeFactoryPool.SCHEMA_VERSION;
+        }
+
+        @Override
+        public boolean isLocal() {
+            return true;
+        }
+    };
+
+    private static final class TestPool implements TwincodePoolRefiller.Pool {
+        final TwincodeFactoryPool factoryPool = TwincodeFactoryPoolFactory.INSTANCE.createObject(
+                new DatabaseIdentifier(IDENTIFICATION, 1), UUID.randomUUID(), 0, null, null, null, 0);
+        final List<Integer> requests = new ArrayList<>();
+        boolean online = true;
+        boolean fail;
+        int count;
+
+        @Override
+        public boolean isOnline() {
+            return online;
+        }
+
+        @Override
+        public int getTwincodePoolCount() {
+            return count;
+        }
+
+        @Override
+        public TwincodeFactoryPool selectFactoryPool() {
+            return factoryPool;
+        }
+
+        @Override
+        public void createTwincodeFactories(TwincodeFactoryPool pool, int count, Consumer<List<TwincodeFactory>> complete) {
+            requests.add(count);
+            if (fail) {
+                complete.onGet(ErrorCode.TWINLIFE_OFFLINE, null);
+            } else {
+                complete.onGet(ErrorCode.SUCCESS, Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public void addFreeTwincodeFactory(TwincodeFactory twincodeFactory) {
+            count++;
+        }
+    }
+
+    @Test
+    public void testWatermarks() {
+        final TimingWheel wheel = new TimingWheel("test", 100, 16);
+        final TestPool pool = new TestPool();
+        final TwincodePoolRefiller refiller = new TwincodePoolRefiller(pool, wheel, 3, 12, 500);
+
+        // Nothing is created while offline.
+        pool.online = false;
+        refiller.check();
+        assertEquals(0, pool.requests.size());
+
+        // The twincodes are created by batches separated by the interval until the high watermark.
+        pool.online = true;
+        refiller.check();
+        assertEquals(List.of(5), pool.requests);
+        tick(wheel, 4);
+        assertEquals(List.of(5), pool.requests);
+        tick(wheel, 1);
+        assertEquals(List.of(5, 5), pool.requests);
+        tick(wheel, 5);
+        assertEquals(List.of(5, 5, 2), pool.requests);
+        assertEquals(12, pool.count);
+        assertEquals(12, refiller.getRefillCount());
+        assertEquals(0, wheel.size());
+
+        // Above the low watermark there is nothing to do.
+        pool.count = 3;
+        refiller.check();
+        assertEquals(3, pool.requests.size());
+    }
+
+    @Test
+    public void testBackoff() {
+        final TimingWheel wheel = new TimingWheel("test", 1000, 16);
+        final TestPool pool = new TestPool();
+        final TwincodePoolRefiller refiller = new TwincodePoolRefiller(pool, wheel, 1, 1, 1000);
+
+        // The retry delay doubles after each error from 1s up to 60s.
+        pool.fail = true;
+        refiller.check();
+        for (int delay : new int[] { 1, 2, 4, 8, 16, 32, 60, 60 }) {
+            final int attempts = pool.requests.size();
+            tick(wheel, delay - 1);
+            assertEquals(attempts, pool.requests.size());
+            tick(wheel, 1);
+            assertEquals(attempts + 1, pool.requests.size());
+        }
+        assertEquals(9, refiller.getErrorCount());
+
+        // A success resets the backoff.
+        pool.fail = false;
+        tick(wheel, 60);
+        assertEquals(1, pool.count);
+        pool.count = 0;
+        pool.fail = true;
+        refiller.check();
+        final int attempts = pool.requests.size();
+        tick(wheel, 1);
+        assertEquals(attempts + 1, pool.requests.size());
+    }
+}
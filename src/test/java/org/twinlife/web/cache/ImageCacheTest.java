@@ -0,0 +1,180 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+
+public class ImageCacheTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] image(int size, int seed) {
+        final byte[] data = new byte[size];
+        Arrays.fill(data, (byte) seed);
+        return data;
+    }
+
+    /**
+     * Get the image through a loader that answers immediately with the given content.
+     */
+    private static ImageCache.Image load(ImageCache cache, UUID imageId, byte[] data) {
+        final ImageCache.Image[] result = new ImageCache.Image[1];
+        cache.getImage(imageId, (UUID id, Consumer<byte[]> complete) -> complete.onGet(ErrorCode.SUCCESS, data),
+                (ErrorCode status, ImageCache.Image image) -> result[0] = image);
+        return result[0];
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("condition not reached", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        final ImageCache cache = new ImageCache(8192, null, 0);
+        final List<UUID> images = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final UUID imageId = UUID.randomUUID();
+            images.add(imageId);
+            assertNotNull(load(cache, imageId, image(1000, i)).data);
+        }
+
+        // 8 images of 1000 bytes fit in 8192 bytes, the 2 least recently used are evicted.
+        assertEquals(8000, cache.getMemorySize());
+        assertEquals(2, cache.getEvictionCount());
+        assertNull(cache.peekImage(images.get(0)));
+        assertNull(cache.peekImage(images.get(1)));
+        assertArrayEquals(image(1000, 9), cache.peekImage(images.get(9)).data);
+
+        // An image bigger than 1/8 of the memory budget is not kept in memory.
+        final UUID largeId = UUID.randomUUID();
+        assertNotNull(load(cache, largeId, image(2000, 1)).data);
+        assertNull(cache.peekImage(largeId));
+        assertEquals(11, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testDiskPromotion() throws Exception {
+        final File dir = mFolder.newFolder("images");
+        final ImageCache cache = new ImageCache(8192, dir, 1024 * 1024);
+        final UUID firstId = UUID.randomUUID();
+        load(cache, firstId, image(1000, 42));
+        for (int i = 0; i < 8; i++) {
+            load(cache, UUID.randomUUID(), image(1000, i));
+        }
+        waitFor(() -> cache.getDiskSize() == 9 * 1024);
+
+        // The first image was evicted from the memory level: it is read from the disk and promoted.
+        final ImageCache.Image image = cache.peekImage(firstId);
+        assertNotNull(image);
+        assertNull(image.channel);
+        assertArrayEquals(image(1000, 42), image.data);
+        assertEquals(1, cache.getDiskHitCount());
+        final long hits = cache.getHitCount();
+        assertNotNull(cache.peekImage(firstId).data);
+        assertEquals(hits + 1, cache.getHitCount());
+        assertEquals(1, cache.getDiskHitCount());
+
+        // A large image is only on the disk and it is returned as an opened file.
+        final UUID largeId = UUID.randomUUID();
+        load(cache, largeId, image(2000, 7));
+        waitFor(() -> new File(dir, largeId.toString()).exists());
+        final ImageCache.Image large = cache.peekImage(largeId);
+        assertNotNull(large);
+        assertNull(large.data);
+        assertEquals(2000, large.length);
+        try (FileChannel channel = large.channel) {
+            final ByteBuffer content = ByteBuffer.allocate(2000);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // Read the whole file.
+            }
+            assertArrayEquals(image(2000, 7), content.array());
+        }
+
+        // The disk level is restored when the cache is created again.
+        final ImageCache restored = new ImageCache(8192, dir, 1024 * 1024);
+        assertEquals(cache.getDiskSize(), restored.getDiskSize());
+        assertArrayEquals(image(1000, 42), restored.peekImage(firstId).data);
+    }
+
+    @Test
+    public void testDiskBudget() throws Exception {
+        final File dir = mFolder.newFolder("images");
+        final ImageCache cache = new ImageCache(8192, dir, 4 * 1024);
+        final List<UUID> images = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            final UUID imageId = UUID.randomUUID();
+            images.add(imageId);
+            load(cache, imageId, image(1000, i));
+        }
+        waitFor(() -> new File(dir, images.get(5).toString()).exists() && dir.listFiles().length == 4);
+
+        // Only 4 images of 1Kb fit: the least recently saved files are removed.
+        assertEquals(4 * 1024, cache.getDiskSize());
+        assertEquals(4, dir.listFiles().length);
+        assertFalse(new File(dir, images.get(0).toString()).exists());
+        assertFalse(new File(dir, images.get(1).toString()).exists());
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final File dir = mFolder.newFolder("images");
+        final ImageCache cache = new ImageCache(8192, dir, 1024 * 1024);
+        final UUID sharedId = UUID.randomUUID();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    load(cache, UUID.randomUUID(), image(100 + i, i));
+                }
+                // The same image is received by every thread: it is saved in one file.
+                load(cache, sharedId, image(500, 1));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Each image takes 1Kb in the disk index: 160 images and the shared one.
+        waitFor(() -> cache.getDiskSize() == 161 * 1024);
+        final File[] files = dir.listFiles();
+        assertEquals(161, files.length);
+        for (File file : files) {
+            assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+        }
+        assertArrayEquals(image(500, 1), Files.readAllBytes(new File(dir, sharedId.toString()).toPath()));
+    }
+}
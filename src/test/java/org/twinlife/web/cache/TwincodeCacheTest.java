@@ -0,0 +1,124 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.Consumer;
+import org.twinlife.twinlife.TwincodeOutbound;
+import org.twinlife.twinlife.twincode.outbound.TwincodeOutboundImpl;
+
+public class TwincodeCacheTest {
+    private static final UUID TWINCODE_ID = UUID.fromString("0a2e5d0c-8b39-4b8e-9d4f-71c0c8d5b2a1");
+
+    /** Loads requested by the cache that are not completed yet */
+    private final List<Consumer<TwincodeOutbound>> mLoads = new ArrayList<>();
+
+    private TwincodeCache mCache;
+    private ErrorCode mStatus;
+    private TwincodeOutbound mResult;
+    private int mResultCount;
+
+    @Before
+    public void setUp() {
+        mCache = new TwincodeCache(2, 60000, 60000);
+        mLoads.clear();
+        mResultCount = 0;
+    }
+
+    private void get(UUID twincodeId) {
+        mCache.getTwincode(twincodeId, (UUID id, Consumer<TwincodeOutbound> complete) -> mLoads.add(complete),
+                (ErrorCode status, TwincodeOutbound twincode) -> {
+                    mStatus = status;
+                    mResult = twincode;
+                    mResultCount++;
+                });
+    }
+
+    private static TwincodeOutbound twincode(UUID twincodeId) {
+        return new TwincodeOutboundImpl(null, twincodeId, 0, 1L, null);
+    }
+
+    @Test
+    public void testCoalesceAndHit() {
+        get(TWINCODE_ID);
+        get(TWINCODE_ID);
+        assertEquals(1, mLoads.size());
+        assertEquals(0, mResultCount);
+
+        final TwincodeOutbound twincode = twincode(TWINCODE_ID);
+        mLoads.get(0).onGet(ErrorCode.SUCCESS, twincode);
+        assertEquals(2, mResultCount);
+        assertSame(twincode, mResult);
+
+        get(TWINCODE_ID);
+        assertEquals(1, mLoads.size());
+        assertEquals(3, mResultCount);
+        assertSame(twincode, mResult);
+
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(1, mCache.getCoalescedCount());
+        assertEquals(1, mCache.getHitCount());
+    }
+
+    @Test
+    public void testNotFound() {
+        get(TWINCODE_ID);
+        mLoads.get(0).onGet(ErrorCode.ITEM_NOT_FOUND, null);
+        assertEquals(ErrorCode.ITEM_NOT_FOUND, mStatus);
+
+        get(TWINCODE_ID);
+        assertEquals(1, mLoads.size());
+        assertEquals(ErrorCode.ITEM_NOT_FOUND, mStatus);
+        assertNull(mResult);
+    }
+
+    @Test
+    public void testOfflineNotCached() {
+        get(TWINCODE_ID);
+        mLoads.get(0).onGet(ErrorCode.TWINLIFE_OFFLINE, null);
+        assertEquals(ErrorCode.TWINLIFE_OFFLINE, mStatus);
+
+        get(TWINCODE_ID);
+        assertEquals(2, mLoads.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        get(TWINCODE_ID);
+        mLoads.get(0).onGet(ErrorCode.SUCCESS, twincode(TWINCODE_ID));
+        mCache.invalidate(TWINCODE_ID);
+
+        // An invalidate during the load must prevent the result from being cached.
+        get(TWINCODE_ID);
+        mCache.invalidate(TWINCODE_ID);
+        mLoads.get(1).onGet(ErrorCode.SUCCESS, twincode(TWINCODE_ID));
+        assertEquals(ErrorCode.SUCCESS, mStatus);
+        assertNull(mCache.peekTwincode(TWINCODE_ID));
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 0; i < 3; i++) {
+            final UUID twincodeId = UUID.randomUUID();
+            get(twincodeId);
+            mLoads.get(i).onGet(ErrorCode.SUCCESS, twincode(twincodeId));
+        }
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getEvictionCount());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.models;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.twinlife.twinlife.BaseService.AttributeNameListValue;
+import org.twinlife.twinlife.BaseService.AttributeNameStringValue;
+import org.twinlife.twinlife.BaseService.AttributeNameValue;
+import org.twinlife.twinlife.DatabaseIdentifier;
+import org.twinlife.twinlife.DatabaseObjectIdentification;
+import org.twinlife.twinlife.DatabaseTable;
+import org.twinlife.twinlife.TwincodeFactory;
+import org.twinlife.twinlife.twincode.factory.TwincodeFactoryImpl;
+
+public class TwincodeFactoryPoolTest {
+
+    private static final DatabaseObjectIdentification IDENTIFICATION = new DatabaseObjectIdentification() {
+        @Override
+        public DatabaseTable getKind() {
+            return null;
+        }
+
+        @Override
+        public UUID getSchemaId() {
+            return TwincodeFactoryPool.SCHEMA_ID;
+        }
+
+        @Override
+        public int getSchemaVersion() {
+            return TwincodeFactoryPool.SCHEMA_VERSION;
+        }
+
+        @Override
+        public boolean isLocal() {
+            return true;
+        }
+    };
+
+    private static TwincodeFactoryPool createPool(List<AttributeNameValue> attributes) {
+        return TwincodeFactoryPoolFactory.INSTANCE.createObject(new DatabaseIdentifier(IDENTIFICATION, 1),
+                UUID.randomUUID(), 0, null, null, attributes, 0);
+    }
+
+    private static AttributeNameValue twincodes(String... values) {
+        final List<AttributeNameValue> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(new AttributeNameStringValue("twincode", value));
+        }
+        return new AttributeNameListValue("twincodes", list);
+    }
+
+    @Test
+    public void testParse() {
+        final UUID id = UUID.randomUUID();
+        final UUID inboundId = UUID.randomUUID();
+        final UUID outboundId = UUID.randomUUID();
+        final UUID switchId = UUID.randomUUID();
+        final String valid = id + "." + inboundId + "." + outboundId + "." + switchId;
+
+        // Only the entries made of 4 valid UUIDs are loaded.
+        final TwincodeFactoryPool pool = createPool(List.of(twincodes(valid,
+                id + "." + inboundId + "." + outboundId,
+                valid + "." + switchId,
+                id + "." + inboundId + ".bad." + switchId,
+                id + ".." + outboundId + "." + switchId,
+                "", "...")));
+        assertEquals(1, pool.size());
+        final TwincodeFactory factory = pool.getTwincodeFactories().get(0);
+        assertEquals(id, factory.getId());
+        assertEquals(inboundId, factory.getTwincodeInbound().getId());
+        assertEquals(outboundId, factory.getTwincodeOutbound().getId());
+        assertEquals(switchId, factory.getTwincodeSwitchId());
+    }
+
+    @Test
+    public void testEncode() {
+        final TwincodeFactoryPool pool = createPool(null);
+        for (int i = 0; i < 3; i++) {
+            pool.add(new TwincodeFactoryImpl(UUID.randomUUID(), 0, UUID.randomUUID(), UUID.randomUUID(),
+                    UUID.randomUUID(), new ArrayList<>()));
+        }
+
+        // The encoded twincodes are loaded back in the same order.
+        final TwincodeFactoryPool loaded = createPool(pool.getAttributes(false));
+        assertEquals(3, loaded.size());
+        for (int i = 0; i < 3; i++) {
+            final TwincodeFactory expect = pool.getTwincodeFactories().get(i);
+            final TwincodeFactory factory = loaded.getTwincodeFactories().get(i);
+            assertEquals(expect.getId(), factory.getId());
+            assertEquals(expect.getTwincodeInbound().getId(), factory.getTwincodeInbound().getId());
+            assertEquals(expect.getTwincodeOutbound().getId(), factory.getTwincodeOutbound().getId());
+            assertEquals(expect.getTwincodeSwitchId(), factory.getTwincodeSwitchId());
+        }
+    }
+}
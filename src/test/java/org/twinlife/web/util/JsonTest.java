@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.twinlife.web.requests.ClientRequest;
+import org.twinlife.web.requests.SessionInitiateRequest;
+import org.twinlife.web.requests.SessionRequest;
+import org.twinlife.web.requests.TransportInfoRequest;
+import org.twinlife.web.requests.UnknownRequest;
+
+public class JsonTest {
+    private static final String SESSION_INITIATE = "{\"msg\":\"session-initiate\",\"to\":\"2d3b3c36-6c1a-4b4e-a2a3-5f0c2ffb7a11\","
+            + "\"sdp\":\"v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n\","
+            + "\"offer\":{\"audio\":true,\"video\":false,\"videoBell\":false,\"data\":true,\"version\":\"2.0\"},"
+            + "\"offerToReceive\":{\"audio\":true,\"video\":true,\"data\":true},\"maxFrameSize\":921600,\"maxFrameRate\":30}";
+
+    // Browsers add properties we don't use in the ICE candidates, and 'msg' is not always first.
+    private static final String TRANSPORT_INFO = "{\"sessionId\":\"8c7a6f4e-0f0b-4a59-9a3e-0d1b1b3e4a55\",\"candidates\":["
+            + "{\"candidate\":\"candidate:842163049 1 udp 1677729535 193.93.124.33 61665 typ srflx\",\"sdpMid\":\"0\","
+            + "\"sdpMLineIndex\":0,\"usernameFragment\":\"x3Xj\"},"
+            + "{\"candidate\":\"candidate:1 1 udp 2122260223 10.0.0.2 54400 typ host\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0,\"removed\":true}],"
+            + "\"msg\":\"transport-info\"}";
+
+    private static ClientRequest read(String message) throws Exception {
+
+        return Json.getRequestReader().readValue(message);
+    }
+
+    @Test
+    public void testSessionInitiate() throws Exception {
+        final ClientRequest request = read(SESSION_INITIATE);
+
+        assertTrue(request instanceof SessionInitiateRequest);
+        final SessionInitiateRequest sessionInitiate = (SessionInitiateRequest) request;
+        assertEquals("2d3b3c36-6c1a-4b4e-a2a3-5f0c2ffb7a11", sessionInitiate.to);
+        assertTrue(sessionInitiate.sdp.startsWith("v=0\r\n"));
+        assertTrue(sessionInitiate.offer.audio);
+        assertTrue(sessionInitiate.offerToReceive.video);
+        assertEquals(921600, sessionInitiate.maxFrameSize);
+        assertEquals(30, sessionInitiate.maxFrameRate);
+    }
+
+    @Test
+    public void testTransportInfo() throws Exception {
+        final ClientRequest request = read(TRANSPORT_INFO);
+
+        assertTrue(request instanceof TransportInfoRequest);
+        final TransportInfoRequest transportInfo = (TransportInfoRequest) request;
+        assertEquals("transport-info", transportInfo.msg);
+        assertEquals(2, transportInfo.candidates.size());
+        assertEquals("0", transportInfo.candidates.get(0).sdpMid);
+        assertTrue(transportInfo.candidates.get(1).removed);
+    }
+
+    @Test
+    public void testSessionRequest() throws Exception {
+        final ClientRequest request = read("{\"msg\":\"session-request\",\"session-id\":\"id-1234\"}");
+
+        assertTrue(request instanceof SessionRequest);
+        assertEquals("id-1234", ((SessionRequest) request).sessionId);
+    }
+
+    @Test
+    public void testUnknown() throws Exception {
+        ClientRequest request = read("{\"msg\":\"unknown-message\",\"sessionId\":\"x\"}");
+        assertTrue(request instanceof UnknownRequest);
+
+        request = read("{\"sessionId\":\"x\"}");
+        assertTrue(request instanceof UnknownRequest);
+        assertNull(request.msg);
+    }
+}
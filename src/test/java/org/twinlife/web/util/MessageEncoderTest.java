@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.Test;
+import org.twinlife.web.messages.SessionUpdateMessage;
+
+public class MessageEncoderTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        final ArrayByteBufferPool pool = new ArrayByteBufferPool();
+
+        // Use an SDP larger than the initial buffer with non ASCII characters to check the buffer growth.
+        final StringBuilder sdp = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sdp.append("a=candidate:").append(i).append(" 1 udp 2122260223 10.0.0.2 54400 typ host é\r\n");
+        }
+        final SessionUpdateMessage message = new SessionUpdateMessage();
+        message.sessionId = "8c7a6f4e-0f0b-4a59-9a3e-0d1b1b3e4a55";
+        message.sdp = sdp.toString();
+
+        final String expected = Json.getObjectWriter().writeValueAsString(message);
+        for (int i = 0; i < 2; i++) {
+            final RetainableByteBuffer buffer = MessageEncoder.encode(pool, message);
+            assertEquals(expected, BufferUtil.toUTF8String(buffer.getByteBuffer()));
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.twinlife.twinlife.BaseService.ErrorCode;
+import org.twinlife.twinlife.util.TimingWheel;
+
+public class RequestHedgerTest {
+
+    @Test
+    public void testHedgeSlowRequest() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel("test", 10, 64);
+        wheel.start();
+        final RequestHedger hedger = new RequestHedger("test", wheel, 95);
+        final AtomicInteger completed = new AtomicInteger();
+
+        // Not hedged until the latency of enough requests is known.
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, hedger.getHedgeDelay());
+            hedger.execute((complete) -> complete.onGet(ErrorCode.SUCCESS, "primary"),
+                    (complete) -> complete.onGet(ErrorCode.SUCCESS, "hedge"),
+                    (ErrorCode status, String value) -> completed.incrementAndGet());
+        }
+        assertEquals(20, completed.get());
+        assertEquals(0, hedger.getHedgeCount());
+        assertTrue(hedger.getHedgeDelay() > 0);
+
+        // The first request never answers: the hedge request gives the result.
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] result = new String[1];
+        hedger.execute((complete) -> { },
+                (complete) -> complete.onGet(ErrorCode.SUCCESS, "hedge"),
+                (ErrorCode status, String value) -> {
+                    result[0] = value;
+                    done.countDown();
+                });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("hedge", result[0]);
+        assertEquals(1, hedger.getHedgeCount());
+        assertEquals(1, hedger.getHedgeWinCount());
+        wheel.stop();
+    }
+
+    @Test
+    public void testErrorWaitsForOtherRequest() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel("test", 10, 64);
+        wheel.start();
+        final RequestHedger hedger = new RequestHedger("test", wheel, 50);
+        for (int i = 0; i < 20; i++) {
+            hedger.execute((complete) -> complete.onGet(ErrorCode.SUCCESS, "primary"), null,
+                    (ErrorCode status, String value) -> { });
+        }
+
+        // The first request fails while the hedge is pending: the hedge answer is used.
+        final CountDownLatch done = new CountDownLatch(1);
+        final ErrorCode[] result = new ErrorCode[1];
+        final CountDownLatch hedged = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        hedger.execute((complete) -> new Thread(() -> {
+                    await(hedged);
+                    complete.onGet(ErrorCode.TIMEOUT_ERROR, null);
+                    failed.countDown();
+                }).start(),
+                (complete) -> {
+                    hedged.countDown();
+                    new Thread(() -> {
+                        await(failed);
+                        complete.onGet(ErrorCode.ITEM_NOT_FOUND, null);
+                    }).start();
+                },
+                (ErrorCode status, String value) -> {
+                    result[0] = status;
+                    done.countDown();
+                });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(ErrorCode.ITEM_NOT_FOUND, result[0]);
+        wheel.stop();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+package org.twinlife.web.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StripedExecutorTest {
+
+    @Test
+    public void testOrderByKey() throws InterruptedException {
+        final StripedExecutor executor = new StripedExecutor("test", 4);
+        final UUID first = UUID.randomUUID();
+        final UUID second = UUID.randomUUID();
+        final List<Integer> firstTasks = new ArrayList<>();
+        final List<Integer> secondTasks = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            executor.execute(first, () -> {
+                firstTasks.add(value);
+                done.countDown();
+            });
+            executor.execute(second, () -> {
+                secondTasks.add(value);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.stop();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) firstTasks.get(i));
+            assertEquals(i, (int) secondTasks.get(i));
+        }
+        assertEquals(200, executor.getExecuteCount());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testQueueLimit() throws InterruptedException {
+        final StripedExecutor executor = new StripedExecutor("test", 1, 4);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch resumed = new CountDownLatch(1);
+        final Runnable resume = resumed::countDown;
+
+        // The first task blocks the stripe, the producer is stopped when the limit is exceeded.
+        assertTrue(executor.execute("key", () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }, resume));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(executor.execute("key", () -> { }, resume));
+        }
+        assertFalse(executor.execute("key", () -> { }, resume));
+        assertEquals(1, executor.getPauseCount());
+
+        // The producer is resumed when the stripe has executed half of its queue.
+        assertFalse(resumed.await(100, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+        assertTrue(resumed.await(10, TimeUnit.SECONDS));
+        executor.stop();
+    }
+}
@@ -11,11 +11,17 @@ package org.twinlife.twinlife;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.ReconnectBackoff;
+import org.twinlife.twinlife.util.TimingWheel;
+
 import java.io.File;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -30,9 +36,8 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
     private static final String RESOURCE = "engine";
     private static final int MIN_CONNECTED_TIMEOUT = 64; // s
     private static final int MAX_CONNECTED_TIMEOUT = 1024; // s
-    private static final int NO_RECONNECTION_TIMEOUT = 0; // ms
-    private static final int MIN_RECONNECTION_TIMEOUT = 1000; // ms
-    private static final int MAX_RECONNECTION_TIMEOUT = 8000; // ms
+    private static final long MIN_RECONNECTION_DELAY = 500; // ms
+    private static final long MAX_RECONNECTION_DELAY = 30000; // ms
 
     @NonNull
     private final File mFilesDir;
@@ -46,7 +51,12 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
     private volatile int mConnectedTimeout = MIN_CONNECTED_TIMEOUT;
     private final ReentrantLock mReconnectionLock = new ReentrantLock();
     private final Condition mReconnectionCondition = mReconnectionLock.newCondition();
-    private volatile int mReconnectionTimeout = NO_RECONNECTION_TIMEOUT;
+    private final ReconnectBackoff mReconnectBackoff = new ReconnectBackoff(MIN_RECONNECTION_DELAY,
+            MAX_RECONNECTION_DELAY, new Random());
+    private final LatencyHistogram mReconnectTimes = new LatencyHistogram();
+    private final AtomicLong mReconnectCount = new AtomicLong();
+    private volatile long mDisconnectTime;
+    private volatile boolean mSignedIn;
     @NonNull
     private final ImageTools mImageTools;
     private final JobService mJobServiceImpl;
@@ -55,7 +65,14 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
                               @NonNull TwinlifeContextImpl twinlifeContext,
                               @NonNull File filesDir, @NonNull File cacheDir,
                               @NonNull ImageTools imageTools) {
-        super(context, twinlifeContext.mTwinlifeExecutor);
+        this(context, configurationService, twinlifeContext, filesDir, cacheDir, imageTools, null);
+    }
+
+    public EngineTwinlifeImpl(Context context, ConfigurationService configurationService,
+                              @NonNull TwinlifeContextImpl twinlifeContext,
+                              @NonNull File filesDir, @NonNull File cacheDir,
+                              @NonNull ImageTools imageTools, @Nullable TimingWheel timers) {
+        super(context, twinlifeContext.mTwinlifeExecutor, timers);
 
         if (DEBUG) {
             Log.d(LOG_TAG, "EngineTwinlifeImpl");
@@ -143,7 +160,7 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
         }
 
         if (isConfigured() && !isConnected()) {
-            mReconnectionTimeout = NO_RECONNECTION_TIMEOUT;
+            mReconnectBackoff.reset();
             mConnectedTimeout = MIN_CONNECTED_TIMEOUT;
 
             mConnectedLock.lock();
@@ -177,6 +194,12 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
 
         super.onDisconnect();
 
+        // Measure the time to sign in again from the first disconnection after a sign-in.
+        if (mSignedIn) {
+            mSignedIn = false;
+            mDisconnectTime = System.currentTimeMillis();
+        }
+
         mConnectedLock.lock();
         mConnectedCondition.signalAll();
         mConnectedLock.unlock();
@@ -186,6 +209,45 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
         mReconnectionLock.unlock();
     }
 
+    @Override
+    public void onSignIn() {
+        if (DEBUG) {
+            Log.d(LOG_TAG, "onSignIn");
+        }
+
+        super.onSignIn();
+
+        mSignedIn = true;
+        mReconnectBackoff.reset();
+        final long disconnectTime = mDisconnectTime;
+        if (disconnectTime != 0) {
+            mDisconnectTime = 0;
+            mReconnectCount.incrementAndGet();
+            mReconnectTimes.record(System.currentTimeMillis() - disconnectTime);
+        }
+    }
+
+    /**
+     * Get the histogram of the time between the loss of the connection and the next sign-in.
+     *
+     * @return the reconnection time histogram.
+     */
+    @NonNull
+    public LatencyHistogram getReconnectTimes() {
+
+        return mReconnectTimes;
+    }
+
+    /**
+     * Get the number of times we signed in again after losing the connection.
+     *
+     * @return the number of reconnections.
+     */
+    public long getReconnectCount() {
+
+        return mReconnectCount.get();
+    }
+
     @Override
     protected void start() {
         if (INFO) {
@@ -224,27 +286,38 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
         onCreate();
 
         mRunning = true;
-        final Random random = new Random();
         while (mRunning) {
-            if (INFO) {
-                Log.i(LOG_TAG, "wait for connected network...");
-            }
-
             if (!isConnected()) {
+                // The first attempt after a sign-in or a connect() is immediate, the next ones are spread.
+                final long delay = mReconnectBackoff.nextDelay();
+                if (delay > 0) {
+                    if (INFO) {
+                        Log.i(LOG_TAG, "wait before reconnecting " + delay);
+                    }
+
+                    //noinspection EmptyCatchBlock
+                    try {
+                        mReconnectionLock.lock();
+                        mReconnectionCondition.await(delay, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException exception) {
+                    } finally {
+                        mReconnectionLock.unlock();
+                    }
+                }
+                if (!mRunning || isConnected()) {
+                    continue;
+                }
+
                 if (INFO) {
                     Log.i(LOG_TAG, "connect...");
                 }
 
-                final int timeout = connectInternal();
-                if (timeout == 0) {
+                if (connectInternal() == 0) {
                     if (INFO) {
                         Log.i(LOG_TAG, "connected");
                     }
 
                     mConnectedTimeout = MIN_CONNECTED_TIMEOUT;
-                    mReconnectionTimeout = random.nextInt(MIN_RECONNECTION_TIMEOUT);
-                } else {
-                    mReconnectionTimeout = random.nextInt(MAX_RECONNECTION_TIMEOUT) + timeout;
                 }
             }
             if (isConnected()) {
@@ -265,25 +338,6 @@ public abstract class EngineTwinlifeImpl extends TwinlifeImpl implements Runnabl
                 } finally {
                     mConnectedLock.unlock();
                 }
-            } else {
-                if (INFO) {
-                    Log.i(LOG_TAG, "wait before reconnecting " + mReconnectionTimeout);
-                }
-
-                if (mReconnectionTimeout == NO_RECONNECTION_TIMEOUT) {
-                    mReconnectionTimeout = MIN_RECONNECTION_TIMEOUT + random.nextInt(MAX_RECONNECTION_TIMEOUT);
-                } else {
-                    //noinspection EmptyCatchBlock
-                    try {
-                        mReconnectionLock.lock();
-                        if (!mReconnectionCondition.await(mReconnectionTimeout, TimeUnit.MILLISECONDS)) {
-                            mReconnectionTimeout = MIN_RECONNECTION_TIMEOUT + random.nextInt(MAX_RECONNECTION_TIMEOUT);
-                        }
-                    } catch (InterruptedException exception) {
-                    } finally {
-                        mReconnectionLock.unlock();
-                    }
-                }
             }
         }
     }
@@ -15,16 +15,17 @@ import android.util.Log;
 
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
+import org.twinlife.twinlife.util.LatencyHistogram;
+import org.twinlife.twinlife.util.OutboundBuffer;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.SerializerFactoryImpl;
 import org.twinlife.twinlife.util.Utils;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -32,20 +33,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Timeout management
  * <p>
- * The timeout management is global to a BaseServiceImpl instance: there is only one timeout deadline for all pending requests.
- * This allows to have a simple implementation but the timeout is less precise.
+ * The pending requests of a service are stored in a registry of the RequestCorrelator shared by all the services.
+ * The services store their request value with getPendingRequests().put() before sending the request and
+ * they remove it with getPendingRequests().remove() when the response or the error is received.
  * <p>
- * When a first request is sent, a timeout deadline is computed for the request and a Job is scheduled with the JobService.
- * The job is scheduled TIMEOUT_CHECK_DELAY (2.0) seconds after the deadline. The requestId is added to the pendingRequestIdList set.
+ * When a request is sent, packetTimeout() sets the response deadline of the request: this is a timer on the
+ * hashed timing wheel of the correlator.  The time to get the response of each operation is recorded in a latency
+ * histogram: once enough responses are received, the deadline of the operation is derived from its 99th percentile
+ * and the estimated RTT, within [MIN_REQUEST_TIMEOUT, timeout].  A lost request is then reported quickly.
  * <p>
- * When another request is sent, a new deadline time is computed and it replaces the current deadline. The scheduled job
- * is not modified. The requestId is also added to the pendingRequestIdList set.
+ * When a response is received, we expect the receive handler to call receivedIQ so that the deadline is cancelled.
  * <p>
- * When the timeout job is executed, we look at the deadline and if it was passed, all pending requests are reported
- * with an error.  If the deadline has not passed and we still have pending requests, a new job is scheduled TIMEOUT_CHECK_DELAY
- * seconds after the deadline.
- * <p>
- * When a response is received, we expect the receive handler to call receivedIQ so that we remove the requestId from the pending list.
+ * When the deadline has passed, the request is reported with a TWINLIFE_OFFLINE error.  All the pending requests
+ * are reported immediately when the connection is lost.  The requests sent shortly after a disconnection are kept
+ * by the OutboundBuffer of TwinlifeImpl and they are sent after the next sign-in if their deadline permits it.
  */
 public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObserver> implements BaseService<Observer> {
     private static final String LOG_TAG = "BaseServiceImpl";
@@ -71,7 +72,9 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
 
     public static final int DATABASE_ERROR_DELAY_GUARD = 2 * 120 * 1000; // 2 minutes
 
-    private static final long TIMEOUT_CHECK_DELAY = 2000;
+    private static final long MIN_REQUEST_TIMEOUT = 3000; // 3s
+    private static final int ADAPTIVE_TIMEOUT_FACTOR = 4;
+    private static final int ADAPTIVE_TIMEOUT_MIN_SAMPLES = 50;
 
     private final CopyOnWriteArrayList<Observer> mServiceObservers = new CopyOnWriteArrayList<>();
     private volatile boolean mSignIn = false;
@@ -89,9 +92,8 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
     private final AtomicInteger mDatabaseErrorCount = new AtomicInteger();
     @NonNull
     protected final JobService mJobService;
-    private Map<Long, Boolean> mPendingRequestList;
-    private long mNextDeadline;
-    private JobService.Job mScheduleJobId;
+    @NonNull
+    private final RequestCorrelator.Registry<Object> mRequests;
 
     @NonNull
     protected final TwinlifeImpl mTwinlifeImpl;
@@ -112,6 +114,7 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
         mJobService = twinlifeImpl.getJobService();
         mSerializerFactory = mTwinlifeImpl.getSerializerFactoryImpl();
         mTwinlifeExecutor = mTwinlifeImpl.getTwinlifeExecutor();
+        mRequests = twinlifeImpl.getRequestCorrelator().newRegistry(getClass().getSimpleName(), this::onRequestTimeout);
     }
 
     public File getFilesDir() {
@@ -387,18 +390,7 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
         mSignIn = false;
         mOnline = false;
 
-        Map<Long, Boolean> pendingRequests;
-        synchronized (this) {
-            pendingRequests = mPendingRequestList;
-            mPendingRequestList = null;
-            if (mScheduleJobId != null) {
-                mScheduleJobId.cancel();
-                mScheduleJobId = null;
-            }
-        }
-        if (pendingRequests != null) {
-            onTimeout(pendingRequests);
-        }
+        mRequests.expireAll();
     }
 
     protected void onSignIn() {
@@ -425,27 +417,26 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
 
         long requestId = iq.getRequestId();
         try {
-            if (mSignIn) {
-                byte[] packet = iq.serializeCompact(mSerializerFactory);
-                packetTimeout(requestId, timeout, true);
-                try {
-                    mConnection.sendDataPacket(packet);
+            final OutboundBuffer outboundBuffer = mTwinlifeImpl.getOutboundBuffer();
+            final LatencyHistogram latency = mRequests.getLatency(iq.getSerializer().schemaId);
+            if (mSignIn && !outboundBuffer.isFlushing()) {
+                return sendPacket(iq, getRequestTimeout(latency, timeout), latency);
+            }
 
-                    mSendCount.incrementAndGet();
+            switch (outboundBuffer.add(mRequests, requestId, iq.serializeCompact(mSerializerFactory),
+                    getRequestTimeout(latency, timeout), latency)) {
+                case BUFFERED:
+                    // The request is sent after the next sign-in if the connection is restored in time.
                     return ErrorCode.SUCCESS;
 
-                } catch (Exception exception) {
-                    if (Logger.INFO) {
-                        Logger.info(LOG_TAG, "sendPacket", exception, " iq=", iq);
-                    }
+                case SEND:
+                    // The flush finished after we looked at it: we are online.
+                    return sendPacket(iq, getRequestTimeout(latency, timeout), latency);
 
+                default:
+                    mSendDisconnectedCount.incrementAndGet();
                     onErrorPacket(new BinaryErrorPacketIQ(requestId, ErrorCode.TWINLIFE_OFFLINE));
                     return ErrorCode.TWINLIFE_OFFLINE;
-                }
-            } else {
-                mSendDisconnectedCount.incrementAndGet();
-                onErrorPacket(new BinaryErrorPacketIQ(requestId, ErrorCode.TWINLIFE_OFFLINE));
-                return ErrorCode.TWINLIFE_OFFLINE;
             }
         } catch (Exception ex) {
             onErrorPacket(new BinaryErrorPacketIQ(requestId, ErrorCode.LIBRARY_ERROR));
@@ -453,6 +444,32 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
         }
     }
 
+    private ErrorCode sendPacket(@NonNull BinaryPacketIQ iq, long timeout, @Nullable LatencyHistogram latency)
+            throws SerializerException {
+
+        final long requestId = iq.getRequestId();
+        mRequests.setDeadline(requestId, timeout, true, latency);
+        try {
+            mConnection.sendPacket(iq);
+
+            mSendCount.incrementAndGet();
+            return ErrorCode.SUCCESS;
+
+        } catch (SerializerException exception) {
+            // The packet was not sent, forget its timeout.
+            receivedIQ(requestId);
+            throw exception;
+
+        } catch (Exception exception) {
+            if (Logger.INFO) {
+                Logger.info(LOG_TAG, "sendPacket", exception, " iq=", iq);
+            }
+
+            onErrorPacket(new BinaryErrorPacketIQ(requestId, ErrorCode.TWINLIFE_OFFLINE));
+            return ErrorCode.TWINLIFE_OFFLINE;
+        }
+    }
+
     protected void sendResponse(@NonNull BinaryPacketIQ iq) {
         if (DEBUG) {
             Log.d(LOG_TAG, "sendResponse iq=" + iq);
@@ -460,9 +477,8 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
 
         try {
             if (mSignIn) {
-                byte[] packet = iq.serializeCompact(mSerializerFactory);
                 try {
-                    mConnection.sendDataPacket(packet);
+                    mConnection.sendPacket(iq);
 
                     mSendCount.incrementAndGet();
 
@@ -486,17 +502,24 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
             Log.d(LOG_TAG, "packetTimeout requestId=" + requestId + " timeout=" + timeout + " isBinary=" + isBinary);
         }
 
-        long nextDeadline = System.currentTimeMillis() + timeout + TIMEOUT_CHECK_DELAY;
-        synchronized (this) {
-            mNextDeadline = nextDeadline;
-            if (mPendingRequestList == null) {
-                mPendingRequestList = new HashMap<>();
-            }
-            mPendingRequestList.put(requestId, isBinary);
-            if (mScheduleJobId == null) {
-                mScheduleJobId = mJobService.scheduleAfter("server timeout", this::onPacketTimeout, mNextDeadline, JobService.Priority.CONNECT);
-            }
+        mRequests.setDeadline(requestId, timeout, isBinary);
+    }
+
+    /**
+     * Get the response timeout of an operation from its latency histogram.
+     *
+     * @param latency the latency histogram of the operation.
+     * @param timeout the maximum timeout in milliseconds.
+     * @return the timeout to use in milliseconds.
+     */
+    protected long getRequestTimeout(@NonNull LatencyHistogram latency, long timeout) {
+
+        if (latency.getCount() < ADAPTIVE_TIMEOUT_MIN_SAMPLES) {
+            return timeout;
         }
+
+        final long adaptiveTimeout = ADAPTIVE_TIMEOUT_FACTOR * latency.getPercentile(99) + mTwinlifeImpl.getEstimatedRTT();
+        return Math.min(timeout, Math.max(MIN_REQUEST_TIMEOUT, adaptiveTimeout));
     }
 
     protected boolean receivedIQ(long requestId) {
@@ -504,17 +527,39 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
             Log.d(LOG_TAG, "receivedIQ requestId=" + requestId);
         }
 
-        Boolean result = null;
-        synchronized (this) {
-            if (mPendingRequestList != null) {
-                result = mPendingRequestList.remove(requestId);
-                if (mPendingRequestList.isEmpty() && mScheduleJobId != null) {
-                    mScheduleJobId.cancel();
-                    mScheduleJobId = null;
-                }
-            }
-        }
-        return result != null && result;
+        return mRequests.complete(requestId);
+    }
+
+    /**
+     * Get the registry of the requests sent by this service.  The service uses a single request value type.
+     *
+     * @return the pending requests of the service.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    protected final <T> RequestCorrelator.Registry<T> getPendingRequests() {
+
+        return (RequestCorrelator.Registry<T>) (RequestCorrelator.Registry<?>) mRequests;
+    }
+
+    /**
+     * Get the number of requests sent by the service and waiting for a response.
+     *
+     * @return the number of pending requests.
+     */
+    public int getPendingRequestCount() {
+
+        return mRequests.getInFlightCount();
+    }
+
+    /**
+     * Get the age of the oldest request sent by the service and waiting for a response.
+     *
+     * @return the age in milliseconds or 0.
+     */
+    public long getOldestPendingRequestAge() {
+
+        return mRequests.getOldestPendingAge();
     }
 
     protected void onError(long requestId, ErrorCode status, String errorParameter) {
@@ -578,39 +623,17 @@ public abstract class BaseServiceImpl <Observer extends BaseService.ServiceObser
         return errorCode;
     }
 
-    private void onPacketTimeout() {
-        if (DEBUG) {
-            Log.d(LOG_TAG, "onPacketTimeout");
-        }
-
-        long now = System.currentTimeMillis();
-        Map<Long, Boolean> pendingRequests = null;
-        synchronized (this) {
-            mScheduleJobId = null;
-            if (mNextDeadline < now) {
-                pendingRequests = mPendingRequestList;
-                mPendingRequestList = null;
-            } else {
-                mScheduleJobId = mJobService.scheduleAfter("server timeout", this::onPacketTimeout, mNextDeadline, JobService.Priority.CONNECT);
-            }
-        }
-        if (pendingRequests != null) {
-            onTimeout(pendingRequests);
-        }
-    }
-
-    private void onTimeout(Map<Long, Boolean> requestIds) {
+    private void onRequestTimeout(long requestId, @Nullable Object request, boolean isBinary) {
         if (DEBUG) {
-            Log.d(LOG_TAG, "onTimeout requestIds=" + requestIds);
+            Log.d(LOG_TAG, "onRequestTimeout requestId=" + requestId + " isBinary=" + isBinary);
         }
 
-        for (Map.Entry<Long, Boolean> requestInfo : requestIds.entrySet()) {
-            mSendTimeoutCount.incrementAndGet();
-            if (requestInfo.getValue()) {
-                onErrorPacket(new BinaryErrorPacketIQ(requestInfo.getKey(), ErrorCode.TWINLIFE_OFFLINE));
-            } else {
-                onError(requestInfo.getKey(), ErrorCode.TWINLIFE_OFFLINE, null);
-            }
+        // Called from the timing wheel thread which must not be blocked by the error handlers.
+        mSendTimeoutCount.incrementAndGet();
+        if (isBinary) {
+            mTwinlifeExecutor.execute(() -> onErrorPacket(new BinaryErrorPacketIQ(requestId, ErrorCode.TWINLIFE_OFFLINE)));
+        } else {
+            mTwinlifeExecutor.execute(() -> onError(requestId, ErrorCode.TWINLIFE_OFFLINE, null));
         }
     }
 
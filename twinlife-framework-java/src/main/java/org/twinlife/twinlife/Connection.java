@@ -16,25 +16,26 @@ import androidx.annotation.Nullable;
 
 import org.libwebsockets.api.ConnectStats;
 import org.libwebsockets.api.ErrorStats;
-import org.twinlife.twinlife.util.BinaryCompactDecoder;
-import org.twinlife.twinlife.util.BinaryDecoder;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
+import org.twinlife.twinlife.util.ByteBufferDecoder;
 import org.twinlife.twinlife.util.SchemaKey;
+import org.twinlife.twinlife.util.SchemaTable;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class Connection {
     private static final String LOG_TAG = "Connection";
     private static final boolean DEBUG = false;
 
     @NonNull
-    private final SerializerFactory mSerializerFactory;
+    protected final SerializerFactory mSerializerFactory;
+    // The listeners are registered by the services before the connection is used.
     @NonNull
-    protected final Map<SchemaKey, Pair<Serializer, BinaryPacketListener>> mBinaryListeners = new HashMap<>();
+    private volatile SchemaTable<Pair<Serializer, BinaryPacketListener>> mBinaryListeners = SchemaTable.empty();
+    private final AtomicLong mUnknownPacketCount = new AtomicLong();
     @Nullable
     protected ConnectionListener mConnectionListener;
 
@@ -69,6 +70,18 @@ public abstract class Connection {
      */
     public abstract void sendDataPacket(byte[] packet) throws IOException;
 
+    /**
+     * Serialize and send the packet to the server.
+     *
+     * @param iq the packet to send.
+     * @exception SerializerException raised if the packet cannot be serialized.
+     * @exception IOException raised if there is a connection error.
+     */
+    public void sendPacket(@NonNull BinaryPacketIQ iq) throws SerializerException, IOException {
+
+        sendDataPacket(iq.serializeCompact(mSerializerFactory));
+    }
+
     /**
      * Closes the connection.
      */
@@ -132,9 +145,34 @@ public abstract class Connection {
      */
     public void addPacketListener(@NonNull Serializer serializer, @NonNull BinaryPacketListener packetListener) {
 
-        final SchemaKey key = new SchemaKey(serializer.schemaId, serializer.schemaVersion);
+        synchronized (this) {
+            if (mBinaryListeners.contains(serializer.schemaId, serializer.schemaVersion)) {
+                Log.e(LOG_TAG, "Packet listener for schema " + serializer.schemaId + ":" + serializer.schemaVersion + " is replaced");
+            }
+            mBinaryListeners = mBinaryListeners.with(serializer.schemaId, serializer.schemaVersion,
+                    new Pair<>(serializer, packetListener));
+        }
+    }
+
+    /**
+     * Get the number of packets received for each schema.
+     *
+     * @return the packet counters indexed by schema.
+     */
+    @NonNull
+    public Map<SchemaKey, Long> getPacketCounters() {
 
-        mBinaryListeners.put(key, new Pair<>(serializer, packetListener));
+        return mBinaryListeners.getHitCounters();
+    }
+
+    /**
+     * Get the number of packets received with a schema that has no listener.
+     *
+     * @return the number of ignored packets.
+     */
+    public long getUnknownPacketCount() {
+
+        return mUnknownPacketCount.get();
     }
 
     /**
@@ -152,20 +190,32 @@ public abstract class Connection {
     }
 
     protected void onBinaryMessageInternal(@NonNull byte[] data, int offset, int len) {
+
+        onBinaryMessageInternal(ByteBuffer.wrap(data, offset, len));
+    }
+
+    /**
+     * Decode the packet and dispatch it to its listener.  The packet is fully decoded before
+     * returning: the buffer can be released by the caller.
+     *
+     * @param payload the packet, heap or direct buffer.
+     */
+    protected void onBinaryMessageInternal(@NonNull ByteBuffer payload) {
         if (DEBUG) {
-            Log.d(LOG_TAG, "onBinaryMessageInternal: data=" + data);
+            Log.d(LOG_TAG, "onBinaryMessageInternal: payload=" + payload);
         }
 
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(data, offset, len);
-            BinaryDecoder binaryDecoder = new BinaryCompactDecoder(inputStream);
-            UUID schemaId = binaryDecoder.readUUID();
-            int version = binaryDecoder.readInt();
-            SchemaKey key = new SchemaKey(schemaId, version);
-            Pair<Serializer, BinaryPacketListener> listener = mBinaryListeners.get(key);
+            ByteBufferDecoder decoder = new ByteBufferDecoder(payload);
+            long leastSignificantBits = decoder.readUUIDBits();
+            long mostSignificantBits = decoder.readUUIDBits();
+            int version = decoder.readInt();
+            Pair<Serializer, BinaryPacketListener> listener = mBinaryListeners.get(mostSignificantBits, leastSignificantBits, version);
             if (listener != null) {
-                BinaryPacketIQ iq = (BinaryPacketIQ) listener.first.deserialize(mSerializerFactory, binaryDecoder);
-                listener.second.processPacket(iq);
+                BinaryPacketIQ iq = (BinaryPacketIQ) listener.first.deserialize(mSerializerFactory, decoder);
+                dispatchPacket(listener.second, iq);
+            } else {
+                mUnknownPacketCount.incrementAndGet();
             }
 
         } catch (Exception ex) {
@@ -173,4 +223,16 @@ public abstract class Connection {
 
         }
     }
+
+    /**
+     * Give the decoded packet to its listener.  The default implementation calls the listener
+     * from the thread that received the packet.
+     *
+     * @param listener the packet listener.
+     * @param iq the packet to process.
+     */
+    protected void dispatchPacket(@NonNull BinaryPacketListener listener, @NonNull BinaryPacketIQ iq) {
+
+        listener.processPacket(iq);
+    }
 }
@@ -61,6 +61,8 @@ public interface TwincodeOutboundService extends BaseService<TwincodeOutboundSer
 
         default void onRefreshTwincode(@NonNull TwincodeOutbound twincodeOutbound,
                                        @NonNull List<AttributeNameValue> previousAttributes) {}
+
+        default void onUpdateTwincode(@NonNull TwincodeOutbound twincodeOutbound) {}
     }
 
     void getTwincode(@NonNull UUID twincodeOutboundId, long refreshPeriod, @NonNull Consumer<TwincodeOutbound> complete);
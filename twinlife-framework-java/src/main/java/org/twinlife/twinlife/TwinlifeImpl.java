@@ -42,7 +42,10 @@ import org.twinlife.twinlife.twincode.outbound.TwincodeOutboundServiceImpl;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.OutboundBuffer;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.SerializerFactoryImpl;
+import org.twinlife.twinlife.util.TimingWheel;
 import org.twinlife.twinlife.util.Utils;
 
 import java.util.ArrayList;
@@ -61,6 +64,12 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
 
     // private static final int MAX_ADJUST_TIME = 3600 * 1000; // Absolute maximum wallclock time adjustment in ms made.
 
+    private static final long REQUEST_TIMER_TICK_DURATION = 100; // ms
+    private static final int REQUEST_TIMER_WHEEL_SIZE = 512;
+    private static final int OUTBOUND_BUFFER_MAX_PACKETS = 1024;
+    private static final int OUTBOUND_BUFFER_MAX_BYTES = 1024 * 1024;
+    private static final long RECONNECT_GRACE_WINDOW = 5000; // ms
+
     public static final String DATABASE_NAME = "twinlife.db";
     public static final String CIPHER_V3_DATABASE_NAME = "twinlife.cipher";
     public static final String CIPHER_V4_DATABASE_NAME = "twinlife-4.cipher";
@@ -316,6 +325,17 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
 
     private final SerializerFactoryImpl mSerializerFactoryImpl;
 
+    //
+    // Requests sent by the services and their response deadline.
+    //
+
+    @NonNull
+    private final RequestCorrelator mRequestCorrelator;
+    @Nullable
+    private final TimingWheel mOwnTimers;
+    @NonNull
+    private final OutboundBuffer mOutboundBuffer;
+
     private volatile String mFullJid;
     private long mServerTimeCorrection = 0L;
     private long mEstimatedRTT = 0L;
@@ -330,6 +350,18 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
     }
 
     public TwinlifeImpl(@NonNull Context context, @NonNull Executor executor) {
+        this(context, executor, null);
+    }
+
+    /**
+     * Create the Twinlife instance with the timing wheel used for the request deadlines.
+     * When the timing wheel is null, a timing wheel is created and stopped by onDestroy().
+     *
+     * @param context the context.
+     * @param executor the Twinlife executor.
+     * @param timers the timing wheel or null.
+     */
+    public TwinlifeImpl(@NonNull Context context, @NonNull Executor executor, @Nullable TimingWheel timers) {
         if (DEBUG) {
             Log.d(LOG_TAG, "TwinlifeImpl");
         }
@@ -338,6 +370,16 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
         mContext = context;
         mTwinlifeExecutor = executor;
         mDatabaseService = new DatabaseServiceImpl();
+        if (timers == null) {
+            mOwnTimers = new TimingWheel("twinlife-timers", REQUEST_TIMER_TICK_DURATION, REQUEST_TIMER_WHEEL_SIZE);
+            mOwnTimers.start();
+            timers = mOwnTimers;
+        } else {
+            mOwnTimers = null;
+        }
+        mRequestCorrelator = new RequestCorrelator(timers);
+        mOutboundBuffer = new OutboundBuffer(timers, OUTBOUND_BUFFER_MAX_PACKETS, OUTBOUND_BUFFER_MAX_BYTES,
+                RECONNECT_GRACE_WINDOW);
     }
 
     public Context getContext() {
@@ -362,6 +404,10 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
             }
         }
 
+        if (mOwnTimers != null) {
+            mOwnTimers.stop();
+        }
+
         if (mRemoveDatabaseOnDestroy) {
             removeDatabase();
         }
@@ -853,11 +899,21 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
 
         mFullJid = mAccountServiceImpl.getUser();
 
+        // The requests made by the services while they sign in must be sent after the kept ones.
+        mOutboundBuffer.beginSignIn();
         for (BaseServiceImpl<?> baseService : mBaseServiceImpls) {
             if (baseService.isServiceOn()) {
                 baseService.onSignIn();
             }
         }
+
+        // Send the requests that were kept while we were reconnecting.
+        final Connection connection = mWebSocketConnection;
+        if (connection != null) {
+            mOutboundBuffer.onSignIn(connection, mEstimatedRTT);
+        } else {
+            mOutboundBuffer.clear();
+        }
     }
 
     public void onSignOut() {
@@ -865,6 +921,7 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
             Log.d(LOG_TAG, "onSignOut");
         }
 
+        mOutboundBuffer.clear();
         for (BaseServiceImpl<?> baseService : mBaseServiceImpls) {
             if (baseService.isServiceOn()) {
                 baseService.onSignOut();
@@ -1020,6 +1077,18 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
         return mSerializerFactoryImpl;
     }
 
+    @NonNull
+    public RequestCorrelator getRequestCorrelator() {
+
+        return mRequestCorrelator;
+    }
+
+    @NonNull
+    public OutboundBuffer getOutboundBuffer() {
+
+        return mOutboundBuffer;
+    }
+
     @NonNull
     public Executor getTwinlifeExecutor() {
         if (DEBUG) {
@@ -1175,6 +1244,7 @@ public abstract class TwinlifeImpl implements Twinlife, ConnectionListener, Base
             Log.d(LOG_TAG, "onDisconnect");
         }
 
+        mOutboundBuffer.onDisconnect();
         for (BaseServiceImpl<?> baseService : mBaseServiceImpls) {
             if (baseService.isServiceReady()) {
                 baseService.onDisconnect();
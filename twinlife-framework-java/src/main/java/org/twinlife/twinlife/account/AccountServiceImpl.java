@@ -29,6 +29,7 @@ import org.twinlife.twinlife.TwinlifeImpl;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.Utf8;
 import org.twinlife.twinlife.util.Utils;
 
@@ -36,7 +37,6 @@ import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -97,6 +97,45 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
         CHANGE_PASSWORD_REQUEST
     }
 
+    /**
+     * The SCRAM salted password computed for the last authentication.  The server gives the same
+     * salt and iteration count while the password is not changed: a reconnection can skip the key derivation.
+     * The password is identified by a salted SHA-256 digest so that no copy of it is kept.
+     */
+    private static final class SaltedPassword {
+        @NonNull
+        final byte[] salt;
+        final int iterations;
+        @NonNull
+        final byte[] passwordDigest;
+        @NonNull
+        final byte[] value;
+
+        SaltedPassword(@NonNull byte[] salt, int iterations, @NonNull byte[] passwordDigest, @NonNull byte[] value) {
+            this.salt = salt;
+            this.iterations = iterations;
+            this.passwordDigest = passwordDigest;
+            this.value = value;
+        }
+
+        boolean matches(@NonNull byte[] salt, int iterations, @NonNull byte[] passwordDigest) {
+
+            return this.iterations == iterations && Arrays.equals(this.salt, salt)
+                    && MessageDigest.isEqual(this.passwordDigest, passwordDigest);
+        }
+
+        @NonNull
+        static byte[] digest(@NonNull byte[] salt, @NonNull String password) throws GeneralSecurityException {
+
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] data = Utf8.getBytes(password);
+            digest.update(salt);
+            digest.update(data);
+            Arrays.fill(data, (byte) 0);
+            return digest.digest();
+        }
+    }
+
     private AccountSecuredConfiguration mAccountSecuredConfiguration;
 
     private final Set<String> mAllowedFeatures;
@@ -104,13 +143,15 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
     private final UUID mServiceId;
     private final String mApiKey;
     private final String mAccessToken;
-    private final HashMap<Long, RequestKind> mPendingRequests;
+    private final RequestCorrelator.Registry<RequestKind> mPendingRequests;
     @Nullable
     private AuthChallengeIQ mAuthChallenge;
     @Nullable
     private OnAuthChallengeIQ mOnAuthChallenge;
     @Nullable
     private byte[] mServerKey;
+    @Nullable
+    private volatile SaltedPassword mSaltedPassword;
     private boolean mCreateAccountAllowed;
     @Nullable
     private volatile String mAuthUser;
@@ -156,7 +197,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
         mApiKey = apiKey;
         mAccessToken = accessToken;
         mAllowedFeatures = new HashSet<>();
-        mPendingRequests = new HashMap<>();
+        mPendingRequests = getPendingRequests();
         AccountServiceConfiguration accountServiceConfiguration = new AccountServiceConfiguration();
         accountServiceConfiguration.defaultAuthenticationAuthority = AuthenticationAuthority.TWINLIFE;
         setServiceConfiguration(accountServiceConfiguration);
@@ -453,9 +494,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
             return;
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, RequestKind.DELETE_ACCOUNT_REQUEST);
-        }
+        mPendingRequests.put(requestId, RequestKind.DELETE_ACCOUNT_REQUEST);
 
         DeleteAccountIQ deleteAccountIQ = new DeleteAccountIQ(IQ_DELETE_ACCOUNT_SERIALIZER, requestId, accountIdentifier, accountPassword);
         sendDataPacket(deleteAccountIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -474,9 +513,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
             return;
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, RequestKind.SUBSCRIBE_REQUEST);
-        }
+        mPendingRequests.put(requestId, RequestKind.SUBSCRIBE_REQUEST);
 
         SubscribeFeatureIQ subscribeFeatureIQ = new SubscribeFeatureIQ(IQ_SUBSCRIBE_FEATURE_SERIALIZER, requestId, merchantId,
                 purchaseProductId, purchaseToken, purchaseOrderId);
@@ -496,9 +533,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
             return;
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, RequestKind.CANCEL_REQUEST);
-        }
+        mPendingRequests.put(requestId, RequestKind.CANCEL_REQUEST);
 
         CancelFeatureIQ cancelFeatureIQ = new CancelFeatureIQ(IQ_CANCEL_FEATURE_SERIALIZER, requestId, merchantId,
                 purchaseToken, purchaseOrderId);
@@ -541,10 +576,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final RequestKind request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final RequestKind request = mPendingRequests.remove(requestId);
 
         // If we have a pending request, this is a subscribe, cancel or delete account and we report the error.
         if (request != null) {
@@ -622,9 +654,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
 
         mNewDevicePassword = Utils.encodeBase64(password);
         final long requestId = mTwinlifeImpl.newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, RequestKind.CHANGE_PASSWORD_REQUEST);
-        }
+        mPendingRequests.put(requestId, RequestKind.CHANGE_PASSWORD_REQUEST);
 
         final ChangePasswordIQ changePasswordIQ = new ChangePasswordIQ(IQ_CHANGE_PASSWORD_SERIALIZER, requestId, accountIdentifier, accountPassword, mNewDevicePassword);
         sendDataPacket(changePasswordIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -729,7 +759,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
             authMessage.append(resource);
 
             // Compute everything according to RFC 5802 section 3. SCRAM Algorithm Overview
-            byte[] saltedPassword = createSaltedPassword(mOnAuthChallenge.salt, password, mOnAuthChallenge.iteration);
+            byte[] saltedPassword = getSaltedPassword(mOnAuthChallenge.salt, password, mOnAuthChallenge.iteration);
             byte[] clientKey = computeHmac(saltedPassword, "Client Key");
             byte[] storedKey = MessageDigest.getInstance("SHA-1").digest(clientKey);
             byte[] clientSignature = computeHmac(storedKey, authMessage.toString());
@@ -953,6 +983,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
                 mAccountSecuredConfiguration.changePassword(mNewDevicePassword, mTwinlifeImpl.getConfigurationService(), mSerializerFactory);
             }
             mNewDevicePassword = null;
+            mSaltedPassword = null;
         }
     }
 
@@ -978,10 +1009,8 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
             return;
         }
 
-        synchronized (mPendingRequests) {
-            if (mPendingRequests.remove(requestId) == null) {
-                return;
-            }
+        if (mPendingRequests.remove(requestId) == null) {
+            return;
         }
 
         final OnSubscribeFeatureIQ onSubscribeFeatureIQ = (OnSubscribeFeatureIQ) iq;
@@ -1018,8 +1047,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
 
         final BinaryPacketIQ pongIQ = new BinaryPacketIQ(IQ_PONG_SERIALIZER, iq);
         try {
-            final byte[] packet = pongIQ.serializeCompact(mSerializerFactory);
-            mConnection.sendDataPacket(packet);
+            mConnection.sendPacket(pongIQ);
 
         } catch (Exception exception) {
             if (DEBUG) {
@@ -1040,6 +1068,7 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
                 mAccountSecuredConfiguration.erase(configurationService);
                 configurationService.eraseAllSecuredConfiguration();
             }
+            mSaltedPassword = null;
 
             mTwinlifeImpl.onSignOut();
         } catch (Exception exception) {
@@ -1053,6 +1082,23 @@ public class AccountServiceImpl extends BaseServiceImpl<AccountService.ServiceOb
         }
     }
 
+    @NonNull
+    private byte[] getSaltedPassword(@NonNull byte[] salt, @NonNull String password, int iters) throws GeneralSecurityException {
+        if (DEBUG) {
+            Log.d(LOG_TAG, "getSaltedPassword");
+        }
+
+        final byte[] passwordDigest = SaltedPassword.digest(salt, password);
+        final SaltedPassword saltedPassword = mSaltedPassword;
+        if (saltedPassword != null && saltedPassword.matches(salt, iters, passwordDigest)) {
+            return saltedPassword.value;
+        }
+
+        final byte[] result = createSaltedPassword(salt, password, iters);
+        mSaltedPassword = new SaltedPassword(salt.clone(), iters, passwordDigest, result);
+        return result;
+    }
+
     @NonNull
     public static byte[] createSaltedPassword(@NonNull byte[] salt, @NonNull String password, int iters) throws GeneralSecurityException {
         if (DEBUG) {
@@ -30,11 +30,11 @@ import org.twinlife.twinlife.TwinlifeImpl;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ.BinaryPacketIQSerializer;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.SerializerFactoryImpl;
 import org.twinlife.twinlife.util.Version;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -169,7 +169,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         }
     }
 
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     @NonNull
     private PeerSignalingListener mPeerSignalingListener = new DefaultSignalingListener();
 
@@ -264,9 +264,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
 
         super.onSignOut();
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.clear();
-        }
+        mPendingRequests.clear();
     }
 
     //
@@ -288,9 +286,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
             Log.d(LOG_TAG, "createCallRoom requestId=" + requestId + " twincodeOut=" + twincodeOut);
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new PendingRequest());
-        }
+        mPendingRequests.put(requestId, new PendingRequest());
 
         final MemberSessionInfo[] list = new MemberSessionInfo[members.size()];
         int pos = 0;
@@ -319,9 +315,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
             Log.d(LOG_TAG, "inviteCallRoom requestId=" + requestId + " callRoomId=" + callRoomId);
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new PendingRequest());
-        }
+        mPendingRequests.put(requestId, new PendingRequest());
 
         final InviteCallRoomIQ createCallRoomIQ = new InviteCallRoomIQ(IQ_INVITE_CALL_ROOM_SERIALIZER, requestId, callRoomId, twincodeOutboundId, p2pSessionId, 0, 0);
         sendDataPacket(createCallRoomIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -343,9 +337,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
             Log.d(LOG_TAG, "joinCallRoom: requestId=" + requestId + " callRoomId=" + callRoomId + " p2pSessions=" + p2pSessions);
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
-        }
+        mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
 
         JoinCallRoomIQ joinCallRoomIQ = new JoinCallRoomIQ(IQ_JOIN_CALL_ROOM_SERIALIZER, requestId, callRoomId, twincodeOut, p2pSessions);
         sendDataPacket(joinCallRoomIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -364,9 +356,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
             Log.d(LOG_TAG, "leaveCallRoom requestId=" + requestId + " callRoomId=" + callRoomId);
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
-        }
+        mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
 
         LeaveCallRoomIQ leaveCallRoomIQ = new LeaveCallRoomIQ(IQ_LEAVE_CALL_ROOM_SERIALIZER, requestId, callRoomId, memberId);
         sendDataPacket(leaveCallRoomIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -384,9 +374,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
             Log.d(LOG_TAG, "destroyGroup requestId=" + requestId + " callRoomId=" + callRoomId);
         }
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
-        }
+        mPendingRequests.put(requestId, new CallRoomPendingRequest(callRoomId));
 
         DestroyCallRoomIQ destroyCallRoomIQ = new DestroyCallRoomIQ(IQ_DESTROY_CALL_ROOM_SERIALIZER, requestId, callRoomId);
         sendDataPacket(destroyCallRoomIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -511,9 +499,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
                 maxReceivedFrameSize, maxReceivedFrameRate, (int) notificationContent.estimatedSize,
                 (int) notificationContent.operationCount, sdp.getData(), sdp.getLength());
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-        }
+        mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
 
         sendDataPacket(sessionInitiateIQ, DEFAULT_REQUEST_TIMEOUT);
     }
@@ -557,9 +543,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
                 MAJOR_VERSION, MINOR_VERSION,
                 maxReceivedFrameSize, maxReceivedFrameRate, 0, 0, sdpAnswer.getData(), sdpAnswer.getLength());
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-        }
+        mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
 
         sendDataPacket(sessionAcceptIQ, DEFAULT_REQUEST_TIMEOUT);
     }
@@ -589,9 +573,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         final TransportInfoIQ transportInfoIQ = new TransportInfoIQ(IQ_TRANSPORT_INFO_SERIALIZER, requestId, to, sessionId,
                 expirationDeadline, mode, sdp.getData(), sdp.getLength(), null);
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-        }
+        mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
 
         sendDataPacket(transportInfoIQ, DEFAULT_REQUEST_TIMEOUT);
     }
@@ -625,9 +607,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         final SessionUpdateIQ updateIQ = new SessionUpdateIQ(IQ_SESSION_UPDATE_SERIALIZER, requestId, to, sessionId,
                 expirationDeadline, updateType, sdp.getData(), sdp.getLength());
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-        }
+        mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
 
         sendDataPacket(updateIQ, DEFAULT_REQUEST_TIMEOUT);
     }
@@ -652,9 +632,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
 
         final SessionPingIQ sessionPingIQ = new SessionPingIQ(IQ_SESSION_PING_SERIALIZER, requestId, from, to, sessionId);
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-        }
+        mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
 
         sendDataPacket(sessionPingIQ, DEFAULT_REQUEST_TIMEOUT);
     }
@@ -678,9 +656,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         final SessionTerminateIQ terminateIQ = new SessionTerminateIQ(IQ_SESSION_TERMINATE_SERIALIZER, requestId, to, sessionId, reason);
 
         if (onComplete != null) {
-            synchronized (mPendingRequests) {
-                mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
-            }
+            mPendingRequests.put(requestId, new SessionPendingRequest(sessionId, onComplete));
         }
 
         sendDataPacket(terminateIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -720,10 +696,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -773,10 +746,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final CallRoomPendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final CallRoomPendingRequest request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -812,10 +782,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final CallRoomPendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final CallRoomPendingRequest request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -839,10 +806,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final CallRoomPendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final CallRoomPendingRequest request = (CallRoomPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -887,10 +851,7 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof SessionPendingRequest)) {
             return;
         }
@@ -1045,12 +1006,9 @@ public class PeerCallServiceImpl extends BaseServiceImpl<PeerCallService.Service
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-            if (request == null) {
-                return;
-            }
+        final PendingRequest request = mPendingRequests.remove(requestId);
+        if (request == null) {
+            return;
         }
 
         // The object no longer exists on the server, remove it from our local database.
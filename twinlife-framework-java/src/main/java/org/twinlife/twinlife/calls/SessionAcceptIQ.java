@@ -9,6 +9,7 @@
 package org.twinlife.twinlife.calls;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.twinlife.twinlife.BuildConfig;
 import org.twinlife.twinlife.Decoder;
@@ -152,6 +153,13 @@ class SessionAcceptIQ extends BinaryPacketIQ {
         return new Sdp(sdp, sdpLength, compressed, keyIndex);
     }
 
+    @Override
+    @Nullable
+    public UUID getSessionId() {
+
+        return sessionId;
+    }
+
     //
     // Override Object methods
     //
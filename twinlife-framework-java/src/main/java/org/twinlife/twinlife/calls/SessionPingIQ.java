@@ -9,6 +9,7 @@
 package org.twinlife.twinlife.calls;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.twinlife.twinlife.BuildConfig;
 import org.twinlife.twinlife.Decoder;
@@ -84,6 +85,13 @@ class SessionPingIQ extends BinaryPacketIQ {
     @NonNull
     final UUID sessionId;
 
+    @Override
+    @Nullable
+    public UUID getSessionId() {
+
+        return sessionId;
+    }
+
     //
     // Override Object methods
     //
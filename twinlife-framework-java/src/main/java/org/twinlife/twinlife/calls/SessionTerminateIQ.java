@@ -9,6 +9,7 @@
 package org.twinlife.twinlife.calls;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.twinlife.twinlife.BuildConfig;
 import org.twinlife.twinlife.Decoder;
@@ -262,6 +263,13 @@ class SessionTerminateIQ extends BinaryPacketIQ {
     @NonNull
     final TerminateReason reason;
 
+    @Override
+    @Nullable
+    public UUID getSessionId() {
+
+        return sessionId;
+    }
+
     //
     // Override Object methods
     //
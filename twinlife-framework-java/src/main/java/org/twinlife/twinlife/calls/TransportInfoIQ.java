@@ -141,6 +141,13 @@ class TransportInfoIQ extends BinaryPacketIQ {
         return new Sdp(sdp, sdpLength, compressed, keyIndex);
     }
 
+    @Override
+    @Nullable
+    public UUID getSessionId() {
+
+        return sessionId;
+    }
+
     //
     // Override Object methods
     //
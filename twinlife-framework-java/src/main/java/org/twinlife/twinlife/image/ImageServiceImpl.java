@@ -9,7 +9,6 @@
 
 package org.twinlife.twinlife.image;
 
-import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
@@ -37,6 +36,7 @@ import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ.BinaryPacketIQSerializer;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.SerializerFactoryImpl;
 import org.twinlife.twinlife.util.Utils;
 
@@ -46,7 +46,6 @@ import java.io.FileOutputStream;
 import java.lang.ref.WeakReference;
 import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -203,8 +202,8 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
     }
 
     private final ImageServiceProvider mServiceProvider;
-    @SuppressLint("UseSparseArrays")
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    // The registry is also used as a lock to protect the chain of GetImagePendingRequest.
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     private final File mCacheDir;
     private final File mLocalImagesDir;
     private final long mMaxImageSize = 4 * 1024 * 1024; // 4Mb PNG/JPG file max
@@ -644,9 +643,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
 
         CreateImagePendingRequest request = new CreateImagePendingRequest(normalFile, largeFile, thumbnailData,
                 thumbnailSha, imageSha, largeImageSha, total1Length, total2Length, consumer);
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, request);
-        }
+        mPendingRequests.put(requestId, request);
         sendDataPacket(createImageIQ, DEFAULT_REQUEST_TIMEOUT);
     }
 
@@ -726,9 +723,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
 
             CreateImagePendingRequest request = new CreateImagePendingRequest(null, null, image.data,
                     thumbnailSha, null, null, 0, 0, consumer);
-            synchronized (mPendingRequests) {
-                mPendingRequests.put(requestId, request);
-            }
+            mPendingRequests.put(requestId, request);
             sendDataPacket(createImageIQ, DEFAULT_REQUEST_TIMEOUT);
             return;
         }
@@ -738,9 +733,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
         CopyImageIQ copyImageIQ = new CopyImageIQ(IQ_COPY_IMAGE_SERIALIZER, requestId, image.imageId);
 
         CopyImagePendingRequest request = new CopyImagePendingRequest(imageId, consumer);
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, request);
-        }
+        mPendingRequests.put(requestId, request);
         sendDataPacket(copyImageIQ, DEFAULT_REQUEST_TIMEOUT);
     }
 
@@ -787,9 +780,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
         final long requestId = newRequestId();
         final DeleteImageIQ deleteImageIQ = new DeleteImageIQ(IQ_DELETE_IMAGE_SERIALIZER, requestId, info.publicId);
         final DeleteImagePendingRequest request = new DeleteImagePendingRequest(imageId, info.publicId, consumer);
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, request);
-        }
+        mPendingRequests.put(requestId, request);
         sendDataPacket(deleteImageIQ, DEFAULT_REQUEST_TIMEOUT);
     }
 
@@ -872,9 +863,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
             // Upload the image on the server.
             long requestId = newRequestId();
             UploadImagePendingRequest request = new UploadImagePendingRequest(imageId, kind, length);
-            synchronized (mPendingRequests) {
-                mPendingRequests.put(requestId, request);
-            }
+            mPendingRequests.put(requestId, request);
 
             // Send the image in chunks, we don't wait for server to acknowledge the upload.
             int chunkSize = computeChunkSize((int) length, (int) serverChunkSize);
@@ -933,10 +922,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
         long requestId = onCreateImageIQ.getRequestId();
 
         // Get the pending request or terminate.
-        CreateImagePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CreateImagePendingRequest) mPendingRequests.remove(requestId);
-        }
+        CreateImagePendingRequest request = (CreateImagePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1124,10 +1110,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
         long requestId = onCopyImageIQ.getRequestId();
 
         // Get the pending request or terminate.
-        CopyImagePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CopyImagePendingRequest) mPendingRequests.remove(requestId);
-        }
+        CopyImagePendingRequest request = (CopyImagePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1156,10 +1139,7 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
         long requestId = onDeleteImageIQ.getRequestId();
 
         // Get the pending request or terminate.
-        DeleteImagePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (DeleteImagePendingRequest) mPendingRequests.remove(requestId);
-        }
+        DeleteImagePendingRequest request = (DeleteImagePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1198,12 +1178,10 @@ public class ImageServiceImpl extends BaseServiceImpl<BaseService.ServiceObserve
 
         // Get the pending request or terminate.
         UploadImagePendingRequest request;
-        synchronized (mPendingRequests) {
-            if (onPutImageIQ.status != OnPutImageIQ.Status.INCOMPLETE) {
-                request = (UploadImagePendingRequest) mPendingRequests.remove(requestId);
-            } else {
-                request = (UploadImagePendingRequest) mPendingRequests.get(requestId);
-            }
+        if (onPutImageIQ.status != OnPutImageIQ.Status.INCOMPLETE) {
+            request = (UploadImagePendingRequest) mPendingRequests.remove(requestId);
+        } else {
+            request = (UploadImagePendingRequest) mPendingRequests.get(requestId);
         }
         if (request == null) {
             return;
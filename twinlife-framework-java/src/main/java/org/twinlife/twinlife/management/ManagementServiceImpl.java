@@ -12,7 +12,6 @@
 
 package org.twinlife.twinlife.management;
 
-import android.annotation.SuppressLint;
 import android.os.Build;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -39,6 +38,7 @@ import org.twinlife.twinlife.account.AccountServiceImpl;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.Utf8;
 import org.twinlife.twinlife.util.Utils;
 
@@ -157,8 +157,7 @@ public class ManagementServiceImpl extends BaseServiceImpl<ManagementService.Ser
     private volatile boolean mSetPushNotificationToken = true;
 
     private final AtomicReference<List<Event>> mEvents = new AtomicReference<>(new ArrayList<>(MAX_EVENTS));
-    @SuppressLint("UseSparseArrays")
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     private volatile Configuration mConfiguration;
     private JobService.Job mRefreshJob;
 
@@ -814,9 +813,7 @@ public class ManagementServiceImpl extends BaseServiceImpl<ManagementService.Ser
         long requestId = newRequestId();
         LogEventIQ logEventIQ = new LogEventIQ(IQ_LOG_EVENT_SERIALIZER, requestId, events);
         PendingRequest pendingRequest = new PendingRequest(events);
-        synchronized (this) {
-            mPendingRequests.put(requestId, pendingRequest);
-        }
+        mPendingRequests.put(requestId, pendingRequest);
         sendDataPacket(logEventIQ, DEFAULT_REQUEST_TIMEOUT);
     }
 
@@ -828,9 +825,7 @@ public class ManagementServiceImpl extends BaseServiceImpl<ManagementService.Ser
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        synchronized (this) {
-            mPendingRequests.remove(requestId);
-        }
+        mPendingRequests.remove(requestId);
     }
 
     private void onFeedbackIQ(@NonNull BinaryPacketIQ iq) {
@@ -849,13 +844,10 @@ public class ManagementServiceImpl extends BaseServiceImpl<ManagementService.Ser
 
         receivedIQ(iq.getRequestId());
 
-        PendingRequest request;
-        synchronized (this) {
-            request = mPendingRequests.remove(iq.getRequestId());
-            if (request == null) {
+        PendingRequest request = mPendingRequests.remove(iq.getRequestId());
+        if (request == null) {
 
-                return;
-            }
+            return;
         }
 
         // Prepare to send again the events if we failed due to network error.
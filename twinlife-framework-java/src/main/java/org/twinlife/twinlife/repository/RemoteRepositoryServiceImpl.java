@@ -9,7 +9,6 @@
 
 package org.twinlife.twinlife.repository;
 
-import android.annotation.SuppressLint;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -28,9 +27,9 @@ import org.twinlife.twinlife.TwinlifeImpl;
 import org.twinlife.twinlife.datatype.ArrayData;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
+import org.twinlife.twinlife.util.RequestCorrelator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 
@@ -60,8 +59,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
     private static final BinaryPacketIQ.BinaryPacketIQSerializer IQ_DELETE_OBJECT_SERIALIZER = GetObjectIQ.createSerializer(DELETE_OBJECT_SCHEMA_ID, 1);
     private static final BinaryPacketIQ.BinaryPacketIQSerializer IQ_ON_DELETE_OBJECT_SERIALIZER = BinaryPacketIQ.createDefaultSerializer(ON_DELETE_OBJECT_SCHEMA_ID, 1);
 
-    @SuppressLint("UseSparseArrays")
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
 
     private static class PendingRequest {
     }
@@ -209,9 +207,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         }
 
         final long requestId = newRequestId();
-        synchronized (this) {
-            mPendingRequests.put(requestId, new GetObjectPendingRequest(objectId, dbFactory, complete));
-        }
+        mPendingRequests.put(requestId, new GetObjectPendingRequest(objectId, dbFactory, complete));
 
         final GetObjectIQ objectIQ = new GetObjectIQ(IQ_GET_OBJECT_SERIALIZER, requestId, schemaId, objectId);
         sendDataPacket(objectIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -244,9 +240,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         }
 
         long requestId = newRequestId();
-        synchronized (this) {
-            mPendingRequests.put(requestId, new ListObjectPendingRequest(complete, dbFactory, schemaId));
-        }
+        mPendingRequests.put(requestId, new ListObjectPendingRequest(complete, dbFactory, schemaId));
 
         final ListObjectIQ objectIQ = new ListObjectIQ(IQ_LIST_OBJECT_SERIALIZER, requestId, schemaId);
         sendDataPacket(objectIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -276,9 +270,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         final UUID key = twincodeInbound == null ? null : twincodeInbound.getId();
         final String content = serialize(object);
         final long requestId = newRequestId();
-        synchronized (this) {
-            mPendingRequests.put(requestId, new UpdateObjectPendingRequest(object, complete));
-        }
+        mPendingRequests.put(requestId, new UpdateObjectPendingRequest(object, complete));
 
         final UpdateObjectIQ updateObjectIQ = new UpdateObjectIQ(IQ_UPDATE_OBJECT_SERIALIZER, requestId, 0, object.getId(),
                 id.getSchemaId(), id.getSchemaVersion(), key, content, null);
@@ -340,9 +332,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         final List<AttributeNameValue> attributes = object.getAttributes(true);
         final String content = serialize(object);
         final long requestId = newRequestId();
-        synchronized (this) {
-            mPendingRequests.put(requestId, new CreateObjectPendingRequest(dbFactory, immutable, key, attributes, complete));
-        }
+        mPendingRequests.put(requestId, new CreateObjectPendingRequest(dbFactory, immutable, key, attributes, complete));
 
         final CreateObjectIQ createObjectIQ = new CreateObjectIQ(IQ_CREATE_OBJECT_SERIALIZER, requestId, createOptions,
                 schemaId, schemaVersion, key, content, null);
@@ -370,9 +360,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         }
 
         final long requestId = newRequestId();
-        synchronized (this) {
-            mPendingRequests.put(requestId, new DeleteObjectPendingRequest(object, complete));
-        }
+        mPendingRequests.put(requestId, new DeleteObjectPendingRequest(object, complete));
 
         final GetObjectIQ objectIQ = new GetObjectIQ(IQ_DELETE_OBJECT_SERIALIZER, requestId, id.getSchemaId(), object.getId());
         sendDataPacket(objectIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -407,10 +395,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof GenericGetObjectPendingRequest) || !(iq instanceof OnGetObjectIQ)) {
             return;
         }
@@ -445,10 +430,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof ListObjectPendingRequest) || !(iq instanceof OnListObjectIQ)) {
             return;
         }
@@ -472,12 +454,9 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         }
 
         final long requestId = newRequestId();
-        final UUID objectId;
-        synchronized (this) {
-            mPendingRequests.put(requestId, listRequest);
-            objectId = listRequest.listObjectIds.remove(0);
-            listRequest.objectId = objectId;
-        }
+        final UUID objectId = listRequest.listObjectIds.remove(0);
+        listRequest.objectId = objectId;
+        mPendingRequests.put(requestId, listRequest);
 
         final GetObjectIQ objectIQ = new GetObjectIQ(IQ_GET_OBJECT_SERIALIZER, requestId,
                 listRequest.schemaId, objectId);
@@ -493,10 +472,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof CreateObjectPendingRequest) || !(iq instanceof OnCreateObjectIQ)) {
             return;
         }
@@ -528,10 +504,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof DeleteObjectPendingRequest)) {
             return;
         }
@@ -582,10 +555,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (!(request instanceof UpdateObjectPendingRequest) || !(iq instanceof OnUpdateObjectIQ)) {
             return;
         }
@@ -605,10 +575,7 @@ public class RemoteRepositoryServiceImpl extends RepositoryServiceImpl {
         final ErrorCode errorCode = iq.getErrorCode();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
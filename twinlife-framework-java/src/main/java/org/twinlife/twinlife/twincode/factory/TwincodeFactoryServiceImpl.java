@@ -33,8 +33,8 @@ import org.twinlife.twinlife.twincode.inbound.TwincodeInboundImpl;
 import org.twinlife.twinlife.twincode.outbound.TwincodeOutboundImpl;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
+import org.twinlife.twinlife.util.RequestCorrelator;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 
@@ -91,7 +91,7 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
     public static final BinaryPacketIQ.BinaryPacketIQSerializer IQ_DELETE_TWINCODE_SERIALIZER = DeleteTwincodeIQ.createSerializer(DELETE_TWINCODE_SCHEMA_ID, 1);
     public static final BinaryPacketIQ.BinaryPacketIQSerializer IQ_ON_DELETE_TWINCODE_SERIALIZER = BinaryPacketIQ.createDefaultSerializer(ON_DELETE_TWINCODE_SCHEMA_ID, 1);
 
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     private final DatabaseServiceImpl mDatabaseService;
     private final TwincodeOutboundService mTwincodeOutboundService;
 
@@ -162,10 +162,8 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new CreatePendingRequest(twincodeInboundAttributes,
-                    twincodeOutboundAttributes, twincodeFactoryAttributes, complete));
-        }
+        mPendingRequests.put(requestId, new CreatePendingRequest(twincodeInboundAttributes,
+                twincodeOutboundAttributes, twincodeFactoryAttributes, complete));
 
         final CreateTwincodeIQ createTwincodeIQ = new CreateTwincodeIQ(IQ_CREATE_TWINCODE_SERIALIZER, requestId,
                 CreateTwincodeIQ.BIND_INBOUND_OPTION, twincodeFactoryAttributes, twincodeInboundAttributes,
@@ -190,9 +188,7 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new DeletePendingRequest(twincodeFactoryId, complete));
-        }
+        mPendingRequests.put(requestId, new DeletePendingRequest(twincodeFactoryId, complete));
 
         final DeleteTwincodeIQ deleteTwincodeIQ = new DeleteTwincodeIQ(IQ_DELETE_TWINCODE_SERIALIZER, requestId,
                 twincodeFactoryId, 0);
@@ -218,10 +214,7 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
         final OnCreateTwincodeIQ onCreateTwincodeIQ = (OnCreateTwincodeIQ) iq;
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -275,10 +268,7 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -335,10 +325,7 @@ public class TwincodeFactoryServiceImpl extends BaseServiceImpl<TwincodeFactoryS
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -35,6 +35,7 @@ import org.twinlife.twinlife.twincode.UpdateTwincodeIQ;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.Logger;
+import org.twinlife.twinlife.util.RequestCorrelator;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -154,7 +155,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
     }
 
     private final TwincodeInboundServiceProvider mServiceProvider;
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     private final HashMap<String, InvocationListener> mInvocationListeners = new HashMap<>();
     private final HashMap<UUID, PendingInvocation> mPendingInvocations = new HashMap<>();
 
@@ -207,9 +208,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
 
         super.onSignOut();
 
-        synchronized (mPendingRequests) {
-            mPendingRequests.clear();
-        }
+        mPendingRequests.clear();
     }
 
     //
@@ -244,9 +243,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeInboundId, twincodeOutbound, complete));
-        }
+        mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeInboundId, twincodeOutbound, complete));
 
         final GetTwincodeIQ getTwincodeIQ = new GetTwincodeIQ(IQ_GET_TWINCODE_SERIALIZER, requestId, twincodeInboundId);
         sendDataPacket(getTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -266,9 +263,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new UpdateTwincodePendingRequest(complete, twincodeInbound, attributes));
-        }
+        mPendingRequests.put(requestId, new UpdateTwincodePendingRequest(complete, twincodeInbound, attributes));
 
         final UpdateTwincodeIQ updateTwincodeIQ = new UpdateTwincodeIQ(IQ_UPDATE_TWINCODE_SERIALIZER, requestId,
                 twincodeInbound.getId(), attributes, deleteAttributeNames, null);
@@ -288,9 +283,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new BindUnbindPendingRequest(twincodeInbound, complete));
-        }
+        mPendingRequests.put(requestId, new BindUnbindPendingRequest(twincodeInbound, complete));
 
         final GetTwincodeIQ bindTwincodeIQ = new GetTwincodeIQ(IQ_BIND_TWINCODE_SERIALIZER, requestId, twincodeInbound.getId());
         sendDataPacket(bindTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -309,9 +302,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new BindUnbindPendingRequest(twincodeInbound, complete));
-        }
+        mPendingRequests.put(requestId, new BindUnbindPendingRequest(twincodeInbound, complete));
 
         final GetTwincodeIQ unbindTwincodeIQ = new GetTwincodeIQ(IQ_UNBIND_TWINCODE_SERIALIZER, requestId, twincodeInbound.getId());
         sendDataPacket(unbindTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -353,9 +344,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new TriggerPendingRequest(complete));
-        }
+        mPendingRequests.put(requestId, new TriggerPendingRequest(complete));
 
         final TriggerPendingInvocationsIQ triggerPendingInvocationsIQ = new TriggerPendingInvocationsIQ(IQ_TRIGGER_PENDING_INVOCATIONS_SERIALIZER, requestId, null);
         sendDataPacket(triggerPendingInvocationsIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -442,10 +431,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final GetTwincodePendingRequest request;
-        synchronized (this) {
-            request = (GetTwincodePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final GetTwincodePendingRequest request = (GetTwincodePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -466,10 +452,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final UpdateTwincodePendingRequest request;
-        synchronized (this) {
-            request = (UpdateTwincodePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final UpdateTwincodePendingRequest request = (UpdateTwincodePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -489,10 +472,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final BindUnbindPendingRequest request;
-        synchronized (this) {
-            request = (BindUnbindPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final BindUnbindPendingRequest request = (BindUnbindPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -508,10 +488,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final BindUnbindPendingRequest request;
-        synchronized (this) {
-            request = (BindUnbindPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final BindUnbindPendingRequest request = (BindUnbindPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -631,10 +608,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -652,10 +626,7 @@ public class TwincodeInboundServiceImpl extends BaseServiceImpl<BaseService.Serv
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
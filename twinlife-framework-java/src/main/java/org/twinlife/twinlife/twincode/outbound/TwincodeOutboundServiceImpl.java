@@ -44,10 +44,10 @@ import org.twinlife.twinlife.twincode.InvocationIQ;
 import org.twinlife.twinlife.util.BinaryErrorPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ;
 import org.twinlife.twinlife.util.BinaryPacketIQ.BinaryPacketIQSerializer;
+import org.twinlife.twinlife.util.RequestCorrelator;
 import org.twinlife.twinlife.util.SerializerFactoryImpl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -212,7 +212,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
 
     private final TwincodeOutboundServiceProvider mServiceProvider;
     private final String mServiceJid;
-    private final HashMap<Long, PendingRequest> mPendingRequests = new HashMap<>();
+    private final RequestCorrelator.Registry<PendingRequest> mPendingRequests = getPendingRequests();
     private JobService.Job mRefreshJob;
     private long mPreviousRefreshDate = 0;
 
@@ -291,9 +291,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
             mRefreshJob.cancel();
             mRefreshJob = null;
         }
-        synchronized (mPendingRequests) {
-            mPendingRequests.clear();
-        }
+        mPendingRequests.clear();
     }
 
     @Override
@@ -334,9 +332,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, refreshPeriod, complete));
-        }
+        mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, refreshPeriod, complete));
 
         final GetTwincodeIQ getTwincodeIQ = new GetTwincodeIQ(IQ_GET_TWINCODE_SERIALIZER, requestId, twincodeOutboundId);
         sendDataPacket(getTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -355,9 +351,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, publicKey, 0, null, trust, complete));
-        }
+        mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, publicKey, 0, null, trust, complete));
 
         final GetTwincodeIQ getTwincodeIQ = new GetTwincodeIQ(IQ_GET_TWINCODE_SERIALIZER, requestId, twincodeOutboundId);
         sendDataPacket(getTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -376,9 +370,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, publicKey, keyIndex, secretKey, trust, complete));
-        }
+        mPendingRequests.put(requestId, new GetTwincodePendingRequest(twincodeOutboundId, publicKey, keyIndex, secretKey, trust, complete));
 
         final GetTwincodeIQ getTwincodeIQ = new GetTwincodeIQ(IQ_GET_TWINCODE_SERIALIZER, requestId, twincodeOutboundId);
         sendDataPacket(getTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -396,9 +388,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new RefreshTwincodePendingRequest(twincodeOutbound, complete));
-        }
+        mPendingRequests.put(requestId, new RefreshTwincodePendingRequest(twincodeOutbound, complete));
 
         final GetTwincodeIQ getTwincodeIQ = new GetTwincodeIQ(IQ_GET_TWINCODE_SERIALIZER, requestId, twincodeOutbound.getId());
         sendDataPacket(getTwincodeIQ, DEFAULT_REQUEST_TIMEOUT);
@@ -442,9 +432,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
             finalAttributes = attributes;
         }
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new UpdateTwincodePendingRequest(twincodeOutbound, finalAttributes, isSigned, complete));
-        }
+        mPendingRequests.put(requestId, new UpdateTwincodePendingRequest(twincodeOutbound, finalAttributes, isSigned, complete));
 
         final UpdateTwincodeIQ updateTwincodeIQ = new UpdateTwincodeIQ(IQ_UPDATE_TWINCODE_SERIALIZER, requestId,
                 twincodeOutbound.getId(), finalAttributes, deleteAttributeNames, signature);
@@ -465,9 +453,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new InvokePendingRequest(twincodeOutbound, complete));
-        }
+        mPendingRequests.put(requestId, new InvokePendingRequest(twincodeOutbound, complete));
 
         options = options & (INVOKE_URGENT | INVOKE_WAKEUP);
         final InvokeTwincodeIQ invokeTwincodeIQ = new InvokeTwincodeIQ(IQ_INVOKE_TWINCODE_SERIALIZER, requestId, options,null,
@@ -549,9 +535,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new CreateInvitationCodePendingRequest(twincodeOutbound, complete));
-        }
+        mPendingRequests.put(requestId, new CreateInvitationCodePendingRequest(twincodeOutbound, complete));
 
         String pubKey = mCryptoService.getPublicKey(twincodeOutbound);
 
@@ -567,9 +551,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         final long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new GetInvitationCodePendingRequest(code, complete));
-        }
+        mPendingRequests.put(requestId, new GetInvitationCodePendingRequest(code, complete));
 
         final GetInvitationCodeIQ iq = new GetInvitationCodeIQ(IQ_GET_INVITATION_CODE_SERIALIZER, requestId, code);
         sendDataPacket(iq, DEFAULT_REQUEST_TIMEOUT);
@@ -862,10 +844,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-        }
+        final PendingRequest request = mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -935,10 +914,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final UpdateTwincodePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (UpdateTwincodePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final UpdateTwincodePendingRequest request = (UpdateTwincodePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -951,6 +927,9 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         } else {
             twincodeOutbound.importAttributes(request.attributes, modificationDate, null);
         }
+        for (TwincodeOutboundService.ServiceObserver serviceObserver : getServiceObservers()) {
+            mTwinlifeExecutor.execute(() -> serviceObserver.onUpdateTwincode(twincodeOutbound));
+        }
         request.complete.onGet(ErrorCode.SUCCESS, twincodeOutbound);
     }
 
@@ -972,10 +951,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final RefreshTwincodesPendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (RefreshTwincodesPendingRequest) mPendingRequests.remove(requestId);
-        }
+        final RefreshTwincodesPendingRequest request = (RefreshTwincodesPendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1038,10 +1014,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final InvokePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (InvokePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final InvokePendingRequest request = (InvokePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1065,10 +1038,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final CreateInvitationCodePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (CreateInvitationCodePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final CreateInvitationCodePendingRequest request = (CreateInvitationCodePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1095,10 +1065,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         receivedIQ(requestId);
 
         // Get the pending request or terminate.
-        final GetInvitationCodePendingRequest request;
-        synchronized (mPendingRequests) {
-            request = (GetInvitationCodePendingRequest) mPendingRequests.remove(requestId);
-        }
+        final GetInvitationCodePendingRequest request = (GetInvitationCodePendingRequest) mPendingRequests.remove(requestId);
         if (request == null) {
             return;
         }
@@ -1147,9 +1114,7 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         }
 
         long requestId = newRequestId();
-        synchronized (mPendingRequests) {
-            mPendingRequests.put(requestId, new RefreshTwincodesPendingRequest(refreshList.twincodes));
-        }
+        mPendingRequests.put(requestId, new RefreshTwincodesPendingRequest(refreshList.twincodes));
 
         RefreshTwincodeIQ refreshTwincodeIQ = new RefreshTwincodeIQ(IQ_REFRESH_TWINCODE_SERIALIZER, requestId, refreshList.twincodes, refreshList.timestamp);
 
@@ -1165,12 +1130,9 @@ public class TwincodeOutboundServiceImpl extends BaseServiceImpl<TwincodeOutboun
         final long requestId = iq.getRequestId();
         receivedIQ(requestId);
 
-        final PendingRequest request;
-        synchronized (mPendingRequests) {
-            request = mPendingRequests.remove(requestId);
-            if (request == null) {
-                return;
-            }
+        final PendingRequest request = mPendingRequests.remove(requestId);
+        if (request == null) {
+            return;
         }
 
         // The object no longer exists on the server, remove it from our local database.
@@ -283,40 +283,54 @@ public class BinaryDecoder implements Decoder {
             Log.d(LOG_TAG, "readAttributes");
         }
 
-        int count = readInt();
+        return readAttributes(this);
+    }
+
+    /**
+     * Read the list of attributes with the given decoder.  The attributes are encoded in the same
+     * way by every binary decoder.
+     *
+     * @param decoder the decoder.
+     * @return the list of attributes or null when the list is empty.
+     * @throws SerializerException when the attributes are invalid.
+     */
+    @Nullable
+    static List<BaseService.AttributeNameValue> readAttributes(@NonNull Decoder decoder) throws SerializerException {
+
+        int count = decoder.readInt();
         if (count == 0) {
             return null;
         }
 
         List<BaseService.AttributeNameValue> attributes = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
-            String name = readString();
+            String name = decoder.readString();
             BaseService.AttributeNameValue attr;
-            int value = readEnum();
+            int value = decoder.readEnum();
             switch (value) {
                 case 0:
                     attr = new BaseService.AttributeNameVoidValue(name);
                     break;
 
                 case 1:
-                    attr = new BaseService.AttributeNameBooleanValue(name, readBoolean());
+                    attr = new BaseService.AttributeNameBooleanValue(name, decoder.readBoolean());
                     break;
 
                 case 2:
-                    attr = new BaseService.AttributeNameLongValue(name, readLong());
+                    attr = new BaseService.AttributeNameLongValue(name, decoder.readLong());
                     break;
 
                 case 3:
-                    attr = new BaseService.AttributeNameStringValue(name, readString());
+                    attr = new BaseService.AttributeNameStringValue(name, decoder.readString());
                     break;
 
                 case 4:
-                    attr = new BaseService.AttributeNameUUIDValue(name, readUUID());
+                    attr = new BaseService.AttributeNameUUIDValue(name, decoder.readUUID());
                     break;
 
                 case 5:
                 {
-                    List<BaseService.AttributeNameValue> list = readAttributes();
+                    List<BaseService.AttributeNameValue> list = decoder.readAttributes();
                     if (list == null) {
                         list = new ArrayList<>();
                     }
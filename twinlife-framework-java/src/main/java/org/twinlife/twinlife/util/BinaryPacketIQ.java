@@ -20,6 +20,7 @@ import org.twinlife.twinlife.SerializerException;
 import org.twinlife.twinlife.SerializerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -33,6 +34,9 @@ public class BinaryPacketIQ {
 
     public static class BinaryPacketIQSerializer extends Serializer {
 
+        // Size of the last packet serialized, used to pick the buffer of the next one.
+        private volatile int mLastEncodedSize;
+
         public BinaryPacketIQSerializer(UUID schemaId, int schemaVersion, Class<?> clazz) {
 
             super(schemaId, schemaVersion, clazz);
@@ -80,6 +84,23 @@ public class BinaryPacketIQ {
         return new BinaryPacketIQSerializer(schemaId, schemaVersion, BinaryPacketIQ.class);
     }
 
+    /**
+     * Stream and encoder re-used by a thread to serialize packets in pooled buffers.
+     */
+    private static final class PooledEncoder {
+        @NonNull
+        final ByteBufferOutputStream outputStream;
+        @NonNull
+        final BinaryEncoder encoder;
+
+        PooledEncoder(@NonNull ByteBufferPool pool) {
+            outputStream = new ByteBufferOutputStream(pool);
+            encoder = new BinaryCompactEncoder(outputStream);
+        }
+    }
+
+    private static final ThreadLocal<PooledEncoder> sPooledEncoder = new ThreadLocal<>();
+
     protected final long mRequestId;
     @NonNull
     protected final BinaryPacketIQSerializer mSerializer;
@@ -101,6 +122,24 @@ public class BinaryPacketIQ {
         return mRequestId;
     }
 
+    @NonNull
+    public BinaryPacketIQSerializer getSerializer() {
+
+        return mSerializer;
+    }
+
+    /**
+     * Get the P2P session id when the packet belongs to a P2P session.  The packets of the same
+     * P2P session must be processed in the order they are received.
+     *
+     * @return the P2P session id or null.
+     */
+    @Nullable
+    public UUID getSessionId() {
+
+        return null;
+    }
+
     protected int getBufferSize() {
 
         return SERIALIZER_BUFFER_DEFAULT_SIZE;
@@ -114,6 +153,37 @@ public class BinaryPacketIQ {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Serialize the packet in the compact form in a buffer obtained from the pool.  The buffer is
+     * sized from the last packet serialized with the same serializer.
+     *
+     * @param serializerFactory the serializer factory.
+     * @param pool the buffer pool.
+     * @return the buffer with the packet, it must be released to the pool once it is sent.
+     * @throws SerializerException when there is a serialization issue.
+     */
+    @NonNull
+    public ByteBuffer serializeCompact(@NonNull SerializerFactory serializerFactory, @NonNull ByteBufferPool pool) throws SerializerException {
+
+        PooledEncoder pooledEncoder = sPooledEncoder.get();
+        if (pooledEncoder == null || pooledEncoder.outputStream.getPool() != pool) {
+            pooledEncoder = new PooledEncoder(pool);
+            sPooledEncoder.set(pooledEncoder);
+        }
+
+        pooledEncoder.outputStream.start(Math.max(getBufferSize(), mSerializer.mLastEncodedSize));
+        try {
+            mSerializer.serialize(serializerFactory, pooledEncoder.encoder, this);
+        } catch (SerializerException | RuntimeException exception) {
+            pooledEncoder.outputStream.discard();
+            throw exception;
+        }
+
+        final ByteBuffer buffer = pooledEncoder.outputStream.finish();
+        mSerializer.mLastEncodedSize = buffer.remaining();
+        return buffer;
+    }
+
     public byte[] serialize(SerializerFactory serializerFactory) throws SerializerException {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(getBufferSize());
         final BinaryEncoder binaryEncoder = new BinaryEncoder(outputStream);
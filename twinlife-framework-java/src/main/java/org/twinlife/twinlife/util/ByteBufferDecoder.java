@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.twinlife.twinlife.BaseService;
+import org.twinlife.twinlife.Decoder;
+import org.twinlife.twinlife.SerializerException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Decoder for the compact binary format which reads directly from a heap or direct ByteBuffer.
+ *
+ * <p>
+ * The format is the format of BinaryCompactDecoder: integers are zigzag variable length encoded and
+ * UUIDs are made of two little endian 64-bit values.  The UUIDs and doubles are read with bulk
+ * ByteBuffer reads and the strings of a heap buffer are decoded without an intermediate copy.
+ * The decoder reads a duplicate of the buffer: the position of the caller's buffer is not changed.
+ * </p>
+ */
+public class ByteBufferDecoder implements Decoder {
+
+    @NonNull
+    private final ByteBuffer mBuffer;
+
+    public ByteBufferDecoder(@NonNull ByteBuffer buffer) {
+
+        mBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public boolean isEof() {
+
+        return !mBuffer.hasRemaining();
+    }
+
+    @Override
+    public boolean readBoolean() throws SerializerException {
+
+        return readByte() != 0;
+    }
+
+    @Override
+    public int readInt() throws SerializerException {
+
+        int value = 0;
+        int shift = 0;
+        do {
+            final int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+
+                return (value >>> 1) ^ -(value & 1);
+            }
+            shift += 7;
+        } while (shift < 32);
+
+        throw new SerializerException();
+    }
+
+    @Override
+    public long readLong() throws SerializerException {
+
+        long value = 0;
+        int shift = 0;
+        do {
+            final int b = readByte();
+            value |= (b & 0x7FL) << shift;
+            if ((b & 0x80) == 0) {
+
+                return (value >>> 1) ^ -(value & 1);
+            }
+            shift += 7;
+        } while (shift < 64);
+
+        throw new SerializerException();
+    }
+
+    @Override
+    @NonNull
+    public UUID readUUID() throws SerializerException {
+
+        if (mBuffer.remaining() < 16) {
+            throw new SerializerException();
+        }
+
+        final long leastSignificantBits = mBuffer.getLong();
+        final long mostSignificantBits = mBuffer.getLong();
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Read one of the two 64-bit values of a UUID: the least significant bits are read first.
+     * This allows to identify a schema without creating the UUID.
+     *
+     * @return the 64-bit value.
+     * @throws SerializerException when the buffer is too small.
+     */
+    public long readUUIDBits() throws SerializerException {
+
+        if (mBuffer.remaining() < 8) {
+            throw new SerializerException();
+        }
+
+        return mBuffer.getLong();
+    }
+
+    @Override
+    @Nullable
+    public UUID readOptionalUUID() throws SerializerException {
+
+        if (readBoolean()) {
+            return readUUID();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public double readDouble() throws SerializerException {
+
+        if (mBuffer.remaining() < 8) {
+            throw new SerializerException();
+        }
+
+        return Double.longBitsToDouble(mBuffer.getLong());
+    }
+
+    @Override
+    public int readEnum() throws SerializerException {
+
+        return readInt();
+    }
+
+    @Override
+    @NonNull
+    public String readString() throws SerializerException {
+
+        final int length = readInt();
+        if (length <= 0) {
+            return "";
+        }
+        if (mBuffer.remaining() < length) {
+            throw new SerializerException();
+        }
+
+        final String result;
+        if (mBuffer.hasArray()) {
+            result = new String(mBuffer.array(), mBuffer.arrayOffset() + mBuffer.position(), length, Utf8.UTF8);
+            mBuffer.position(mBuffer.position() + length);
+        } else {
+            final byte[] data = new byte[length];
+            mBuffer.get(data);
+            result = Utf8.create(data, length);
+        }
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public String readOptionalString() throws SerializerException {
+
+        if (readInt() == 1) {
+            return readString();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    @NonNull
+    public ByteBuffer readBytes(@Nullable ByteBuffer buffer) throws SerializerException {
+
+        // The content is copied: the returned buffer must remain valid after the packet buffer is released.
+        final int length = readInt();
+        ByteBuffer lBuffer;
+        if (buffer != null && length <= buffer.capacity()) {
+            lBuffer = buffer;
+            lBuffer.clear();
+        } else {
+            lBuffer = ByteBuffer.allocate(length);
+        }
+        readFixed(lBuffer.array(), lBuffer.position(), length);
+        lBuffer.limit(length);
+
+        return lBuffer;
+    }
+
+    @Override
+    @Nullable
+    public byte[] readOptionalBytes(@Nullable ByteBuffer buffer) throws SerializerException {
+
+        if (readInt() == 1) {
+            return readBytes(buffer).array();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void readFixed(@NonNull byte[] bytes, int start, int length) throws SerializerException {
+
+        if (length < 0 || mBuffer.remaining() < length) {
+            throw new SerializerException();
+        }
+        mBuffer.get(bytes, start, length);
+    }
+
+    @Override
+    @Nullable
+    public List<BaseService.AttributeNameValue> readAttributes() throws SerializerException {
+
+        return BinaryDecoder.readAttributes(this);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private int readByte() throws SerializerException {
+
+        try {
+            return mBuffer.get() & 0xFF;
+        } catch (BufferUnderflowException exception) {
+            throw new SerializerException(exception);
+        }
+    }
+}
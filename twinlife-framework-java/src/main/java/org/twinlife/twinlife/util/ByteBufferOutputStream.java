@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream which writes in a buffer obtained from a ByteBufferPool.
+ *
+ * <p>
+ * The stream is re-used: start() gets a buffer from the pool, finish() returns the buffer with the
+ * content written and gives its ownership to the caller.  When the buffer is full, a bigger buffer
+ * is obtained from the pool and the previous one is released.
+ * </p>
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+
+    @NonNull
+    private final ByteBufferPool mPool;
+    @Nullable
+    private ByteBuffer mBuffer;
+
+    public ByteBufferOutputStream(@NonNull ByteBufferPool pool) {
+
+        mPool = pool;
+    }
+
+    @NonNull
+    public ByteBufferPool getPool() {
+
+        return mPool;
+    }
+
+    /**
+     * Start writing in a new buffer.
+     *
+     * @param size the expected size of the content.
+     */
+    public void start(int size) {
+
+        discard();
+        mBuffer = mPool.acquire(size);
+    }
+
+    /**
+     * Finish writing and get the buffer, ready to be read.  The caller must release it to the pool.
+     *
+     * @return the buffer with the content.
+     */
+    @NonNull
+    public ByteBuffer finish() {
+
+        final ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            throw new IllegalStateException("start() was not called");
+        }
+        mBuffer = null;
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Drop the content and release the buffer to the pool.
+     */
+    public void discard() {
+
+        if (mBuffer != null) {
+            mPool.release(mBuffer);
+            mBuffer = null;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+
+        ensureCapacity(1).put((byte) b);
+    }
+
+    @Override
+    public void write(@NonNull byte[] bytes, int offset, int length) {
+
+        ensureCapacity(length).put(bytes, offset, length);
+    }
+
+    @NonNull
+    private ByteBuffer ensureCapacity(int length) {
+
+        ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            throw new IllegalStateException("start() was not called");
+        }
+        if (buffer.remaining() < length) {
+            final ByteBuffer newBuffer = mPool.acquire(Math.max(2 * buffer.capacity(), buffer.position() + length));
+            buffer.flip();
+            newBuffer.put(buffer);
+            mPool.release(buffer);
+            mBuffer = newBuffer;
+            buffer = newBuffer;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of heap ByteBuffers used to serialize the packets.
+ *
+ * <p>
+ * The buffers are grouped in power of 2 size classes from MIN_BUFFER_SIZE to MAX_BUFFER_SIZE and
+ * each class keeps at most a fixed number of free buffers.  The total size of the free buffers is also
+ * bounded so that a burst of large packets does not pin memory for the lifetime of the pool.
+ * Bigger buffers are not pooled.
+ * A buffer obtained with acquire() must be given back with release() once it is not used anymore.
+ * </p>
+ */
+public final class ByteBufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    @NonNull
+    private final ArrayDeque<ByteBuffer>[] mBuckets;
+    private final int mMaxBuffersPerBucket;
+    private final long mMaxPooledBytes;
+    private final AtomicLong mPooledBytes = new AtomicLong();
+    private final AtomicLong mAcquireCount = new AtomicLong();
+    private final AtomicLong mAllocateCount = new AtomicLong();
+
+    /**
+     * Create the pool.
+     *
+     * @param maxBuffersPerBucket the maximum number of free buffers kept for each size class.
+     * @param maxPooledBytes the maximum total capacity of the free buffers kept by the pool.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool(int maxBuffersPerBucket, long maxPooledBytes) {
+
+        final int count = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+        mBuckets = new ArrayDeque[count];
+        for (int i = 0; i < count; i++) {
+            mBuckets[i] = new ArrayDeque<>(maxBuffersPerBucket);
+        }
+        mMaxBuffersPerBucket = maxBuffersPerBucket;
+        mMaxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Get a cleared buffer whose capacity is at least the given size.
+     *
+     * @param size the minimum capacity.
+     * @return the buffer.
+     */
+    @NonNull
+    public ByteBuffer acquire(int size) {
+
+        mAcquireCount.incrementAndGet();
+        final int index = getBucket(size);
+        if (index >= 0) {
+            final ArrayDeque<ByteBuffer> bucket = mBuckets[index];
+            final ByteBuffer buffer;
+            synchronized (bucket) {
+                buffer = bucket.pollFirst();
+            }
+            if (buffer != null) {
+                mPooledBytes.addAndGet(-buffer.capacity());
+                buffer.clear();
+                return buffer;
+            }
+            size = MIN_BUFFER_SIZE << index;
+        }
+        mAllocateCount.incrementAndGet();
+        return ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Give back a buffer obtained with acquire().
+     *
+     * @param buffer the buffer.
+     */
+    public void release(@NonNull ByteBuffer buffer) {
+
+        final int capacity = buffer.capacity();
+        final int index = getBucket(capacity);
+        if (index < 0 || (MIN_BUFFER_SIZE << index) != capacity) {
+            return;
+        }
+
+        if (mPooledBytes.addAndGet(capacity) > mMaxPooledBytes) {
+            mPooledBytes.addAndGet(-capacity);
+            return;
+        }
+
+        final ArrayDeque<ByteBuffer> bucket = mBuckets[index];
+        synchronized (bucket) {
+            if (bucket.size() < mMaxBuffersPerBucket) {
+                bucket.addFirst(buffer);
+                return;
+            }
+        }
+        mPooledBytes.addAndGet(-capacity);
+    }
+
+    /**
+     * Get the number of buffers obtained from the pool.
+     *
+     * @return the number of acquire() calls.
+     */
+    public long getAcquireCount() {
+
+        return mAcquireCount.get();
+    }
+
+    /**
+     * Get the number of buffers that had to be allocated because the pool had no free buffer.
+     *
+     * @return the number of allocations.
+     */
+    public long getAllocateCount() {
+
+        return mAllocateCount.get();
+    }
+
+    /**
+     * Get the total capacity of the free buffers kept by the pool.
+     *
+     * @return the number of bytes held by the pool.
+     */
+    public long getPooledBytes() {
+
+        return mPooledBytes.get();
+    }
+
+    private static int getBucket(int size) {
+
+        if (size > MAX_BUFFER_SIZE) {
+            return -1;
+        }
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the latencies in milliseconds to compute percentiles.
+ *
+ * <p>
+ * The buckets are log-linear: each power of two is split in 4 buckets so that a percentile is
+ * known with a 25% precision.  Recording a value is lock-free.  When the histogram holds
+ * DECAY_COUNT values, the buckets are divided by two so that the percentiles follow the recent
+ * latencies.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 24; // 2^24 ms = 4.6 hours
+    private static final int BUCKET_COUNT = (MAX_EXPONENT << SUB_BUCKET_BITS);
+    private static final int DECAY_COUNT = 2048;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Record a latency.
+     *
+     * @param latency the latency in milliseconds.
+     */
+    public void record(long latency) {
+
+        mBuckets.incrementAndGet(index(latency));
+        if (mCount.incrementAndGet() >= DECAY_COUNT) {
+            decay();
+        }
+    }
+
+    /**
+     * Get the number of latencies in the histogram (after decay).
+     *
+     * @return the number of latencies.
+     */
+    public int getCount() {
+
+        return mCount.get();
+    }
+
+    /**
+     * Get the latency under which the given percentage of the latencies are found.
+     *
+     * @param percentile the percentile between 0 and 100.
+     * @return the latency in milliseconds or 0 if the histogram is empty.
+     */
+    public long getPercentile(double percentile) {
+
+        final long total = sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mBuckets.get(i);
+            if (count >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKET_COUNT - 1);
+    }
+
+    long sum() {
+
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += mBuckets.get(i);
+        }
+        return total;
+    }
+
+    private void decay() {
+
+        synchronized (mBuckets) {
+            if (mCount.get() < DECAY_COUNT) {
+                return;
+            }
+
+            // Halve each bucket atomically and only remove from the count what was removed from the
+            // buckets: a value recorded while we decay is kept in both.
+            long removed = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                final long value = mBuckets.getAndUpdate(i, (long v) -> v / 2);
+                removed += value - value / 2;
+            }
+            mCount.addAndGet((int) -removed);
+        }
+    }
+
+    static int index(long latency) {
+
+        if (latency < SUB_BUCKETS) {
+            return latency < 0 ? 0 : (int) latency;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(latency);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) ((latency >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long upperBound(int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final int subBucket = index & (SUB_BUCKETS - 1);
+        final long lower = ((long) (SUB_BUCKETS + subBucket)) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.twinlife.twinlife.Connection;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep the requests sent while the connection to the server is re-established.
+ *
+ * <p>
+ * When the connection is lost after a sign-in, the serialized requests are kept during a grace window
+ * instead of failing immediately with TWINLIFE_OFFLINE.  They are sent in the same order after the next
+ * sign-in.  The buffer is bounded in packets and in bytes and each request keeps its deadline: a request
+ * is reported as a timeout to its registry when its deadline passes while it is buffered, when the grace
+ * window ends, or when it is flushed too late to get a response in time.
+ * </p>
+ */
+public final class OutboundBuffer {
+    private static final String LOG_TAG = "OutboundBuffer";
+
+    /**
+     * What the caller of add() must do with the packet.
+     */
+    public enum Result {
+        // The packet is kept and it will be sent after the next sign-in.
+        BUFFERED,
+        // We are signed in and nothing is kept anymore: the packet must be sent directly.
+        SEND,
+        // The packet is not kept: the request fails as offline.
+        REFUSED
+    }
+
+    private final class Entry implements Runnable {
+        @NonNull
+        final RequestCorrelator.Registry<?> registry;
+        final long requestId;
+        @NonNull
+        final byte[] packet;
+        final long deadline;
+        @Nullable
+        final LatencyHistogram latency;
+        TimingWheel.Timeout timeout;
+
+        Entry(@NonNull RequestCorrelator.Registry<?> registry, long requestId, @NonNull byte[] packet,
+              long deadline, @Nullable LatencyHistogram latency) {
+            this.registry = registry;
+            this.requestId = requestId;
+            this.packet = packet;
+            this.deadline = deadline;
+            this.latency = latency;
+        }
+
+        @Override
+        public void run() {
+
+            synchronized (OutboundBuffer.this) {
+                if (mEntries.remove(requestId) != this) {
+                    return;
+                }
+                mBytes -= packet.length;
+            }
+            expire(this);
+        }
+    }
+
+    @NonNull
+    private final TimingWheel mTimers;
+    private final int mMaxPackets;
+    private final int mMaxBytes;
+    private final long mGraceWindow;
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<>();
+    private int mBytes;
+    private boolean mOnline;
+    private long mDisconnectTime;
+    @Nullable
+    private TimingWheel.Timeout mGraceTimeout;
+    private volatile boolean mFlushing;
+    private final AtomicLong mBufferedCount = new AtomicLong();
+    private final AtomicLong mFlushedCount = new AtomicLong();
+    private final AtomicLong mExpiredCount = new AtomicLong();
+    private final AtomicLong mOverflowCount = new AtomicLong();
+
+    /**
+     * Create the outbound buffer.
+     *
+     * @param timers the timing wheel for the request deadlines and the grace window.
+     * @param maxPackets the maximum number of packets to keep.
+     * @param maxBytes the maximum number of bytes to keep.
+     * @param graceWindow the delay in milliseconds after a disconnection during which packets are kept.
+     */
+    public OutboundBuffer(@NonNull TimingWheel timers, int maxPackets, int maxBytes, long graceWindow) {
+
+        mTimers = timers;
+        mMaxPackets = maxPackets;
+        mMaxBytes = maxBytes;
+        mGraceWindow = graceWindow;
+    }
+
+    /**
+     * Returns true while the packets kept during the disconnection are being sent: the new packets must
+     * be added to the buffer to be sent after them.  The flag is read without the lock, the result of
+     * add() is authoritative.
+     *
+     * @return true if the buffer is being flushed.
+     */
+    public boolean isFlushing() {
+
+        return mFlushing;
+    }
+
+    /**
+     * Keep the packet until the next sign-in.  The packet is refused when we have never signed in,
+     * when the grace window has passed or when the buffer is full.  When we are signed in and the
+     * flush is finished, the packet is not kept and the caller must send it.
+     *
+     * @param registry the registry of the request.
+     * @param requestId the request id.
+     * @param packet the serialized packet.
+     * @param timeout the delay in milliseconds to receive the response.
+     * @param latency the latency histogram of the operation or null.
+     * @return whether the packet is kept, must be sent or is refused.
+     */
+    @NonNull
+    public Result add(@NonNull RequestCorrelator.Registry<?> registry, long requestId, @NonNull byte[] packet,
+                       long timeout, @Nullable LatencyHistogram latency) {
+
+        final long now = System.currentTimeMillis();
+        final Entry entry = new Entry(registry, requestId, packet, now + timeout, latency);
+        synchronized (this) {
+            if (mOnline && !mFlushing) {
+                return Result.SEND;
+            }
+            if (!mOnline && (mDisconnectTime == 0 || now - mDisconnectTime > mGraceWindow)) {
+                return Result.REFUSED;
+            }
+            if (mEntries.size() >= mMaxPackets || mBytes + packet.length > mMaxBytes) {
+                mOverflowCount.incrementAndGet();
+                return Result.REFUSED;
+            }
+            entry.timeout = mTimers.schedule(entry, timeout);
+            mEntries.put(requestId, entry);
+            mBytes += packet.length;
+        }
+        mBufferedCount.incrementAndGet();
+        return Result.BUFFERED;
+    }
+
+    /**
+     * The connection is lost: start the grace window if we were signed in.
+     */
+    public void onDisconnect() {
+
+        synchronized (this) {
+            if (!mOnline) {
+                return;
+            }
+            mOnline = false;
+            mFlushing = false;
+            mDisconnectTime = System.currentTimeMillis();
+            mGraceTimeout = mTimers.schedule(this::onGraceExpired, mGraceWindow);
+        }
+    }
+
+    /**
+     * The sign-in is starting: until onSignIn() has sent the packets that are kept, the new packets are
+     * added after them so that a request sent by a service while it signs in cannot overtake them.
+     */
+    public void beginSignIn() {
+
+        synchronized (this) {
+            setOnline();
+        }
+    }
+
+    /**
+     * We are signed in: send the packets in order.  A packet whose response cannot be received before
+     * its deadline is not sent and is reported as a timeout.
+     *
+     * @param connection the connection to send the packets.
+     * @param minDelay the minimum time in milliseconds to get a response (the RTT).
+     */
+    public void onSignIn(@NonNull Connection connection, long minDelay) {
+
+        synchronized (this) {
+            setOnline();
+        }
+
+        while (true) {
+            final Entry entry;
+            synchronized (this) {
+                final Iterator<Entry> iterator = mEntries.values().iterator();
+                if (!mOnline || !iterator.hasNext()) {
+                    mFlushing = false;
+                    return;
+                }
+                entry = iterator.next();
+                iterator.remove();
+                mBytes -= entry.packet.length;
+            }
+
+            entry.timeout.cancel();
+            final long remaining = entry.deadline - System.currentTimeMillis();
+            if (remaining <= minDelay) {
+                expire(entry);
+                continue;
+            }
+
+            // If the send fails, the request deadline or the next disconnection reports the error.
+            entry.registry.setDeadline(entry.requestId, remaining, true, entry.latency);
+            try {
+                connection.sendDataPacket(entry.packet);
+                mFlushedCount.incrementAndGet();
+
+            } catch (Exception exception) {
+                Log.e(LOG_TAG, "Cannot send request " + entry.requestId + ": " + exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Report every packet as a timeout and forget the previous sign-in (used by sign-out).
+     */
+    public void clear() {
+
+        final List<Entry> entries;
+        synchronized (this) {
+            mOnline = false;
+            mFlushing = false;
+            mDisconnectTime = 0;
+            if (mGraceTimeout != null) {
+                mGraceTimeout.cancel();
+                mGraceTimeout = null;
+            }
+            entries = removeAll();
+        }
+        expire(entries);
+    }
+
+    /**
+     * Get the number of packets currently kept.
+     *
+     * @return the number of packets.
+     */
+    public synchronized int size() {
+
+        return mEntries.size();
+    }
+
+    public long getBufferedCount() {
+
+        return mBufferedCount.get();
+    }
+
+    public long getFlushedCount() {
+
+        return mFlushedCount.get();
+    }
+
+    public long getExpiredCount() {
+
+        return mExpiredCount.get();
+    }
+
+    public long getOverflowCount() {
+
+        return mOverflowCount.get();
+    }
+
+    private void setOnline() {
+
+        mOnline = true;
+        mFlushing = true;
+        mDisconnectTime = 0;
+        if (mGraceTimeout != null) {
+            mGraceTimeout.cancel();
+            mGraceTimeout = null;
+        }
+    }
+
+    private void onGraceExpired() {
+
+        final List<Entry> entries;
+        synchronized (this) {
+            mGraceTimeout = null;
+            if (mOnline) {
+                return;
+            }
+            entries = removeAll();
+        }
+        expire(entries);
+    }
+
+    @NonNull
+    private List<Entry> removeAll() {
+
+        final List<Entry> entries = new ArrayList<>(mEntries.values());
+        mEntries.clear();
+        mBytes = 0;
+        return entries;
+    }
+
+    private void expire(@NonNull List<Entry> entries) {
+
+        for (Entry entry : entries) {
+            entry.timeout.cancel();
+            expire(entry);
+        }
+    }
+
+    private void expire(@NonNull Entry entry) {
+
+        mExpiredCount.incrementAndGet();
+        entry.registry.timeout(entry.requestId, true);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Compute the delay before the next connection attempt.
+ *
+ * <p>
+ * The first attempt after a reset is immediate.  The next delays use the decorrelated jitter exponential
+ * backoff: each delay is a random value between the base delay and three times the previous delay, bounded
+ * by the maximum delay.  When several connections are lost at the same time, their retries are spread
+ * instead of reaching the server together.
+ * </p>
+ */
+public final class ReconnectBackoff {
+
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    @NonNull
+    private final Random mRandom;
+    private long mDelay;
+    private int mAttempts;
+
+    /**
+     * Create the backoff.
+     *
+     * @param baseDelay the minimum delay in milliseconds between two attempts.
+     * @param maxDelay the maximum delay in milliseconds between two attempts.
+     * @param random the random generator.
+     */
+    public ReconnectBackoff(long baseDelay, long maxDelay, @NonNull Random random) {
+
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        mRandom = random;
+        mDelay = baseDelay;
+    }
+
+    /**
+     * Get the delay to wait before the next attempt.
+     *
+     * @return the delay in milliseconds.
+     */
+    public synchronized long nextDelay() {
+
+        if (mAttempts++ == 0) {
+            return 0;
+        }
+
+        final long upper = Math.max(mBaseDelay, Math.min(mMaxDelay, mDelay * 3));
+        mDelay = mBaseDelay + (long) (mRandom.nextDouble() * (upper - mBaseDelay));
+        return mDelay;
+    }
+
+    /**
+     * Get the number of attempts since the last reset.
+     *
+     * @return the number of attempts.
+     */
+    public synchronized int getAttempts() {
+
+        return mAttempts;
+    }
+
+    /**
+     * The connection is established: the next attempt will be immediate.
+     */
+    public synchronized void reset() {
+
+        mAttempts = 0;
+        mDelay = mBaseDelay;
+    }
+}
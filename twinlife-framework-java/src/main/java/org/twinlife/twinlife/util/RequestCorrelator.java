@@ -0,0 +1,439 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Correlate the requests sent to the server with their responses.
+ *
+ * <p>
+ * The correlator is shared by the services of a Twinlife instance and each service gets a Registry which
+ * is a typed view on its own requests.  The requests are stored in a concurrent map indexed by the request
+ * id: the ids are allocated by TwinlifeImpl.newRequestId() and they are unique for all the services.
+ * Registering and completing a request is O(1) and does not take a global lock.
+ * </p>
+ * <p>
+ * A request can have a response deadline which is a timer on a hashed timing wheel.  The timer is cancelled
+ * when the response is received.  When it expires, the registry timeout handler is called from the wheel
+ * thread: the request is kept in the registry if it has a value so that the service can remove it.
+ * </p>
+ */
+public final class RequestCorrelator {
+    private static final String LOG_TAG = "RequestCorrelator";
+
+    /**
+     * Handler called when the response deadline of a request has passed.
+     */
+    public interface TimeoutHandler<T> {
+
+        void onTimeout(long requestId, @Nullable T request, boolean isBinary);
+    }
+
+    private static final class Request {
+        @NonNull
+        final Registry<?> registry;
+        final long creationTime;
+        @Nullable
+        volatile Object value;
+        @Nullable
+        volatile Deadline deadline;
+
+        Request(@NonNull Registry<?> registry) {
+            this.registry = registry;
+            this.creationTime = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Deadline implements Runnable {
+        @NonNull
+        final Registry<?> registry;
+        final long requestId;
+        final boolean isBinary;
+        @Nullable
+        final LatencyHistogram latency;
+        final long sendTime;
+        TimingWheel.Timeout timeout;
+
+        Deadline(@NonNull Registry<?> registry, long requestId, boolean isBinary, @Nullable LatencyHistogram latency) {
+            this.registry = registry;
+            this.requestId = requestId;
+            this.isBinary = isBinary;
+            this.latency = latency;
+            this.sendTime = System.currentTimeMillis();
+        }
+
+        void recordLatency() {
+
+            if (latency != null) {
+                latency.record(System.currentTimeMillis() - sendTime);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            registry.expire(this);
+        }
+    }
+
+    /**
+     * The requests of a service.
+     */
+    public final class Registry<T> {
+        @NonNull
+        private final String mName;
+        @NonNull
+        private final TimeoutHandler<T> mHandler;
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final AtomicLong mTimeoutCount = new AtomicLong();
+        private final ConcurrentHashMap<UUID, LatencyHistogram> mLatencies = new ConcurrentHashMap<>();
+
+        private Registry(@NonNull String name, @NonNull TimeoutHandler<T> handler) {
+
+            mName = name;
+            mHandler = handler;
+        }
+
+        @NonNull
+        public String getName() {
+
+            return mName;
+        }
+
+        /**
+         * Associate the request value with the request id.
+         *
+         * @param requestId the request id.
+         * @param request the request value.
+         */
+        public void put(long requestId, @NonNull T request) {
+
+            mPending.compute(requestId, (Long id, Request current) -> {
+                if (current == null) {
+                    mCount.incrementAndGet();
+                    current = new Request(this);
+
+                } else if (current.registry != this) {
+                    Log.e(LOG_TAG, "Request " + id + " of " + mName + " is already used by " + current.registry.mName);
+                    return current;
+                }
+                current.value = request;
+                return current;
+            });
+        }
+
+        /**
+         * Get the request value associated with the request id.
+         *
+         * @param requestId the request id.
+         * @return the request value or null.
+         */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public T get(long requestId) {
+
+            final Request request = mPending.get(requestId);
+            if (request == null || request.registry != this) {
+                return null;
+            }
+            return (T) request.value;
+        }
+
+        /**
+         * Remove the request and cancel its deadline.
+         *
+         * @param requestId the request id.
+         * @return the request value or null if the request is not known.
+         */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public T remove(long requestId) {
+
+            final Request request = mPending.get(requestId);
+            if (request == null || request.registry != this || !mPending.remove(requestId, request)) {
+                return null;
+            }
+            mCount.decrementAndGet();
+            final Deadline deadline = request.deadline;
+            if (deadline != null) {
+                deadline.timeout.cancel();
+            }
+            return (T) request.value;
+        }
+
+        /**
+         * Get the values of the pending requests.
+         *
+         * @return a snapshot of the request values.
+         */
+        @SuppressWarnings("unchecked")
+        @NonNull
+        public List<T> values() {
+
+            final List<T> result = new ArrayList<>();
+            for (Request request : mPending.values()) {
+                final Object value = request.value;
+                if (request.registry == this && value != null) {
+                    result.add((T) value);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Remove all the requests of the registry.
+         */
+        public void clear() {
+
+            for (Map.Entry<Long, Request> entry : mPending.entrySet()) {
+                if (entry.getValue().registry == this) {
+                    remove(entry.getKey());
+                }
+            }
+        }
+
+        /**
+         * Set the response deadline of the request.  The request is created if necessary.
+         *
+         * @param requestId the request id.
+         * @param timeout the delay in milliseconds to receive the response.
+         * @param isBinary true if the request is a binary packet.
+         */
+        public void setDeadline(long requestId, long timeout, boolean isBinary) {
+
+            setDeadline(requestId, timeout, isBinary, null);
+        }
+
+        /**
+         * Set the response deadline of the request and record the time to get the response
+         * (or the timeout) in the latency histogram.
+         *
+         * @param requestId the request id.
+         * @param timeout the delay in milliseconds to receive the response.
+         * @param isBinary true if the request is a binary packet.
+         * @param latency the latency histogram of the operation or null.
+         */
+        public void setDeadline(long requestId, long timeout, boolean isBinary, @Nullable LatencyHistogram latency) {
+
+            mPending.compute(requestId, (Long id, Request current) -> {
+                if (current == null) {
+                    mCount.incrementAndGet();
+                    current = new Request(this);
+
+                } else if (current.registry != this) {
+                    Log.e(LOG_TAG, "Request " + id + " of " + mName + " is already used by " + current.registry.mName);
+                    return current;
+
+                } else if (current.deadline != null) {
+                    current.deadline.timeout.cancel();
+                }
+
+                final Deadline deadline = new Deadline(this, id, isBinary, latency);
+                deadline.timeout = mTimers.schedule(deadline, timeout);
+                current.deadline = deadline;
+                return current;
+            });
+        }
+
+        /**
+         * The response of the request was received: cancel its deadline.  The request is removed
+         * unless it has a value, in which case the service must remove it.
+         *
+         * @param requestId the request id.
+         * @return true if the request had a deadline for a binary packet.
+         */
+        public boolean complete(long requestId) {
+
+            final Deadline[] completed = new Deadline[1];
+            mPending.computeIfPresent(requestId, (Long id, Request current) -> {
+                if (current.registry != this) {
+                    return current;
+                }
+                completed[0] = current.deadline;
+                current.deadline = null;
+                if (current.value != null) {
+                    return current;
+                }
+                mCount.decrementAndGet();
+                return null;
+            });
+
+            final Deadline deadline = completed[0];
+            if (deadline == null) {
+                return false;
+            }
+            deadline.timeout.cancel();
+            deadline.recordLatency();
+            return deadline.isBinary;
+        }
+
+        /**
+         * Report a timeout now for each request which has a deadline.
+         */
+        public void expireAll() {
+
+            for (Request request : mPending.values()) {
+                final Deadline deadline = request.deadline;
+                if (request.registry == this && deadline != null) {
+                    deadline.timeout.cancel();
+                    expire(deadline);
+                }
+            }
+        }
+
+        /**
+         * Report a timeout now for a request which has no deadline because it was not sent.
+         *
+         * @param requestId the request id.
+         * @param isBinary true if the request is a binary packet.
+         */
+        public void timeout(long requestId, boolean isBinary) {
+
+            mTimeoutCount.incrementAndGet();
+            mHandler.onTimeout(requestId, get(requestId), isBinary);
+        }
+
+        /**
+         * Get the number of requests waiting for a response.
+         *
+         * @return the number of pending requests.
+         */
+        public int getInFlightCount() {
+
+            return mCount.get();
+        }
+
+        /**
+         * Get the age of the oldest pending request.
+         *
+         * @return the age in milliseconds or 0 when there is no pending request.
+         */
+        public long getOldestPendingAge() {
+
+            long oldest = Long.MAX_VALUE;
+            for (Request request : mPending.values()) {
+                if (request.registry == this && request.creationTime < oldest) {
+                    oldest = request.creationTime;
+                }
+            }
+            return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+        }
+
+        /**
+         * Get the latency histogram of an operation.
+         *
+         * @param operation the operation identification (the schema id of the request).
+         * @return the latency histogram.
+         */
+        @NonNull
+        public LatencyHistogram getLatency(@NonNull UUID operation) {
+
+            final LatencyHistogram latency = mLatencies.get(operation);
+            if (latency != null) {
+                return latency;
+            }
+            return mLatencies.computeIfAbsent(operation, (UUID key) -> new LatencyHistogram());
+        }
+
+        /**
+         * Get the number of requests whose deadline has passed.
+         *
+         * @return the number of timeouts.
+         */
+        public long getTimeoutCount() {
+
+            return mTimeoutCount.get();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expire(@NonNull Deadline deadline) {
+
+            final Object[] expired = new Object[1];
+            final boolean[] found = new boolean[1];
+            mPending.computeIfPresent(deadline.requestId, (Long id, Request current) -> {
+                if (current.deadline != deadline) {
+                    return current;
+                }
+                found[0] = true;
+                expired[0] = current.value;
+                current.deadline = null;
+                if (current.value != null) {
+                    return current;
+                }
+                mCount.decrementAndGet();
+                return null;
+            });
+
+            if (found[0]) {
+                // The timeout is a lower bound of the latency: record it so that the percentiles increase.
+                deadline.recordLatency();
+                mTimeoutCount.incrementAndGet();
+                mHandler.onTimeout(deadline.requestId, (T) expired[0], deadline.isBinary);
+            }
+        }
+    }
+
+    @NonNull
+    private final TimingWheel mTimers;
+    private final ConcurrentHashMap<Long, Request> mPending = new ConcurrentHashMap<>();
+    private final List<Registry<?>> mRegistries = new CopyOnWriteArrayList<>();
+
+    /**
+     * Create the correlator with the timing wheel used for the response deadlines.
+     *
+     * @param timers the timing wheel.
+     */
+    public RequestCorrelator(@NonNull TimingWheel timers) {
+
+        mTimers = timers;
+    }
+
+    /**
+     * Create the registry for the requests of a service.
+     *
+     * @param name the registry name used by the gauges.
+     * @param handler the handler called when a request deadline has passed.
+     * @return the registry.
+     */
+    @NonNull
+    public <T> Registry<T> newRegistry(@NonNull String name, @NonNull TimeoutHandler<T> handler) {
+
+        final Registry<T> registry = new Registry<>(name, handler);
+        mRegistries.add(registry);
+        return registry;
+    }
+
+    @NonNull
+    public List<Registry<?>> getRegistries() {
+
+        return mRegistries;
+    }
+
+    /**
+     * Get the total number of requests waiting for a response.
+     *
+     * @return the number of pending requests.
+     */
+    public int size() {
+
+        return mPending.size();
+    }
+}
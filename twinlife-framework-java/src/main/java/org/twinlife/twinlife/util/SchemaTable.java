@@ -0,0 +1,200 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable table indexed by a schema id and version.
+ *
+ * <p>
+ * The table uses open addressing with linear probing on the two longs of the schema UUID and the
+ * version: a lookup does not allocate any object and does not take any lock.  Adding an entry
+ * creates a new table (copy-on-write), which is done when the services register their schemas.
+ * Each entry counts the number of times it was found.
+ * </p>
+ */
+public final class SchemaTable<T> {
+
+    private static final class Entry<T> {
+        final long mostSignificantBits;
+        final long leastSignificantBits;
+        final int version;
+        @NonNull
+        final T value;
+        @NonNull
+        final AtomicLong hits;
+
+        Entry(long mostSignificantBits, long leastSignificantBits, int version, @NonNull T value, @NonNull AtomicLong hits) {
+            this.mostSignificantBits = mostSignificantBits;
+            this.leastSignificantBits = leastSignificantBits;
+            this.version = version;
+            this.value = value;
+            this.hits = hits;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final SchemaTable<?> EMPTY = new SchemaTable<>((Entry<Object>[]) new Entry[0], 0);
+
+    @NonNull
+    private final Entry<T>[] mEntries;
+    private final int mCount;
+
+    private SchemaTable(@NonNull Entry<T>[] entries, int count) {
+
+        mEntries = entries;
+        mCount = count;
+    }
+
+    /**
+     * Get the empty table.
+     *
+     * @return the empty table.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public static <T> SchemaTable<T> empty() {
+
+        return (SchemaTable<T>) EMPTY;
+    }
+
+    /**
+     * Get a new table with the value added for the schema.  When the schema is already in the table,
+     * its value is replaced and its hit counter is kept.
+     *
+     * @param schemaId the schema id.
+     * @param version the schema version.
+     * @param value the value.
+     * @return the new table.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public SchemaTable<T> with(@NonNull UUID schemaId, int version, @NonNull T value) {
+
+        final long msb = schemaId.getMostSignificantBits();
+        final long lsb = schemaId.getLeastSignificantBits();
+        final Entry<T> previous = find(msb, lsb, version);
+        final int count = previous == null ? mCount + 1 : mCount;
+
+        // Keep the table at most half full so that the probe sequences are short.
+        int capacity = 16;
+        while (capacity < 2 * count) {
+            capacity <<= 1;
+        }
+
+        final Entry<T>[] entries = (Entry<T>[]) new Entry<?>[capacity];
+        for (Entry<T> entry : mEntries) {
+            if (entry != null && entry != previous) {
+                insert(entries, entry);
+            }
+        }
+        insert(entries, new Entry<>(msb, lsb, version, value, previous == null ? new AtomicLong() : previous.hits));
+        return new SchemaTable<>(entries, count);
+    }
+
+    /**
+     * Check if the schema is in the table.
+     *
+     * @param schemaId the schema id.
+     * @param version the schema version.
+     * @return true if the table has a value for the schema.
+     */
+    public boolean contains(@NonNull UUID schemaId, int version) {
+
+        return find(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), version) != null;
+    }
+
+    /**
+     * Get the value associated with the schema and count the hit.
+     *
+     * @param mostSignificantBits the most significant bits of the schema id.
+     * @param leastSignificantBits the least significant bits of the schema id.
+     * @param version the schema version.
+     * @return the value or null.
+     */
+    @Nullable
+    public T get(long mostSignificantBits, long leastSignificantBits, int version) {
+
+        final Entry<T> entry = find(mostSignificantBits, leastSignificantBits, version);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public int size() {
+
+        return mCount;
+    }
+
+    /**
+     * Get the number of times each schema was found.
+     *
+     * @return the hit counters indexed by schema.
+     */
+    @NonNull
+    public Map<SchemaKey, Long> getHitCounters() {
+
+        final Map<SchemaKey, Long> result = new HashMap<>();
+        for (Entry<T> entry : mEntries) {
+            if (entry != null) {
+                result.put(new SchemaKey(new UUID(entry.mostSignificantBits, entry.leastSignificantBits), entry.version),
+                        entry.hits.get());
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private Entry<T> find(long msb, long lsb, int version) {
+
+        final Entry<T>[] entries = mEntries;
+        if (entries.length == 0) {
+            return null;
+        }
+
+        final int mask = entries.length - 1;
+        int index = hash(msb, lsb, version) & mask;
+        while (true) {
+            final Entry<T> entry = entries[index];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.mostSignificantBits == msb && entry.leastSignificantBits == lsb && entry.version == version) {
+                return entry;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static <T> void insert(@NonNull Entry<T>[] entries, @NonNull Entry<T> entry) {
+
+        final int mask = entries.length - 1;
+        int index = hash(entry.mostSignificantBits, entry.leastSignificantBits, entry.version) & mask;
+        while (entries[index] != null) {
+            index = (index + 1) & mask;
+        }
+        entries[index] = entry;
+    }
+
+    private static int hash(long msb, long lsb, int version) {
+
+        long value = msb ^ Long.rotateLeft(lsb, 32) ^ ((long) version * 0x9E3779B97F4A7C15L);
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return (int) (value ^ (value >>> 33));
+    }
+}
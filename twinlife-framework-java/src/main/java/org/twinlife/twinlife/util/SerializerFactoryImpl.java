@@ -17,69 +17,24 @@ import org.twinlife.twinlife.SerializerFactory;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class SerializerFactoryImpl implements SerializerFactory {
     private static final String LOG_TAG = "SerializerFactoryImpl";
     private static final boolean DEBUG = false;
 
-    private static class SerializerKey {
-        @NonNull
-        private final UUID schemaId;
-        private final int schemaVersion;
-
-        SerializerKey(@NonNull UUID schemaId, int schemaVersion) {
-
-            this.schemaId = schemaId;
-            this.schemaVersion = schemaVersion;
-        }
-
-        //
-        // Override Object methods
-        //
-
-        @Override
-        public boolean equals(Object object) {
-
-            if (this == object) {
-
-                return true;
-            }
-            if (!(object instanceof SerializerKey)) {
-
-                return false;
-            }
-
-            SerializerKey serializerKey = (SerializerKey) object;
-
-            return serializerKey.schemaId.equals(schemaId) && serializerKey.schemaVersion == schemaVersion;
-        }
-
-        @Override
-        public int hashCode() {
-
-            int result = 17;
-            result = 31 * result + schemaId.hashCode();
-            result = 31 * result + schemaVersion;
-
-            return result;
-        }
-    }
-
+    // The tables are replaced when serializers are added so that the lookups do not need a lock.
     private final Object mSerializersLock = new Object();
-    private final HashMap<Class<?>, Serializer> mClass2Serializers = new HashMap<>();
-    private final HashMap<SerializerKey, Serializer> mSerializers = new HashMap<>();
+    private volatile Map<Class<?>, Serializer> mClass2Serializers = new HashMap<>();
+    private volatile SchemaTable<Serializer> mSerializers = SchemaTable.empty();
 
     public void addSerializer(Serializer serializer) {
         if (DEBUG) {
             Log.d(LOG_TAG, "addSerializer serializer=" + serializer);
         }
 
-        synchronized (mSerializersLock) {
-            mClass2Serializers.put(serializer.clazz, serializer);
-            SerializerKey serializerKey = new SerializerKey(serializer.schemaId, serializer.schemaVersion);
-            mSerializers.put(serializerKey, serializer);
-        }
+        addSerializers(new Serializer[] { serializer });
     }
 
     public void addSerializers(Serializer[] serializers) {
@@ -88,11 +43,14 @@ public class SerializerFactoryImpl implements SerializerFactory {
         }
 
         synchronized (mSerializersLock) {
+            final Map<Class<?>, Serializer> class2Serializers = new HashMap<>(mClass2Serializers);
+            SchemaTable<Serializer> table = mSerializers;
             for (Serializer serializer : serializers) {
-                mClass2Serializers.put(serializer.clazz, serializer);
-                SerializerKey serializerKey = new SerializerKey(serializer.schemaId, serializer.schemaVersion);
-                mSerializers.put(serializerKey, serializer);
+                class2Serializers.put(serializer.clazz, serializer);
+                table = table.with(serializer.schemaId, serializer.schemaVersion, serializer);
             }
+            mClass2Serializers = class2Serializers;
+            mSerializers = table;
         }
     }
 
@@ -102,10 +60,7 @@ public class SerializerFactoryImpl implements SerializerFactory {
             Log.d(LOG_TAG, "getSerializer object=" + object);
         }
 
-        synchronized (mSerializersLock) {
-
-            return mClass2Serializers.get(object.getClass());
-        }
+        return mClass2Serializers.get(object.getClass());
     }
 
     @Nullable
@@ -114,10 +69,6 @@ public class SerializerFactoryImpl implements SerializerFactory {
             Log.d(LOG_TAG, "getSerializer schemaId=" + schemaId + " schemaVersion=" + schemaVersion);
         }
 
-        SerializerKey serializerKey = new SerializerKey(schemaId, schemaVersion);
-        synchronized (mSerializersLock) {
-
-            return mSerializers.get(serializerKey);
-        }
+        return mSerializers.get(schemaId.getMostSignificantBits(), schemaId.getLeastSignificantBits(), schemaVersion);
     }
 }
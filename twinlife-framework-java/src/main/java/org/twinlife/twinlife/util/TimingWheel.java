@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2025 twinlife SA.
+ *  SPDX-License-Identifier: AGPL-3.0-only
+ *
+ *  Contributors:
+ *   Stephane Carrez (Stephane.Carrez@twin.life)
+ */
+
+package org.twinlife.twinlife.util;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel to run a large number of timers with a tick precision.
+ *
+ * <p>
+ * Each slot of the wheel holds a doubly linked list of timers so that scheduling and cancelling a timer
+ * are O(1) operations.  A timer whose delay is longer than a wheel revolution stays in its slot for
+ * several rounds.  The timers are executed by the single thread that advances the wheel: they must be
+ * short and must not block.
+ * </p>
+ */
+public final class TimingWheel {
+    private static final String LOG_TAG = "TimingWheel";
+
+    /**
+     * Handle to cancel a scheduled timer.
+     */
+    public interface Timeout {
+
+        /**
+         * Cancel the timer.
+         *
+         * @return true if the timer was cancelled and false if it has already been executed or cancelled.
+         */
+        boolean cancel();
+    }
+
+    private final class Timer implements Timeout {
+        @NonNull
+        final Runnable task;
+        long rounds;
+        int slot = -1;
+        @Nullable
+        Timer prev;
+        @Nullable
+        Timer next;
+
+        Timer(@NonNull Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel() {
+
+            synchronized (TimingWheel.this) {
+                if (slot < 0) {
+                    return false;
+                }
+                unlink(this);
+                return true;
+            }
+        }
+    }
+
+    @NonNull
+    private final String mName;
+    private final long mTickDuration;
+    private final int mMask;
+    private final Timer[] mSlots;
+    private long mTick;
+    private int mCount;
+    @Nullable
+    private ScheduledExecutorService mExecutor;
+
+    /**
+     * Create the timing wheel.
+     *
+     * @param name the name of the wheel thread.
+     * @param tickDuration the duration of a tick in milliseconds.
+     * @param wheelSize the number of slots, rounded to a power of 2.
+     */
+    public TimingWheel(@NonNull String name, long tickDuration, int wheelSize) {
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        mName = name;
+        mTickDuration = tickDuration;
+        mMask = size - 1;
+        mSlots = new Timer[size];
+    }
+
+    /**
+     * Start the thread that advances the wheel.
+     */
+    public synchronized void start() {
+
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+                final Thread thread = new Thread(runnable, mName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            mExecutor.scheduleAtFixedRate(this::tick, mTickDuration, mTickDuration, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the thread, the pending timers are not executed.
+     */
+    public synchronized void stop() {
+
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Schedule the task to be executed after the delay.
+     *
+     * @param task the task to execute.
+     * @param delay the delay in milliseconds.
+     * @return the timeout to cancel the timer.
+     */
+    @NonNull
+    public Timeout schedule(@NonNull Runnable task, long delay) {
+
+        final long ticks = Math.max(1, (delay + mTickDuration - 1) / mTickDuration);
+        final Timer timer = new Timer(task);
+        synchronized (this) {
+            timer.rounds = (ticks - 1) / mSlots.length;
+            timer.slot = (int) ((mTick + ticks) & mMask);
+            timer.next = mSlots[timer.slot];
+            if (timer.next != null) {
+                timer.next.prev = timer;
+            }
+            mSlots[timer.slot] = timer;
+            mCount++;
+        }
+        return timer;
+    }
+
+    /**
+     * Get the number of timers waiting in the wheel.
+     *
+     * @return the number of timers.
+     */
+    public synchronized int size() {
+
+        return mCount;
+    }
+
+    /**
+     * Advance the wheel by one tick and execute the timers which have expired.  This is called by the
+     * wheel thread when it is started, the tests call it directly to control the time.
+     */
+    void tick() {
+
+        final List<Timer> expired = new ArrayList<>();
+        synchronized (this) {
+            mTick++;
+            Timer timer = mSlots[(int) (mTick & mMask)];
+            while (timer != null) {
+                final Timer next = timer.next;
+                if (timer.rounds > 0) {
+                    timer.rounds--;
+                } else {
+                    unlink(timer);
+                    expired.add(timer);
+                }
+                timer = next;
+            }
+        }
+
+        for (Timer timer : expired) {
+            try {
+                timer.task.run();
+
+            } catch (Exception exception) {
+                Log.e(LOG_TAG, "Timer task failed", exception);
+            }
+        }
+    }
+
+    /**
+     * Remove the timer from its slot.  Called with the lock held.
+     */
+    private void unlink(@NonNull Timer timer) {
+
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            mSlots[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+        mCount--;
+    }
+}